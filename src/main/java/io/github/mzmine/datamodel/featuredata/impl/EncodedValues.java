@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.featuredata.impl;
+
+import java.nio.DoubleBuffer;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Immutable array of double values stored with a {@link ValueCodec}. Implementations are thread
+ * safe.
+ */
+public interface EncodedValues {
+
+  /**
+   * @return number of values
+   */
+  int size();
+
+  double get(int index);
+
+  /**
+   * Decodes a block of values into the destination array.
+   *
+   * @param index    index of the first value
+   * @param dst      the destination array
+   * @param dstIndex the index of the first value in the destination array
+   * @param length   the number of values
+   */
+  void get(int index, @NotNull double[] dst, int dstIndex, int length);
+
+  /**
+   * @return the codec that was used for encoding. May differ from the requested codec if the
+   * values cannot be represented by it.
+   */
+  @NotNull ValueCodec getCodec();
+
+  /**
+   * @return the number of bytes used to store the encoded values
+   */
+  long getEncodedBytes();
+
+  /**
+   * @return the values in a double buffer. Lossy codecs decode all values into a new buffer.
+   */
+  @NotNull DoubleBuffer toDoubleBuffer();
+
+  default @NotNull double[] toArray() {
+    final double[] values = new double[size()];
+    get(0, values, 0, values.length);
+    return values;
+  }
+}
@@ -34,9 +34,13 @@ import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
 import io.github.mzmine.datamodel.featuredata.MzSeries;
 import io.github.mzmine.modules.io.projectload.CachedIMSFrame;
 import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
+import io.github.mzmine.modules.io.projectload.version_3_0.FeatureSeriesBinaryReader;
+import io.github.mzmine.modules.io.projectload.version_3_0.FeatureSeriesBinaryReader.BinarySeries;
+import io.github.mzmine.modules.io.projectsave.FeatureSeriesBinaryWriter;
 import io.github.mzmine.util.DataPointUtils;
 import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.ParsingUtils;
+import java.io.IOException;
 import java.nio.DoubleBuffer;
 import java.util.Collections;
 import java.util.Comparator;
@@ -57,6 +61,7 @@ import org.jetbrains.annotations.Nullable;
 public class SimpleIonTimeSeries implements IonTimeSeries<Scan> {
 
   public static final String XML_ELEMENT = "simpleiontimeseries";
+  public static final String XML_BINARY_ELEMENT = "binaryiontimeseries";
 
   protected final List<Scan> scans;
   protected final DoubleBuffer intensityValues;
@@ -105,14 +110,7 @@ public class SimpleIonTimeSeries implements IonTimeSeries<Scan> {
       switch (reader.getLocalName()) {
         case CONST.XML_SCAN_LIST_ELEMENT -> {
           int[] indices = ParsingUtils.stringToIntArray(reader.getElementText());
-          scans = ParsingUtils.getSublistFromIndices(file.getScans(), indices); // use all scans
-
-          // if the scans were CachedFrames, we have to replace them when storing them to the series,
-          // otherwise, we would keep the refences to cached mobility scans alive.
-          if (scans.get(0) instanceof CachedIMSFrame) {
-            scans = scans.stream().map(scan -> ((CachedIMSFrame) scan).getOriginalFrame())
-                .map(f -> (Scan) f).toList();
-          }
+          scans = getScansFromIndices(file, indices);
         }
         case CONST.XML_MZ_VALUES_ELEMENT ->
             mzs = ParsingUtils.stringToDoubleArray(reader.getElementText());
@@ -124,6 +122,31 @@ public class SimpleIonTimeSeries implements IonTimeSeries<Scan> {
     return new SimpleIonTimeSeries(storage, mzs, intensities, scans);
   }
 
+  /**
+   * Loads a series that was saved with {@link #saveValueToBinary(XMLStreamWriter, List,
+   * FeatureSeriesBinaryWriter)}. The reader has to be at the {@link #XML_BINARY_ELEMENT}.
+   */
+  public static SimpleIonTimeSeries loadFromBinary(XMLStreamReader reader,
+      MemoryMapStorage storage, RawDataFile file, FeatureSeriesBinaryReader binaryReader) {
+    final long offset = Long.parseLong(
+        reader.getAttributeValue(null, CONST.XML_BINARY_OFFSET_ATTR));
+    final BinarySeries data = binaryReader.readSeries(offset);
+    final List<Scan> scans = getScansFromIndices(file, data.scanIndices());
+    return new SimpleIonTimeSeries(storage, data.mzs(), data.intensities(), scans);
+  }
+
+  private static List<Scan> getScansFromIndices(RawDataFile file, int[] indices) {
+    List<Scan> scans = ParsingUtils.getSublistFromIndices(file.getScans(), indices); // use all scans
+
+    // if the scans were CachedFrames, we have to replace them when storing them to the series,
+    // otherwise, we would keep the refences to cached mobility scans alive.
+    if (!scans.isEmpty() && scans.get(0) instanceof CachedIMSFrame) {
+      scans = scans.stream().map(scan -> ((CachedIMSFrame) scan).getOriginalFrame())
+          .map(f -> (Scan) f).toList();
+    }
+    return scans;
+  }
+
   @Override
   public SimpleIonTimeSeries subSeries(@Nullable MemoryMapStorage storage,
       @NotNull List<Scan> subset) {
@@ -206,6 +229,21 @@ public class SimpleIonTimeSeries implements IonTimeSeries<Scan> {
     writer.writeEndElement();
   }
 
+  /**
+   * Writes the scan indices, m/z and intensity values to the binary writer and only the offset of
+   * the record to the xml.
+   */
+  public void saveValueToBinary(XMLStreamWriter writer, List<Scan> allScans,
+      FeatureSeriesBinaryWriter binaryWriter) throws XMLStreamException, IOException {
+    final int[] indices = ParsingUtils.getIndicesOfSubListElements(getSpectra(), allScans);
+    final long offset = binaryWriter.writeSeries(indices, getMZValueBuffer(),
+        getIntensityValueBuffer());
+
+    writer.writeStartElement(SimpleIonTimeSeries.XML_BINARY_ELEMENT);
+    writer.writeAttribute(CONST.XML_BINARY_OFFSET_ATTR, String.valueOf(offset));
+    writer.writeEndElement();
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -0,0 +1,399 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.featuredata.impl;
+
+import io.github.mzmine.util.MemoryMapStorage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Codecs to store m/z and intensity values in a compact form. The encoded values are written to a
+ * {@link MemoryMapStorage} or kept in RAM, if the storage is null. The numpress codecs follow the
+ * linear prediction and short logged float (slof) encodings of MS-Numpress (Teleman et al., 2014).
+ * <p>
+ * Values that cannot be represented by a codec (e.g. NaN for the numpress codecs) are stored with
+ * the next best codec, see {@link EncodedValues#getCodec()}.
+ */
+public enum ValueCodec {
+
+  /**
+   * 8 bytes per value, lossless.
+   */
+  DOUBLE {
+    @Override
+    public @NotNull EncodedValues encode(@Nullable MemoryMapStorage storage,
+        @NotNull double[] values) {
+      return new DoubleValues(StorageUtils.storeValuesToDoubleBuffer(storage, values));
+    }
+  },
+  /**
+   * 4 bytes per value, relative error below 6E-8.
+   */
+  FLOAT {
+    @Override
+    public @NotNull EncodedValues encode(@Nullable MemoryMapStorage storage,
+        @NotNull double[] values) {
+      final float[] floats = new float[values.length];
+      for (int i = 0; i < values.length; i++) {
+        floats[i] = (float) values[i];
+      }
+      FloatBuffer buffer = null;
+      if (storage != null) {
+        try {
+          buffer = storage.storeData(floats);
+        } catch (IOException e) {
+          logger.log(Level.WARNING, "Cannot store values, keeping them in RAM.", e);
+        }
+      }
+      return new FloatValues(buffer != null ? buffer : FloatBuffer.wrap(floats));
+    }
+  },
+  /**
+   * Linear prediction of fixed point values, the residuals are stored as variable length integers.
+   * Usually 2-4 bytes per value for sorted values like m/z. The absolute error is below
+   * max(|value|) * 2.4E-10, e.g., 4.7E-7 for m/z values up to 2000. Values are decoded in blocks
+   * of {@link LinearValues#BLOCK_SIZE} for random access. The last block decoded by
+   * {@link EncodedValues#get(int)} is kept for sequential access.
+   */
+  NUMPRESS_LINEAR {
+    @Override
+    public @NotNull EncodedValues encode(@Nullable MemoryMapStorage storage,
+        @NotNull double[] values) {
+      double max = 0d;
+      for (double value : values) {
+        if (!Double.isFinite(value)) {
+          return DOUBLE.encode(storage, values);
+        }
+        max = Math.max(max, Math.abs(value));
+      }
+      final double fixedPoint = max > 0d ? Math.floor(Integer.MAX_VALUE / max) : 1d;
+      if (fixedPoint < 1d || Double.isInfinite(fixedPoint)) {
+        return DOUBLE.encode(storage, values);
+      }
+
+      final int numBlocks = (values.length + LinearValues.BLOCK_SIZE - 1) / LinearValues.BLOCK_SIZE;
+      final int[] blockOffsets = new int[numBlocks];
+      byte[] bytes = new byte[values.length * 2 + 16];
+      int pos = 0;
+      long prev2 = 0;
+      long prev1 = 0;
+      for (int i = 0; i < values.length; i++) {
+        final long fixed = Math.round(values[i] * fixedPoint);
+        final int inBlock = i % LinearValues.BLOCK_SIZE;
+        final long residual;
+        if (inBlock == 0) {
+          blockOffsets[i / LinearValues.BLOCK_SIZE] = pos;
+          residual = fixed;
+        } else if (inBlock == 1) {
+          residual = fixed - prev1;
+        } else {
+          residual = fixed - (2 * prev1 - prev2);
+        }
+        prev2 = prev1;
+        prev1 = fixed;
+
+        if (pos + 10 > bytes.length) {
+          bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        // zig zag encoding of the residual to a variable length integer
+        long zigZag = (residual << 1) ^ (residual >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+          bytes[pos++] = (byte) ((zigZag & 0x7F) | 0x80);
+          zigZag >>>= 7;
+        }
+        bytes[pos++] = (byte) zigZag;
+      }
+      return new LinearValues(storeBytes(storage, bytes, pos), blockOffsets, values.length,
+          fixedPoint);
+    }
+  },
+  /**
+   * Fixed point of log(1 + value), 2 bytes per value. Only for values >= 0. The error of log(1 +
+   * value) is constant, so the relative error grows with (1 + value) / value for small values. If
+   * the maximum is up to 1E10, the relative error is below 5E-4 for values >= 1 and the absolute
+   * error is below 4E-4 for values < 1.
+   */
+  NUMPRESS_SLOF {
+    @Override
+    public @NotNull EncodedValues encode(@Nullable MemoryMapStorage storage,
+        @NotNull double[] values) {
+      double max = 0d;
+      for (double value : values) {
+        if (!(value >= 0d) || Double.isInfinite(value)) {
+          return FLOAT.encode(storage, values);
+        }
+        max = Math.max(max, Math.log1p(value));
+      }
+      final double fixedPoint = max > 0d ? Math.floor(0xFFFF / max) : 1d;
+      if (fixedPoint < 1d || Double.isInfinite(fixedPoint)) {
+        return FLOAT.encode(storage, values);
+      }
+
+      final byte[] bytes = new byte[values.length * Character.BYTES];
+      final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      for (int i = 0; i < values.length; i++) {
+        buffer.putChar(i * Character.BYTES, (char) (Math.log1p(values[i]) * fixedPoint + 0.5));
+      }
+      return new SlofValues(storeBytes(storage, bytes, bytes.length), values.length, fixedPoint);
+    }
+  };
+
+  private static final Logger logger = Logger.getLogger(ValueCodec.class.getName());
+
+  /**
+   * @param storage the storage or null to keep the encoded values in RAM
+   * @param values  the values. If the storage is null, the array may be wrapped by the returned
+   *                values.
+   * @return the encoded values
+   */
+  public abstract @NotNull EncodedValues encode(@Nullable MemoryMapStorage storage,
+      @NotNull double[] values);
+
+  private static ByteBuffer storeBytes(@Nullable MemoryMapStorage storage, byte[] bytes,
+      int length) {
+    if (storage != null) {
+      try {
+        return storage.storeData(bytes, 0, length);
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Cannot store values, keeping them in RAM.", e);
+      }
+    }
+    return ByteBuffer.wrap(length == bytes.length ? bytes : Arrays.copyOf(bytes, length));
+  }
+
+  private record DoubleValues(DoubleBuffer buffer) implements EncodedValues {
+
+    @Override
+    public int size() {
+      return buffer.capacity();
+    }
+
+    @Override
+    public double get(int index) {
+      return buffer.get(index);
+    }
+
+    @Override
+    public void get(int index, @NotNull double[] dst, int dstIndex, int length) {
+      buffer.get(index, dst, dstIndex, length);
+    }
+
+    @Override
+    public @NotNull ValueCodec getCodec() {
+      return DOUBLE;
+    }
+
+    @Override
+    public long getEncodedBytes() {
+      return (long) buffer.capacity() * Double.BYTES;
+    }
+
+    @Override
+    public @NotNull DoubleBuffer toDoubleBuffer() {
+      return buffer;
+    }
+  }
+
+  private record FloatValues(FloatBuffer buffer) implements EncodedValues {
+
+    @Override
+    public int size() {
+      return buffer.capacity();
+    }
+
+    @Override
+    public double get(int index) {
+      return buffer.get(index);
+    }
+
+    @Override
+    public void get(int index, @NotNull double[] dst, int dstIndex, int length) {
+      Objects.checkFromIndexSize(index, length, size());
+      for (int i = 0; i < length; i++) {
+        dst[dstIndex + i] = buffer.get(index + i);
+      }
+    }
+
+    @Override
+    public @NotNull ValueCodec getCodec() {
+      return FLOAT;
+    }
+
+    @Override
+    public long getEncodedBytes() {
+      return (long) buffer.capacity() * Float.BYTES;
+    }
+
+    @Override
+    public @NotNull DoubleBuffer toDoubleBuffer() {
+      return DoubleBuffer.wrap(toArray());
+    }
+  }
+
+  /**
+   * The first value of each block is stored as fixed point value, the second as difference to the
+   * first and all others as difference to the linear prediction of the two previous values.
+   *
+   * The values decoded by {@link #get(int)} in the last block are kept, so reading all values by
+   * index decodes each block about once instead of up to {@link #BLOCK_SIZE} values per call.
+   */
+  private static final class LinearValues implements EncodedValues {
+
+    private static final int BLOCK_SIZE = 32;
+
+    // the variable length integers of all blocks
+    private final ByteBuffer bytes;
+    // the offset of each block in the bytes
+    private final int[] blockOffsets;
+    private final int size;
+    private final double fixedPoint;
+    // replaced but never modified, so the values are safely published to other threads
+    private volatile DecodedBlock lastBlock;
+
+    private LinearValues(ByteBuffer bytes, int[] blockOffsets, int size, double fixedPoint) {
+      this.bytes = bytes;
+      this.blockOffsets = blockOffsets;
+      this.size = size;
+      this.fixedPoint = fixedPoint;
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public double get(int index) {
+      Objects.checkIndex(index, size);
+      final int block = index / BLOCK_SIZE;
+      final int inBlock = index % BLOCK_SIZE;
+      DecodedBlock decoded = lastBlock;
+      if (decoded == null || decoded.block() != block || inBlock >= decoded.values().length) {
+        final int start = block * BLOCK_SIZE;
+        // random access only decodes up to the index, the whole block once it is read again
+        final int length = decoded != null && decoded.block() == block ? Math.min(BLOCK_SIZE,
+            size - start) : inBlock + 1;
+        final double[] values = new double[length];
+        get(start, values, 0, length);
+        decoded = new DecodedBlock(block, values);
+        lastBlock = decoded;
+      }
+      return decoded.values()[inBlock];
+    }
+
+    @Override
+    public void get(int index, @NotNull double[] dst, int dstIndex, int length) {
+      Objects.checkFromIndexSize(index, length, size);
+      Objects.checkFromIndexSize(dstIndex, length, dst.length);
+      final int end = index + length;
+      int i = index - index % BLOCK_SIZE;
+      // blocks are stored consecutively
+      int pos = i < size ? blockOffsets[i / BLOCK_SIZE] : 0;
+      long prev2 = 0;
+      long prev1 = 0;
+      for (; i < end; i++) {
+        long zigZag = 0;
+        int shift = 0;
+        byte b;
+        do {
+          b = bytes.get(pos++);
+          zigZag |= (long) (b & 0x7F) << shift;
+          shift += 7;
+        } while (b < 0);
+        final long residual = (zigZag >>> 1) ^ -(zigZag & 1);
+        final int inBlock = i % BLOCK_SIZE;
+        final long fixed = inBlock == 0 ? residual
+            : inBlock == 1 ? prev1 + residual : 2 * prev1 - prev2 + residual;
+        prev2 = prev1;
+        prev1 = fixed;
+        if (i >= index) {
+          dst[dstIndex + i - index] = fixed / fixedPoint;
+        }
+      }
+    }
+
+    @Override
+    public @NotNull ValueCodec getCodec() {
+      return NUMPRESS_LINEAR;
+    }
+
+    @Override
+    public long getEncodedBytes() {
+      return bytes.capacity() + (long) blockOffsets.length * Integer.BYTES;
+    }
+
+    @Override
+    public @NotNull DoubleBuffer toDoubleBuffer() {
+      return DoubleBuffer.wrap(toArray());
+    }
+
+    private record DecodedBlock(int block, double[] values) {
+
+    }
+  }
+
+  private record SlofValues(ByteBuffer bytes, int size, double fixedPoint) implements
+      EncodedValues {
+
+    @Override
+    public double get(int index) {
+      Objects.checkIndex(index, size);
+      return Math.exp(bytes.getChar(index * Character.BYTES) / fixedPoint) - 1d;
+    }
+
+    @Override
+    public void get(int index, @NotNull double[] dst, int dstIndex, int length) {
+      Objects.checkFromIndexSize(index, length, size);
+      for (int i = 0; i < length; i++) {
+        dst[dstIndex + i] =
+            Math.exp(bytes.getChar((index + i) * Character.BYTES) / fixedPoint) - 1d;
+      }
+    }
+
+    @Override
+    public @NotNull ValueCodec getCodec() {
+      return NUMPRESS_SLOF;
+    }
+
+    @Override
+    public long getEncodedBytes() {
+      return bytes.capacity();
+    }
+
+    @Override
+    public @NotNull DoubleBuffer toDoubleBuffer() {
+      return DoubleBuffer.wrap(toArray());
+    }
+  }
+}
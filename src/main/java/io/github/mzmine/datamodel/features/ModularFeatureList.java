@@ -38,14 +38,20 @@ import io.github.mzmine.datamodel.features.types.DataType;
 import io.github.mzmine.datamodel.features.types.FeatureDataType;
 import io.github.mzmine.datamodel.features.types.annotations.ManualAnnotationType;
 import io.github.mzmine.datamodel.features.types.numbers.IDType;
+import io.github.mzmine.datamodel.features.types.numbers.MZType;
+import io.github.mzmine.datamodel.features.types.numbers.MobilityType;
+import io.github.mzmine.datamodel.features.types.numbers.RTType;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.io.projectload.CachedIMSFrame;
 import io.github.mzmine.modules.io.projectload.CachedIMSRawDataFile;
 import io.github.mzmine.project.impl.ProjectChangeEvent;
 import io.github.mzmine.util.CorrelationGroupingUtils;
 import io.github.mzmine.util.DataTypeUtils;
+import io.github.mzmine.util.FeatureListRowGrid;
 import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.files.FileAndPathUtil;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -61,10 +67,12 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.ObservableMap;
 import org.jetbrains.annotations.NotNull;
@@ -106,6 +114,12 @@ public class ModularFeatureList implements FeatureList {
   private String dateCreated;
   // grouping
   private List<RowGroup> groups;
+  // lazily created indices of the rows, invalidated when rows or their ID, m/z, RT or mobility
+  // change. Each index keeps the version it was created from, so an index that was created
+  // concurrently to a change is never used afterwards
+  private final AtomicLong rowIndexVersion = new AtomicLong();
+  private volatile RowIndex<FeatureListRowGrid> rowGrid;
+  private volatile RowIndex<Int2ObjectOpenHashMap<FeatureListRow>> rowsById;
 
 
   public ModularFeatureList(String name, @Nullable MemoryMapStorage storage,
@@ -118,6 +132,7 @@ public class ModularFeatureList implements FeatureList {
     setName(name);
     this.dataFiles = FXCollections.observableList(dataFiles);
     featureListRows = FXCollections.observableArrayList();
+    featureListRows.addListener((ListChangeListener<FeatureListRow>) change -> clearRowIndices());
     descriptionOfAppliedTasks = FXCollections.observableArrayList();
     dateCreated = DATA_FORMAT.format(new Date());
     selectedScans = FXCollections.observableMap(new HashMap<>());
@@ -134,6 +149,86 @@ public class ModularFeatureList implements FeatureList {
       // check feature data for graphical columns
       DataTypeUtils.applyFeatureSpecificGraphicalTypes((ModularFeature) dataModel);
     });
+    // the row indices depend on these values
+    final DataTypeValueChangeListener<?> clearIndices = (dataModel, type, oldValue, newValue) ->
+        clearRowIndices();
+    for (DataType<?> type : List.of(new IDType(), new MZType(), new RTType(),
+        new MobilityType())) {
+      addRowTypeListener(type, clearIndices);
+    }
+  }
+
+  private void clearRowIndices() {
+    rowIndexVersion.incrementAndGet();
+    rowGrid = null;
+    rowsById = null;
+  }
+
+  private boolean isCurrent(@Nullable RowIndex<?> index) {
+    return index != null && index.version() == rowIndexVersion.get();
+  }
+
+  /**
+   * The grid index of all rows by average m/z, RT and mobility. The bin widths are chosen to put a
+   * few rows in each cell.
+   */
+  private FeatureListRowGrid getRowGrid() {
+    RowIndex<FeatureListRowGrid> grid = rowGrid;
+    if (!isCurrent(grid)) {
+      synchronized (this) {
+        grid = rowGrid;
+        if (!isCurrent(grid)) {
+          // the version before reading the rows, any later change invalidates this index
+          final long version = rowIndexVersion.get();
+          final List<FeatureListRow> rows = List.copyOf(featureListRows);
+          final DoubleSummaryStatistics mzs = rows.stream().map(FeatureListRow::getAverageMZ)
+              .filter(Objects::nonNull).mapToDouble(Double::doubleValue).summaryStatistics();
+          final DoubleSummaryStatistics rts = rows.stream().map(FeatureListRow::getAverageRT)
+              .filter(Objects::nonNull).mapToDouble(Float::doubleValue).summaryStatistics();
+          final int binsPerDimension = Math.max(1, (int) Math.sqrt(rows.size() / 4d));
+          grid = new RowIndex<>(version,
+              new FeatureListRowGrid(rows, (mzs.getMax() - mzs.getMin()) / binsPerDimension,
+                  (rts.getMax() - rts.getMin()) / binsPerDimension));
+          rowGrid = grid;
+        }
+      }
+    }
+    return grid.index();
+  }
+
+  private Int2ObjectOpenHashMap<FeatureListRow> getRowsById() {
+    RowIndex<Int2ObjectOpenHashMap<FeatureListRow>> map = rowsById;
+    if (!isCurrent(map)) {
+      synchronized (this) {
+        map = rowsById;
+        if (!isCurrent(map)) {
+          // the version before reading the rows, any later change invalidates this index
+          final long version = rowIndexVersion.get();
+          final Int2ObjectOpenHashMap<FeatureListRow> ids = new Int2ObjectOpenHashMap<>(
+              featureListRows.size());
+          int duplicates = 0;
+          for (FeatureListRow row : featureListRows) {
+            // keep the first row like a linear search
+            if (ids.putIfAbsent(row.getID(), row) != null) {
+              duplicates++;
+            }
+          }
+          if (duplicates > 0) {
+            logger.info(duplicates + " rows with duplicate ids in feature list " + getName());
+          }
+          map = new RowIndex<>(version, ids);
+          rowsById = map;
+        }
+      }
+    }
+    return map.index();
+  }
+
+  /**
+   * @param version the version of the rows that the index was created from
+   */
+  private record RowIndex<T>(long version, T index) {
+
   }
 
   @Override
@@ -497,14 +592,26 @@ public class ModularFeatureList implements FeatureList {
   @Override
   public List<FeatureListRow> getRowsInsideScanAndMZRange(Range<Float> rtRange,
       Range<Double> mzRange) {
-    List<FeatureListRow> rows = new ArrayList<>();
-    for (var row : getRows()) {
-      Float rt = row.getAverageRT();
-      if (rt == null || (rtRange.contains(rt) && mzRange.contains(row.getAverageMZ()))) {
-        rows.add(row);
-      } else if (rt > rtRange.upperEndpoint()) {
-        break;
-      }
+    return getRowsInsideRanges(mzRange, rtRange, Range.all());
+  }
+
+  /**
+   * Rows with average m/z, RT and mobility within the ranges. Rows without RT or mobility match
+   * all ranges of this dimension. Uses a grid index of the rows.
+   *
+   * @return the rows in the order of this feature list
+   */
+  public List<FeatureListRow> getRowsInsideRanges(@NotNull Range<Double> mzRange,
+      @NotNull Range<Float> rtRange, @NotNull Range<Float> mobilityRange) {
+    final FeatureListRowGrid grid = getRowGrid();
+    final IntArrayList indices = new IntArrayList();
+    grid.forEachCandidate(mzRange, rtRange, mobilityRange, indices::add);
+    final int[] sorted = indices.toIntArray();
+    Arrays.sort(sorted);
+
+    final List<FeatureListRow> rows = new ArrayList<>(sorted.length);
+    for (int index : sorted) {
+      rows.add(grid.getRow(index));
     }
     return rows;
   }
@@ -659,16 +766,7 @@ public class ModularFeatureList implements FeatureList {
 
   @Override
   public FeatureListRow findRowByID(int id) {
-    List<FeatureListRow> featureListRows = stream().filter(r -> r.getID() == id).toList();
-    if (featureListRows.isEmpty()) {
-      return null;
-    }
-
-    if (featureListRows.size() > 1) {
-      logger.info("more than one row with id " + id);
-    }
-
-    return featureListRows.get(0);
+    return getRowsById().get(id);
   }
 
   @Override
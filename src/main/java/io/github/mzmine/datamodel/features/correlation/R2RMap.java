@@ -26,17 +26,42 @@
 package io.github.mzmine.datamodel.features.correlation;
 
 import io.github.mzmine.datamodel.features.FeatureListRow;
-import io.github.mzmine.util.MathUtils;
-import java.util.concurrent.ConcurrentHashMap;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
- * Map an object to two rows
+ * Map an object to two rows. The pairs of rows are stored by a primitive long key of both row IDs
+ * in open addressing hash maps. Edges are split into segments with separate locks so that parallel
+ * workers can add edges concurrently. An adjacency list of each row ID allows to retrieve all
+ * edges of a row without iterating all edges.
  *
  * @author Robin Schmid
  */
-public class R2RMap<T> extends ConcurrentHashMap<Integer, T> {
+public class R2RMap<T> {
 
+  private static final int SEGMENTS = 64;
+
+  private final Long2ObjectOpenHashMap<T>[] edges;
+  private final Int2ObjectOpenHashMap<IntArrayList>[] neighbours;
+
+  @SuppressWarnings("unchecked")
   public R2RMap() {
+    edges = new Long2ObjectOpenHashMap[SEGMENTS];
+    neighbours = new Int2ObjectOpenHashMap[SEGMENTS];
+    for (int i = 0; i < SEGMENTS; i++) {
+      edges[i] = new Long2ObjectOpenHashMap<>();
+      neighbours[i] = new Int2ObjectOpenHashMap<>();
+    }
   }
 
   /**
@@ -46,8 +71,30 @@ public class R2RMap<T> extends ConcurrentHashMap<Integer, T> {
    * @param b Feature list row with getID >=0
    * @return unique undirected ID
    */
-  public static int toKey(FeatureListRow a, FeatureListRow b) {
-    return MathUtils.undirectedPairing(a.getID(), b.getID());
+  public static long toKey(FeatureListRow a, FeatureListRow b) {
+    return toKey(a.getID(), b.getID());
+  }
+
+  /**
+   * A unique undirected key of two row IDs: the smaller ID in the upper and the larger ID in the
+   * lower 32 bits. Never overflows in contrast to a pairing function on int.
+   *
+   * @param idA row ID >=0
+   * @param idB row ID >=0
+   * @return unique undirected ID
+   */
+  public static long toKey(int idA, int idB) {
+    final int min = Math.min(idA, idB);
+    final int max = Math.max(idA, idB);
+    return ((long) min << 32) | (max & 0xFFFFFFFFL);
+  }
+
+  private static int segment(long key) {
+    return (int) (HashCommon.mix(key) & (SEGMENTS - 1));
+  }
+
+  private static int segment(int rowID) {
+    return HashCommon.mix(rowID) & (SEGMENTS - 1);
   }
 
   /**
@@ -57,7 +104,7 @@ public class R2RMap<T> extends ConcurrentHashMap<Integer, T> {
    * @param value values is mapped to the pair of FeatureListRows a and b
    */
   public void add(FeatureListRow a, FeatureListRow b, T value) {
-    this.put(toKey(a, b), value);
+    put(a, b, value);
   }
 
   /**
@@ -65,9 +112,76 @@ public class R2RMap<T> extends ConcurrentHashMap<Integer, T> {
    * and yield the same mapping.
    *
    * @param value values is mapped to the pair of FeatureListRows a and b
+   * @return the previous value or null
    */
-  public void put(FeatureListRow a, FeatureListRow b, T value) {
-    super.put(toKey(a, b), value);
+  @Nullable
+  public T put(FeatureListRow a, FeatureListRow b, T value) {
+    return put(a.getID(), b.getID(), value);
+  }
+
+  /**
+   * Thread safe. Maps a value to two row IDs by computing an undirected key.
+   *
+   * @param value non-null value mapped to the pair of row IDs
+   * @return the previous value or null
+   */
+  @Nullable
+  public T put(int idA, int idB, T value) {
+    Objects.requireNonNull(value, "value cannot be null");
+    final long key = toKey(idA, idB);
+    final Long2ObjectOpenHashMap<T> segment = edges[segment(key)];
+    // the neighbours are changed under the lock of the edge, so concurrent puts and removes of the
+    // same pair keep both consistent. Locks are always taken in the order edge then neighbour
+    synchronized (segment) {
+      final T old = segment.put(key, value);
+      if (old == null) {
+        addNeighbour(idA, idB);
+        if (idA != idB) {
+          addNeighbour(idB, idA);
+        }
+      }
+      return old;
+    }
+  }
+
+  private void addNeighbour(int rowID, int neighbourID) {
+    final Int2ObjectOpenHashMap<IntArrayList> segment = neighbours[segment(rowID)];
+    synchronized (segment) {
+      segment.computeIfAbsent(rowID, k -> new IntArrayList(4)).add(neighbourID);
+    }
+  }
+
+  private void removeNeighbour(int rowID, int neighbourID) {
+    final Int2ObjectOpenHashMap<IntArrayList> segment = neighbours[segment(rowID)];
+    synchronized (segment) {
+      final IntArrayList ids = segment.get(rowID);
+      if (ids != null && ids.rem(neighbourID) && ids.isEmpty()) {
+        segment.remove(rowID);
+      }
+    }
+  }
+
+  /**
+   * Thread safe. Adds all edges of another map.
+   */
+  public void putAll(R2RMap<? extends T> map) {
+    for (int s = 0; s < SEGMENTS; s++) {
+      final Long2ObjectOpenHashMap<? extends T> segment = map.edges[s];
+      final long[] keys;
+      final List<T> values;
+      synchronized (segment) {
+        keys = new long[segment.size()];
+        values = new ArrayList<>(keys.length);
+        int i = 0;
+        for (Long2ObjectMap.Entry<? extends T> entry : segment.long2ObjectEntrySet()) {
+          keys[i++] = entry.getLongKey();
+          values.add(entry.getValue());
+        }
+      }
+      for (int i = 0; i < keys.length; i++) {
+        put((int) (keys[i] >>> 32), (int) keys[i], values.get(i));
+      }
+    }
   }
 
   /**
@@ -75,8 +189,122 @@ public class R2RMap<T> extends ConcurrentHashMap<Integer, T> {
    *
    * @return the value mapped to the pair of a-b (== b-a) or null if no mapping exists
    */
+  @Nullable
   public T get(FeatureListRow a, FeatureListRow b) {
-    return get(toKey(a, b));
+    return get(a.getID(), b.getID());
+  }
+
+  /**
+   * Arguments a and b yield the same result in any order. Uses an undirected key to pair a and b.
+   *
+   * @return the value mapped to the pair of a-b (== b-a) or null if no mapping exists
+   */
+  @Nullable
+  public T get(int idA, int idB) {
+    final long key = toKey(idA, idB);
+    final Long2ObjectOpenHashMap<T> segment = edges[segment(key)];
+    synchronized (segment) {
+      return segment.get(key);
+    }
+  }
+
+  /**
+   * Arguments a and b are interchangeable.
+   *
+   * @return the removed value or null if no mapping exists
+   */
+  @Nullable
+  public T remove(FeatureListRow a, FeatureListRow b) {
+    return remove(a.getID(), b.getID());
+  }
+
+  /**
+   * Thread safe. Removes the mapping of the pair of row IDs in any order.
+   *
+   * @return the removed value or null if no mapping exists
+   */
+  @Nullable
+  public T remove(int idA, int idB) {
+    final long key = toKey(idA, idB);
+    final Long2ObjectOpenHashMap<T> segment = edges[segment(key)];
+    synchronized (segment) {
+      final T old = segment.remove(key);
+      if (old != null) {
+        removeNeighbour(idA, idB);
+        if (idA != idB) {
+          removeNeighbour(idB, idA);
+        }
+      }
+      return old;
+    }
+  }
+
+  /**
+   * @return IDs of all rows that share an edge with this row ID in insertion order
+   */
+  public int @NotNull [] getNeighbourIDs(int rowID) {
+    final Int2ObjectOpenHashMap<IntArrayList> segment = neighbours[segment(rowID)];
+    synchronized (segment) {
+      final IntArrayList ids = segment.get(rowID);
+      return ids == null ? new int[0] : ids.toIntArray();
+    }
+  }
+
+  /**
+   * All values of a single row. Runs in O(degree) of the row.
+   *
+   * @return all values mapped to the row and any other row
+   */
+  @NotNull
+  public List<T> getAll(FeatureListRow row) {
+    final int id = row.getID();
+    final int[] neighbourIDs = getNeighbourIDs(id);
+    final List<T> values = new ArrayList<>(neighbourIDs.length);
+    for (int neighbourID : neighbourIDs) {
+      final T value = get(id, neighbourID);
+      if (value != null) {
+        values.add(value);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * @return a snapshot of all values
+   */
+  @NotNull
+  public Collection<T> values() {
+    final List<T> values = new ArrayList<>(size());
+    forEach(values::add);
+    return values;
+  }
+
+  /**
+   * Applies the action to all values. Every segment is locked during its iteration.
+   */
+  public void forEach(Consumer<? super T> action) {
+    for (Long2ObjectOpenHashMap<T> segment : edges) {
+      synchronized (segment) {
+        segment.values().forEach(action);
+      }
+    }
+  }
+
+  /**
+   * @return number of edges
+   */
+  public int size() {
+    int size = 0;
+    for (Long2ObjectOpenHashMap<T> segment : edges) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size() == 0;
   }
 
 }
@@ -40,6 +40,9 @@ import io.github.mzmine.datamodel.features.RowBinding;
 import io.github.mzmine.datamodel.features.types.modifiers.NoTextColumn;
 import io.github.mzmine.datamodel.features.types.modifiers.NullColumnType;
 import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
+import io.github.mzmine.modules.io.projectload.version_3_0.FeatureSeriesBinaryReader;
+import io.github.mzmine.modules.io.projectsave.FeatureSeriesBinaryWriter;
+import java.io.IOException;
 import java.util.List;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
@@ -109,11 +112,52 @@ public class FeatureDataType extends
     writer.writeEndElement();
   }
 
+  /**
+   * Saves LC-MS series to the binary writer and only a reference to the xml. All other series are
+   * saved to xml by {@link #saveToXML(XMLStreamWriter, Object, ModularFeatureList,
+   * ModularFeatureListRow, ModularFeature, RawDataFile)}.
+   *
+   * @param binaryWriter the writer for series data or null to write all data to xml
+   */
+  public void saveToXML(@NotNull final XMLStreamWriter writer, @Nullable final Object value,
+      @NotNull final ModularFeatureList flist, @NotNull final ModularFeatureListRow row,
+      @Nullable final ModularFeature feature, @Nullable final RawDataFile file,
+      @Nullable final FeatureSeriesBinaryWriter binaryWriter)
+      throws XMLStreamException, IOException {
+    if (binaryWriter == null || file == null
+        || value == null || value.getClass() != SimpleIonTimeSeries.class) {
+      saveToXML(writer, value, flist, row, feature, file);
+      return;
+    }
+
+    writer.writeStartElement(getUniqueID());
+    ((SimpleIonTimeSeries) value).saveValueToBinary(writer, file.getScans(), binaryWriter);
+    writer.writeEndElement();
+  }
+
   @Override
   public Object loadFromXML(@NotNull final XMLStreamReader reader, @NotNull MZmineProject project,
       @NotNull final ModularFeatureList flist, @NotNull final ModularFeatureListRow row,
       @Nullable final ModularFeature feature, @Nullable final RawDataFile file)
       throws XMLStreamException {
+    try {
+      return loadFromXML(reader, project, flist, row, feature, file, null);
+    } catch (IOException e) {
+      throw new XMLStreamException(e);
+    }
+  }
+
+  /**
+   * @param binaryReader the reader of the binary series data or null if the project has no binary
+   *                     series file
+   * @throws IOException if the series references binary data but the project has no binary series
+   *                     file
+   */
+  public Object loadFromXML(@NotNull final XMLStreamReader reader, @NotNull MZmineProject project,
+      @NotNull final ModularFeatureList flist, @NotNull final ModularFeatureListRow row,
+      @Nullable final ModularFeature feature, @Nullable final RawDataFile file,
+      @Nullable final FeatureSeriesBinaryReader binaryReader)
+      throws XMLStreamException, IOException {
 
     assert file != null;
 
@@ -123,6 +167,7 @@ public class FeatureDataType extends
         return null;
       }
       if (reader.isStartElement() && (reader.getLocalName().equals(SimpleIonTimeSeries.XML_ELEMENT)
+          || reader.getLocalName().equals(SimpleIonTimeSeries.XML_BINARY_ELEMENT)
           || reader.getLocalName().equals(SimpleIonMobilogramTimeSeries.XML_ELEMENT))) {
         // found start element
         break;
@@ -134,6 +179,13 @@ public class FeatureDataType extends
       case SimpleIonTimeSeries.XML_ELEMENT -> {
         return SimpleIonTimeSeries.loadFromXML(reader, flist.getMemoryMapStorage(), file);
       }
+      case SimpleIonTimeSeries.XML_BINARY_ELEMENT -> {
+        if (binaryReader == null) {
+          throw new IOException("Binary series data is missing in the project.");
+        }
+        return SimpleIonTimeSeries.loadFromBinary(reader, flist.getMemoryMapStorage(), file,
+            binaryReader);
+      }
       case SimpleIonMobilogramTimeSeries.XML_ELEMENT -> {
         return IonMobilogramTimeSeriesFactory
             .loadFromXML(reader, flist.getMemoryMapStorage(), (IMSRawDataFile) file);
@@ -28,15 +28,11 @@ package io.github.mzmine.datamodel.features.types;
 import io.github.mzmine.datamodel.IMSRawDataFile;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.features.ModularFeatureListRow;
-import io.github.mzmine.datamodel.features.types.graphicalnodes.FeatureShapeMobilogramChart;
-import io.github.mzmine.datamodel.features.types.tasks.FeaturesGraphicalNodeTask;
-import io.github.mzmine.main.MZmineCore;
-import io.github.mzmine.taskcontrol.Task;
-import io.github.mzmine.taskcontrol.TaskPriority;
+import io.github.mzmine.datamodel.features.types.graphicalnodes.SparklineCache;
+import io.github.mzmine.datamodel.features.types.graphicalnodes.Sparklines;
 import javafx.scene.Node;
 import javafx.scene.control.TreeTableCell;
 import javafx.scene.control.TreeTableColumn;
-import javafx.scene.layout.StackPane;
 import org.jetbrains.annotations.NotNull;
 
 public class FeatureShapeMobilogramType extends LinkedGraphicalType {
@@ -63,21 +59,9 @@ public class FeatureShapeMobilogramType extends LinkedGraphicalType {
       return null;
     }
 
-    // get existing buffered node from row (for column name)
     // TODO listen to changes in features data
-    Node node = row.getBufferedColChart(coll.getText());
-    if (node != null) {
-      return node;
-    }
-
-    StackPane pane = new StackPane();
-
-    // TODO stop task if new task is started
-    Task task = new FeaturesGraphicalNodeTask(FeatureShapeMobilogramChart.class, pane, row,
-        coll.getText());
-    MZmineCore.getTaskController().addTask(task, TaskPriority.NORMAL);
-
-    return pane;
+    return SparklineCache.getInstance()
+        .getCellNode(cell, row, null, this, Sparklines.mobilograms(row));
   }
 
   @Override
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.features.types.graphicalnodes;
+
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.types.modifiers.GraphicalColumType;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.application.Platform;
+import javafx.scene.Node;
+import javafx.scene.control.Label;
+import javafx.scene.control.TreeTableCell;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.StackPane;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Renders lightweight raster images (sparklines) for graphical columns of the feature table. The
+ * images are drawn by background threads and kept in a LRU cache that is bounded by the number of
+ * pixels, so the memory does not depend on the size of the table. Cells only show cached images
+ * and a placeholder while the image is rendered. The most recent requests are rendered first,
+ * old requests are dropped if too many are queued (e.g., while scrolling).
+ */
+public class SparklineCache {
+
+  private static final Logger logger = Logger.getLogger(SparklineCache.class.getName());
+
+  /**
+   * Maximum size of all cached images (4 bytes per pixel)
+   */
+  private static final long MAX_CACHED_BYTES = 64L * 1024 * 1024;
+  private static final int MAX_QUEUED_REQUESTS = 256;
+  private static final int NUM_THREADS = 2;
+  /**
+   * Cell widths are rounded to reduce the number of images while resizing columns
+   */
+  private static final int WIDTH_STEP = 10;
+
+  private static final SparklineCache INSTANCE = new SparklineCache();
+
+  // access order for LRU eviction
+  private final LinkedHashMap<Key, Image> images = new LinkedHashMap<>(256, 0.75f, true);
+  // requested images and the consumers waiting for them
+  private final Map<Key, List<Consumer<Image>>> pending = new HashMap<>();
+  private final LinkedBlockingDeque<Runnable> queue = new LinkedBlockingDeque<>() {
+    @Override
+    public boolean offer(@NotNull Runnable runnable) {
+      // newest request first
+      return offerFirst(runnable);
+    }
+  };
+  private final ThreadPoolExecutor executor;
+  private long cachedBytes = 0L;
+
+  private SparklineCache() {
+    executor = new ThreadPoolExecutor(NUM_THREADS, NUM_THREADS, 0L, TimeUnit.MILLISECONDS, queue,
+        runnable -> {
+          final Thread thread = new Thread(runnable, "Sparkline renderer");
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  public static SparklineCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Creates the cell node for the row. Needs to be called on the FX thread.
+   *
+   * @param cell     the cell that will show the node
+   * @param row      the row
+   * @param file     the raw data file for feature cells or null for row cells
+   * @param type     the type of the column
+   * @param renderer draws the image, called by a background thread
+   * @return an image view of the cached image or a placeholder that is replaced by the image after
+   * rendering
+   */
+  public @NotNull Node getCellNode(@NotNull TreeTableCell<?, ?> cell, @NotNull FeatureListRow row,
+      @Nullable RawDataFile file, @NotNull GraphicalColumType<?> type,
+      @NotNull SparklineRenderer renderer) {
+    final var column = cell.getTableColumn();
+    final double columnWidth =
+        column != null && column.getWidth() > 0 ? column.getWidth() : type.getColumnWidth();
+    final int width = Math.max(WIDTH_STEP, (int) (columnWidth / WIDTH_STEP) * WIDTH_STEP);
+    final Key key = new Key(row, file, type.getClass(), width,
+        GraphicalColumType.DEFAULT_GRAPHICAL_CELL_HEIGHT);
+
+    final Image image = getImage(key);
+    if (image != null) {
+      return new ImageView(image);
+    }
+
+    final StackPane placeholder = new StackPane(new Label("Rendering..."));
+    placeholder.setPrefSize(width, key.height());
+    request(key, renderer, rendered -> {
+      // the cell might show another row by now
+      if (cell.getGraphic() == placeholder) {
+        placeholder.getChildren().setAll(new ImageView(rendered));
+      }
+    });
+    return placeholder;
+  }
+
+  /**
+   * @return the cached image or null
+   */
+  public synchronized @Nullable Image getImage(@NotNull Key key) {
+    return images.get(key);
+  }
+
+  /**
+   * Renders the image if it is not cached or rendered already.
+   *
+   * @param consumer receives the image on the FX thread
+   */
+  public void request(@NotNull Key key, @NotNull SparklineRenderer renderer,
+      @NotNull Consumer<Image> consumer) {
+    synchronized (this) {
+      final Image image = images.get(key);
+      if (image != null) {
+        Platform.runLater(() -> consumer.accept(image));
+        return;
+      }
+      final List<Consumer<Image>> consumers = pending.get(key);
+      if (consumers != null) {
+        consumers.add(consumer);
+        return;
+      }
+      pending.put(key, new ArrayList<>(List.of(consumer)));
+    }
+
+    executor.execute(new RenderJob(key, renderer));
+
+    // drop the oldest requests
+    while (queue.size() > MAX_QUEUED_REQUESTS) {
+      if (queue.pollLast() instanceof RenderJob job) {
+        synchronized (this) {
+          pending.remove(job.key);
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes all images of the rows of this feature list
+   */
+  public synchronized void invalidate(@NotNull FeatureList flist) {
+    final Iterator<Entry<Key, Image>> iterator = images.entrySet().iterator();
+    while (iterator.hasNext()) {
+      final Entry<Key, Image> entry = iterator.next();
+      if (entry.getKey().row().getFeatureList() == flist) {
+        cachedBytes -= entry.getKey().getBytes();
+        iterator.remove();
+      }
+    }
+  }
+
+  private synchronized List<Consumer<Image>> put(Key key, Image image) {
+    if (images.put(key, image) == null) {
+      cachedBytes += key.getBytes();
+    }
+    final Iterator<Key> iterator = images.keySet().iterator();
+    while (cachedBytes > MAX_CACHED_BYTES && iterator.hasNext()) {
+      final Key eldest = iterator.next();
+      if (eldest != key) {
+        cachedBytes -= eldest.getBytes();
+        iterator.remove();
+      }
+    }
+    final List<Consumer<Image>> consumers = pending.remove(key);
+    return consumers != null ? consumers : List.of();
+  }
+
+  /**
+   * Draws an image of width x height pixels. Called by background threads.
+   */
+  @FunctionalInterface
+  public interface SparklineRenderer {
+
+    void render(@NotNull Graphics2D g, int width, int height);
+  }
+
+  /**
+   * @param row   the row
+   * @param file  the raw data file for feature cells or null for row cells
+   * @param type  the type of the column
+   * @param width the width in pixels
+   */
+  public record Key(@NotNull FeatureListRow row, @Nullable RawDataFile file,
+                    @NotNull Class<?> type, int width, int height) {
+
+    private long getBytes() {
+      return (long) width * height * Integer.BYTES;
+    }
+  }
+
+  private class RenderJob implements Runnable {
+
+    private final Key key;
+    private final SparklineRenderer renderer;
+
+    private RenderJob(Key key, SparklineRenderer renderer) {
+      this.key = key;
+      this.renderer = renderer;
+    }
+
+    @Override
+    public void run() {
+      final WritableImage image;
+      try {
+        final BufferedImage buffered = new BufferedImage(key.width(), key.height(),
+            BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g = buffered.createGraphics();
+        try {
+          g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+          renderer.render(g, key.width(), key.height());
+        } finally {
+          g.dispose();
+        }
+
+        image = new WritableImage(key.width(), key.height());
+        final int[] argb = ((DataBufferInt) buffered.getRaster().getDataBuffer()).getData();
+        image.getPixelWriter()
+            .setPixels(0, 0, key.width(), key.height(), PixelFormat.getIntArgbInstance(), argb, 0,
+                key.width());
+      } catch (Exception e) {
+        logger.log(Level.WARNING, "Cannot render graphical column for row " + key.row().getID(),
+            e);
+        synchronized (SparklineCache.this) {
+          pending.remove(key);
+        }
+        return;
+      }
+
+      final List<Consumer<Image>> consumers = put(key, image);
+      if (!consumers.isEmpty()) {
+        Platform.runLater(() -> consumers.forEach(consumer -> consumer.accept(image)));
+      }
+    }
+  }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.features.types.graphicalnodes;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.IMSRawDataFile;
+import io.github.mzmine.datamodel.ImagingRawDataFile;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.featuredata.IonMobilogramTimeSeries;
+import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
+import io.github.mzmine.datamodel.featuredata.impl.SummedIntensityMobilitySeries;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.graphicalnodes.SparklineCache.SparklineRenderer;
+import io.github.mzmine.util.RangeUtils;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.function.IntToDoubleFunction;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Renderers of the sparklines in {@link SparklineCache}. Same data and default ranges as the charts
+ * {@link FeatureShapeChart}, {@link FeatureShapeMobilogramChart} and {@link AreaBarChart}.
+ */
+public class Sparklines {
+
+  private static final int PADDING = 2;
+  private static final Color AXIS_COLOR = new Color(128, 128, 128, 160);
+  private static final Color DEFAULT_BAR_COLOR = new Color(255, 140, 0);
+  private static final BasicStroke LINE_STROKE = new BasicStroke(1.2f);
+
+  private Sparklines() {
+  }
+
+  /**
+   * Chromatograms of all features, see {@link FeatureShapeChart}
+   */
+  public static @NotNull SparklineRenderer featureShapes(@NotNull ModularFeatureListRow row) {
+    return (g, width, height) -> {
+      final List<Series> series = new ArrayList<>();
+      for (ModularFeature f : row.getFeatures()) {
+        if (f == null || f.getRawDataFile() instanceof ImagingRawDataFile) {
+          continue;
+        }
+        final IonTimeSeries<? extends Scan> data = f.getFeatureData();
+        if (data != null) {
+          series.add(new Series(f.getRawDataFile().getColorAWT(), data.getNumberOfValues(),
+              data::getRetentionTime, data::getIntensity));
+        }
+      }
+
+      double min = 0;
+      double max = 1;
+      final ModularFeature best = row.getBestFeature();
+      if (best != null) {
+        final float rt = best.getRT();
+        final double maxRt = best.getRawDataFile().getDataRTRange().upperEndpoint();
+        final Float fwhm = best.getFWHM();
+        if (fwhm != null && !Float.isNaN(fwhm) && fwhm > 0f) {
+          min = Math.max(rt - 5 * fwhm, 0);
+          max = Math.min(rt + 5 * fwhm, maxRt);
+        } else {
+          final float length = Math.max(RangeUtils.rangeLength(best.getRawDataPointsRTRange()),
+              0.001f);
+          min = Math.max(rt - 3 * length, 0);
+          max = Math.min(rt + 3 * length, maxRt);
+        }
+      }
+      drawSeries(g, width, height, series, min, max);
+    };
+  }
+
+  /**
+   * Summed mobilograms of all features, see {@link FeatureShapeMobilogramChart}
+   */
+  public static @NotNull SparklineRenderer mobilograms(@NotNull ModularFeatureListRow row) {
+    return (g, width, height) -> {
+      final List<Series> series = new ArrayList<>();
+      for (ModularFeature f : row.getFeatures()) {
+        if (f != null && f.getFeatureData() instanceof IonMobilogramTimeSeries ims) {
+          final SummedIntensityMobilitySeries mobilogram = ims.getSummedMobilogram();
+          series.add(new Series(f.getRawDataFile().getColorAWT(),
+              mobilogram.getNumberOfValues(), mobilogram::getMobility,
+              mobilogram::getIntensity));
+        }
+      }
+
+      double min = 0;
+      double max = 1;
+      final ModularFeature best = row.getBestFeature();
+      if (best != null && best.getRawDataFile() instanceof IMSRawDataFile imsRaw) {
+        final Range<Float> mobilityRange = best.getMobilityRange();
+        final Float mobility = best.getMobility();
+        if (mobilityRange != null && mobility != null && !Float.isNaN(mobility)) {
+          final float length = RangeUtils.rangeLength(mobilityRange);
+          min = Math.max(mobility - 3 * length, imsRaw.getDataMobilityRange().lowerEndpoint());
+          max = Math.min(mobility + 3 * length, imsRaw.getDataMobilityRange().upperEndpoint());
+        }
+      }
+      drawSeries(g, width, height, series, min, max);
+    };
+  }
+
+  /**
+   * Areas of all features, see {@link AreaBarChart}
+   */
+  public static @NotNull SparklineRenderer areaBars(@NotNull ModularFeatureListRow row) {
+    return (g, width, height) -> {
+      final List<Entry<RawDataFile, ModularFeature>> entries = new ArrayList<>(
+          row.getFilesFeatures().entrySet());
+      double maxArea = 0;
+      for (Entry<RawDataFile, ModularFeature> entry : entries) {
+        final Float area = entry.getValue().getArea();
+        if (area != null && area > maxArea) {
+          maxArea = area;
+        }
+      }
+      drawAxis(g, width, height);
+      if (entries.isEmpty() || maxArea <= 0) {
+        return;
+      }
+
+      final double slot = (width - 2d * PADDING) / entries.size();
+      final double gap = slot > 4 ? Math.min(3, slot / 4) : 0;
+      final double plotHeight = height - 2d * PADDING;
+      for (int i = 0; i < entries.size(); i++) {
+        final Float area = entries.get(i).getValue().getArea();
+        if (area == null || area <= 0) {
+          continue;
+        }
+        final Color color = entries.get(i).getKey().getColorAWT();
+        g.setColor(color != null ? color : DEFAULT_BAR_COLOR);
+        final int barHeight = (int) Math.max(1, Math.round(area / maxArea * plotHeight));
+        final int x = (int) Math.round(PADDING + i * slot + gap / 2);
+        final int barWidth = (int) Math.max(1, Math.round(slot - gap));
+        g.fillRect(x, height - PADDING - barHeight, barWidth, barHeight);
+      }
+    };
+  }
+
+  private static void drawAxis(Graphics2D g, int width, int height) {
+    g.setColor(AXIS_COLOR);
+    g.drawLine(PADDING, height - PADDING, width - PADDING, height - PADDING);
+  }
+
+  /**
+   * Draws all series within the domain range, scaled to the maximum intensity within that range.
+   */
+  private static void drawSeries(Graphics2D g, int width, int height, List<Series> series,
+      double min, double max) {
+    drawAxis(g, width, height);
+    if (!(max > min)) {
+      return;
+    }
+    double maxY = 0;
+    for (Series s : series) {
+      for (int i = 0; i < s.numValues(); i++) {
+        final double x = s.x().applyAsDouble(i);
+        if (x >= min && x <= max) {
+          maxY = Math.max(maxY, s.y().applyAsDouble(i));
+        }
+      }
+    }
+    if (maxY <= 0) {
+      return;
+    }
+
+    final double scaleX = (width - 2d * PADDING) / (max - min);
+    final double scaleY = (height - 2d * PADDING) / maxY;
+    g.setStroke(LINE_STROKE);
+    for (Series s : series) {
+      final Path2D path = new Path2D.Double();
+      boolean started = false;
+      for (int i = 0; i < s.numValues(); i++) {
+        final double px = PADDING + (s.x().applyAsDouble(i) - min) * scaleX;
+        final double py = height - PADDING - s.y().applyAsDouble(i) * scaleY;
+        if (started) {
+          path.lineTo(px, py);
+        } else {
+          path.moveTo(px, py);
+          started = true;
+        }
+      }
+      g.setColor(s.color() != null ? s.color() : DEFAULT_BAR_COLOR);
+      g.draw(path);
+    }
+  }
+
+  private record Series(Color color, int numValues, IntToDoubleFunction x,
+                        IntToDoubleFunction y) {
+
+  }
+}
@@ -48,18 +48,16 @@ public abstract class AbstractMassSpectrum implements MassSpectrum {
   private MassSpectrumType spectrumType = MassSpectrumType.CENTROIDED;
 
 
-  protected synchronized void updateMzRangeAndTICValues() {
-
-    final DoubleBuffer mzValues = getMzValues();
-    final DoubleBuffer intensityValues = getIntensityValues();
+  protected synchronized void updateMzRangeAndTICValues(double[] mzValues,
+      double[] intensityValues) {
 
     assert mzValues != null;
     assert intensityValues != null;
-    assert mzValues.capacity() == intensityValues.capacity();
+    assert mzValues.length == intensityValues.length;
 
     totalIonCurrent = 0.0;
 
-    if (mzValues.capacity() == 0) {
+    if (mzValues.length == 0) {
       mzRange = null;
       basePeakIndex = null;
       return;
@@ -67,25 +65,25 @@ public abstract class AbstractMassSpectrum implements MassSpectrum {
 
     totalIonCurrent = 0.0;
     basePeakIndex = 0;
-    mzRange = Range.closed(mzValues.get(0), mzValues.get(mzValues.capacity() - 1));
+    mzRange = Range.closed(mzValues[0], mzValues[mzValues.length - 1]);
 
-    for (int i = 0; i < mzValues.capacity() - 1; i++) {
+    for (int i = 0; i < mzValues.length - 1; i++) {
 
       // Check the order of the m/z values
-      if ((i < mzValues.capacity() - 1) && (mzValues.get(i) > mzValues.get(i + 1))) {
+      if ((i < mzValues.length - 1) && (mzValues[i] > mzValues[i + 1])) {
         throw new IllegalArgumentException("The m/z values must be sorted in ascending order");
       }
 
       // Update base peak index
-      if (intensityValues.get(i) > intensityValues.get(basePeakIndex)) {
+      if (intensityValues[i] > intensityValues[basePeakIndex]) {
         basePeakIndex = i;
       }
 
       // Update TIC
-      totalIonCurrent += intensityValues.get(i);
+      totalIonCurrent += intensityValues[i];
     }
 
-    totalIonCurrent += intensityValues.get(intensityValues.capacity() - 1);
+    totalIonCurrent += intensityValues[intensityValues.length - 1];
   }
 
 
@@ -147,7 +145,7 @@ public abstract class AbstractMassSpectrum implements MassSpectrum {
     if (basePeakIndex == null) {
       return null;
     } else {
-      return getMzValues().get(basePeakIndex);
+      return getMzValue(basePeakIndex);
     }
   }
 
@@ -157,7 +155,7 @@ public abstract class AbstractMassSpectrum implements MassSpectrum {
     if (basePeakIndex == null) {
       return null;
     } else {
-      return getIntensityValues().get(basePeakIndex);
+      return getIntensityValue(basePeakIndex);
     }
   }
 
@@ -26,7 +26,8 @@
 package io.github.mzmine.datamodel.impl;
 
 import io.github.mzmine.datamodel.Frame;
-import io.github.mzmine.datamodel.featuredata.impl.StorageUtils;
+import io.github.mzmine.datamodel.featuredata.impl.EncodedValues;
+import io.github.mzmine.datamodel.featuredata.impl.ValueCodec;
 import io.github.mzmine.util.DataPointUtils;
 import io.github.mzmine.util.MemoryMapStorage;
 import java.nio.DoubleBuffer;
@@ -35,15 +36,21 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 /**
- * An implementation of MassSpectrum that stores the data points in a MemoryMapStorage.
+ * An implementation of MassSpectrum that stores the data points in a MemoryMapStorage. The values
+ * are encoded with the codecs set by {@link #setCodecs(ValueCodec, ValueCodec)}, by default as
+ * doubles.
  */
 public abstract class AbstractStorableSpectrum extends AbstractMassSpectrum {
 
   private static final Logger logger = Logger.getLogger(AbstractStorableSpectrum.class.getName());
   private static final DoubleBuffer EMPTY_BUFFER = DoubleBuffer.wrap(new double[0]);
 
-  protected DoubleBuffer mzValues;
-  protected DoubleBuffer intensityValues;
+  // set from the preferences and read by the import threads
+  private static volatile ValueCodec mzCodec = ValueCodec.DOUBLE;
+  private static volatile ValueCodec intensityCodec = ValueCodec.DOUBLE;
+
+  protected EncodedValues mzValues;
+  protected EncodedValues intensityValues;
 
   /**
    * Note: mz and intensity values for a scan shall only be set once and are enforced to be
@@ -82,27 +89,70 @@ public abstract class AbstractStorableSpectrum extends AbstractMassSpectrum {
     // this is only done if the mzs were unsorted
     var mzsIntensities = DataPointUtils.ensureSortingMzAscendingDefault(mzValues, intensityValues);
 
-    this.mzValues = StorageUtils.storeValuesToDoubleBuffer(storage, mzsIntensities[0]);
-    this.intensityValues = StorageUtils.storeValuesToDoubleBuffer(storage, mzsIntensities[1]);
-    updateMzRangeAndTICValues();
+    this.mzValues = mzCodec.encode(storage, mzsIntensities[0]);
+    this.intensityValues = intensityCodec.encode(storage, mzsIntensities[1]);
+    // range, TIC and base peak of the stored values
+    updateMzRangeAndTICValues(
+        this.mzValues.getCodec() == ValueCodec.DOUBLE ? mzsIntensities[0] : this.mzValues.toArray(),
+        this.intensityValues.getCodec() == ValueCodec.DOUBLE ? mzsIntensities[1]
+            : this.intensityValues.toArray());
+  }
+
+  /**
+   * Sets the codecs for all spectra created afterwards.
+   */
+  public static void setCodecs(@NotNull ValueCodec mzCodec, @NotNull ValueCodec intensityCodec) {
+    AbstractStorableSpectrum.mzCodec = mzCodec;
+    AbstractStorableSpectrum.intensityCodec = intensityCodec;
   }
 
+  /**
+   * Lossy codecs decode all values into a new buffer on every call. The decoded values are not
+   * kept, as that would undo the compression. The access by index and
+   * {@link #getMzValues(double[])} decode the values directly and do not use this buffer.
+   */
   DoubleBuffer getMzValues() {
     if (mzValues == null) {
       return EMPTY_BUFFER;
     } else {
-      return mzValues;
+      return mzValues.toDoubleBuffer();
     }
   }
 
+  /**
+   * @see #getMzValues()
+   */
   DoubleBuffer getIntensityValues() {
     if (intensityValues == null) {
       return EMPTY_BUFFER;
     } else {
-      return intensityValues;
+      return intensityValues.toDoubleBuffer();
     }
   }
 
+  /**
+   * @return the number of bytes used to store the m/z and intensity values
+   */
+  public long getEncodedBytes() {
+    return (mzValues == null ? 0L : mzValues.getEncodedBytes()) + (intensityValues == null ? 0L
+        : intensityValues.getEncodedBytes());
+  }
+
+  @Override
+  public int getNumberOfDataPoints() {
+    return mzValues == null ? 0 : mzValues.size();
+  }
+
+  @Override
+  public double getMzValue(int index) {
+    return mzValues.get(index);
+  }
+
+  @Override
+  public double getIntensityValue(int index) {
+    return intensityValues.get(index);
+  }
+
   @Override
   public double[] getMzValues(@NotNull double[] dst) {
     if (mzValues == null) {
@@ -67,6 +67,7 @@ import io.github.mzmine.parameters.parametertypes.selectors.SpectralLibrarySelec
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.util.ExitCode;
 import io.github.mzmine.util.FeatureTableFXUtil;
+import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.javafx.FxIconUtil;
 import io.github.mzmine.util.javafx.MiniTaskView;
 import io.github.mzmine.util.javafx.groupablelistview.GroupEntity;
@@ -304,8 +305,11 @@ public class MainWindowController {
       final long totalMemMB = Runtime.getRuntime().totalMemory() / (1024 * 1024);
       final double memory = ((double) (totalMemMB - freeMemMB)) / totalMemMB;
 
+      final long tempStorageMB = MemoryMapStorage.getTotalReservedBytes() / (1024 * 1024);
+
       memoryBar.setProgress(memory);
-      memoryBarLabel.setText(freeMemMB + "/" + totalMemMB + " MB free");
+      memoryBarLabel.setText(
+          freeMemMB + "/" + totalMemMB + " MB free, " + tempStorageMB + " MB temp files");
     }));
     memoryUpdater.play();
   }
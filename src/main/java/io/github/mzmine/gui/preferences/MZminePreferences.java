@@ -28,6 +28,7 @@ package io.github.mzmine.gui.preferences;
 import io.github.mzmine.gui.chartbasics.chartthemes.ChartThemeParameters;
 import io.github.mzmine.main.KeepInMemory;
 import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.main.SpectrumCompression;
 import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.dialogs.GroupedParameterSetupDialog;
@@ -153,6 +154,14 @@ public class MZminePreferences extends SimpleParameterSet {
       KeepInMemory.ALL, KeepInMemory.MASSES_AND_FEATURES), KeepInMemory.values(),
       KeepInMemory.NONE);
 
+  public static final ComboParameter<SpectrumCompression> spectrumCompression = new ComboParameter<>(
+      "Spectrum compression", "Compresses the m/z and intensity values of scans and mass lists to "
+      + "reduce the memory and temp file size. Numpress m/z values deviate by less than 1E-6 for "
+      + "m/z values up to 4000, float intensities by less than 1E-7 (relative) and numpress "
+      + "intensities by less than 5E-4 (relative, for intensities >= 1). Only applies to newly "
+      + "imported or processed data.",
+      SpectrumCompression.values(), SpectrumCompression.NONE);
+
   public static final BooleanParameter showPrecursorWindow = new BooleanParameter(
       "Show precursor windows", "Show the isolation window instead of just the precursor m/z.",
       false);
@@ -176,7 +185,8 @@ public class MZminePreferences extends SimpleParameterSet {
 
   public MZminePreferences() {
     super(// start with performance
-        numOfThreads, memoryOption, tempDirectory, proxySettings, rExecPath, sendStatistics,
+        numOfThreads, memoryOption, spectrumCompression, tempDirectory, proxySettings, rExecPath,
+        sendStatistics,
         // visuals
         // number formats
         mzFormat, rtFormat, mobilityFormat, ccsFormat, intensityFormat, ppmFormat, scoreFormat,
@@ -201,8 +211,8 @@ public class MZminePreferences extends SimpleParameterSet {
 
     // add groups
     dialog.addParameterGroup("General",
-        new Parameter[]{numOfThreads, memoryOption, tempDirectory, proxySettings, rExecPath,
-            sendStatistics});
+        new Parameter[]{numOfThreads, memoryOption, spectrumCompression, tempDirectory,
+            proxySettings, rExecPath, sendStatistics});
     dialog.addParameterGroup("Formats",
         new Parameter[]{mzFormat, rtFormat, mobilityFormat, ccsFormat, intensityFormat, ppmFormat,
             scoreFormat, unitFormat});
@@ -228,6 +238,7 @@ public class MZminePreferences extends SimpleParameterSet {
     final KeepInMemory keepInMemory = MZmineCore.getConfiguration().getPreferences()
         .getParameter(MZminePreferences.memoryOption).getValue();
     keepInMemory.enforceToMemoryMapping();
+    getValue(MZminePreferences.spectrumCompression).enforceToSpectra();
 
     final Themes theme = getValue(MZminePreferences.theme);
     theme.apply(MZmineCore.getDesktop().getMainWindow().getScene().getStylesheets());
@@ -49,7 +49,7 @@ import io.github.mzmine.project.impl.RawDataFileImpl;
 import io.github.mzmine.taskcontrol.AllTasksFinishedListener;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskController;
-import io.github.mzmine.taskcontrol.impl.TaskControllerImpl;
+import io.github.mzmine.taskcontrol.impl.ExecutorTaskController;
 import io.github.mzmine.util.ExitCode;
 import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.files.FileAndPathUtil;
@@ -91,7 +91,7 @@ public final class MZmineCore {
   private final List<MemoryMapStorage> storageList = Collections.synchronizedList(
       new ArrayList<>());
   private final Map<Class<?>, MZmineModule> initializedModules = new Hashtable<>();
-  private TaskControllerImpl taskController;
+  private ExecutorTaskController taskController;
   private MZmineConfiguration configuration;
   private Desktop desktop;
   private ProjectManagerImpl projectManager;
@@ -190,6 +190,8 @@ public final class MZmineCore {
 
       // apply memory management option
       keepInMemory.enforceToMemoryMapping();
+      getInstance().configuration.getPreferences()
+          .getParameter(MZminePreferences.spectrumCompression).getValue().enforceToSpectra();
 
       // batch mode defined by command line argument
       File batchFile = argsParser.getBatchFile();
@@ -570,7 +572,7 @@ public final class MZmineCore {
 
     // Create instances of core modules
     projectManager = ProjectManagerImpl.getInstance();
-    taskController = TaskControllerImpl.getInstance();
+    taskController = ExecutorTaskController.getInstance();
 
     logger.fine("Initializing core classes..");
   }
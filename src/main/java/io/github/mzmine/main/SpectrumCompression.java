@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.main;
+
+import io.github.mzmine.datamodel.featuredata.impl.ValueCodec;
+import io.github.mzmine.datamodel.impl.AbstractStorableSpectrum;
+
+/**
+ * Codecs for the m/z and intensity values of scans and mass lists.
+ */
+public enum SpectrumCompression {
+
+  NONE(ValueCodec.DOUBLE, ValueCodec.DOUBLE, "None (16 bytes per data point)"), //
+  FLOAT_INTENSITY(ValueCodec.DOUBLE, ValueCodec.FLOAT, "Float intensities (12 bytes)"), //
+  NUMPRESS(ValueCodec.NUMPRESS_LINEAR, ValueCodec.FLOAT,
+      "Numpress m/z, float intensities (~8 bytes)"), //
+  NUMPRESS_SLOF(ValueCodec.NUMPRESS_LINEAR, ValueCodec.NUMPRESS_SLOF,
+      "Numpress m/z and intensities (~6 bytes)");
+
+  private final ValueCodec mzCodec;
+  private final ValueCodec intensityCodec;
+  private final String label;
+
+  SpectrumCompression(ValueCodec mzCodec, ValueCodec intensityCodec, String label) {
+    this.mzCodec = mzCodec;
+    this.intensityCodec = intensityCodec;
+    this.label = label;
+  }
+
+  /**
+   * Apply this option to all spectra created afterwards
+   */
+  public void enforceToSpectra() {
+    AbstractStorableSpectrum.setCodecs(mzCodec, intensityCodec);
+  }
+
+  @Override
+  public String toString() {
+    return label;
+  }
+}
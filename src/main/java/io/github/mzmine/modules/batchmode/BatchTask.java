@@ -84,6 +84,8 @@ public class BatchTask extends AbstractTask {
   private Boolean createResultsDir;
   private File parentDir;
   private int currentDataset;
+  // tasks of the current step, canceled with the batch
+  private volatile WrappedTask[] runningStepTasks;
 
   BatchTask(MZmineProject project, ParameterSet parameters, @NotNull Instant moduleCallDate) {
     this(project, parameters, moduleCallDate,
@@ -322,65 +324,49 @@ public class BatchTask extends AbstractTask {
       return;
     }
 
-    boolean allTasksFinished = false;
-
     // Submit the tasks to the task controller for processing
-    WrappedTask[] currentStepWrappedTasks = MZmineCore.getTaskController()
+    final WrappedTask[] currentStepWrappedTasks = MZmineCore.getTaskController()
         .addTasks(currentStepTasks.toArray(new Task[0]));
     currentStepTasks = null;
+    runningStepTasks = currentStepWrappedTasks;
 
-    while (!allTasksFinished) {
-
-      // If we canceled the batch, cancel all running tasks
-      if (isCanceled()) {
-        for (WrappedTask stepTask : currentStepWrappedTasks) {
-          stepTask.getActualTask().cancel();
-        }
-        return;
+    // wait for all tasks of this step - canceling the batch cancels the step tasks
+    try {
+      if (!isCanceled()) {
+        MZmineCore.getTaskController().awaitTasks(currentStepWrappedTasks);
       }
+    } catch (InterruptedException e) {
+      cancelStepTasks(currentStepWrappedTasks);
+      setStatus(TaskStatus.CANCELED);
+      return;
+    } finally {
+      runningStepTasks = null;
+    }
 
-      // First set to true, then check all tasks
-      allTasksFinished = true;
-
-      for (WrappedTask stepTask : currentStepWrappedTasks) {
-
-        TaskStatus stepStatus = stepTask.getActualTask().getStatus();
-
-        // If any of them is not finished, keep checking
-        if (stepStatus != TaskStatus.FINISHED) {
-          allTasksFinished = false;
-        }
+    // If we canceled the batch, cancel all running tasks
+    if (isCanceled()) {
+      cancelStepTasks(currentStepWrappedTasks);
+      return;
+    }
 
-        // If there was an error, we have to stop the whole batch
-        if (stepStatus == TaskStatus.ERROR) {
-          setStatus(TaskStatus.ERROR);
-          setErrorMessage(
-              stepTask.getActualTask().getTaskDescription() + ": " + stepTask.getActualTask()
-                  .getErrorMessage());
-          return;
-        }
-
-        // If user canceled any of the tasks, we have to cancel the
-        // whole batch
-        if (stepStatus == TaskStatus.CANCELED) {
-          setStatus(TaskStatus.CANCELED);
-          for (WrappedTask t : currentStepWrappedTasks) {
-            t.getActualTask().cancel();
-          }
-          return;
-        }
+    for (WrappedTask stepTask : currentStepWrappedTasks) {
+      TaskStatus stepStatus = stepTask.getActualTask().getStatus();
 
+      // If there was an error, we have to stop the whole batch
+      if (stepStatus == TaskStatus.ERROR) {
+        setStatus(TaskStatus.ERROR);
+        setErrorMessage(
+            stepTask.getActualTask().getTaskDescription() + ": " + stepTask.getActualTask()
+                .getErrorMessage());
+        return;
       }
 
-      // Wait 1s before checking the tasks again
-      if (!allTasksFinished) {
-        synchronized (this) {
-          try {
-            this.wait(1000);
-          } catch (InterruptedException e) {
-            // ignore
-          }
-        }
+      // If user canceled any of the tasks, we have to cancel the
+      // whole batch
+      if (stepStatus == TaskStatus.CANCELED) {
+        setStatus(TaskStatus.CANCELED);
+        cancelStepTasks(currentStepWrappedTasks);
+        return;
       }
     }
 
@@ -455,6 +441,21 @@ public class BatchTask extends AbstractTask {
     return true;
   }
 
+  @Override
+  public void cancel() {
+    super.cancel();
+    final WrappedTask[] stepTasks = runningStepTasks;
+    if (stepTasks != null) {
+      cancelStepTasks(stepTasks);
+    }
+  }
+
+  private void cancelStepTasks(WrappedTask[] stepTasks) {
+    for (WrappedTask stepTask : stepTasks) {
+      stepTask.getActualTask().cancel();
+    }
+  }
+
   @Override
   public TaskPriority getTaskPriority() {
     // to not block mzmine when run with single thread
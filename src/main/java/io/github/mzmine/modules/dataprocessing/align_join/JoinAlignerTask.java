@@ -50,21 +50,26 @@ import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
 import io.github.mzmine.parameters.parametertypes.tolerances.mobilitytolerance.MobilityTolerance;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.FeatureListRowGrid;
 import io.github.mzmine.util.FeatureListUtils;
 import io.github.mzmine.util.FeatureUtils;
 import io.github.mzmine.util.MemoryMapStorage;
+import io.github.mzmine.util.RangeUtils;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarity;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarityFunction;
-import it.unimi.dsi.fastutil.objects.Object2BooleanOpenHashMap;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.ListIterator;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.Objects;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -283,22 +288,27 @@ public class JoinAlignerTask extends AbstractTask {
   }
 
   /**
-   * all unaligned rows are checked against the list of base rows
+   * all unaligned rows are checked against the list of base rows. The base rows are indexed in an
+   * m/z and RT grid. Scores are collected in primitive arrays and sorted globally (highest first)
+   * before the rows are assigned greedily.
    *
    * @param unalignedRows FeatureList<Rows>
-   * @param baseRowsByMz  list of base rows sorted by acsending mz
+   * @param baseRows      list of base rows
    */
   private void alignRowsOnBaseRows(List<List<FeatureListRow>> unalignedRows,
-      List<FeatureListRow> baseRowsByMz) {
-
-    // key = a row to be aligned, value = all possible matches in the aligned fl and it's scores
-    final ConcurrentLinkedDeque<RowVsRowScore> scoresList = new ConcurrentLinkedDeque<>();
-
-    // stream all rows in all feature lists
-    unalignedRows.stream().flatMap(Collection::stream).parallel().forEach(rowToAdd -> {
+      List<FeatureListRow> baseRows) {
+    final FeatureListRow[] rowsToAdd = unalignedRows.stream().flatMap(Collection::stream)
+        .toArray(FeatureListRow[]::new);
+    final FeatureListRowGrid grid = createGrid(baseRows);
+
+    // candidates and scores of each row to add
+    final int[][] candidates = new int[rowsToAdd.length][];
+    final double[][] scores = new double[rowsToAdd.length][];
+    IntStream.range(0, rowsToAdd.length).parallel().forEach(i -> {
       if (isCanceled()) {
         return;
       }
+      final FeatureListRow rowToAdd = rowsToAdd[i];
 
       // ranges are build with prechecks - so if there is no mobility use Range.all() to deactivate the filter
       final Range<Double> mzRange =
@@ -310,33 +320,50 @@ public class JoinAlignerTask extends AbstractTask {
               ? mobilityTolerance.getToleranceRange(rowToAdd.getAverageMobility()) : Range.all();
 
       // find all rows in the aligned rows that might match
-      final List<FeatureListRow> candidatesInAligned = FeatureListUtils.getCandidatesWithinRanges(
-          mzRange, rtRange, mobilityRange, baseRowsByMz, true);
-
-      if (candidatesInAligned.isEmpty()) {
-        return;
-      }
-
-      // calculate score for unaligned row against all candidates
-      for (FeatureListRow candidateInAligned : candidatesInAligned) {
+      final IntArrayList candidateIndices = new IntArrayList();
+      final DoubleArrayList candidateScores = new DoubleArrayList();
+      grid.forEachCandidate(mzRange, rtRange, mobilityRange, baseIndex -> {
+        final FeatureListRow candidateInAligned = grid.getRow(baseIndex);
         // retention time and m/z is already checked for candidates
         if (additionalChecks(rowToAdd, candidateInAligned)) {
-          final RowVsRowScore score = new RowVsRowScore(rowToAdd, candidateInAligned, mzRange,
-              rtRange, mobilityRange, null, mzWeight, rtWeight, mobilityWeight, 0);
-          scoresList.add(score);
+          candidateIndices.add(baseIndex);
+          candidateScores.add(
+              FeatureListUtils.getAlignmentScore(candidateInAligned, mzRange, rtRange,
+                  mobilityRange, null, mzWeight, rtWeight, mobilityWeight, 0));
         }
+      });
+      if (!candidateIndices.isEmpty()) {
+        candidates[i] = candidateIndices.toIntArray();
+        scores[i] = candidateScores.toDoubleArray();
       }
     });
 
     // after an iteration, rows of all other featureLists have been given a mapping
     // now we have to find the best match
     // track all aligned rows - only align to highest scoring row
-    final var alignedRowsMap = addFeaturesBasedOnScores(scoresList);
+    final boolean[] alignedRowsMap = addFeaturesBasedOnScores(rowsToAdd, grid, candidates,
+        scores);
 
     // keep track of unaligned rows for the next interation.
     removeAlignedRows(unalignedRows, alignedRowsMap);
   }
 
+  /**
+   * @return grid with bins of the size of the tolerance windows
+   */
+  private FeatureListRowGrid createGrid(List<FeatureListRow> baseRows) {
+    double maxMz = 0;
+    float maxRt = 0;
+    for (FeatureListRow row : baseRows) {
+      maxMz = Math.max(maxMz, Objects.requireNonNullElse(row.getAverageMZ(), 0d));
+      maxRt = Math.max(maxRt, Objects.requireNonNullElse(row.getAverageRT(), 0f));
+    }
+    // widest windows are at the highest values for relative tolerances
+    final double mzBinWidth = RangeUtils.rangeLength(mzTolerance.getToleranceRange(maxMz));
+    final double rtBinWidth = RangeUtils.rangeLength(rtTolerance.getToleranceRange(maxRt));
+    return new FeatureListRowGrid(baseRows, mzBinWidth, rtBinWidth);
+  }
+
   private boolean additionalChecks(final FeatureListRow row,
       final FeatureListRow candidateInAligned) {
     return (!sameChargeRequired || FeatureUtils.compareChargeState(row, candidateInAligned)) //
@@ -345,29 +372,60 @@ public class JoinAlignerTask extends AbstractTask {
         && checkSpectralSimilarity(row, candidateInAligned);
   }
 
-  @NotNull
-  private Object2BooleanOpenHashMap<FeatureListRow> addFeaturesBasedOnScores(
-      ConcurrentLinkedDeque<RowVsRowScore> scoresList) {
-    // natural order is reversed so best highest score is first element
-    final RowVsRowScore[] scores = scoresList.stream().sorted().toArray(RowVsRowScore[]::new);
+  /**
+   * @param rowsToAdd  all unaligned rows
+   * @param grid       the base rows
+   * @param candidates indices of candidate base rows for each row to add, null if none
+   * @param scores     scores of each candidate
+   * @return true for each row to add that was aligned
+   */
+  private boolean[] addFeaturesBasedOnScores(FeatureListRow[] rowsToAdd, FeatureListRowGrid grid,
+      int[][] candidates, double[][] scores) {
+    int numScores = 0;
+    for (int[] rowCandidates : candidates) {
+      numScores += rowCandidates != null ? rowCandidates.length : 0;
+    }
+    final int[] rowIndices = new int[numScores];
+    final int[] baseIndices = new int[numScores];
+    final double[] allScores = new double[numScores];
+    int n = 0;
+    for (int i = 0; i < candidates.length; i++) {
+      if (candidates[i] == null) {
+        continue;
+      }
+      for (int c = 0; c < candidates[i].length; c++) {
+        rowIndices[n] = i;
+        baseIndices[n] = candidates[i][c];
+        allScores[n] = scores[i][c];
+        n++;
+      }
+    }
+
+    // highest score first, ties in order of rows
+    final int[] order = new int[numScores];
+    Arrays.setAll(order, i -> i);
+    IntArrays.parallelQuickSort(order, (a, b) -> {
+      final int compare = Double.compare(allScores[b], allScores[a]);
+      return compare != 0 ? compare : Integer.compare(a, b);
+    });
 
     // track if row was aligned
-    final Object2BooleanOpenHashMap<FeatureListRow> alignedRowsMap = new Object2BooleanOpenHashMap<>(
-        scores.length);
-
-    for (RowVsRowScore score : scores) {
-      final FeatureListRow alignedRow = score.getAlignedBaseRow();
-      final FeatureListRow row = score.getRowToAdd();
-      if (!alignedRowsMap.getOrDefault(row, false)) {
-        // no row was aligned
-        // put all features of the row into the aligned row
-        for (Feature feature : row.getFeatures()) {
-          final RawDataFile dataFile = feature.getRawDataFile();
-          if (!alignedRow.hasFeature(dataFile)) {
-            alignedRow.addFeature(dataFile, new ModularFeature(alignedFeatureList, feature), false);
-            alignedRowsMap.put(row, true);
-            this.alignedRows.getAndIncrement();
-          }
+    final boolean[] alignedRowsMap = new boolean[rowsToAdd.length];
+    for (int index : order) {
+      final int rowIndex = rowIndices[index];
+      if (alignedRowsMap[rowIndex]) {
+        continue;
+      }
+      final FeatureListRow alignedRow = grid.getRow(baseIndices[index]);
+      final FeatureListRow row = rowsToAdd[rowIndex];
+      // no row was aligned
+      // put all features of the row into the aligned row
+      for (Feature feature : row.getFeatures()) {
+        final RawDataFile dataFile = feature.getRawDataFile();
+        if (!alignedRow.hasFeature(dataFile)) {
+          alignedRow.addFeature(dataFile, new ModularFeature(alignedFeatureList, feature), false);
+          alignedRowsMap[rowIndex] = true;
+          this.alignedRows.getAndIncrement();
         }
       }
     }
@@ -379,31 +437,36 @@ public class JoinAlignerTask extends AbstractTask {
    * Remove all rows that were algined in this step. Modifies the argument list
    *
    * @param allRows        FeatureList<List<Rows>>
-   * @param alignedRowsMap marks all aligned rows
+   * @param alignedRowsMap marks all aligned rows in the order of all rows in allRows
    */
-  private void removeAlignedRows(List<List<FeatureListRow>> allRows,
-      Object2BooleanOpenHashMap<FeatureListRow> alignedRowsMap) {
-    AtomicInteger alignedCounter = new AtomicInteger(0);
-    AtomicInteger remainingCounter = new AtomicInteger(0);
+  private void removeAlignedRows(List<List<FeatureListRow>> allRows, boolean[] alignedRowsMap) {
+    int alignedCounter = 0;
+    int remainingCounter = 0;
+    int offset = 0;
     final ListIterator<List<FeatureListRow>> iterator = allRows.listIterator();
     while (iterator.hasNext()) {
       // remove aligned rows
       final List<FeatureListRow> featureList = iterator.next();
-      featureList.removeIf(row -> {
-        if (alignedRowsMap.getOrDefault(row, false)) {
-          alignedCounter.incrementAndGet();
-          return true;
+      final List<FeatureListRow> remaining = new ArrayList<>(featureList.size());
+      for (int i = 0; i < featureList.size(); i++) {
+        if (!alignedRowsMap[offset + i]) {
+          remaining.add(featureList.get(i));
         }
-        remainingCounter.incrementAndGet();
-        return false;
-      });
+      }
+      offset += featureList.size();
+      alignedCounter += featureList.size() - remaining.size();
+      remainingCounter += remaining.size();
       // remove empty lists
-      if (featureList.isEmpty()) {
+      if (remaining.isEmpty()) {
         iterator.remove();
+      } else {
+        iterator.set(remaining);
       }
     }
+    final int aligned = alignedCounter;
+    final int notAligned = remainingCounter;
     logger.finest(() -> String.format("Rows: %d aligned; %d remaining. Iteration %d/%d (max)",
-        alignedCounter.get(), remainingCounter.get(), iteration, featureLists.size()));
+        aligned, notAligned, iteration, featureLists.size()));
   }
 
   private boolean checkSpectralSimilarity(FeatureListRow row, FeatureListRow candidate) {
@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder;
+
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.collections.DoubleRangeIntMap;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Allocation free version of the ADAP chromatogram building. All centroids are stored in parallel
+ * primitive columns (m/z, intensity, scan index) instead of one {@link ExpandedDataPoint} per
+ * centroid. Centroids are sorted by a primitive index sort and assigned to chromatograms through a
+ * {@link DoubleRangeIntMap} instead of a TreeRangeMap of {@link ADAPChromatogram}. The resulting
+ * chromatograms are the same as those built by {@link ADAPChromatogram}.
+ */
+public class ADAPChromatogramColumns {
+
+  private final MZTolerance mzTolerance;
+  private final double minHighestPoint;
+
+  // centroid columns
+  private final double[] mzs;
+  private final double[] intensities;
+  private final int[] scanIndices;
+  private int size;
+
+  // results
+  private volatile double progress;
+  private int[] chromatogramsByMz;
+  // accepted points sorted by chromatogram and scan index
+  private int[] acceptedPoints;
+  private int[] chromatogramStart;
+  private double[] chromatogramMz;
+
+  /**
+   * @param capacity total number of centroids that will be added
+   */
+  public ADAPChromatogramColumns(int capacity, MZTolerance mzTolerance, double minHighestPoint) {
+    this.mzTolerance = mzTolerance;
+    this.minHighestPoint = minHighestPoint;
+    mzs = new double[capacity];
+    intensities = new double[capacity];
+    scanIndices = new int[capacity];
+  }
+
+  /**
+   * Add a centroid. Centroids need to be added in the order of their scan index.
+   */
+  public void add(int scanIndex, double mz, double intensity) {
+    mzs[size] = mz;
+    intensities[size] = intensity;
+    scanIndices[size] = scanIndex;
+    size++;
+  }
+
+  /**
+   * Sort all centroids by descending intensity and assign them to chromatograms. Each new
+   * chromatogram is started with the m/z tolerance range around the most intense unassigned
+   * centroid, limited by the ranges of neighboring chromatograms.
+   *
+   * @param isCanceled checked regularly
+   * @return false if canceled
+   */
+  public boolean build(BooleanSupplier isCanceled) {
+    // same order as sorting by DataPointSorter intensity descending in a stable sort
+    final int[] order = new int[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    IntArrays.parallelQuickSort(order, (a, b) -> {
+      int result = Double.compare(intensities[b], intensities[a]);
+      if (result == 0) {
+        result = Double.compare(mzs[b], mzs[a]);
+      }
+      return result != 0 ? result : Integer.compare(a, b);
+    });
+    if (isCanceled.getAsBoolean()) {
+      return false;
+    }
+
+    // chromatogram of each point by intensity rank
+    final int[] chromatogramOfRank = new int[size];
+    Arrays.fill(chromatogramOfRank, -1);
+    final DoubleRangeIntMap rangeToChromatogram = new DoubleRangeIntMap();
+    final DoubleArrayList lowerBounds = new DoubleArrayList();
+    final DoubleArrayList upperBounds = new DoubleArrayList();
+
+    int assigned = 0;
+    for (int rank = 0; rank < size; rank++) {
+      if (rank % 100_000 == 0) {
+        progress = rank / (double) size;
+        if (isCanceled.getAsBoolean()) {
+          return false;
+        }
+      }
+
+      final int point = order[rank];
+      final double mz = mzs[point];
+      if (Double.isNaN(mz) || Double.isNaN(intensities[point])) {
+        continue;
+      }
+
+      int chrom = rangeToChromatogram.get(mz);
+      if (chrom == DoubleRangeIntMap.NOT_FOUND) {
+        // skip it entirely if the intensity is not high enough
+        if (intensities[point] < minHighestPoint) {
+          continue;
+        }
+        // start a new chromatogram - limit ranges to avoid overlap
+        final double tolerance = mzTolerance.getMzToleranceForMass(mz);
+        final double lowerTolerance = mz - tolerance;
+        final double upperTolerance = mz + tolerance;
+        final int minusChrom = rangeToChromatogram.get(lowerTolerance);
+        final int plusChrom = rangeToChromatogram.get(upperTolerance);
+        final double lower = minusChrom == DoubleRangeIntMap.NOT_FOUND ? lowerTolerance
+            : upperBounds.getDouble(minusChrom);
+        final double upper = plusChrom == DoubleRangeIntMap.NOT_FOUND ? upperTolerance
+            : lowerBounds.getDouble(plusChrom);
+
+        if (lower < upper) {
+          chrom = lowerBounds.size();
+          lowerBounds.add(lower);
+          upperBounds.add(upper);
+          rangeToChromatogram.put(lower, upper, chrom);
+        } else if (lower == upper && plusChrom != DoubleRangeIntMap.NOT_FOUND) {
+          chrom = plusChrom;
+        } else {
+          throw new IllegalStateException(
+              String.format("Incorrect range [%f, %f] for m/z %f", lower, upper, mz));
+        }
+      }
+      chromatogramOfRank[rank] = chrom;
+      assigned++;
+    }
+
+    chromatogramsByMz = rangeToChromatogram.values();
+    collectAcceptedPoints(order, chromatogramOfRank, assigned, lowerBounds.size());
+    progress = 1d;
+    return true;
+  }
+
+  /**
+   * Only the first (most intense) point of a chromatogram is used for each scan. The chromatogram
+   * m/z is the mean of all accepted points, summed in order of intensity.
+   */
+  private void collectAcceptedPoints(int[] order, int[] chromatogramOfRank, int assigned,
+      int numChromatograms) {
+    final int[] ranks = new int[assigned];
+    int n = 0;
+    for (int rank = 0; rank < size; rank++) {
+      if (chromatogramOfRank[rank] >= 0) {
+        ranks[n++] = rank;
+      }
+    }
+    IntArrays.parallelQuickSort(ranks, (a, b) -> {
+      int result = Integer.compare(chromatogramOfRank[a], chromatogramOfRank[b]);
+      if (result == 0) {
+        result = Integer.compare(scanIndices[order[a]], scanIndices[order[b]]);
+      }
+      return result != 0 ? result : Integer.compare(a, b);
+    });
+
+    final boolean[] acceptedRank = new boolean[size];
+    chromatogramStart = new int[numChromatograms + 1];
+    acceptedPoints = new int[assigned];
+    int accepted = 0;
+    int lastChrom = -1;
+    int lastScan = -1;
+    for (int rank : ranks) {
+      final int chrom = chromatogramOfRank[rank];
+      final int scan = scanIndices[order[rank]];
+      if (chrom != lastChrom || scan != lastScan) {
+        acceptedRank[rank] = true;
+        acceptedPoints[accepted++] = order[rank];
+        chromatogramStart[chrom + 1]++;
+        lastChrom = chrom;
+        lastScan = scan;
+      }
+    }
+    for (int c = 0; c < numChromatograms; c++) {
+      chromatogramStart[c + 1] += chromatogramStart[c];
+    }
+
+    final double[] mzSum = new double[numChromatograms];
+    final int[] mzN = new int[numChromatograms];
+    for (int rank = 0; rank < size; rank++) {
+      if (acceptedRank[rank]) {
+        final int chrom = chromatogramOfRank[rank];
+        mzSum[chrom] += mzs[order[rank]];
+        mzN[chrom]++;
+      }
+    }
+    chromatogramMz = new double[numChromatograms];
+    for (int c = 0; c < numChromatograms; c++) {
+      chromatogramMz[c] = mzSum[c] / mzN[c];
+    }
+  }
+
+  /**
+   * @return progress of {@link #build(BooleanSupplier)}
+   */
+  public double getProgress() {
+    return progress;
+  }
+
+  /**
+   * @return the total number of centroids
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return ids of all chromatograms sorted by their m/z ranges
+   */
+  public int[] getChromatogramsByMz() {
+    return chromatogramsByMz;
+  }
+
+  public int getNumberOfDataPoints(int chrom) {
+    return chromatogramStart[chrom + 1] - chromatogramStart[chrom];
+  }
+
+  /**
+   * @return mean m/z of the chromatogram
+   */
+  public double getMZ(int chrom) {
+    return chromatogramMz[chrom];
+  }
+
+  /**
+   * Same as {@link ADAPChromatogram#matchesMinContinuousDataPoints(io.github.mzmine.datamodel.Scan[],
+   * double, int, double)}
+   *
+   * @param intensityThresh minimum intensity to consider data point connected
+   * @param minimumScanSpan minimum number of connected dp
+   * @return true if a minimum number of scans are connected (without holes)
+   */
+  public boolean matchesMinContinuousDataPoints(int chrom, double intensityThresh,
+      int minimumScanSpan, double minHeight) {
+    final int start = chromatogramStart[chrom];
+    final int end = chromatogramStart[chrom + 1];
+    if (minimumScanSpan <= 1 && end > start) {
+      return true;
+    }
+
+    int connectedScans = 0;
+    double maxCurrentHeight = 0d;
+    int lastScan = -2;
+    for (int i = start; i < end; i++) {
+      final int point = acceptedPoints[i];
+      final double intensity = intensities[point];
+      if (scanIndices[point] != lastScan + 1) {
+        // scans without data point in between
+        connectedScans = 0;
+      }
+      lastScan = scanIndices[point];
+
+      if (intensity >= intensityThresh) {
+        connectedScans++;
+        // track height of current segment
+        if (maxCurrentHeight < intensity) {
+          maxCurrentHeight = intensity;
+        }
+        // check conditions
+        if (connectedScans >= minimumScanSpan && maxCurrentHeight >= minHeight) {
+          return true;
+        }
+      } else {
+        connectedScans = 0;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Data of the chromatogram with a zero intensity data point added on each side of the detected
+   * scans (same as {@link ADAPChromatogram#addNZeros(io.github.mzmine.datamodel.Scan[], int, int)}
+   * with 1, 1).
+   *
+   * @param numScans total number of scans
+   * @return the scan indices, m/z, and intensity values or null if the chromatogram is empty
+   */
+  public @Nullable ChromatogramData getDataWithZeros(int chrom, int numScans) {
+    final int start = chromatogramStart[chrom];
+    final int end = chromatogramStart[chrom + 1];
+    if (end <= start) {
+      return null;
+    }
+
+    // maximum size: each data point plus one zero on each side
+    final int max = Math.min(numScans, 3 * (end - start));
+    final int[] scans = new int[max];
+    final double[] mzValues = new double[max];
+    final double[] intensityValues = new double[max];
+    final double zeroMz = chromatogramMz[chrom];
+
+    int n = 0;
+    int lastScan = -1;
+    for (int i = start; i < end; i++) {
+      final int point = acceptedPoints[i];
+      final int scan = scanIndices[point];
+      // trailing zero after the previous data point
+      if (i > start && scan > lastScan + 1) {
+        scans[n] = lastScan + 1;
+        mzValues[n] = zeroMz;
+        n++;
+      }
+      // leading zero before this data point - if not already added as trailing zero
+      if (scan > 0 && (i == start || scan - 1 > lastScan + 1)) {
+        scans[n] = scan - 1;
+        mzValues[n] = zeroMz;
+        n++;
+      }
+      scans[n] = scan;
+      mzValues[n] = mzs[point];
+      intensityValues[n] = intensities[point];
+      n++;
+      lastScan = scan;
+    }
+    if (lastScan + 1 < numScans) {
+      scans[n] = lastScan + 1;
+      mzValues[n] = zeroMz;
+      n++;
+    }
+    return new ChromatogramData(Arrays.copyOf(scans, n), Arrays.copyOf(mzValues, n),
+        Arrays.copyOf(intensityValues, n));
+  }
+
+  /**
+   * Data of a single chromatogram
+   *
+   * @param scanIndices indices of the scans in the list of all scans used to build chromatograms
+   */
+  public record ChromatogramData(int[] scanIndices, double[] mzs, double[] intensities) {
+
+  }
+}
@@ -28,9 +28,6 @@ package io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder;
 
 import static java.util.Objects.requireNonNullElse;
 
-import com.google.common.collect.Range;
-import com.google.common.collect.RangeMap;
-import com.google.common.collect.TreeRangeMap;
 import io.github.mzmine.datamodel.IMSRawDataFile;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
@@ -38,6 +35,7 @@ import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.data_access.EfficientDataAccess;
 import io.github.mzmine.datamodel.data_access.EfficientDataAccess.ScanDataType;
 import io.github.mzmine.datamodel.data_access.ScanDataAccess;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
 import io.github.mzmine.datamodel.features.ModularFeature;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.ModularFeatureListRow;
@@ -45,6 +43,7 @@ import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.datamodel.features.types.FeatureShapeType;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineModule;
+import io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder.ADAPChromatogramColumns.ChromatogramData;
 import io.github.mzmine.modules.dataprocessing.featdet_imagebuilder.ImageBuilderModule;
 import io.github.mzmine.modules.dataprocessing.featdet_imagebuilder.ImageBuilderParameters;
 import io.github.mzmine.parameters.ParameterSet;
@@ -52,20 +51,15 @@ import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
-import io.github.mzmine.util.DataPointSorter;
 import io.github.mzmine.util.DataTypeUtils;
 import io.github.mzmine.util.FeatureConvertors;
 import io.github.mzmine.util.FeatureListUtils;
 import io.github.mzmine.util.MemoryMapStorage;
-import io.github.mzmine.util.SortingDirection;
-import io.github.mzmine.util.SortingProperty;
 import io.github.mzmine.util.exceptions.MissingMassListException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -94,6 +88,8 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
   private final boolean isImaging;
   private double progress = 0.0;
   private ModularFeatureList newFeatureList;
+  // primitive centroid columns - only used for progress while building chromatograms
+  private @Nullable ADAPChromatogramColumns columns;
 
   public static ModularADAPChromatogramBuilderTask forImaging(MZmineProject project,
       RawDataFile dataFile, ParameterSet parameters, @Nullable MemoryMapStorage storage,
@@ -152,6 +148,10 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
 
   @Override
   public double getFinishedPercentage() {
+    final ADAPChromatogramColumns building = columns;
+    if (building != null && progress < 0.5) {
+      return building.getProgress() * 0.5;
+    }
     return progress;
   }
 
@@ -159,7 +159,6 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
     return dataFile;
   }
 
-  @SuppressWarnings("UnstableApiUsage")
   @Override
   public void run() {
     setStatus(TaskStatus.PROCESSING);
@@ -216,30 +215,32 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
       }
     }
 
-    // make a list of all the data points
-    // sort data points by intensity
-    // loop through list
-    // add data point to chromatogrm or make new one
-    // update mz avg and other stuff
-    //
-
-    // map the mz tolerance to chromatograms
-    RangeMap<Double, ADAPChromatogram> rangeToChromMap = TreeRangeMap.create();
-
-    // make a list of all the data points
-    List<ExpandedDataPoint> allMzValues = new ArrayList<>();
+    // all centroids are stored in primitive columns (m/z, intensity, scan index)
+    // sorted by intensity and assigned to chromatograms by non overlapping m/z ranges
+    int totalDataPoints = 0;
+    for (Scan scan : scans) {
+      if (scan.getMassList() != null) {
+        totalDataPoints += scan.getMassList().getNumberOfDataPoints();
+      }
+    }
+    columns = new ADAPChromatogramColumns(totalDataPoints, mzTolerance, minHighestPoint);
 
     ScanDataAccess scanData = EfficientDataAccess.of(dataFile, ScanDataType.CENTROID,
         scanSelection);
+    if (scanData.getNumberOfScans() != scans.length) {
+      setStatus(TaskStatus.ERROR);
+      setErrorMessage("Number of selected scans does not match the scan data access");
+      return;
+    }
 
+    int scanIndex = 0;
     while (scanData.hasNextScan()) {
       if (isCanceled()) {
         return;
       }
 
-      Scan scan;
       try {
-        scan = scanData.nextScan();
+        scanData.nextScan();
       } catch (MissingMassListException e) {
         setStatus(TaskStatus.ERROR);
         StringBuilder b = new StringBuilder("Scan #");
@@ -258,52 +259,22 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
 
       int dps = scanData.getNumberOfDataPoints();
       for (int i = 0; i < dps; i++) {
-        ExpandedDataPoint curDatP = new ExpandedDataPoint(scanData.getMzValue(i),
-            scanData.getIntensityValue(i), scan);
-        allMzValues.add(curDatP);
+        columns.add(scanIndex, scanData.getMzValue(i), scanData.getIntensityValue(i));
       }
+      scanIndex++;
     }
 
-    // sort data points by intensity
-    allMzValues.sort(new DataPointSorter(SortingProperty.Intensity, SortingDirection.Descending));
-
-    // count starts at 1 since we already have added one with a single point.
+    // sort data points by intensity and build chromatograms
     progress = 0.0;
-    double progressStep = (allMzValues.size() > 0) ? 0.5 / allMzValues.size() : 0.0;
-
-    for (ExpandedDataPoint mzFeature : allMzValues) {
-
-      progress += progressStep;
-
-      if (isCanceled()) {
-        return;
-      }
-
-      if (mzFeature == null || Double.isNaN(mzFeature.getMZ()) || Double.isNaN(
-          mzFeature.getIntensity())) {
-        continue;
-      }
-
-      final Entry<Range<Double>, ADAPChromatogram> existing = rangeToChromMap.getEntry(
-          mzFeature.getMZ());
-      if (existing != null) {
-        // add data point to chromatogram
-        existing.getValue().addMzFeature(mzFeature.getScan(), mzFeature);
-      } else {
-        // skip it entierly if the intensity is not high enough
-        if (mzFeature.getIntensity() < minHighestPoint) {
-          continue;
-        }
-        // add a new chromatogram to the range map - limit ranges to avoid overlap
-        startNewChromatogramLimitMzRanges(rangeToChromMap, mzFeature);
-      }
+    if (!columns.build(this::isCanceled)) {
+      return;
     }
+    progress = 0.5;
 
     // finish chromatograms sorted by m/z
-    final Map<Range<Double>, ADAPChromatogram> finalRangeMap = rangeToChromMap.asMapOfRanges();
-
-    int numChromatograms = finalRangeMap.size();
-    progressStep = numChromatograms > 0 ? 0.5 / numChromatograms : 0.0;
+    final int[] chromatograms = columns.getChromatogramsByMz();
+    int numChromatograms = chromatograms.length;
+    double progressStep = numChromatograms > 0 ? 0.5 / numChromatograms : 0.0;
 
     // Create new feature list
     newFeatureList = new ModularFeatureList(dataFile + " " + suffix, getMemoryMapStorage(),
@@ -313,7 +284,7 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
 
     int newFeatureID = 1;
     // add chromatograms that match criteria
-    for (ADAPChromatogram chromatogram : finalRangeMap.values()) {
+    for (int chromatogram : chromatograms) {
       if (isCanceled()) {
         return;
       }
@@ -322,15 +293,24 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
 
       // And remove chromatograms who dont have a certain number of continous points above the
       // IntensityThresh2 level.
-      var dps = chromatogram.getNumberOfDataPoints();
-      if (dps >= minimumTotalScans && chromatogram.matchesMinContinuousDataPoints(scans,
+      var dps = columns.getNumberOfDataPoints(chromatogram);
+      if (dps >= minimumTotalScans && columns.matchesMinContinuousDataPoints(chromatogram,
           minGroupIntensity, minimumConsecutiveScans, minHighestPoint)) {
         // add zeros to edges
-        chromatogram.addNZeros(scans, 1, 1);
+        final ChromatogramData data = columns.getDataWithZeros(chromatogram, scans.length);
+        if (data == null) {
+          continue;
+        }
+        final List<Scan> seriesScans = new ArrayList<>(data.scanIndices().length);
+        for (int index : data.scanIndices()) {
+          seriesScans.add(scans[index]);
+        }
+        final SimpleIonTimeSeries series = new SimpleIonTimeSeries(
+            newFeatureList.getMemoryMapStorage(), data.mzs(), data.intensities(), seriesScans);
 
         // add to list
-        ModularFeature modular = FeatureConvertors.ADAPChromatogramToModularFeature(newFeatureList,
-            dataFile, chromatogram);
+        ModularFeature modular = FeatureConvertors.ionTimeSeriesToModularFeature(newFeatureList,
+            dataFile, series);
         ModularFeatureListRow newRow = new ModularFeatureListRow(newFeatureList, newFeatureID,
             modular);
         newFeatureList.addRow(newRow);
@@ -352,57 +332,11 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
     project.addFeatureList(newFeatureList);
 
     progress = 1.0;
+    columns = null;
 
     setStatus(TaskStatus.FINISHED);
 
     logger.info(() -> "Finished chromatogram builder on " + dataFile);
   }
 
-  /**
-   * Starts a new chromatogram and limits its range so that it does not overlap with existing m/z
-   * ranges
-   *
-   * @param rangeToChromMap started chromatograms with their non overlapping m/z range
-   * @param mzFeature       current tested data point
-   */
-  @SuppressWarnings("UnstableApiUsage")
-  private void startNewChromatogramLimitMzRanges(RangeMap<Double, ADAPChromatogram> rangeToChromMap,
-      ExpandedDataPoint mzFeature) {
-    // start new chromatogram and create new range (subract overlapping existing ranges)
-    Range<Double> toleranceRange = mzTolerance.getToleranceRange(mzFeature.getMZ());
-
-    // look +- mz tolerance to see if ther is a range near by.
-    // If there is use the proper boundry of that range for the
-    // new range to insure than NON OF THE RANGES OVERLAP.
-    final Entry<Range<Double>, ADAPChromatogram> minusRange = rangeToChromMap.getEntry(
-        toleranceRange.lowerEndpoint());
-    final Entry<Range<Double>, ADAPChromatogram> plusRange = rangeToChromMap.getEntry(
-        toleranceRange.upperEndpoint());
-
-    // If both of the above ranges are null then we make the new range spaning the full
-    // mz tolerance range.
-    // If one or both are not null we need to properly modify the range of the new
-    // chromatogram so that none of the points are overlapping.
-    Double toBeLowerBound =
-        minusRange == null ? toleranceRange.lowerEndpoint() : minusRange.getKey().upperEndpoint();
-    Double toBeUpperBound =
-        plusRange == null ? toleranceRange.upperEndpoint() : plusRange.getKey().lowerEndpoint();
-
-    if (toBeLowerBound < toBeUpperBound) {
-      // use closed open so that every value may be captured by rangeMap
-      Range<Double> newRange = Range.closedOpen(toBeLowerBound, toBeUpperBound);
-      ADAPChromatogram newChrom = new ADAPChromatogram();
-      newChrom.addMzFeature(mzFeature.getScan(), mzFeature);
-
-      rangeToChromMap.put(newRange, newChrom);
-    } else if (toBeLowerBound.equals(toBeUpperBound) && plusRange != null) {
-      plusRange.getValue().addMzFeature(mzFeature.getScan(), mzFeature);
-    } else {
-      throw new IllegalStateException(
-          String.format("Incorrect range [%f, %f] for m/z %f", toBeLowerBound, toBeUpperBound,
-              mzFeature.getMZ()));
-    }
-  }
-
 }
-
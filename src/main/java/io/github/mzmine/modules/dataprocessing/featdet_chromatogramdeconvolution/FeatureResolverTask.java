@@ -35,6 +35,7 @@ import io.github.mzmine.datamodel.featuredata.IonMobilogramTimeSeries;
 import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
 import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.datamodel.features.ModularFeature;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.ModularFeatureListRow;
@@ -42,6 +43,7 @@ import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.datamodel.features.types.ImageType;
 import io.github.mzmine.datamodel.features.types.MobilityUnitType;
 import io.github.mzmine.datamodel.features.types.numbers.RTType;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.dataprocessing.filter_groupms2.GroupMS2SubParameters;
 import io.github.mzmine.modules.dataprocessing.filter_groupms2.GroupMS2Task;
 import io.github.mzmine.parameters.ParameterSet;
@@ -56,15 +58,24 @@ import io.github.mzmine.util.R.RSessionWrapper;
 import io.github.mzmine.util.R.RSessionWrapperException;
 import io.github.mzmine.util.maths.CenterFunction;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import org.jetbrains.annotations.NotNull;
 
 public class FeatureResolverTask extends AbstractTask {
 
   // Logger.
   private static final Logger logger = Logger.getLogger(FeatureResolverTask.class.getName());
+  // more chunks than threads to balance chromatograms of different lengths
+  private static final int CHUNKS_PER_THREAD = 4;
+  // limits the resolved rows that are kept until their feature list rows are created
+  private static final int MAX_ROWS_PER_CHUNK = 500;
 
   // Feature lists.
   private final MZmineProject project;
@@ -75,7 +86,7 @@ public class FeatureResolverTask extends AbstractTask {
   private final CenterFunction mzCenterFunction;
   private FeatureList newPeakList;
   // Counters.
-  private int processedRows;
+  private final AtomicInteger processedRows = new AtomicInteger(0);
   private int totalRows;
   private RSessionWrapper rSession;
   private String errorMsg;
@@ -101,7 +112,6 @@ public class FeatureResolverTask extends AbstractTask {
     parameters = parameterSet;
     originalPeakList = list;
     newPeakList = null;
-    processedRows = 0;
     totalRows = 0;
     this.mzCenterFunction = mzCenterFunction;
   }
@@ -119,7 +129,7 @@ public class FeatureResolverTask extends AbstractTask {
     if (groupMS2Task != null) {
       return groupMS2Task.getFinishedPercentage();
     }
-    return totalRows == 0 ? 0.0 : processedRows / (double) totalRows;
+    return totalRows == 0 ? 0.0 : processedRows.get() / (double) totalRows;
   }
 
   @Override
@@ -146,6 +156,9 @@ public class FeatureResolverTask extends AbstractTask {
             legacyResolve();
           }
           // resolving finished
+          if (isCanceled()) {
+            return;
+          }
 
           // sort and reset IDs here to ahve the same sorting for every feature list
           FeatureListUtils.sortByDefaultRT(newPeakList, true);
@@ -253,41 +266,38 @@ public class FeatureResolverTask extends AbstractTask {
     final RawDataFile dataFile = originalFeatureList.getRawDataFile(0);
     final ModularFeatureList resolvedFeatureList = createNewFeatureList(originalFeatureList);
 
-    final FeatureDataAccess access = EfficientDataAccess.of(originalFeatureList,
-        EfficientDataAccess.FeatureDataType.INCLUDE_ZEROS, dataFile);
-
-    processedRows = 0;
+    processedRows.set(0);
     totalRows = originalFeatureList.getNumberOfRows();
-    int peakId = 1;
-
-    int c = 0;
-
-    while (access.hasNextFeature()) {
-      final ModularFeature originalFeature = (ModularFeature) access.nextFeature();
-      final List<IonTimeSeries<? extends Scan>> resolvedSeries = resolver.resolve(access,
-          getMemoryMapStorage());
 
+    final AtomicInteger shortFeatures = new AtomicInteger(0);
+    // resolvers keep buffers and a mobilogram binning, so every chunk uses its own instance.
+    // the rows are created in the order of the original rows to keep the IDs stable
+    final boolean finished = resolveInChunks(originalFeatureList.getRows(), rows -> {
+      final Resolver chunkResolver = ((GeneralResolverParameters) parameters).getResolver(
+          parameters, originalFeatureList);
+      final FeatureDataAccess access = EfficientDataAccess.of(originalFeatureList,
+          EfficientDataAccess.FeatureDataType.INCLUDE_ZEROS, dataFile, rows);
+      final List<List<IonTimeSeries<? extends Scan>>> resolved = new ArrayList<>(rows.size());
+      while (access.hasNextFeature() && !isCanceled()) {
+        access.nextFeature();
+        resolved.add(chunkResolver.resolve(access, getMemoryMapStorage()));
+        processedRows.getAndIncrement();
+      }
+      return resolved;
+    }, (resolvedSeries, rowIndex) -> {
+      final ModularFeature originalFeature = (ModularFeature) originalFeatureList.getRow(
+          rowIndex).getFeature(dataFile);
       for (IonTimeSeries<? extends Scan> resolved : resolvedSeries) {
-        final ModularFeatureListRow newRow = new ModularFeatureListRow(resolvedFeatureList,
-            peakId++);
-        final ModularFeature f = new ModularFeature(resolvedFeatureList,
-            originalFeature.getRawDataFile(), resolved, originalFeature.getFeatureStatus());
-
-        if (originalFeature.getMobilityUnit() != null) {
-          f.set(MobilityUnitType.class, originalFeature.getMobilityUnit());
-        }
-        if (originalFeature.get(ImageType.class) != null) {
-          f.set(ImageType.class, true);
-        }
-        newRow.addFeature(originalFeature.getRawDataFile(), f);
-        resolvedFeatureList.addRow(newRow);
-        if (resolved.getSpectra().size() <= 3) {
-          c++;
+        if (addResolvedRow(resolvedFeatureList, originalFeature, resolved)) {
+          shortFeatures.getAndIncrement();
         }
       }
-      processedRows++;
+    });
+    if (!finished) {
+      return;
     }
-    logger.info(c + "/" + resolvedFeatureList.getNumberOfRows()
+
+    logger.info(shortFeatures.get() + "/" + resolvedFeatureList.getNumberOfRows()
         + " have less than 4 scans (frames for IMS data)");
     //    QualityParameters.calculateAndSetModularQualityParameters(resolvedFeatureList);
 
@@ -298,6 +308,73 @@ public class FeatureResolverTask extends AbstractTask {
     newPeakList = resolvedFeatureList;
   }
 
+  /**
+   * Adds a row with the resolved feature to the feature list.
+   *
+   * @return true if the feature has less than 4 scans
+   */
+  private boolean addResolvedRow(ModularFeatureList resolvedFeatureList,
+      ModularFeature originalFeature, IonTimeSeries<? extends Scan> resolved) {
+    final ModularFeatureListRow newRow = new ModularFeatureListRow(resolvedFeatureList,
+        resolvedFeatureList.getNumberOfRows() + 1);
+    final ModularFeature f = new ModularFeature(resolvedFeatureList,
+        originalFeature.getRawDataFile(), resolved, originalFeature.getFeatureStatus());
+
+    if (originalFeature.getMobilityUnit() != null) {
+      f.set(MobilityUnitType.class, originalFeature.getMobilityUnit());
+    }
+    if (originalFeature.get(ImageType.class) != null) {
+      f.set(ImageType.class, true);
+    }
+    newRow.addFeature(originalFeature.getRawDataFile(), f);
+    resolvedFeatureList.addRow(newRow);
+    return resolved.getSpectra().size() <= 3;
+  }
+
+  /**
+   * Splits the rows into consecutive chunks of at most {@link #MAX_ROWS_PER_CHUNK} rows. Each chunk
+   * is processed by a single thread, so the chunk resolver can reuse its buffers. The chunks are
+   * resolved in windows of {@link #CHUNKS_PER_THREAD} chunks per thread and the results of a window
+   * are passed to the row consumer before the next window is resolved, so only the results of one
+   * window are kept at a time.
+   *
+   * @param rows          all rows
+   * @param chunkResolver resolves a chunk of rows and returns one result per row in the same
+   *                      order
+   * @param rowConsumer   called on the calling thread with the result and the index of each row in
+   *                      the order of the rows
+   * @return false if the task was canceled
+   */
+  private <T> boolean resolveInChunks(List<? extends FeatureListRow> rows,
+      Function<List<? extends FeatureListRow>, List<T>> chunkResolver,
+      ObjIntConsumer<T> rowConsumer) {
+    final int numRows = rows.size();
+    final int chunksPerWindow =
+        MZmineCore.getConfiguration().getNumOfThreads() * CHUNKS_PER_THREAD;
+    final int chunkSize = Math.max(1,
+        Math.min(MAX_ROWS_PER_CHUNK, (numRows + chunksPerWindow - 1) / chunksPerWindow));
+    final int numChunks = (numRows + chunkSize - 1) / chunkSize;
+
+    for (int firstChunk = 0; firstChunk < numChunks; firstChunk += chunksPerWindow) {
+      final List<List<T>> chunkResults = IntStream.range(firstChunk,
+              Math.min(numChunks, firstChunk + chunksPerWindow)).parallel()
+          .mapToObj(chunk -> chunkResolver.apply(
+              rows.subList(chunk * chunkSize, Math.min(numRows, (chunk + 1) * chunkSize))))
+          .toList();
+      if (isCanceled()) {
+        return false;
+      }
+
+      int rowIndex = firstChunk * chunkSize;
+      for (List<T> chunkResult : chunkResults) {
+        for (T result : chunkResult) {
+          rowConsumer.accept(result, rowIndex++);
+        }
+      }
+    }
+    return !isCanceled();
+  }
+
   @Override
   public void cancel() {
     super.cancel();
@@ -325,27 +402,24 @@ public class FeatureResolverTask extends AbstractTask {
 
     final FeatureResolver resolver = ((GeneralResolverParameters) parameters).getResolver();
 
-    processedRows = 0;
+    processedRows.set(0);
     totalRows = originalFeatureList.getNumberOfRows();
-    int peakId = 1;
     final Integer minNumDp = parameters.getValue(
         GeneralResolverParameters.MIN_NUMBER_OF_DATAPOINTS);
 
-    for (int i = 0; i < totalRows; i++) {
+    // create the rows in the order of the original rows to keep the IDs stable
+    final ObjIntConsumer<ResolvedPeak[]> addRows = (peaks, rowIndex) -> {
       final ModularFeatureListRow originalRow = (ModularFeatureListRow) originalFeatureList.getRow(
-          i);
+          rowIndex);
       final ModularFeature originalFeature = originalRow.getFeature(dataFile);
 
-      final ResolvedPeak[] peaks = resolver.resolvePeaks(originalFeature, parameters, rSession,
-          mzCenterFunction, msmsRange, RTRangeMSMS);
-
       for (final ResolvedPeak peak : peaks) {
         if (peak.getScanNumbers().length < minNumDp) {
           continue;
         }
         peak.setParentChromatogramRowID(originalRow.getID());
         final ModularFeatureListRow newRow = new ModularFeatureListRow(resolvedFeatureList,
-            peakId++);
+            resolvedFeatureList.getNumberOfRows() + 1);
         final ModularFeature newFeature = FeatureConvertors.ResolvedPeakToMoularFeature(
             resolvedFeatureList, peak, originalFeature.getFeatureData());
         if (originalFeature.getMobilityUnit() != null) {
@@ -356,7 +430,28 @@ public class FeatureResolverTask extends AbstractTask {
         newRow.setFeatureInformation(peak.getPeakInformation());
         resolvedFeatureList.addRow(newRow);
       }
-      processedRows++;
+    };
+
+    if (rSession != null) {
+      // R sessions cannot be shared between threads
+      final List<? extends FeatureListRow> rows = originalFeatureList.getRows();
+      for (int i = 0; i < rows.size() && !isCanceled(); i++) {
+        addRows.accept(resolver.resolvePeaks(rows.get(i).getFeature(dataFile), parameters,
+            rSession, mzCenterFunction, msmsRange, RTRangeMSMS), i);
+        processedRows.getAndIncrement();
+      }
+    } else {
+      // legacy resolvers without R are stateless and share one instance
+      resolveInChunks(originalFeatureList.getRows(), rows -> {
+        try {
+          return resolveRowPeaks(rows, dataFile, resolver);
+        } catch (RSessionWrapperException e) {
+          throw new IllegalStateException(e);
+        }
+      }, addRows);
+    }
+    if (isCanceled()) {
+      return resolvedFeatureList;
     }
 
     resolvedFeatureList.addDescriptionOfAppliedTask(
@@ -366,6 +461,27 @@ public class FeatureResolverTask extends AbstractTask {
     return resolvedFeatureList;
   }
 
+  /**
+   * Resolves the features of the rows with a legacy {@link FeatureResolver} that does not use R.
+   *
+   * @return the resolved peaks of each row in the order of the rows. Shorter if the task was
+   * canceled.
+   */
+  @Deprecated
+  private List<ResolvedPeak[]> resolveRowPeaks(List<? extends FeatureListRow> rows,
+      RawDataFile dataFile, FeatureResolver resolver) throws RSessionWrapperException {
+    final List<ResolvedPeak[]> resolved = new ArrayList<>(rows.size());
+    for (FeatureListRow row : rows) {
+      if (isCanceled()) {
+        break;
+      }
+      resolved.add(resolver.resolvePeaks(row.getFeature(dataFile), parameters, null,
+          mzCenterFunction, msmsRange, RTRangeMSMS));
+      processedRows.getAndIncrement();
+    }
+    return resolved;
+  }
+
   private ModularFeatureList createNewFeatureList(ModularFeatureList originalFeatureList) {
     if (originalFeatureList.getRawDataFiles().size() > 1) {
       throw new IllegalArgumentException("Resolving cannot be applied to aligned feature lists.");
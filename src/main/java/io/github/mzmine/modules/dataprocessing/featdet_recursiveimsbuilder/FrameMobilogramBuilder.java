@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_recursiveimsbuilder;
+
+import io.github.mzmine.datamodel.Frame;
+import io.github.mzmine.datamodel.MobilityScan;
+import io.github.mzmine.datamodel.impl.MobilityScanStorage;
+import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.MemoryMapStorage;
+import io.github.mzmine.util.exceptions.MissingMassListException;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Builds the mobilograms of a single frame from the mass lists of its mobility scans. The data
+ * points are read directly from the {@link MobilityScanStorage} into primitive arrays and grouped
+ * by m/z in order of descending intensity. Each mobilogram claims the m/z tolerance range around
+ * its first (most intense) data point, data points of the same mobility scan are kept if they fit
+ * better to the mobilogram and the remaining data points are grouped recursively.
+ * <p>
+ * The grouping is the same as with {@link TempMobilogram} in a range map, but without a data point
+ * object per signal. Instances are not thread safe, use one instance per frame.
+ */
+public class FrameMobilogramBuilder {
+
+  private final MZTolerance tolerance;
+  private final int recursiveThreshold;
+
+  // data points of the frame
+  private double[] mzs;
+  private double[] intensities;
+  // mobility scan number of each data point
+  private int[] scanNumbers;
+
+  // non overlapping tolerance ranges, sorted by lower bound
+  private double[] lowerBounds = new double[64];
+  private double[] upperBounds = new double[64];
+  private int[] rangeMobilograms = new int[64];
+  private int numRanges;
+  private final List<PrimitiveMobilogram> mobilograms = new ArrayList<>();
+
+  /**
+   * @param tolerance          m/z tolerance of a mobilogram
+   * @param recursiveThreshold leftover data points are only grouped recursively if there are more
+   *                           than this number
+   */
+  public FrameMobilogramBuilder(@NotNull MZTolerance tolerance, int recursiveThreshold) {
+    this.tolerance = tolerance;
+    this.recursiveThreshold = recursiveThreshold;
+  }
+
+  /**
+   * @param frame     the frame
+   * @param selection selects the mobility scans. Starting at the first selected mobility scan,
+   *                  all consecutive selected mobility scans are used (same as
+   *                  {@link io.github.mzmine.datamodel.data_access.MobilityScanDataAccess}).
+   * @param storage   storage for the mobilograms
+   * @return the mobilograms of this frame
+   * @throws MissingMassListException if the mobility scans have no mass lists
+   */
+  public @NotNull List<BuildingIonMobilitySeries> buildMobilograms(@NotNull Frame frame,
+      @Nullable ScanSelection selection, @Nullable MemoryMapStorage storage) {
+    final List<MobilityScan> scans = frame.getMobilityScans();
+    final MobilityScanStorage scanStorage = frame.getMobilityScanStorage();
+
+    int first = 0;
+    if (selection != null) {
+      while (first < scans.size() && !selection.matches(scans.get(first))) {
+        first++;
+      }
+    }
+    int last = first;
+    while (last < scans.size() && (selection == null || selection.matches(scans.get(last)))) {
+      last++;
+    }
+
+    int numDataPoints = 0;
+    int maxScanNumber = -1;
+    for (int i = first; i < last; i++) {
+      numDataPoints += scanStorage.getNumberOfMassListDatapoints(i);
+      maxScanNumber = Math.max(maxScanNumber, scans.get(i).getMobilityScanNumber());
+    }
+    mzs = new double[numDataPoints];
+    intensities = new double[numDataPoints];
+    scanNumbers = new int[numDataPoints];
+    final MobilityScan[] scanByNumber = new MobilityScan[maxScanNumber + 1];
+
+    int offset = 0;
+    for (int i = first; i < last; i++) {
+      final int n = scanStorage.getNumberOfMassListDatapoints(i);
+      scanStorage.getMassListMzValues(i, mzs, offset);
+      scanStorage.getMassListIntensityValues(i, intensities, offset);
+      final MobilityScan scan = scans.get(i);
+      Arrays.fill(scanNumbers, offset, offset + n, scan.getMobilityScanNumber());
+      scanByNumber[scan.getMobilityScanNumber()] = scan;
+      offset += n;
+    }
+
+    final List<int[]> groups = groupDataPoints();
+    final List<BuildingIonMobilitySeries> result = new ArrayList<>(groups.size());
+    for (int[] group : groups) {
+      final double[] groupMzs = new double[group.length];
+      final double[] groupIntensities = new double[group.length];
+      final List<MobilityScan> groupScans = new ArrayList<>(group.length);
+      for (int i = 0; i < group.length; i++) {
+        groupMzs[i] = mzs[group[i]];
+        groupIntensities[i] = intensities[group[i]];
+        groupScans.add(scanByNumber[scanNumbers[group[i]]]);
+      }
+      result.add(new BuildingIonMobilitySeries(storage, groupMzs, groupIntensities, groupScans));
+    }
+    return result;
+  }
+
+  /**
+   * @return the data point indices of each mobilogram sorted by mobility scan number
+   */
+  private List<int[]> groupDataPoints() {
+    final int[] order = new int[mzs.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    final List<int[]> groups = new ArrayList<>();
+    groupDataPoints(order, groups);
+    return groups;
+  }
+
+  /**
+   * @param dataPoints indices of the data points, sorted stable by intensity descending
+   * @param groups     the target list
+   */
+  private void groupDataPoints(int[] dataPoints, List<int[]> groups) {
+    // stable, ties stay in insertion order
+    IntArrays.mergeSort(dataPoints, (a, b) -> intensities[a] > intensities[b] ? -1
+        : (intensities[a] < intensities[b] ? 1 : 0));
+
+    numRanges = 0;
+    mobilograms.clear();
+    final IntArrayList leftovers = new IntArrayList();
+
+    for (final int dp : dataPoints) {
+      final double mz = mzs[dp];
+      int range = findRangeContaining(mz);
+      if (range == -1) {
+        final double absTolerance = tolerance.getMzToleranceForMass(mz);
+        final double lower = mz - absTolerance;
+        final double upper = mz + absTolerance;
+        if (findRangeContaining(lower) != -1 || findRangeContaining(upper) != -1) {
+          leftovers.add(dp);
+          continue;
+        }
+        range = addRange(lower, upper);
+      }
+
+      final int previous = mobilograms.get(rangeMobilograms[range]).keepBetterFittingDataPoint(dp);
+      if (previous != -1) {
+        leftovers.add(previous);
+      }
+    }
+
+    for (int r = 0; r < numRanges; r++) {
+      groups.add(mobilograms.get(rangeMobilograms[r]).toDataPointIndices());
+    }
+
+    if (leftovers.size() > recursiveThreshold) {
+      groupDataPoints(leftovers.toIntArray(), groups);
+    }
+  }
+
+  /**
+   * @return the index of the range containing the value or -1
+   */
+  private int findRangeContaining(double value) {
+    // last range with lower bound <= value
+    int low = 0;
+    int high = numRanges - 1;
+    int found = -1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      if (lowerBounds[mid] <= value) {
+        found = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return found != -1 && upperBounds[found] >= value ? found : -1;
+  }
+
+  /**
+   * Adds a new range with a new mobilogram. Ranges that are fully covered by the new range are
+   * replaced.
+   *
+   * @return the index of the new range
+   */
+  private int addRange(double lower, double upper) {
+    int from = 0;
+    while (from < numRanges && lowerBounds[from] < lower) {
+      from++;
+    }
+    int to = from;
+    while (to < numRanges && upperBounds[to] <= upper) {
+      to++;
+    }
+
+    final int removed = to - from;
+    if (removed != 1) {
+      if (numRanges - removed + 1 > lowerBounds.length) {
+        final int capacity = lowerBounds.length * 2;
+        lowerBounds = Arrays.copyOf(lowerBounds, capacity);
+        upperBounds = Arrays.copyOf(upperBounds, capacity);
+        rangeMobilograms = Arrays.copyOf(rangeMobilograms, capacity);
+      }
+      final int length = numRanges - to;
+      System.arraycopy(lowerBounds, to, lowerBounds, from + 1, length);
+      System.arraycopy(upperBounds, to, upperBounds, from + 1, length);
+      System.arraycopy(rangeMobilograms, to, rangeMobilograms, from + 1, length);
+      numRanges += 1 - removed;
+    }
+
+    lowerBounds[from] = lower;
+    upperBounds[from] = upper;
+    rangeMobilograms[from] = mobilograms.size();
+    mobilograms.add(new PrimitiveMobilogram());
+    return from;
+  }
+
+  /**
+   * Data points of one mobilogram sorted by mobility scan number. Same logic as
+   * {@link TempMobilogram}.
+   */
+  private class PrimitiveMobilogram {
+
+    private int[] dataPoints = new int[8];
+    private int size;
+
+    /**
+     * @return the index of the data point with this scan number or -(insertion point) - 1
+     */
+    private int indexOfScan(int scanNumber) {
+      int low = 0;
+      int high = size - 1;
+      while (low <= high) {
+        final int mid = (low + high) >>> 1;
+        final int midScan = scanNumbers[dataPoints[mid]];
+        if (midScan < scanNumber) {
+          low = mid + 1;
+        } else if (midScan > scanNumber) {
+          high = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -(low + 1);
+    }
+
+    private double centerMz() {
+      double centerMz = 0d;
+      double summedIntensities = 0d;
+      for (int i = 0; i < size; i++) {
+        final double intensity = intensities[dataPoints[i]];
+        centerMz += mzs[dataPoints[i]] * intensity;
+        summedIntensities += intensity;
+      }
+      return centerMz / summedIntensities;
+    }
+
+    /**
+     * @param dp the new data point
+     * @return the data point that was not kept or -1 if the data point was added
+     */
+    private int keepBetterFittingDataPoint(int dp) {
+      final int index = indexOfScan(scanNumbers[dp]);
+      if (index < 0) {
+        insert(-index - 1, dp);
+        return -1;
+      }
+
+      final int current = dataPoints[index];
+      final double centerMz = centerMz();
+      final double currentDelta = Math.abs(centerMz - mzs[current]);
+      final double proposedDelta = Math.abs(centerMz - mzs[dp]);
+      if (currentDelta < proposedDelta) {
+        return dp;
+      }
+      // neighbouring scans
+      if (index > 0 && index < size - 1) {
+        final double avg =
+            (intensities[dataPoints[index + 1]] + intensities[dataPoints[index - 1]]) / 2;
+        if (Math.abs(avg - intensities[dp]) < Math.abs(avg - intensities[current])) {
+          dataPoints[index] = dp;
+          return current;
+        }
+      }
+      return dp;
+    }
+
+    private void insert(int index, int dp) {
+      if (size == dataPoints.length) {
+        dataPoints = Arrays.copyOf(dataPoints, size * 2);
+      }
+      System.arraycopy(dataPoints, index, dataPoints, index + 1, size - index);
+      dataPoints[index] = dp;
+      size++;
+    }
+
+    private int[] toDataPointIndices() {
+      return Arrays.copyOf(dataPoints, size);
+    }
+  }
+}
@@ -42,7 +42,6 @@ import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.ModularFeatureListRow;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.datamodel.features.types.FeatureShapeMobilogramType;
-import io.github.mzmine.modules.dataprocessing.featdet_ionmobilitytracebuilder.RetentionTimeMobilityDataPoint;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
@@ -68,7 +67,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -170,8 +168,8 @@ public class RecursiveIMSBuilderTask extends AbstractTask {
     stepTotal = access.getNumberOfScans();
 
     // build mobilograms for all frames
-    final TreeSet<BuildingIonMobilitySeries> sortedMobilograms = buildFrameMobilograms(access);
-    if (isCanceled()) {
+    final List<BuildingIonMobilitySeries> sortedMobilograms = buildFrameMobilograms(access);
+    if (sortedMobilograms == null || isCanceled()) {
       return;
     }
 
@@ -387,114 +385,47 @@ public class RecursiveIMSBuilderTask extends AbstractTask {
     );
   }
 
-  private TreeSet<BuildingIonMobilitySeries> buildFrameMobilograms(MobilityScanDataAccess access) {
-    Set<BuildingIonMobilitySeries> buildingTraces = new HashSet<>();
+  /**
+   * Builds the mobilograms of all frames in parallel, see {@link FrameMobilogramBuilder}.
+   *
+   * @return all mobilograms sorted by summed intensity (descending) or null if the task was
+   * canceled or mass lists are missing
+   */
+  @Nullable
+  private List<BuildingIonMobilitySeries> buildFrameMobilograms(MobilityScanDataAccess access) {
+    final List<List<BuildingIonMobilitySeries>> frameMobilograms;
     try {
-
-      while (access.hasNextFrame()) {
+      frameMobilograms = access.getEligibleFrames().parallelStream().map(frame -> {
         if (isCanceled()) {
-          return null;
+          return List.<BuildingIonMobilitySeries>of();
         }
-
-        final Frame frame = access.nextFrame();
-
-        final TreeSet<RetentionTimeMobilityDataPoint> dps = new TreeSet<>(
-            (o1, o2) -> {
-              if (o1.getIntensity() > o2.getIntensity()) {
-                return -1;
-              }
-              return 1;
-            });
-        // get all datapoints
-        while (access.hasNextMobilityScan()) {
-          final MobilityScan currentMobilityScan = access.nextMobilityScan();
-          for (int i = 0; i < access.getNumberOfDataPoints(); i++) {
-            dps.add(new RetentionTimeMobilityDataPoint(currentMobilityScan, access.getMzValue(i),
-                access.getIntensityValue(i)));
-          }
-        }
-
-        final Set<TempMobilogram> mobilogramMap = calcMobilograms(dps, tolerance);
-        final List<BuildingIonMobilitySeries> storedTraces = storeBuldingMobilograms(mobilogramMap);
-        buildingTraces.addAll(storedTraces);
-
+        final List<BuildingIonMobilitySeries> mobilograms = new FrameMobilogramBuilder(tolerance,
+            enableRecursive ? RECURSIVE_THRESHOLD : Integer.MAX_VALUE).buildMobilograms(frame,
+            scanSelection, tempStorage);
         stepProcessed.getAndIncrement();
-      }
+        return mobilograms;
+      }).toList();
     } catch (MissingMassListException e) {
-      e.printStackTrace();
+      logger.log(Level.WARNING, e.getMessage(), e);
+      setErrorMessage(e.getMessage());
+      setStatus(TaskStatus.ERROR);
+      return null;
+    }
+    if (isCanceled()) {
+      return null;
     }
 
     // now sort chromatograms like the adap builder
     logger.finest(() -> "Sorting mobilograms");
-    final TreeSet<BuildingIonMobilitySeries> sortedMobilograms = new TreeSet<>(
-        (o1, o2) -> {
-          if (o1.getSummedIntensity() > o2.getSummedIntensity()) {
-            return -1;
-          }
-          return 1;
-        });
-    sortedMobilograms.addAll(buildingTraces);
-
+    final List<BuildingIonMobilitySeries> sortedMobilograms = new ArrayList<>();
+    frameMobilograms.forEach(sortedMobilograms::addAll);
+    sortedMobilograms.sort(
+        Comparator.comparingDouble(BuildingIonMobilitySeries::getSummedIntensity).reversed());
     logger.finest(() -> "Mobilograms sorted");
 
     return sortedMobilograms;
   }
 
-  @NotNull
-  private Set<TempMobilogram> calcMobilograms(Collection<RetentionTimeMobilityDataPoint> dps,
-      final MZTolerance tolerance) {
-    final RangeMap<Double, TempMobilogram> map = TreeRangeMap.create();
-    Set<RetentionTimeMobilityDataPoint> leftoverDataPoints = new TreeSet<>((o1, o2) -> {
-      if (o1.getIntensity() > o2.getIntensity()) {
-        return -1;
-      }
-      return 1;
-    });
-
-    for (final var dp : dps) {
-      TempMobilogram mobilogram = map.get(dp.getMZ());
-      if (mobilogram == null) {
-        final Range<Double> proposed = tolerance.getToleranceRange(dp.getMZ());
-        final Range<Double> actual = SpectraMerging.createNewNonOverlappingRange(map, proposed);
-        if (proposed.equals(actual)) {
-          mobilogram = new TempMobilogram();
-          map.put(actual, mobilogram);
-        } else {
-          leftoverDataPoints.add(dp);
-          continue;
-        }
-      }
-      final RetentionTimeMobilityDataPoint previousDp = mobilogram.keepBetterFittingDataPoint(dp);
-      if (previousDp != null) {
-        leftoverDataPoints.add(previousDp);
-      }
-    }
-
-    Set<TempMobilogram> mobilograms = new HashSet<>(map.asMapOfRanges().values());
-
-    if (!leftoverDataPoints.isEmpty()) {
-      if (enableRecursive && leftoverDataPoints.size() > RECURSIVE_THRESHOLD) {
-        Set<TempMobilogram> recursiveMobilograms = calcMobilograms(leftoverDataPoints, tolerance);
-//        logger.finest(() -> "Created additional " + recursiveMobilograms.size()
-//            + " mobilograms recursively from " + leftoverDataPoints.size() + " datapoints. "
-//            + leftoverDataPoints.stream().findFirst().get().getMobilityScan().getFrame()
-//            .getFrameId());
-        mobilograms.addAll(recursiveMobilograms);
-      }
-    }
-    return mobilograms;
-  }
-
-  private List<BuildingIonMobilitySeries> storeBuldingMobilograms(
-      final Set<TempMobilogram> traces) {
-    List<BuildingIonMobilitySeries> storedTraces = new ArrayList<>(traces.size());
-    for (TempMobilogram trace : traces) {
-      final BuildingIonMobilitySeries building = trace.toBuildingSeries(tempStorage);
-      storedTraces.add(building);
-    }
-    return storedTraces;
-  }
-
   @Nullable
   private List<TempIMTrace> createTempIMTraces(
       Collection<BuildingIonMobilitySeries> ionMobilitySeries, MZTolerance tolerance) {
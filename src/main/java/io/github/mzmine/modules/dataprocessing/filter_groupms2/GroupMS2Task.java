@@ -26,7 +26,6 @@
 package io.github.mzmine.modules.dataprocessing.filter_groupms2;
 
 import com.google.common.collect.Range;
-import io.github.mzmine.datamodel.Frame;
 import io.github.mzmine.datamodel.MassList;
 import io.github.mzmine.datamodel.MergedMsMsSpectrum;
 import io.github.mzmine.datamodel.MobilityType;
@@ -39,8 +38,6 @@ import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.datamodel.features.types.MsMsInfoType;
 import io.github.mzmine.datamodel.features.types.numbers.RtMs2ApexDistanceType;
-import io.github.mzmine.datamodel.impl.MSnInfoImpl;
-import io.github.mzmine.datamodel.msms.DDAMsMsInfo;
 import io.github.mzmine.datamodel.msms.MsMsInfo;
 import io.github.mzmine.datamodel.msms.PasefMsMsInfo;
 import io.github.mzmine.modules.dataprocessing.filter_groupms2_refine.GroupedMs2RefinementTask;
@@ -51,6 +48,7 @@ import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.exceptions.MissingMassListException;
+import io.github.mzmine.util.scans.FragmentScanIndex;
 import io.github.mzmine.util.scans.FragmentScanSelection;
 import io.github.mzmine.util.scans.FragmentScanSelection.IncludeInputSpectra;
 import io.github.mzmine.util.scans.FragmentScanSorter;
@@ -62,7 +60,6 @@ import java.util.List;
 import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -214,12 +211,13 @@ public class GroupMS2Task extends AbstractTask {
    */
   @NotNull
   private List<Scan> findFragmentScans(final ModularFeature feature) {
-    final List<Scan> scans;
-    RawDataFile raw = feature.getRawDataFile();
+    final RawDataFile raw = feature.getRawDataFile();
+    final Range<Double> mzRange = mzTol.getToleranceRange(feature.getMZ());
 
-    scans = raw.stream().filter(scan -> scan.getMSLevel() > 1)
-        .filter(scan -> filterScan(scan, feature)).sorted(FragmentScanSorter.DEFAULT_TIC).toList();
-    return scans;
+    // prefilter by precursor m/z and RT with the index of the raw data file
+    return FragmentScanIndex.of(raw).getFragmentScans(rtFilter.getRtRange(feature), mzRange, 0)
+        .stream().filter(scan -> filterScan(scan, feature)).sorted(FragmentScanSorter.DEFAULT_TIC)
+        .toList();
   }
 
   /**
@@ -260,14 +258,8 @@ public class GroupMS2Task extends AbstractTask {
       }
     }
     //
-    final double precursorMZ;
-    if (scan.getMsMsInfo() instanceof MSnInfoImpl msn) {
-      precursorMZ = msn.getMS2PrecursorMz();
-    } else if (scan.getMsMsInfo() instanceof DDAMsMsInfo info) {
-      precursorMZ = info.getIsolationMz();
-    } else {
-      precursorMZ = Objects.requireNonNullElse(scan.getPrecursorMz(), 0d);
-    }
+    final double precursorMZ = Objects.requireNonNullElse(FragmentScanIndex.getPrecursorMz(scan),
+        0d);
     return rtFilter.accept(feature, scan.getRetentionTime()) && precursorMZ != 0
         && mzTol.checkWithinTolerance(feature.getMZ(), precursorMZ);
   }
@@ -285,37 +277,32 @@ public class GroupMS2Task extends AbstractTask {
     double fmz = feature.getMZ();
     Float mobility = feature.getMobility();
 
-    final List<? extends Scan> scans = feature.getRawDataFile().getScanNumbers(2).stream()
-        .filter(scan -> rtFilter.accept(feature, scan.getRetentionTime()))
-        .collect(Collectors.toList());
-
-    if (scans.isEmpty() || !(scans.get(0) instanceof Frame)) {
-      return List.of();
-    }
-
-    final List<Frame> frames = (List<Frame>) scans;
     final List<MsMsInfo> eligibleMsMsInfos = new ArrayList<>();
-    for (Frame frame : frames) {
-      frame.getImsMsMsInfos().forEach(imsMsMsInfo -> {
-        if (mzTol.checkWithinTolerance(fmz, imsMsMsInfo.getIsolationMz())) {
-          // if we have a mobility (=processed by IMS workflow), we can check for the correct range during assignment.
-          if (mobility != null) {
-            // todo: maybe revisit this for a more sophisticated range check
-            int mobilityScannumberOffset = frame.getMobilityScan(0).getMobilityScanNumber();
-            float mobility1 = (float) frame.getMobilityForMobilityScanNumber(
-                imsMsMsInfo.getSpectrumNumberRange().lowerEndpoint() - mobilityScannumberOffset);
-            float mobility2 = (float) frame.getMobilityForMobilityScanNumber(
-                imsMsMsInfo.getSpectrumNumberRange().upperEndpoint() - mobilityScannumberOffset);
-            if (Range.singleton(mobility1).span(Range.singleton(mobility2)).contains(mobility)) {
-              eligibleMsMsInfos.add(imsMsMsInfo);
-            }
-          } else {
-            // if we don't have a mobility, we can simply add the msms info.
-            eligibleMsMsInfos.add(imsMsMsInfo);
-          }
-        }
-      });
-    }
+    FragmentScanIndex.of(feature.getRawDataFile())
+        .forEachPasefMsMsInfo(rtFilter.getRtRange(feature), mzTol.getToleranceRange(fmz), 2,
+            (frame, imsMsMsInfo) -> {
+              if (!rtFilter.accept(feature, frame.getRetentionTime())) {
+                return;
+              }
+              // if we have a mobility (=processed by IMS workflow), we can check for the correct range during assignment.
+              if (mobility != null) {
+                // todo: maybe revisit this for a more sophisticated range check
+                int mobilityScannumberOffset = frame.getMobilityScan(0).getMobilityScanNumber();
+                float mobility1 = (float) frame.getMobilityForMobilityScanNumber(
+                    imsMsMsInfo.getSpectrumNumberRange().lowerEndpoint()
+                        - mobilityScannumberOffset);
+                float mobility2 = (float) frame.getMobilityForMobilityScanNumber(
+                    imsMsMsInfo.getSpectrumNumberRange().upperEndpoint()
+                        - mobilityScannumberOffset);
+                if (Range.singleton(mobility1).span(Range.singleton(mobility2))
+                    .contains(mobility)) {
+                  eligibleMsMsInfos.add(imsMsMsInfo);
+                }
+              } else {
+                // if we don't have a mobility, we can simply add the msms info.
+                eligibleMsMsInfos.add(imsMsMsInfo);
+              }
+            });
 
     if (eligibleMsMsInfos.isEmpty()) {
       return List.of();
@@ -124,6 +124,17 @@ public class Gap {
 
   }
 
+  /**
+   * Scans are offered in ascending retention time. Gaps that are finished do not need to be offered
+   * any later scan.
+   *
+   * @param rt the retention time of the next scan
+   * @return true if {@link #offerNextScan(Scan)} ignores all scans at or after this retention time
+   */
+  public boolean isFinished(float rt) {
+    return rt > rtRange.upperEndpoint();
+  }
+
   /**
    * Finalizes the gap, adds a peak
    */
@@ -268,4 +279,8 @@ public class Gap {
   public FeatureListRow getFeatureListRow() {
     return featureListRow;
   }
+
+  public Range<Float> getRtRange() {
+    return rtRange;
+  }
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.multithreaded;
+
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.Gap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Selects the gaps that are offered the next scan in a sweep over the retention time. Gaps become
+ * active when the scans reach their rt range and are dropped once they are finished. Each scan is
+ * therefore only offered to the gaps that overlap its retention time instead of all gaps of the
+ * file. The sweep requires scans in ascending retention time, otherwise all scans are offered to
+ * all gaps.
+ */
+class ActiveGaps {
+
+  private final Gap[] sortedGaps;
+  private final List<Gap> activeGaps = new ArrayList<>();
+  private final boolean sweep;
+  private int nextGap = 0;
+
+  /**
+   * @param gaps  all gaps of the file
+   * @param sweep true if the scans are offered in ascending retention time, false to offer every
+   *              scan to all gaps
+   */
+  ActiveGaps(@NotNull List<Gap> gaps, boolean sweep) {
+    this.sweep = sweep;
+    sortedGaps = gaps.toArray(Gap[]::new);
+    if (sweep) {
+      Arrays.sort(sortedGaps, Comparator.comparingDouble(gap -> gap.getRtRange().lowerEndpoint()));
+    } else {
+      activeGaps.addAll(gaps);
+    }
+  }
+
+  /**
+   * @param gaps  all gaps of the file
+   * @param scans the scans in the order they are offered
+   * @return the active gaps, sweeping if the scans are sorted by retention time
+   */
+  static ActiveGaps of(@NotNull List<Gap> gaps, @NotNull List<? extends Scan> scans) {
+    return new ActiveGaps(gaps, isSortedByRt(scans));
+  }
+
+  private static boolean isSortedByRt(List<? extends Scan> scans) {
+    for (int i = 1; i < scans.size(); i++) {
+      if (scans.get(i).getRetentionTime() < scans.get(i - 1).getRetentionTime()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Removes the finished gaps and adds the gaps that start at or before this retention time.
+   *
+   * @param rt the retention time of the next scan
+   * @return the gaps that need the next scan
+   */
+  @NotNull
+  List<Gap> next(float rt) {
+    if (!sweep) {
+      return activeGaps;
+    }
+    activeGaps.removeIf(gap -> gap.isFinished(rt));
+    while (nextGap < sortedGaps.length && sortedGaps[nextGap].getRtRange().lowerEndpoint() <= rt) {
+      final Gap gap = sortedGaps[nextGap++];
+      if (!gap.isFinished(rt)) {
+        activeGaps.add(gap);
+      }
+    }
+    return activeGaps;
+  }
+
+  boolean isSweep() {
+    return sweep;
+  }
+}
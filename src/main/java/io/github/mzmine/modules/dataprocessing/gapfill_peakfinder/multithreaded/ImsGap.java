@@ -45,6 +45,7 @@ import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.Gap;
 import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.GapDataPoint;
 import io.github.mzmine.util.RangeUtils;
 import io.github.mzmine.util.exceptions.MissingMassListException;
+import io.github.mzmine.util.scans.ScanUtils;
 import java.util.ArrayList;
 import java.util.List;
 import org.jetbrains.annotations.NotNull;
@@ -162,11 +163,10 @@ public class ImsGap extends Gap {
 
       int bestIndex = -1;
       double bestDelta = Double.POSITIVE_INFINITY;
-      for (int i = 0; i < access.getNumberOfDataPoints(); i++) {
+      for (int i = ScanUtils.indexOfFirstMz(access, mzRange.lowerEndpoint());
+          i < access.getNumberOfDataPoints(); i++) {
         final double mz = access.getMzValue(i);
-        if (mz < mzRange.lowerEndpoint()) {
-          continue;
-        } else if (mz > mzRange.upperEndpoint()) {
+        if (mz > mzRange.upperEndpoint()) {
           break;
         }
 
@@ -191,6 +191,14 @@ public class ImsGap extends Gap {
     return null;
   }
 
+  /**
+   * Peaks are continued beyond the rt range, see {@link #offerNextScan(Scan)}
+   */
+  @Override
+  public boolean isFinished(float rt) {
+    return rt > rtRange.upperEndpoint() && currentPeakDataPoints == null;
+  }
+
   @Override
   protected boolean addFeatureToRow() {
     final IonMobilogramTimeSeries trace = IonMobilogramTimeSeriesFactory.of(
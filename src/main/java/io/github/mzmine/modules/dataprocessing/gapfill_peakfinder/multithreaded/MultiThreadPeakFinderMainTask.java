@@ -27,6 +27,7 @@ package io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.multithreaded
 
 import com.google.common.util.concurrent.AtomicDouble;
 import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
@@ -39,19 +40,24 @@ import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.AllTasksFinishedListener;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.taskcontrol.impl.WrappedTask;
 import io.github.mzmine.util.MemoryMapStorage;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 /**
- * The main task creates sub tasks to perform the PeakFinder algorithm on multiple threads. Each sub
- * task performs gap filling on a number of RawDataFiles.
+ * The main task creates sub tasks to perform the PeakFinder algorithm on multiple threads. The sub
+ * tasks take RawDataFiles from a shared queue until all files are processed.
  *
  * @author Robin Schmid (robinschmid@wwu.de)
  */
@@ -66,6 +72,7 @@ class MultiThreadPeakFinderMainTask extends AbstractTask {
   private final String suffix;
   private final AtomicDouble progress = new AtomicDouble(0);
   private ModularFeatureList processedPeakList;
+  private volatile WrappedTask[] subTasks;
 
   /**
    * @param batchTasks all sub tasks are registered to the batchtasks list
@@ -153,15 +160,23 @@ class MultiThreadPeakFinderMainTask extends AbstractTask {
       }
     };
 
-    // start
-    MZmineCore.getTaskController().addTasks(tasks.toArray(AbstractTask[]::new));
+    // start and wait till finish - the listener sets the final status of this task
+    subTasks = MZmineCore.getTaskController().addTasks(tasks.toArray(AbstractTask[]::new));
+    try {
+      MZmineCore.getTaskController().awaitTasks(subTasks);
+    } catch (InterruptedException e) {
+      logger.log(Level.SEVERE, "Interrupted while waiting for gap filling sub tasks", e);
+      cancel();
+    }
+  }
 
-    // wait till finish
-    while (!(isCanceled() || isFinished())) {
-      try {
-        Thread.sleep(100);
-      } catch (InterruptedException e) {
-        logger.log(Level.SEVERE, "Error in GNPS export/submit task", e);
+  @Override
+  public void cancel() {
+    super.cancel();
+    final WrappedTask[] tasks = subTasks;
+    if (tasks != null) {
+      for (WrappedTask task : tasks) {
+        task.getActualTask().cancel();
       }
     }
   }
@@ -186,29 +201,24 @@ class MultiThreadPeakFinderMainTask extends AbstractTask {
   }
 
   /**
-   * Distributes the RawDataFiles on different tasks
+   * Creates the sub tasks that share a queue of RawDataFiles. Each task takes the next file when it
+   * is done, so a slow file does not hold back other files. Files with the most scans are queued
+   * first.
    */
   private List<AbstractTask> createSubTasks(int raw, int maxRunningThreads) {
-    int numPerTask = raw / maxRunningThreads;
-    int rest = raw % maxRunningThreads;
-    List<AbstractTask> tasks = new ArrayList<>();
-    for (int i = 0; i < maxRunningThreads; i++) {
-      int start = numPerTask * i;
-      int endexcl = numPerTask * (i + 1);
-      // add one from the rest
-      if (rest > 0) {
-        start += Math.min(i, rest);
-        endexcl += Math.min(i + 1, rest);
-      }
-
-      if (i == maxRunningThreads - 1) {
-        endexcl = raw;
-      }
+    final List<RawDataFile> files = new ArrayList<>(processedPeakList.getRawDataFiles());
+    files.sort(Comparator.comparingInt(
+        (RawDataFile file) -> peakList.getSeletedScans(file).size()).reversed());
+    final Queue<RawDataFile> queue = new ConcurrentLinkedQueue<>(files);
+    final int totalScans = files.stream().mapToInt(file -> peakList.getSeletedScans(file).size())
+        .sum();
+    final AtomicInteger processedScans = new AtomicInteger(0);
 
+    List<AbstractTask> tasks = new ArrayList<>();
+    for (int i = 0; i < Math.min(raw, maxRunningThreads); i++) {
       // create task
-      tasks.add(
-          new MultiThreadPeakFinderTask(peakList, processedPeakList, parameters, start, endexcl, i,
-              getModuleCallDate()));
+      tasks.add(new MultiThreadPeakFinderTask(peakList, processedPeakList, parameters, queue,
+          processedScans, totalScans, i, getModuleCallDate()));
     }
     return tasks;
   }
@@ -30,6 +30,7 @@ import io.github.mzmine.datamodel.FeatureStatus;
 import io.github.mzmine.datamodel.Frame;
 import io.github.mzmine.datamodel.IMSRawDataFile;
 import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.data_access.BinningMobilogramDataAccess;
 import io.github.mzmine.datamodel.data_access.EfficientDataAccess;
 import io.github.mzmine.datamodel.data_access.EfficientDataAccess.MobilityScanDataType;
@@ -50,6 +51,7 @@ import io.github.mzmine.taskcontrol.TaskStatus;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
@@ -63,17 +65,22 @@ class MultiThreadPeakFinderTask extends AbstractTask {
   private final double intTolerance;
   private final MZTolerance mzTolerance;
   private final RTTolerance rtTolerance;
-  private final AtomicInteger processedScans = new AtomicInteger(0);
-  // start and end (exclusive) for raw data file processing
-  private final int start;
-  private final int endexcl;
+  // raw data files shared by all sub tasks, each task takes the next file when it is done
+  private final Queue<RawDataFile> dataFiles;
+  // progress shared by all sub tasks
+  private final AtomicInteger processedScans;
+  private final int totalScans;
   private final int taskIndex;
   private final int minDataPoints;
-  private int totalScans;
 
+  /**
+   * @param dataFiles      queue of raw data files shared by all sub tasks
+   * @param processedScans processed scans of all sub tasks
+   * @param totalScans     the number of scans of all raw data files
+   */
   MultiThreadPeakFinderTask(ModularFeatureList peakList, ModularFeatureList processedPeakList,
-      ParameterSet parameters, int start, int endexcl, int taskIndex,
-      @NotNull Instant moduleCallDate) {
+      ParameterSet parameters, Queue<RawDataFile> dataFiles, AtomicInteger processedScans,
+      int totalScans, int taskIndex, @NotNull Instant moduleCallDate) {
     super(null, moduleCallDate);
 
     this.taskIndex = taskIndex;
@@ -86,29 +93,22 @@ class MultiThreadPeakFinderTask extends AbstractTask {
     rtTolerance = parameters.getValue(MultiThreadPeakFinderParameters.RTTolerance);
     minDataPoints = parameters.getValue(MultiThreadPeakFinderParameters.minDataPoints);
 
-    this.start = start;
-    this.endexcl = endexcl;
+    this.dataFiles = dataFiles;
+    this.processedScans = processedScans;
+    this.totalScans = totalScans;
   }
 
   public void run() {
 
     setStatus(TaskStatus.PROCESSING);
-    logger.info(
-        "Running multithreaded gap filler " + taskIndex + " on raw files " + (start + 1) + "-"
-        + endexcl + " of pkl:" + peakList);
-
-    int totalDataFiles = endexcl - start;
-    // Calculate total number of scans in all files
-    for (int i = start; i < endexcl; i++) {
-      RawDataFile dataFile = peakList.getRawDataFile(i);
-      totalScans += peakList.getSeletedScans(dataFile).size();
-    }
+    logger.info("Running multithreaded gap filler " + taskIndex + " on pkl:" + peakList);
 
     int filled = 0;
+    int processedDataFiles = 0;
 
-    // Process all raw data files
-    for (int i = start; i < endexcl; i++) {
-      RawDataFile dataFile = peakList.getRawDataFile(i);
+    // Process raw data files until all files are taken
+    RawDataFile dataFile;
+    while ((dataFile = dataFiles.poll()) != null) {
       final BinningMobilogramDataAccess mobilogramAccess = // todo how to determine previous bin width for an aligned list?
           dataFile instanceof IMSRawDataFile ? EfficientDataAccess.of((IMSRawDataFile) dataFile,
               BinningMobilogramDataAccess.getRecommendedBinWidth((IMSRawDataFile) dataFile)) : null;
@@ -148,7 +148,7 @@ class MultiThreadPeakFinderTask extends AbstractTask {
 
       // Stop processing this file if there are no gaps
       if (gaps.isEmpty()) {
-        processedScans.addAndGet(dataFile.getNumOfScans());
+        processedScans.addAndGet(peakList.getSeletedScans(dataFile).size());
         continue;
       }
 
@@ -166,23 +166,20 @@ class MultiThreadPeakFinderTask extends AbstractTask {
       }
 
       // log progress for long running tasks, different levels
-      final int processedDataFiles = i - start + 1;
-      if (processedDataFiles % 5 == 0) {
-        logger.fine(() -> String.format(
-            "Multithreaded gap filler (%d): %d of %d raw files processed (%.1f %%)", taskIndex,
-            processedDataFiles, totalDataFiles,
-            (processedDataFiles / (float) totalDataFiles) * 100));
+      processedDataFiles++;
+      final int processed = processedDataFiles;
+      if (processed % 5 == 0) {
+        logger.fine(() -> String.format("Multithreaded gap filler (%d): %d raw files processed",
+            taskIndex, processed));
       } else {
-        logger.finest(() -> String.format(
-            "Multithreaded gap filler (%d): %d of %d raw files processed (%.1f %%)", taskIndex,
-            processedDataFiles, totalDataFiles,
-            (processedDataFiles / (float) totalDataFiles) * 100));
+        logger.finest(() -> String.format("Multithreaded gap filler (%d): %d raw files processed",
+            taskIndex, processed));
       }
     }
 
     logger.info(String.format(
-        "Finished sub task: Multithreaded gap filler %d on raw files %d-%d in feature list %s. (Gaps filled: %d)",
-        taskIndex, (start + 1), endexcl, peakList.toString(), filled));
+        "Finished sub task: Multithreaded gap filler %d on %d raw files in feature list %s. (Gaps filled: %d)",
+        taskIndex, processedDataFiles, peakList.toString(), filled));
     setStatus(TaskStatus.FINISHED);
   }
 
@@ -203,15 +200,19 @@ class MultiThreadPeakFinderTask extends AbstractTask {
   }
 
   public String getTaskDescription() {
-    return "Sub task " + taskIndex + ": Gap filling on raw files " + (start + 1) + "-" + endexcl
-           + " of pkl:" + peakList;
+    return "Sub task " + taskIndex + ": Gap filling of pkl:" + peakList;
   }
 
+  /**
+   * Offers the scans to the gaps in a sweep over the retention time, see {@link ActiveGaps}.
+   */
   private void processFile(RawDataFile file, List<Gap> gaps) {
+    final List<? extends Scan> scans = peakList.getSeletedScans(file);
+    final ActiveGaps activeGaps = ActiveGaps.of(gaps, scans);
+
     if (file instanceof IMSRawDataFile imsFile && peakList.hasFeatureType(MobilityType.class)) {
       final MobilityScanDataAccess access = new MobilityScanDataAccess(imsFile,
-          MobilityScanDataType.CENTROID, (List<Frame>) peakList.getSeletedScans(file));
-      List<ImsGap> imsGaps = (List<ImsGap>) (List<? extends Gap>) gaps;
+          MobilityScanDataType.CENTROID, (List<Frame>) scans);
 
       while (access.hasNextFrame()) {
         if (isCanceled()) {
@@ -219,7 +220,7 @@ class MultiThreadPeakFinderTask extends AbstractTask {
         }
 
         final Frame frame = access.nextFrame();
-        for (ImsGap gap : imsGaps) {
+        for (Gap gap : activeGaps.next(frame.getRetentionTime())) {
           access.resetMobilityScan();
           gap.offerNextScan(access);
         }
@@ -230,14 +231,14 @@ class MultiThreadPeakFinderTask extends AbstractTask {
       // no IMS dimension
 
       final ScanDataAccess scanAccess = EfficientDataAccess.of(file, ScanDataType.CENTROID,
-          peakList.getSeletedScans(file));
+          scans);
       while (scanAccess.hasNextScan()) {
         if (isCanceled()) {
           return;
         }
-        scanAccess.nextScan();
-        // Feed this scan to all gaps
-        for (Gap gap : gaps) {
+        final Scan scan = scanAccess.nextScan();
+        // Feed this scan to all gaps in its retention time
+        for (Gap gap : activeGaps.next(scan.getRetentionTime())) {
           gap.offerNextScan(scanAccess);
         }
 
@@ -244,54 +244,38 @@ public class FeatureCorrelationUtil {
       // index offset between f1 and f2 data arrays (not all features are based on the same scans)
       int maxIndexInB = scansB.indexOf(scansA.get(maxIndexOfA));
 
-      // save max and min of intensity of val1(x)
-      List<double[]> corrData = new ArrayList<>();
-
-      // add all data points <=max
-      int i1 = maxIndexOfA;
-      int i2 = maxIndexInB;
-      while (i1 >= 0 && i2 >= 0) {
-        Scan s1 = scansA.get(i1);
-        Scan s2 = scansB.get(i2);
-        // add point, if not break
-        if (s1 == s2 && intensities1[i1] >= noiseLevelShapeCorr
-            && intensities2[i2] >= noiseLevelShapeCorr) {
-          corrData.add(new double[]{intensities1[i1], intensities2[i2]});
-        } else {
-          // end of feature found
-          break;
-        }
-        i1--;
-        i2--;
+      // count all data points <=max first, only copy the data if all filters are met
+      int numLeft = 0;
+      while (isShapeCorrDataPoint(scansA, scansB, intensities1, intensities2,
+          maxIndexOfA - numLeft, maxIndexInB - numLeft, noiseLevelShapeCorr)) {
+        numLeft++;
       }
 
       // check min data points left from apex
-      int left = corrData.size() - 1;
+      int left = numLeft - 1;
       if (left < minCorrDPOnFeatureEdge) {
         return null;
       }
 
-      // add all dp>max
-      i1 = maxIndexOfA + 1;
-      i2 = maxIndexInB + 1;
-      while (i1 < scansA.size() && i2 < scansB.size()) {
-        Scan s1 = scansA.get(i1);
-        Scan s2 = scansB.get(i2);
-        // add point, if not break
-        if (s1 == s2 && intensities1[i1] >= noiseLevelShapeCorr
-            && intensities2[i2] >= noiseLevelShapeCorr) {
-          corrData.add(new double[]{intensities1[i1], intensities2[i2]});
-        } else {
-          // end of peak found
-          break;
-        }
-        i1++;
-        i2++;
+      // count all dp>max
+      int right = 0;
+      while (isShapeCorrDataPoint(scansA, scansB, intensities1, intensities2,
+          maxIndexOfA + 1 + right, maxIndexInB + 1 + right, noiseLevelShapeCorr)) {
+        right++;
       }
       // check right and total dp
-      int right = corrData.size() - 1 - left;
+      int total = numLeft + right;
       // return pearson r
-      if (corrData.size() >= minCorrelatedDataPoints && right >= minCorrDPOnFeatureEdge) {
+      if (total >= minCorrelatedDataPoints && right >= minCorrDPOnFeatureEdge) {
+        // apex to the left, then right of the apex
+        final double[][] corrData = new double[total][];
+        for (int i = 0; i < numLeft; i++) {
+          corrData[i] = new double[]{intensities1[maxIndexOfA - i], intensities2[maxIndexInB - i]};
+        }
+        for (int i = 0; i < right; i++) {
+          corrData[numLeft + i] = new double[]{intensities1[maxIndexOfA + 1 + i],
+              intensities2[maxIndexInB + 1 + i]};
+        }
         return new FullCorrelationData(corrData);
       }
     } else {
@@ -326,6 +310,17 @@ public class FeatureCorrelationUtil {
     return null;
   }
 
+  /**
+   * @return true if both features have a data point in the same scan at these indices, both above
+   * the noise level
+   */
+  private static boolean isShapeCorrDataPoint(List<Scan> scansA, List<Scan> scansB,
+      double[] intensities1, double[] intensities2, int i1, int i2, double noiseLevelShapeCorr) {
+    return i1 >= 0 && i2 >= 0 && i1 < scansA.size() && i2 < scansB.size()
+        && scansA.get(i1) == scansB.get(i2) && intensities1[i1] >= noiseLevelShapeCorr
+        && intensities2[i2] >= noiseLevelShapeCorr;
+  }
+
   /**
    * Find index of maximum value
    */
@@ -43,6 +43,7 @@ import io.github.mzmine.datamodel.features.correlation.RowsRelationship.Type;
 import io.github.mzmine.modules.dataprocessing.group_metacorrelate.correlation.FeatureCorrelationUtil;
 import io.github.mzmine.modules.dataprocessing.group_metacorrelate.correlation.FeatureShapeCorrelationParameters;
 import io.github.mzmine.modules.dataprocessing.group_metacorrelate.correlation.InterSampleHeightCorrParameters;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.MinimumFeatureFilter;
 import io.github.mzmine.parameters.parametertypes.MinimumFeatureFilter.OverlapResult;
@@ -55,6 +56,7 @@ import io.github.mzmine.util.FeatureListRowSorter;
 import io.github.mzmine.util.SortingDirection;
 import io.github.mzmine.util.SortingProperty;
 import io.github.mzmine.util.maths.similarity.SimilarityMeasure;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import java.text.MessageFormat;
 import java.time.Instant;
 import java.util.List;
@@ -273,43 +275,45 @@ public class CorrelateGroupingTask extends AbstractTask {
     // preload all intensity values
     CachedFeatureDataAccess data = new CachedFeatureDataAccess(rows, false, true);
 
+    if (rtTolerance != null && minFFilter.isRtOverlapRequired(raws.size())) {
+      // only pairs of rows with features in RT tolerance can pass the overlap filter
+      compareRowsInRtBand(rows, raws, data, map);
+    } else {
+      compareAllRows(rows, raws, data, map);
+    }
+
+    // number of f2f correlations
+    int nR2Rcorr = 0;
+    int nF2F = 0;
+    for (R2RCorrelationData r2r : map.values()) {
+      if (r2r instanceof R2RFullCorrelationData corrData) {
+        if (corrData.hasFeatureShapeCorrelation()) {
+          nR2Rcorr++;
+          nF2F += corrData.getCorrFeatureShape().size();
+        }
+      }
+    }
+
+    logger.info(MessageFormat.format(
+        "Corr: {2} row-2-row correlations done with {0} R2R correlations based on {1} F2F correlations",
+        nR2Rcorr, nF2F, map.size()));
+  }
+
+  /**
+   * Compares every row to all following rows
+   */
+  private void compareAllRows(FeatureListRow[] rows, List<RawDataFile> raws,
+      CachedFeatureDataAccess data, R2RMap<R2RCorrelationData> map) {
     // for all rows - do in parallel
     IntStream.range(0, totalRows - 1).parallel().forEach(i -> {
       if (!isCanceled()) {
         try {
-          FeatureListRow row = rows[i];
           // compare to the rest of rows
           for (int x = i + 1; x < totalRows; x++) {
             if (isCanceled()) {
               break;
             }
-
-            FeatureListRow row2 = rows[x];
-
-            // has a minimum number/% of overlapping features in all samples / in at least one
-            // groups
-            OverlapResult overlap =
-                minFFilter.filterMinFeaturesOverlap(data, raws, row, row2, rtTolerance);
-            if (overlap.equals(OverlapResult.TRUE)) {
-              // correlate if in rt range
-              R2RFullCorrelationData corr =
-                  FeatureCorrelationUtil.corrR2R(data, raws, row, row2, groupByFShapeCorr,
-                      minCorrelatedDataPoints, minCorrDPOnFeatureEdge, minDPHeightCorr, minHeight,
-                      noiseLevelCorr, useHeightCorrFilter, heightSimMeasure, minHeightCorr);
-
-              // corr is even present if only grouping by retention time
-              // corr is only null if heightCorrelation was not met
-              if (corr != null && //
-                  (!groupByFShapeCorr || FeatureCorrelationUtil.checkFShapeCorr(groupedPKL,
-                      minFFilter, corr, useTotalShapeCorrFilter, minTotalShapeCorrR,
-                      minShapeCorrR,
-                      shapeSimMeasure))) {
-                // add to map
-                // can be because of any combination of
-                // retention time, shape correlation, non-negative height correlation
-                map.add(row, row2, corr);
-              }
-            }
+            compareRows(rows[i], rows[x], raws, data, map);
           }
           stageProgress.addAndGet(1d / totalRows);
         } catch (Exception e) {
@@ -318,22 +322,73 @@ public class CorrelateGroupingTask extends AbstractTask {
         }
       }
     });
+  }
 
-    // number of f2f correlations
-    int nR2Rcorr = 0;
-    int nF2F = 0;
-    for (R2RCorrelationData r2r : map.values()) {
-      if (r2r instanceof R2RFullCorrelationData corrData) {
-        if (corrData.hasFeatureShapeCorrelation()) {
-          nR2Rcorr++;
-          nF2F += corrData.getCorrFeatureShape().size();
+  /**
+   * Compares each row only to the rows with features in RT tolerance, see {@link RtBandJoin}. The
+   * sorted rows are split into chunks with a similar number of row pairs for the parallel
+   * comparison. Rows are compared in the same orientation as in {@link #compareAllRows}.
+   *
+   * @param rows rows sorted by average RT
+   */
+  private void compareRowsInRtBand(FeatureListRow[] rows, List<RawDataFile> raws,
+      CachedFeatureDataAccess data, R2RMap<R2RCorrelationData> map) {
+    final RtBandJoin band = new RtBandJoin(rows, rtTolerance);
+    final long totalPairs = band.getTotalPairs();
+    logger.fine(() -> String.format("Corr: Comparing %d row pairs in RT tolerance of %d rows",
+        totalPairs, rows.length));
+    if (totalPairs == 0) {
+      return;
+    }
+
+    final int numChunks = MZmineCore.getConfiguration().getNumOfThreads() * 4;
+    final IntArrayList chunkStarts = band.splitIntoChunks(numChunks);
+
+    IntStream.range(0, chunkStarts.size() - 1).parallel().forEach(chunk -> {
+      final int start = chunkStarts.getInt(chunk);
+      final int end = chunkStarts.getInt(chunk + 1);
+      try {
+        for (int k = start; k < end && !isCanceled(); k++) {
+          final int i = band.getRow(k);
+          // same orientation as the full comparison
+          band.forEachPartner(k,
+              x -> compareRows(rows[Math.min(i, x)], rows[Math.max(i, x)], raws, data, map));
         }
+        stageProgress.addAndGet((double) band.getPairs(start, end) / totalPairs);
+      } catch (Exception e) {
+        logger.log(Level.SEVERE, "Error in parallel R2Rcomparison: " + e.getMessage(), e);
+        throw new MSDKRuntimeException(e);
       }
-    }
+    });
+  }
 
-    logger.info(MessageFormat.format(
-        "Corr: {2} row-2-row correlations done with {0} R2R correlations based on {1} F2F correlations",
-        nR2Rcorr, nF2F, map.size()));
+  /**
+   * Correlates two rows and adds the correlation to the map if all filters are met
+   */
+  private void compareRows(FeatureListRow row, FeatureListRow row2, List<RawDataFile> raws,
+      CachedFeatureDataAccess data, R2RMap<R2RCorrelationData> map) {
+    // has a minimum number/% of overlapping features in all samples / in at least one
+    // groups
+    OverlapResult overlap = minFFilter.filterMinFeaturesOverlap(data, raws, row, row2,
+        rtTolerance);
+    if (overlap.equals(OverlapResult.TRUE)) {
+      // correlate if in rt range
+      R2RFullCorrelationData corr = FeatureCorrelationUtil.corrR2R(data, raws, row, row2,
+          groupByFShapeCorr, minCorrelatedDataPoints, minCorrDPOnFeatureEdge, minDPHeightCorr,
+          minHeight, noiseLevelCorr, useHeightCorrFilter, heightSimMeasure, minHeightCorr);
+
+      // corr is even present if only grouping by retention time
+      // corr is only null if heightCorrelation was not met
+      if (corr != null && //
+          (!groupByFShapeCorr || FeatureCorrelationUtil.checkFShapeCorr(groupedPKL, minFFilter,
+              corr, useTotalShapeCorrFilter, minTotalShapeCorrR, minShapeCorrR,
+              shapeSimMeasure))) {
+        // add to map
+        // can be because of any combination of
+        // retention time, shape correlation, non-negative height correlation
+        map.add(row, row2, corr);
+      }
+    }
   }
 
 }
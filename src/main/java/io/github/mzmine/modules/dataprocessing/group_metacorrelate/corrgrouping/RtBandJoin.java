@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.group_metacorrelate.corrgrouping;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.features.Feature;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Band join of rows on the retention time. Rows are sorted by their lowest feature RT and each
+ * sorted row is paired with the following rows that start before its highest feature RT plus the
+ * largest RT tolerance of the data. All pairs of rows with two features within the RT tolerance
+ * are part of the band. The tolerance range of a NaN RT contains NaN, so rows with NaN feature RTs
+ * are also paired with all other rows with NaN feature RTs.
+ */
+class RtBandJoin {
+
+  // row indices sorted by the lowest feature RT
+  private final int[] order;
+  // exclusive end of the band of each sorted row
+  private final int[] bandEnds;
+  // sorted indices of the rows with NaN feature RTs
+  private final int[] nanRows;
+  // index in nanRows of the first NaN partner after the band of each sorted row
+  private final int[] firstNaNPartners;
+  private final long[] cumulativePairs;
+
+  RtBandJoin(@NotNull FeatureListRow[] rows, @NotNull RTTolerance rtTolerance) {
+    final int n = rows.length;
+    // RT range of the features of each row
+    final float[] minRts = new float[n];
+    final float[] maxRts = new float[n];
+    final boolean[] hasNaN = new boolean[n];
+    float maxAbsRt = 0f;
+    for (int i = 0; i < n; i++) {
+      float min = Float.POSITIVE_INFINITY;
+      float max = Float.NEGATIVE_INFINITY;
+      for (Feature f : rows[i].getFeatures()) {
+        final Float rt = f.getRT();
+        if (rt == null) {
+          continue;
+        }
+        if (rt.isNaN()) {
+          hasNaN[i] = true;
+        } else {
+          min = Math.min(min, rt);
+          max = Math.max(max, rt);
+          maxAbsRt = Math.max(maxAbsRt, Math.abs(rt));
+        }
+      }
+      minRts[i] = min;
+      maxRts[i] = max;
+    }
+    // the largest tolerance for any RT (relative tolerances grow with the RT), with a margin for
+    // float rounding
+    final Range<Float> maxTolRange = rtTolerance.getToleranceRange(maxAbsRt);
+    final float tolerance =
+        (maxTolRange.upperEndpoint() - maxTolRange.lowerEndpoint()) / 2f * 1.001f + 1e-4f;
+
+    order = IntStream.range(0, n).toArray();
+    IntArrays.quickSort(order, (a, b) -> Float.compare(minRts[a], minRts[b]));
+    final float[] sortedMinRts = new float[n];
+    for (int k = 0; k < n; k++) {
+      sortedMinRts[k] = minRts[order[k]];
+    }
+
+    nanRows = IntStream.range(0, n).filter(k -> hasNaN[order[k]]).toArray();
+
+    bandEnds = new int[n];
+    firstNaNPartners = new int[n];
+    cumulativePairs = new long[n + 1];
+    for (int k = 0; k < n; k++) {
+      bandEnds[k] = Math.max(k + 1, upperBound(sortedMinRts, maxRts[order[k]] + tolerance));
+      // NaN rows within the band are already paired
+      firstNaNPartners[k] = hasNaN[order[k]] ? lowerBound(nanRows, bandEnds[k]) : nanRows.length;
+      cumulativePairs[k + 1] = cumulativePairs[k] + bandEnds[k] - k - 1 + nanRows.length
+          - firstNaNPartners[k];
+    }
+  }
+
+  /**
+   * @return the index of the first value greater or equal to the key or the length of the array
+   */
+  private static int lowerBound(int[] sorted, int key) {
+    int low = 0;
+    int high = sorted.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (sorted[mid] < key) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the index of the first value greater than the key or the length of the array
+   */
+  private static int upperBound(float[] sorted, float key) {
+    int low = 0;
+    int high = sorted.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (sorted[mid] <= key) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the number of rows
+   */
+  int size() {
+    return order.length;
+  }
+
+  /**
+   * @param k index in the sorted rows
+   * @return the index of the row in the input array
+   */
+  int getRow(int k) {
+    return order[k];
+  }
+
+  /**
+   * Passes the rows that are paired with the sorted row k to the action: the following rows in the
+   * band and the following rows with NaN feature RTs after the band if row k has a NaN feature RT.
+   * Every pair of rows is only passed for one of the two rows.
+   *
+   * @param k      index in the sorted rows
+   * @param action receives the index of each partner row in the input array
+   */
+  void forEachPartner(int k, @NotNull IntConsumer action) {
+    for (int m = k + 1; m < bandEnds[k]; m++) {
+      action.accept(order[m]);
+    }
+    for (int j = firstNaNPartners[k]; j < nanRows.length; j++) {
+      action.accept(order[nanRows[j]]);
+    }
+  }
+
+  /**
+   * @param start inclusive start index in the sorted rows
+   * @param end   exclusive end index in the sorted rows
+   * @return the number of pairs of the sorted rows from start to end
+   */
+  long getPairs(int start, int end) {
+    return cumulativePairs[end] - cumulativePairs[start];
+  }
+
+  long getTotalPairs() {
+    return cumulativePairs[order.length];
+  }
+
+  /**
+   * Splits the sorted rows into chunks with a similar number of pairs
+   *
+   * @return the start indices of the chunks followed by the number of rows
+   */
+  @NotNull
+  IntArrayList splitIntoChunks(int numChunks) {
+    final int n = order.length;
+    final long totalPairs = getTotalPairs();
+    final IntArrayList chunkStarts = new IntArrayList();
+    chunkStarts.add(0);
+    for (int k = 1; k < n && totalPairs > 0; k++) {
+      if (cumulativePairs[k] * numChunks / totalPairs >= chunkStarts.size()) {
+        chunkStarts.add(k);
+      }
+    }
+    chunkStarts.add(n);
+    return chunkStarts;
+  }
+}
@@ -333,6 +333,16 @@ public class MS2SimilarityTask extends AbstractTask {
     return aligned;
   }
 
+  /**
+   * The shift of signals in sortedB towards sortedA in the modification aware alignment of {@link
+   * #alignDataPoints(double, double, MZTolerance, DataPoint[], DataPoint[])}
+   *
+   * @return the m/z shift or NaN if the alignment is not modification aware
+   */
+  private static double modificationShift(double precursorMzA, double precursorMzB) {
+    return precursorMzA > 0 && precursorMzB > 0 ? precursorMzA - precursorMzB : Double.NaN;
+  }
+
   /**
    * Calculate overlap
    *
@@ -393,25 +403,33 @@ public class MS2SimilarityTask extends AbstractTask {
     }
     int numRows = filteredRows.size();
     LOG.log(Level.INFO, () -> MessageFormat.format("Checking MS2 similarity on {0} rows", numRows));
+    // neutral loss spectra are only created once per row
+    List<PreparedMS2Spectrum> spectra = filteredRows.parallelStream()
+        .map(data -> prepareSpectrum(data.data())).toList();
     // run in parallel
     IntStream.range(0, numRows - 1).parallel().forEach(i -> {
       if (!isCanceled()) {
+        FilteredRowData a = filteredRows.get(i);
+        PreparedMS2Spectrum spectrumA = spectra.get(i);
+        double precursorMzA = a.row().getAverageMZ();
         for (int j = i + 1; j < numRows; j++) {
           if (!isCanceled()) {
-            FilteredRowData a = filteredRows.get(i);
             FilteredRowData b = filteredRows.get(j);
-            checkR2RMs2Similarity(mapSimilarity, a.row(), b.row(), a.data(), b.data(),
-                Type.MS2_COSINE_SIM);
+            PreparedMS2Spectrum spectrumB = spectra.get(j);
+            // skip the alignment if the overlap cannot reach the minimum
+            double shift = modificationShift(precursorMzA, b.row().getAverageMZ());
+            if (PreparedMS2Spectrum.canReachOverlap(mzTolerance, spectrumB.getMzs(), null,
+                spectrumA.getMzs(), shift, minMatch)) {
+              checkR2RMs2Similarity(mapSimilarity, a.row(), b.row(), a.data(), b.data(),
+                  Type.MS2_COSINE_SIM);
+            }
 
             // check neutral loss similarity
-            if (checkNeutralLoss) {
-              // create mass diff array
-              DataPoint[] massDiffA = ScanMZDiffConverter.getAllMZDiff(a.data(), mzTolerance,
-                  minHeight, maxDPForDiff);
-              DataPoint[] massDiffB = ScanMZDiffConverter.getAllMZDiff(b.data(), mzTolerance,
-                  minHeight, maxDPForDiff);
-
-              checkR2RMs2Similarity(mapNeutralLoss, a.row(), b.row(), massDiffA, massDiffB,
+            if (checkNeutralLoss && PreparedMS2Spectrum.canReachOverlap(mzTolerance,
+                spectrumB.getNeutralLossMzs(), null, spectrumA.getNeutralLossMzs(), Double.NaN,
+                minMatch)) {
+              checkR2RMs2Similarity(mapNeutralLoss, a.row(), b.row(),
+                  spectrumA.getNeutralLosses(), spectrumB.getNeutralLosses(),
                   Type.MS2_NEUTRAL_LOSS_SIM);
             }
           }
@@ -444,6 +462,11 @@ public class MS2SimilarityTask extends AbstractTask {
     }
     int numRows = filteredRows.size();
     LOG.log(Level.INFO, () -> MessageFormat.format("Checking MS2 similarity on {0} rows", numRows));
+    // neutral loss spectra are only created once per feature
+    Map<Feature, PreparedMS2Spectrum> mapFeatureSpectra = new HashMap<>();
+    mapFeatureData.entrySet().parallelStream()
+        .map(e -> Map.entry(e.getKey(), prepareSpectrum(e.getValue())))
+        .forEachOrdered(e -> mapFeatureSpectra.put(e.getKey(), e.getValue()));
     // run in parallel
     IntStream.range(0, numRows - 1).parallel().forEach(i -> {
       if (!isCanceled()) {
@@ -452,7 +475,7 @@ public class MS2SimilarityTask extends AbstractTask {
             FeatureListRow a = filteredRows.get(i);
             FeatureListRow b = filteredRows.get(j);
 
-            checkR2RAllFeaturesMs2Similarity(mapFeatureData, a, b);
+            checkR2RAllFeaturesMs2Similarity(mapFeatureSpectra, a, b);
           }
         }
       }
@@ -462,40 +485,39 @@ public class MS2SimilarityTask extends AbstractTask {
     });
   }
 
-  private void checkR2RAllFeaturesMs2Similarity(Map<Feature, DataPoint[]> mapFeatureData,
-      FeatureListRow a, FeatureListRow b) {
+  private void checkR2RAllFeaturesMs2Similarity(
+      Map<Feature, PreparedMS2Spectrum> mapFeatureSpectra, FeatureListRow a, FeatureListRow b) {
 
     R2RSpectralSimilarityList cosineSim = new R2RSpectralSimilarityList(a, b, Type.MS2_COSINE_SIM);
     R2RSpectralSimilarityList neutralLossSim =
         checkNeutralLoss ? new R2RSpectralSimilarityList(a, b, Type.MS2_NEUTRAL_LOSS_SIM) : null;
 
-    DataPoint[] massDiffA = null;
-    DataPoint[] massDiffB = null;
-
     for (Feature fa : a.getFeatures()) {
-      DataPoint[] dpa = mapFeatureData.get(fa);
-      if (dpa != null) {
-        // create mass diff array
-        if (checkNeutralLoss) {
-          massDiffA = ScanMZDiffConverter.getAllMZDiff(dpa, mzTolerance, minHeight, maxDPForDiff);
-          Arrays.sort(massDiffA, dpSorter);
-        }
+      PreparedMS2Spectrum spectrumA = mapFeatureSpectra.get(fa);
+      if (spectrumA != null) {
         for (Feature fb : b.getFeatures()) {
-          DataPoint[] dpb = mapFeatureData.get(fb);
-          if (dpb != null) {
-            // align and check spectra
-            SpectralSimilarity spectralSim = createMS2SimModificationAware(mzTolerance, dpa, dpb,
-                minMatch, SIZE_OVERLAP, fa.getMZ(), fb.getMZ());
-            if (spectralSim != null && spectralSim.cosine() >= minCosineSimilarity) {
-              cosineSim.addSpectralSim(spectralSim);
+          PreparedMS2Spectrum spectrumB = mapFeatureSpectra.get(fb);
+          if (spectrumB != null) {
+            // align and check spectra if the overlap can reach the minimum
+            double shift = modificationShift(fa.getMZ(), fb.getMZ());
+            if (PreparedMS2Spectrum.canReachOverlap(mzTolerance, spectrumB.getMzs(), null,
+                spectrumA.getMzs(), shift, minMatch)) {
+              SpectralSimilarity spectralSim = createMS2SimModificationAware(mzTolerance,
+                  spectrumA.getData(), spectrumB.getData(), minMatch, SIZE_OVERLAP, fa.getMZ(),
+                  fb.getMZ());
+              if (spectralSim != null && spectralSim.cosine() >= minCosineSimilarity) {
+                cosineSim.addSpectralSim(spectralSim);
+              }
             }
 
             // alignment and sim of neutral losses
-            if (checkNeutralLoss) {
-              massDiffB = ScanMZDiffConverter.getAllMZDiff(dpb, mzTolerance, maxDPForDiff);
-              Arrays.sort(massDiffB, dpSorter);
-              SpectralSimilarity massDiffSim = createMS2Sim(mzTolerance, massDiffA, massDiffB,
-                  minMatch, DIFF_OVERLAP);
+            // the overlap is the sum of the minimum counts - bounded by the counts of b
+            if (checkNeutralLoss && PreparedMS2Spectrum.canReachOverlap(mzTolerance,
+                spectrumB.getNeutralLossMzs(), spectrumB.getNeutralLossCounts(),
+                spectrumA.getNeutralLossMzs(), Double.NaN, minMatch)) {
+              SpectralSimilarity massDiffSim = createMS2Sim(mzTolerance,
+                  spectrumA.getNeutralLosses(), spectrumB.getNeutralLosses(), minMatch,
+                  DIFF_OVERLAP);
 
               if (massDiffSim != null && massDiffSim.cosine() >= minCosineSimilarity) {
                 neutralLossSim.addSpectralSim(massDiffSim);
@@ -514,6 +536,15 @@ public class MS2SimilarityTask extends AbstractTask {
     }
   }
 
+  /**
+   * @param sortedData filtered data points sorted by intensity
+   * @return the spectrum with precomputed neutral losses if needed
+   */
+  private PreparedMS2Spectrum prepareSpectrum(DataPoint[] sortedData) {
+    return new PreparedMS2Spectrum(sortedData, checkNeutralLoss, mzTolerance, minHeight,
+        maxDPForDiff);
+  }
+
   /**
    * Checks the minimum requirements for a row to be matched by MS2 similarity (minimum number of
    * data points and MS2 data availability)
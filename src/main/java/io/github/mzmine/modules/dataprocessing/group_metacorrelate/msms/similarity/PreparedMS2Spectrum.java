@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.group_metacorrelate.msms.similarity;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.scans.ScanMZDiffConverter;
+import java.util.Arrays;
+import java.util.Comparator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Filtered MS2 data of a row or feature, prepared once for all pairwise comparisons. Holds the data
+ * points sorted by intensity (for the alignment) and primitive m/z arrays sorted by m/z for the
+ * prefilter {@link #canReachOverlap(MZTolerance, double[], double[], double[], double, double)}.
+ * The neutral loss (m/z difference) spectrum is computed once instead of once per pair.
+ */
+class PreparedMS2Spectrum {
+
+  private final DataPoint[] data;
+  private final double[] mzs;
+  private final DataPoint @Nullable [] neutralLosses;
+  private final double @Nullable [] neutralLossMzs;
+  private final double @Nullable [] neutralLossCounts;
+
+  /**
+   * @param sortedData   data points sorted by intensity
+   * @param neutralLoss  true to compute the neutral loss spectrum
+   * @param mzTolerance  tolerance to group m/z differences
+   * @param minHeight    minimum height of signals to compute m/z differences
+   * @param maxDPForDiff maximum number of most abundant signals to compute m/z differences
+   */
+  PreparedMS2Spectrum(@NotNull DataPoint[] sortedData, boolean neutralLoss,
+      MZTolerance mzTolerance, double minHeight, int maxDPForDiff) {
+    this.data = sortedData;
+    mzs = sortedByMz(sortedData)[0];
+    if (neutralLoss) {
+      neutralLosses = ScanMZDiffConverter.getAllMZDiff(sortedData, mzTolerance, minHeight,
+          maxDPForDiff);
+      Arrays.sort(neutralLosses, MS2SimilarityTask.dpSorter);
+      final double[][] sorted = sortedByMz(neutralLosses);
+      neutralLossMzs = sorted[0];
+      neutralLossCounts = sorted[1];
+    } else {
+      neutralLosses = null;
+      neutralLossMzs = null;
+      neutralLossCounts = null;
+    }
+  }
+
+  /**
+   * @return m/z and intensity arrays sorted by m/z
+   */
+  private static double[][] sortedByMz(DataPoint[] dps) {
+    final DataPoint[] sorted = dps.clone();
+    Arrays.sort(sorted, Comparator.comparingDouble(DataPoint::getMZ));
+    final double[] mzs = new double[sorted.length];
+    final double[] intensities = new double[sorted.length];
+    for (int i = 0; i < sorted.length; i++) {
+      mzs[i] = sorted[i].getMZ();
+      intensities[i] = sorted[i].getIntensity();
+    }
+    return new double[][]{mzs, intensities};
+  }
+
+  /**
+   * Necessary condition for the overlap of an alignment in {@link ScanAlignment}: every query
+   * signal can only be matched to one target signal within the tolerance of the query m/z (or of
+   * the shifted query m/z). The sum of the weights of all query signals with at least one target
+   * signal in range is an upper bound of the overlap.
+   *
+   * @param queryMzs     m/z values of the signals that are matched in the alignment
+   * @param queryWeights upper bound of the overlap contribution of each query signal or null for 1
+   * @param targetMzs    m/z values of the other spectrum sorted ascending
+   * @param shift        modification shift of query m/z values or NaN to only match directly
+   * @param minOverlap   the minimum overlap
+   * @return false if the overlap is always below minOverlap
+   */
+  static boolean canReachOverlap(MZTolerance mzTol, double[] queryMzs,
+      double @Nullable [] queryWeights, double[] targetMzs, double shift, double minOverlap) {
+    if (minOverlap <= 0) {
+      return true;
+    }
+    final boolean checkShift = !Double.isNaN(shift);
+    double overlap = 0;
+    for (int i = 0; i < queryMzs.length; i++) {
+      final double mz = queryMzs[i];
+      if (hasSignalInTolerance(mzTol, mz, targetMzs) || (checkShift && hasSignalInTolerance(
+          mzTol, mz + shift, targetMzs))) {
+        overlap += queryWeights == null ? 1 : queryWeights[i];
+        if (overlap >= minOverlap) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Same as {@link MZTolerance#checkWithinTolerance(double, double)} with center mz for all sorted
+   * values
+   */
+  private static boolean hasSignalInTolerance(MZTolerance mzTol, double mz, double[] sortedMzs) {
+    final double tolerance = mzTol.getMzToleranceForMass(mz);
+    final double lower = mz - tolerance;
+    final double upper = mz + tolerance;
+    // first value >= lower
+    int low = 0;
+    int high = sortedMzs.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (sortedMzs[mid] < lower) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low < sortedMzs.length && sortedMzs[low] <= upper;
+  }
+
+  /**
+   * @return the filtered data points sorted by intensity
+   */
+  DataPoint[] getData() {
+    return data;
+  }
+
+  /**
+   * @return m/z values sorted ascending
+   */
+  double[] getMzs() {
+    return mzs;
+  }
+
+  /**
+   * @return the neutral loss spectrum sorted by intensity (number of occurrences)
+   */
+  DataPoint @Nullable [] getNeutralLosses() {
+    return neutralLosses;
+  }
+
+  /**
+   * @return the neutral loss m/z values sorted ascending
+   */
+  double @Nullable [] getNeutralLossMzs() {
+    return neutralLossMzs;
+  }
+
+  /**
+   * @return number of occurrences of each neutral loss in the order of {@link
+   * #getNeutralLossMzs()}
+   */
+  double @Nullable [] getNeutralLossCounts() {
+    return neutralLossCounts;
+  }
+}
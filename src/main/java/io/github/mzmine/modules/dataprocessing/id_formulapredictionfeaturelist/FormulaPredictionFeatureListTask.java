@@ -52,10 +52,14 @@ import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.FormulaUtils;
+import java.text.NumberFormat;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.openscience.cdk.formula.MolecularFormulaGenerator;
@@ -84,11 +88,17 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
   private Double sortPPMFactor;
   private Double sortMSMSFactor;
   private Double sortIsotopeFactor;
-  private MolecularFormulaGenerator generator;
-  private String message;
-  private int totalRows, finishedRows;
+  /**
+   * The CDK round robin generator keeps its mass decomposers in a static, unsynchronized cache and
+   * initializes them lazily, so generators are only created under this lock.
+   */
+  private static final Object GENERATOR_LOCK = new Object();
+  // generators of the rows in progress
+  private final Set<MolecularFormulaGenerator> generators = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger finishedRows = new AtomicInteger(0);
+  private volatile String message;
+  private int totalRows;
   private final Boolean isSorting;
-  private List<ResultFormula> resultingFormulas;
   private Range<Double> rdbeRange;
   private Boolean rdbeIsInteger;
   private Boolean checkHCRatio;
@@ -184,7 +194,7 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
     if (totalRows == 0) {
       return 0.0;
     }
-    return (double) finishedRows / (double) totalRows;
+    return (double) finishedRows.get() / (double) totalRows;
   }
 
   @Override
@@ -202,23 +212,64 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
     featureList.addRowType(DataTypes.get(
         io.github.mzmine.datamodel.features.types.annotations.formula.FormulaListType.class));
 
-    for (FeatureListRow row : featureList.getRows()) {
-
-      if (row.getPeakIdentities().size() > 0) {
-        continue;
+    // rows are independent, each prediction uses its own formula generator
+    featureList.getRows().parallelStream().forEach(row -> {
+      if (isCanceled() || getStatus().equals(TaskStatus.ERROR)) {
+        return;
+      }
+      if (row.getPeakIdentities().isEmpty()) {
+        predictFormulas(row);
       }
-      this.resultingFormulas = new ArrayList<>();
+      finishedRows.incrementAndGet();
+    });
 
-      double searchedMass = (row.getAverageMZ() - ionType.getAddedMass()) * charge;
+    if (isCanceled() || getStatus().equals(TaskStatus.ERROR)) {
+      return;
+    }
 
-      message = "Formula prediction for " + MZmineCore.getConfiguration().getMZFormat()
-          .format(searchedMass);
+    featureList.getAppliedMethods().add(
+        new SimpleFeatureListAppliedMethod(FormulaPredictionFeatureListModule.class, parameters,
+            getModuleCallDate()));
 
-      Range<Double> massRange = mzTolerance.getToleranceRange(searchedMass);
+    logger.finest("Finished formula search for all the features");
 
-      IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+    setStatus(TaskStatus.FINISHED);
+
+  }
+
+  /**
+   * Generates all formulas within the mass tolerance of the row and sets the best formulas that
+   * match all constraints
+   */
+  private void predictFormulas(FeatureListRow row) {
+    List<ResultFormula> resultingFormulas = new ArrayList<>();
+
+    double searchedMass = (row.getAverageMZ() - ionType.getAddedMass()) * charge;
+
+    // the shared format is not thread safe
+    final NumberFormat mzFormat = (NumberFormat) MZmineCore.getConfiguration().getMZFormat()
+        .clone();
+    message = "Formula prediction for " + mzFormat.format(searchedMass);
+
+    Range<Double> massRange = mzTolerance.getToleranceRange(searchedMass);
+
+    IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+    final MolecularFormulaGenerator generator;
+    synchronized (GENERATOR_LOCK) {
       generator = new MolecularFormulaGenerator(builder, massRange.lowerEndpoint(),
           massRange.upperEndpoint(), elementCounts);
+    }
+    generators.add(generator);
+
+    // the same for all formulas of this row
+    IsotopePattern detectedPattern = checkIsotopes ? row.getBestIsotopePattern() : null;
+    Scan msmsScan = checkMSMS ? row.getMostIntenseFragmentScan() : null;
+
+    try {
+      // cancel() may have run before the generator was added
+      if (isCanceled()) {
+        return;
+      }
 
       IMolecularFormula cdkFormula;
 
@@ -226,7 +277,8 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
       // for sorting
       while ((cdkFormula = generator.getNextFormula()) != null) {
         // Mass is ok, so test other constraints
-        ResultFormula molf = checkConstraints(cdkFormula, row, searchedMass);
+        ResultFormula molf = checkConstraints(cdkFormula, detectedPattern, msmsScan,
+            searchedMass);
 
         if (isCanceled() || getStatus().equals(TaskStatus.ERROR)) {
           return;
@@ -236,43 +288,29 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
           resultingFormulas.add(molf);
         }
       }
-
-      if (isCanceled()) {
-        return;
-      }
-
-      // Add the new formula entry top results
-      if (!resultingFormulas.isEmpty()) {
-        row.setFormulas(resultingFormulas.subList(0,
-            Math.min(resultingFormulas.size() - 1, maxBestFormulasPerFeature)));
-      }
-
-      if (isCanceled()) {
-        return;
-      }
-      finishedRows++;
+    } finally {
+      generators.remove(generator);
     }
 
     if (isCanceled()) {
       return;
     }
 
-    featureList.getAppliedMethods().add(
-        new SimpleFeatureListAppliedMethod(FormulaPredictionFeatureListModule.class, parameters,
-            getModuleCallDate()));
-
-    logger.finest("Finished formula search for all the features");
-
-    setStatus(TaskStatus.FINISHED);
-
+    // Add the new formula entry top results
+    if (!resultingFormulas.isEmpty()) {
+      row.setFormulas(resultingFormulas.subList(0,
+          Math.min(resultingFormulas.size() - 1, maxBestFormulasPerFeature)));
+    }
   }
 
   /**
    * @param cdkFormula
+   * @param detectedPattern the isotope pattern of the row or null
+   * @param msmsScan        the MS/MS scan of the row or null
    * @return null if molecular formula does not match requirements
    */
-  private ResultFormula checkConstraints(IMolecularFormula cdkFormula, FeatureListRow peakListRow,
-      double searchedMass) {
+  private ResultFormula checkConstraints(IMolecularFormula cdkFormula,
+      IsotopePattern detectedPattern, Scan msmsScan, double searchedMass) {
 
     // Check elemental ratios
     if (checkRatios && !ElementalHeuristicChecker.checkFormula(cdkFormula, checkHCRatio,
@@ -289,7 +327,6 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
     }
 
     // Calculate isotope similarity score
-    IsotopePattern detectedPattern = peakListRow.getBestIsotopePattern();
     IsotopePattern predictedIsotopePattern = null;
     Float isotopeScore = null;
     if ((checkIsotopes) && (detectedPattern != null)) {
@@ -317,7 +354,6 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
     Map<DataPoint, String> msmsAnnotations = null;
 
     if (checkMSMS) {
-      Scan msmsScan = peakListRow.getMostIntenseFragmentScan();
       if (msmsScan != null) {
         MassList ms2MassList = msmsScan.getMassList();
         if (ms2MassList == null) {
@@ -353,9 +389,9 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
   public void cancel() {
     super.cancel();
 
-    // We need to cancel the formula generator, because searching for next
+    // We need to cancel the formula generators, because searching for next
     // candidate formula may take a looong time
-    if (generator != null) {
+    for (MolecularFormulaGenerator generator : generators) {
       generator.cancel();
     }
 
@@ -38,6 +38,7 @@ import io.github.mzmine.datamodel.identities.iontype.IonType;
 import io.github.mzmine.parameters.parametertypes.ionidentity.IonLibraryParameterSet;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
@@ -64,6 +65,8 @@ public class IonNetworkLibrary {
   private final boolean isPositive;
   private final int maxCharge;
   private final int maxMolecules;
+  // lookup of the neutral masses of all rows
+  private volatile NeutralMassIndex neutralMassIndex;
 
   /**
    * Set mztolerance later
@@ -157,9 +160,15 @@ public class IonNetworkLibrary {
     z1 = Math.abs(z1);
     z2 = Math.abs(z2);
     List<IonIdentity[]> list = new ArrayList<>();
+    // only adduct pairs with neutral masses in the same or adjacent bins can match
+    final BitSet[] candidates = getNeutralMassIndex(featureList, mode, minHeight).getCandidates(
+        row1, row2);
     // check all combinations of adducts
-    for (IonType adduct : allAdducts) {
-      for (IonType adduct2 : allAdducts) {
+    for (int i = 0; i < allAdducts.size(); i++) {
+      final IonType adduct = allAdducts.get(i);
+      final BitSet candidates2 = candidates == null ? null : candidates[i];
+      for (int k = nextCandidate(candidates2, 0); k >= 0; k = nextCandidate(candidates2, k + 1)) {
+        final IonType adduct2 = allAdducts.get(k);
         if (adduct.equals(adduct2)) {
           continue;
         }
@@ -200,6 +209,37 @@ public class IonNetworkLibrary {
   }
 
 
+  /**
+   * @param candidates the candidate indices or null for all indices
+   * @return the next candidate index of the adducts >= fromIndex or -1
+   */
+  private int nextCandidate(@Nullable BitSet candidates, int fromIndex) {
+    if (candidates == null) {
+      return fromIndex < allAdducts.size() ? fromIndex : -1;
+    }
+    return candidates.nextSetBit(fromIndex);
+  }
+
+  /**
+   * The index is created for the first comparison and reused as long as the parameters do not
+   * change
+   */
+  private NeutralMassIndex getNeutralMassIndex(FeatureList featureList, CheckMode mode,
+      double minHeight) {
+    NeutralMassIndex index = neutralMassIndex;
+    if (index == null || !index.isIndexOf(allAdducts, mzTolerance, featureList, mode, minHeight)) {
+      synchronized (this) {
+        index = neutralMassIndex;
+        if (index == null || !index.isIndexOf(allAdducts, mzTolerance, featureList, mode,
+            minHeight)) {
+          index = new NeutralMassIndex(allAdducts, mzTolerance, featureList, mode, minHeight);
+          neutralMassIndex = index;
+        }
+      }
+    }
+    return index;
+  }
+
   /**
    * Searches for an IonType for row that matches in network
    *
@@ -308,7 +348,7 @@ public class IonNetworkLibrary {
    * @param minHeight exclude smaller peaks as they can have a higher mz difference
    * @return false if one peak pair with height>=minHeight is outside of mzTolerance
    */
-  private boolean checkAdduct(final FeatureList featureList, final FeatureListRow row1,
+  boolean checkAdduct(final FeatureList featureList, final FeatureListRow row1,
       final FeatureListRow row2, final IonType adduct, final IonType adduct2, final CheckMode mode,
       double minHeight) {
     // averarge mz
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_ion_identity_networking.ionidnetworking;
+
+import io.github.mzmine.datamodel.features.Feature;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.identities.iontype.IonType;
+import io.github.mzmine.modules.dataprocessing.id_ion_identity_networking.ionidnetworking.IonNetworkLibrary.CheckMode;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Neutral masses of the rows of a feature list for all ion types of an {@link IonNetworkLibrary},
+ * hashed into bins with the width of the m/z tolerance at the highest neutral mass. Two ion types
+ * of two rows can only match within the m/z tolerance if their neutral masses fall into the same
+ * or adjacent bins. The masses of a row are calculated on first access.
+ */
+class NeutralMassIndex {
+
+  // rows with a wider neutral mass range are not indexed and match all ion types
+  private static final int MAX_BINS_PER_ION = 64;
+
+  private final List<IonType> ionTypes;
+  private final MZTolerance mzTolerance;
+  private final FeatureList featureList;
+  private final CheckMode mode;
+  private final double minHeight;
+  private final double binWidth;
+  private final Map<FeatureListRow, RowMasses> rowMasses = new ConcurrentHashMap<>();
+
+  NeutralMassIndex(@NotNull List<IonType> ionTypes, @NotNull MZTolerance mzTolerance,
+      @NotNull FeatureList featureList, @NotNull CheckMode mode, double minHeight) {
+    this.ionTypes = List.copyOf(ionTypes);
+    this.mzTolerance = mzTolerance;
+    this.featureList = featureList;
+    this.mode = mode;
+    this.minHeight = minHeight;
+
+    // the tolerance grows with the mass (ppm)
+    double minMz = Double.POSITIVE_INFINITY;
+    double maxMz = Double.NEGATIVE_INFINITY;
+    for (FeatureListRow row : featureList.getRows()) {
+      final double[] mzRange = getMzRange(row);
+      if (mzRange != null) {
+        minMz = Math.min(minMz, mzRange[0]);
+        maxMz = Math.max(maxMz, mzRange[1]);
+      }
+    }
+    double maxAbsMass = 0;
+    if (minMz <= maxMz) {
+      for (IonType ion : this.ionTypes) {
+        maxAbsMass = Math.max(maxAbsMass,
+            Math.max(Math.abs(ion.getMass(minMz)), Math.abs(ion.getMass(maxMz))));
+      }
+    }
+    // margin for rounding
+    binWidth = Math.max(mzTolerance.getMzToleranceForMass(maxAbsMass) * 1.001, 1E-6);
+  }
+
+  /**
+   * @return true if this index was created for these parameters
+   */
+  boolean isIndexOf(@NotNull List<IonType> ionTypes, @Nullable MZTolerance mzTolerance,
+      @NotNull FeatureList featureList, @NotNull CheckMode mode, double minHeight) {
+    return this.mzTolerance == mzTolerance && this.featureList == featureList && this.mode == mode
+        && Double.compare(this.minHeight, minHeight) == 0 && this.ionTypes.equals(ionTypes);
+  }
+
+  /**
+   * Ion type pairs that are not candidates do not match within the m/z tolerance in any raw data
+   * file (or by the average m/z, depending on the {@link CheckMode}).
+   *
+   * @return for each ion type of row1 the ion types of row2 that might match. null if all ion types
+   * need to be checked
+   */
+  @Nullable
+  BitSet[] getCandidates(@NotNull FeatureListRow row1, @NotNull FeatureListRow row2) {
+    final RowMasses masses1 = rowMasses.computeIfAbsent(row1, this::createRowMasses);
+    final RowMasses masses2 = rowMasses.computeIfAbsent(row2, this::createRowMasses);
+    if (masses1.bins() == null || masses2.bins() == null) {
+      return null;
+    }
+
+    final BitSet[] candidates = new BitSet[ionTypes.size()];
+    for (int i = 0; i < candidates.length; i++) {
+      candidates[i] = new BitSet(ionTypes.size());
+      if (masses1.isEmpty()) {
+        continue;
+      }
+      final long last = toBin(masses1.maxMasses()[i]) + 1;
+      for (long bin = toBin(masses1.minMasses()[i]) - 1; bin <= last; bin++) {
+        final BitSet ions = masses2.bins().get(bin);
+        if (ions != null) {
+          candidates[i].or(ions);
+        }
+      }
+    }
+    return candidates;
+  }
+
+  private long toBin(double mass) {
+    return (long) Math.floor(mass / binWidth);
+  }
+
+  private RowMasses createRowMasses(FeatureListRow row) {
+    final int n = ionTypes.size();
+    final double[] mzRange = getMzRange(row);
+    if (mzRange == null) {
+      return new RowMasses(new double[0], new double[0], new Long2ObjectOpenHashMap<>());
+    }
+
+    final double[] minMasses = new double[n];
+    final double[] maxMasses = new double[n];
+    final Long2ObjectMap<BitSet> bins = new Long2ObjectOpenHashMap<>();
+    for (int i = 0; i < n; i++) {
+      // neutral mass increases with m/z
+      minMasses[i] = ionTypes.get(i).getMass(mzRange[0]);
+      maxMasses[i] = ionTypes.get(i).getMass(mzRange[1]);
+      final long first = toBin(minMasses[i]);
+      final long last = toBin(maxMasses[i]);
+      if (last - first >= MAX_BINS_PER_ION) {
+        return new RowMasses(minMasses, maxMasses, null);
+      }
+      for (long bin = first; bin <= last; bin++) {
+        bins.computeIfAbsent(bin, key -> new BitSet(n)).set(i);
+      }
+    }
+    return new RowMasses(minMasses, maxMasses, bins);
+  }
+
+  /**
+   * @return the m/z range [min, max] of the row that is compared in the check mode. null if there
+   * is no m/z to compare
+   */
+  @Nullable
+  private double[] getMzRange(FeatureListRow row) {
+    if (mode == CheckMode.AVGERAGE) {
+      final Double mz = row.getAverageMZ();
+      return mz == null || mz.isNaN() ? null : new double[]{mz, mz};
+    }
+
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+    for (Feature f : row.getFeatures()) {
+      final Float height = f.getHeight();
+      final Double mz = f.getMZ();
+      if (height != null && height >= minHeight && mz != null && !mz.isNaN()) {
+        min = Math.min(min, mz);
+        max = Math.max(max, mz);
+      }
+    }
+    return min <= max ? new double[]{min, max} : null;
+  }
+
+  /**
+   * @param minMasses neutral mass for the lowest m/z of the row for each ion type
+   * @param maxMasses neutral mass for the highest m/z of the row for each ion type
+   * @param bins      the ion types in each bin or null if the row is not indexed
+   */
+  private record RowMasses(double[] minMasses, double[] maxMasses,
+                           @Nullable Long2ObjectMap<BitSet> bins) {
+
+    private boolean isEmpty() {
+      return minMasses.length == 0;
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_lipididentification;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.IonizationType;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipididentificationtools.LipidFragmentationRule;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.ILipidAnnotation;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.ILipidClass;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.jetbrains.annotations.NotNull;
+import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
+import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
+
+/**
+ * Precursor m/z of all combinations of the lipids in a lipid database and the ionization types of
+ * the fragmentation rules of their lipid class. The entries are sorted by m/z to find all lipid
+ * ions within the m/z tolerance of a row by binary search.
+ */
+class LipidIonTable {
+
+  private final List<ILipidAnnotation> lipids;
+  private final double[] mzs;
+  private final int[] lipidIndices;
+  private final IonizationType[] ionizations;
+
+  /**
+   * @param lipidDatabase all lipids, the iteration order defines the order of
+   *                      {@link #findIons(Range)}
+   */
+  LipidIonTable(@NotNull Collection<ILipidAnnotation> lipidDatabase) {
+    lipids = List.copyOf(lipidDatabase);
+
+    // the ionization types only depend on the lipid class
+    final Map<ILipidClass, IonizationType[]> classIonizations = new HashMap<>();
+    final List<IonizationType> ionizationList = new ArrayList<>();
+    final IntArrayList lipidIndexList = new IntArrayList();
+    final DoubleArrayList mzList = new DoubleArrayList();
+    for (int i = 0; i < lipids.size(); i++) {
+      final ILipidAnnotation lipid = lipids.get(i);
+      final IonizationType[] lipidIonizations = classIonizations.computeIfAbsent(
+          lipid.getLipidClass(), LipidIonTable::getIonizationTypes);
+      if (lipidIonizations.length == 0) {
+        continue;
+      }
+      final double mass = MolecularFormulaManipulator.getMass(lipid.getMolecularFormula(),
+          AtomContainerManipulator.MonoIsotopic);
+      for (IonizationType ionization : lipidIonizations) {
+        ionizationList.add(ionization);
+        lipidIndexList.add(i);
+        mzList.add(mass + ionization.getAddedMass());
+      }
+    }
+
+    final int size = mzList.size();
+    final int[] order = new int[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    IntArrays.quickSort(order, (a, b) -> Double.compare(mzList.getDouble(a), mzList.getDouble(b)));
+
+    mzs = new double[size];
+    lipidIndices = new int[size];
+    ionizations = new IonizationType[size];
+    for (int i = 0; i < size; i++) {
+      mzs[i] = mzList.getDouble(order[i]);
+      lipidIndices[i] = lipidIndexList.getInt(order[i]);
+      ionizations[i] = ionizationList.get(order[i]);
+    }
+  }
+
+  private static IonizationType[] getIonizationTypes(ILipidClass lipidClass) {
+    final Set<IonizationType> ionizationTypes = new LinkedHashSet<>();
+    final LipidFragmentationRule[] rules = lipidClass.getFragmentationRules();
+    if (rules != null) {
+      for (LipidFragmentationRule rule : rules) {
+        ionizationTypes.add(rule.getIonizationType());
+      }
+    }
+    return ionizationTypes.toArray(IonizationType[]::new);
+  }
+
+  /**
+   * @param mzRange closed m/z range of the precursor
+   * @return indices of all lipid ions within the range, sorted by the order of the lipids in the
+   * database
+   */
+  @NotNull
+  IntArrayList findIons(@NotNull Range<Double> mzRange) {
+    final double lower = mzRange.lowerEndpoint();
+    final double upper = mzRange.upperEndpoint();
+    // first index with m/z >= lower
+    int low = 0;
+    int high = mzs.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (mzs[mid] < lower) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+
+    final IntArrayList ions = new IntArrayList();
+    for (int i = low; i < mzs.length && mzs[i] <= upper; i++) {
+      ions.add(i);
+    }
+    if (ions.size() > 1) {
+      ions.sort((a, b) -> lipidIndices[a] != lipidIndices[b] ? Integer.compare(lipidIndices[a],
+          lipidIndices[b]) : Integer.compare(a, b));
+    }
+    return ions;
+  }
+
+  @NotNull
+  ILipidAnnotation getLipid(int ion) {
+    return lipids.get(lipidIndices[ion]);
+  }
+
+  @NotNull
+  IonizationType getIonization(int ion) {
+    return ionizations[ion];
+  }
+
+  int size() {
+    return mzs.length;
+  }
+}
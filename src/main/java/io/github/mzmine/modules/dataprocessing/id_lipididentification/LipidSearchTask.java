@@ -28,6 +28,7 @@ package io.github.mzmine.modules.dataprocessing.id_lipididentification;
 import com.google.common.collect.Range;
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.IonizationType;
+import io.github.mzmine.datamodel.PolarityType;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.FeatureListRow;
@@ -47,17 +48,18 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
-import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
-import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
 
 /**
  * Task to search and annotate lipids in feature list
@@ -165,12 +167,14 @@ public class LipidSearchTask extends AbstractTask {
 
     // build lipid species database
     Set<ILipidAnnotation> lipidDatabase = buildLipidDatabase();
+    // precursor m/z of all lipid ions sorted by m/z
+    LipidIonTable lipidIons = new LipidIonTable(lipidDatabase);
+    logger.info("Searching " + lipidIons.size() + " lipid ions of " + lipidDatabase.size()
+        + " lipids in " + featureList);
 
     // start lipid annotation
     rows.parallelStream().forEach(row -> {
-      for (ILipidAnnotation lipidAnnotation : lipidDatabase) {
-        findPossibleLipid(lipidAnnotation, row);
-      }
+      findPossibleLipids(lipidIons, row);
       finishedSteps++;
     });
 
@@ -222,41 +226,49 @@ public class LipidSearchTask extends AbstractTask {
   }
 
   /**
-   * Check if candidate peak may be a possible adduct of a given main peak
+   * Annotates the row with all lipid ions within the m/z tolerance (MS1 check), in the order of
+   * the lipid database
    */
-  private void findPossibleLipid(ILipidAnnotation lipid, FeatureListRow row) {
-    if (isCanceled()) {
+  private void findPossibleLipids(LipidIonTable lipidIons, FeatureListRow row) {
+    Range<Double> mzTolRange12C = mzTolerance.getToleranceRange(row.getAverageMZ());
+    IntArrayList ions = lipidIons.findIons(mzTolRange12C);
+    if (ions.isEmpty()) {
       return;
     }
+    PolarityType polarity = Objects.requireNonNull(
+        row.getBestFeature().getRepresentativeScan()).getPolarity();
+    // deisotoped mass lists of the MS/MS scans are shared by all lipids of this row
+    Map<Scan, DataPoint[]> msmsMassLists = new HashMap<>();
+
+    ILipidAnnotation lipid = null;
     Set<MatchedLipid> possibleRowAnnotations = new HashSet<>();
-    Set<IonizationType> ionizationTypeList = new HashSet<>();
-    LipidFragmentationRule[] fragmentationRules = lipid.getLipidClass().getFragmentationRules();
-    for (LipidFragmentationRule fragmentationRule : fragmentationRules) {
-      ionizationTypeList.add(fragmentationRule.getIonizationType());
-    }
-    for (IonizationType ionization : ionizationTypeList) {
-      if (!Objects.requireNonNull(row.getBestFeature().getRepresentativeScan()).getPolarity()
-          .equals(ionization.getPolarity())) {
+    for (int i = 0; i < ions.size(); i++) {
+      if (isCanceled()) {
+        return;
+      }
+      int ion = ions.getInt(i);
+      if (lipid != lipidIons.getLipid(ion)) {
+        if (lipid != null) {
+          addAnnotationsToFeatureList(row, possibleRowAnnotations);
+          possibleRowAnnotations = new HashSet<>();
+        }
+        lipid = lipidIons.getLipid(ion);
+      }
+      IonizationType ionization = lipidIons.getIonization(ion);
+      if (!polarity.equals(ionization.getPolarity())) {
         continue;
       }
-      double lipidIonMass = MolecularFormulaManipulator.getMass(lipid.getMolecularFormula(),
-          AtomContainerManipulator.MonoIsotopic) + ionization.getAddedMass();
-      Range<Double> mzTolRange12C = mzTolerance.getToleranceRange(row.getAverageMZ());
-
-      // MS1 check
-      if (mzTolRange12C.contains(lipidIonMass)) {
 
-        // If search for MSMS fragments is selected search for fragments
-        if (searchForMSMSFragments.booleanValue()) {
-          possibleRowAnnotations.addAll(searchMsmsFragments(row, ionization, lipid));
-        } else {
+      // If search for MSMS fragments is selected search for fragments
+      if (searchForMSMSFragments.booleanValue()) {
+        possibleRowAnnotations.addAll(
+            searchMsmsFragments(row, ionization, lipid, msmsMassLists));
+      } else {
 
-          // make MS1 annotation
-          possibleRowAnnotations
-              .add(new MatchedLipid(lipid, row.getAverageMZ(), ionization, null, 0.0));
-        }
+        // make MS1 annotation
+        possibleRowAnnotations
+            .add(new MatchedLipid(lipid, row.getAverageMZ(), ionization, null, 0.0));
       }
-
     }
     addAnnotationsToFeatureList(row, possibleRowAnnotations);
   }
@@ -273,9 +285,11 @@ public class LipidSearchTask extends AbstractTask {
 
   /**
    * This method searches for MS/MS fragments. A mass list for MS2 scans will be used if present.
+   *
+   * @param msmsMassLists cache of the deisotoped mass lists of the row's MS/MS scans
    */
   private Set<MatchedLipid> searchMsmsFragments(FeatureListRow row, IonizationType ionization,
-      ILipidAnnotation lipid) {
+      ILipidAnnotation lipid, Map<Scan, DataPoint[]> msmsMassLists) {
 
     Set<MatchedLipid> matchedLipids = new HashSet<>();
 
@@ -288,9 +302,8 @@ public class LipidSearchTask extends AbstractTask {
           setStatus(TaskStatus.ERROR);
           return new HashSet<>();
         }
-        DataPoint[] massList = null;
-        massList = msmsScan.getMassList().getDataPoints();
-        massList = deisotopeMassList(massList);
+        DataPoint[] massList = msmsMassLists.computeIfAbsent(msmsScan,
+            scan -> deisotopeMassList(scan.getMassList().getDataPoints()));
         MSMSLipidTools msmsLipidTools = new MSMSLipidTools();
         LipidFragmentationRule[] rules = lipid.getLipidClass().getFragmentationRules();
         Set<LipidFragment> annotatedFragments = new HashSet<>();
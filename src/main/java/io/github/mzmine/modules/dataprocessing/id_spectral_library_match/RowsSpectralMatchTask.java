@@ -25,6 +25,7 @@
 
 package io.github.mzmine.modules.dataprocessing.id_spectral_library_match;
 
+import com.google.common.collect.Range;
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.IMSRawDataFile;
 import io.github.mzmine.datamodel.MassList;
@@ -59,12 +60,18 @@ import io.github.mzmine.util.spectraldb.entry.DBEntryField;
 import io.github.mzmine.util.spectraldb.entry.SpectralDBAnnotation;
 import io.github.mzmine.util.spectraldb.entry.SpectralLibrary;
 import io.github.mzmine.util.spectraldb.entry.SpectralLibraryEntry;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibraryIndex;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoublePredicate;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -289,34 +296,36 @@ public class RowsSpectralMatchTask extends AbstractTask {
   @Override
   public void run() {
 
-    // combine libraries
-    List<SpectralLibraryEntry> entries = new ArrayList<>();
-    for (var lib : libraries) {
-      entries.addAll(lib.getEntries());
-    }
+    // each library is indexed once by precursor m/z - only candidates within tolerances are matched
+    final List<SpectralLibraryIndex> indexes = libraries.stream().map(SpectralLibrary::getIndex)
+        .toList();
+    final int numEntries = indexes.stream().mapToInt(SpectralLibraryIndex::size).sum();
 
     // run on spectra
     if (scan != null) {
       logger.info(
-          () -> String.format("Comparing %d library spectra to scan: %s", entries.size(), scan));
+          () -> String.format("Comparing %d library spectra to scan: %s", numEntries, scan));
 
-      matchScan(entries, scan);
+      // single scans were never checked for polarity - search entries of all polarities
+      var candidates = getCandidates(indexes, List.of(), scanPrecursorMZ,
+          scan.getRetentionTime(), getPrecursorCCSFromMsMs(scan));
+      matchScan(candidates, scan);
 
       logger.info(
           () -> String.format("library matches=%d (Errors:%d); library entries=%d; for scan: %s",
-              getCount(), getErrorCount(), entries.size(), scan));
+              getCount(), getErrorCount(), numEntries, scan));
     }
 
     // run in parallel
     if (rows != null) {
       logger.info(() -> String.format("Comparing %d library spectra to %d feature list rows",
-          entries.size(), totalRows));
+          numEntries, totalRows));
       // cannot use parallel.forEach with side effects - this thread will continue without waiting for
       // stream to finish
       var totalMatches = rows.stream().filter(FeatureListRow::hasMs2Fragmentation).parallel()
           .mapToInt(row -> {
             if (!isCanceled()) {
-              int matches = matchRowToLibraries(entries, row);
+              int matches = matchRowToIndexedLibraries(indexes, row);
               finishedRows.incrementAndGet();
               return matches;
             }
@@ -324,8 +333,55 @@ public class RowsSpectralMatchTask extends AbstractTask {
           }).sum();
       logger.info("Total spectral library matches " + totalMatches);
       logger.info(() -> String.format("library matches=%d (Errors:%d); rows=%d; library entries=%d",
-          getCount(), getErrorCount(), totalRows, entries.size()));
+          getCount(), getErrorCount(), totalRows, numEntries));
+    }
+  }
+
+  /**
+   * Candidates of all libraries within the precursor m/z, RT, and CCS tolerances. The exact checks
+   * are still applied during matching.
+   *
+   * @param polarities polarities of the query scans, empty to include entries of all polarities
+   * @return the candidates in the order of libraries and library entries
+   */
+  private List<SpectralLibraryEntry> getCandidates(List<SpectralLibraryIndex> indexes,
+      Collection<PolarityType> polarities, double precursorMZ, @Nullable Float rt,
+      @Nullable Float ccs) {
+    final Range<Double> mzRange =
+        msLevelFilter.isMs1Only() ? null : getPrecursorMzSearchRange(precursorMZ);
+    final DoublePredicate rtFilter = !useRT || rt == null ? null
+        : libRT -> Double.isNaN(libRT) || rtTolerance.checkWithinTolerance((float) libRT, rt);
+    final DoublePredicate ccsFilter = ccsTolerance == null ? null
+        : libCCS -> ccs != null && !Double.isNaN(libCCS) && ccsTolerance.matches(
+            ccs.doubleValue(), libCCS);
+
+    List<SpectralLibraryEntry> candidates = new ArrayList<>();
+    for (var index : indexes) {
+      candidates.addAll(index.getCandidates(polarities, mzRange, rtFilter, ccsFilter));
+    }
+    return candidates;
+  }
+
+  /**
+   * {@link #checkPrecursorMZ(double, SpectralLibraryEntry)} applies the tolerance at the library
+   * precursor m/z. This range of library precursor m/z values includes all entries that pass this
+   * check.
+   *
+   * @param mz the query precursor m/z
+   * @return range to search for library precursor m/z values
+   */
+  private Range<Double> getPrecursorMzSearchRange(double mz) {
+    final double lower = mz - mzTolerancePrecursor.getMzToleranceForMass(mz);
+    final double ppmFactor = mzTolerancePrecursor.getPpmTolerance() / 1_000_000d;
+    double upper = mz + mzTolerancePrecursor.getMzTolerance();
+    if (ppmFactor < 1d) {
+      upper = Math.max(upper, mz / (1d - ppmFactor));
+    } else {
+      upper = Double.POSITIVE_INFINITY;
     }
+    // margin for floating point errors
+    final double margin = Math.ulp(mz) * 16;
+    return Range.closed(lower - margin, upper + margin);
   }
 
   /**
@@ -393,12 +449,45 @@ public class RowsSpectralMatchTask extends AbstractTask {
   }
 
   /**
-   * Match row against all entries, add matches, sort them by score
+   * Match row against all entries, add matches, sort them by score. Linear scan over all entries,
+   * see {@link #matchRowToIndexedLibraries(List, FeatureListRow)} for the faster version.
    *
    * @param entries combined library entries
    * @param row     target row
    */
   public int matchRowToLibraries(List<SpectralLibraryEntry> entries, FeatureListRow row) {
+    return matchRow(row, scans -> entries);
+  }
+
+  /**
+   * Match row against the candidates of each library index, add matches, sort them by score. Same
+   * results as {@link #matchRowToLibraries(List, FeatureListRow)} on all entries but only the
+   * entries within the precursor m/z tolerance (and RT, CCS if active) are scored.
+   *
+   * @param indexes library indexes
+   * @param row     target row
+   */
+  public int matchRowToIndexedLibraries(List<SpectralLibraryIndex> indexes, FeatureListRow row) {
+    return matchRow(row,
+        scans -> getCandidates(indexes, getPolarities(scans), row.getAverageMZ(),
+            row.getAverageRT(), row.getAverageCCS()));
+  }
+
+  private static Set<PolarityType> getPolarities(List<Scan> scans) {
+    final Set<PolarityType> polarities = new HashSet<>();
+    for (Scan s : scans) {
+      polarities.add(s.getPolarity());
+    }
+    return polarities;
+  }
+
+  /**
+   * @param row              target row
+   * @param candidateSupplier provides the library entries to match for the scans of this row
+   * @return number of matches
+   */
+  private int matchRow(FeatureListRow row,
+      Function<List<Scan>, List<SpectralLibraryEntry>> candidateSupplier) {
     try {
       // All MS2 or only best MS2 scan
       // best MS1 scan
@@ -415,6 +504,7 @@ public class RowsSpectralMatchTask extends AbstractTask {
         rowMassLists.add(rowMassList);
       }
 
+      final List<SpectralLibraryEntry> entries = candidateSupplier.apply(scans);
       final Float rowCCS = row.getAverageCCS();
       List<SpectralDBAnnotation> ids = null;
       // match against all library entries
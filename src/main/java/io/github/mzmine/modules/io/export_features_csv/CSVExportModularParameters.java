@@ -53,6 +53,7 @@ public class CSVExportModularParameters extends SimpleParameterSet {
       FeatureListRowsFilter.values(), FeatureListRowsFilter.ALL);
   private static final List<ExtensionFilter> extensions = List.of( //
       new ExtensionFilter("comma-separated values", "*.csv"), //
+      new ExtensionFilter("gzip compressed comma-separated values", "*.csv.gz"), //
       new ExtensionFilter("All files", "*.*") //
   );
   public static final FileNameParameter filename = new FileNameParameter("Filename",
@@ -47,6 +47,7 @@ import io.github.mzmine.util.io.CSVUtils;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.text.MessageFormat;
@@ -61,12 +62,18 @@ import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public class CSVExportModularTask extends AbstractTask implements ProcessedItemsCounter {
 
   public static final String DATAFILE_PREFIX = "datafile";
+  public static final String GZIP_EXTENSION = ".gz";
+  /**
+   * Rows are written in chunks, cancel is checked after each chunk
+   */
+  private static final int ROWS_PER_CHUNK = 1024;
   private static final Logger logger = Logger.getLogger(CSVExportModularTask.class.getName());
   private final ModularFeatureList[] featureLists;
   // parameter values
@@ -79,6 +86,8 @@ public class CSVExportModularTask extends AbstractTask implements ProcessedItems
   // track number of exported items
   private final AtomicInteger exportedRows = new AtomicInteger(0);
   private int processedTypes = 0, totalTypes = 0;
+  // reused to join the formatted values of a row
+  private final StringBuilder lineBuffer = new StringBuilder(1024);
 
   public CSVExportModularTask(ParameterSet parameters, @NotNull Instant moduleCallDate) {
     super(null, moduleCallDate); // no new data stored -> null
@@ -176,12 +185,19 @@ public class CSVExportModularTask extends AbstractTask implements ProcessedItems
             .replaceAll(Pattern.quote(plNamePattern), cleanPlName);
         curFile = new File(newFilename);
       }
+      // gzip compression is selected by the file extension .csv.gz
+      final boolean gzip = curFile.getName().endsWith(GZIP_EXTENSION);
+      if (gzip) {
+        curFile = FileAndPathUtil.eraseFormat(curFile);
+      }
       curFile = FileAndPathUtil.getRealFilePath(curFile, "csv");
+      if (gzip) {
+        curFile = new File(curFile.getPath() + GZIP_EXTENSION);
+      }
 
       // Open file
 
-      try (BufferedWriter writer = Files.newBufferedWriter(curFile.toPath(),
-          StandardCharsets.UTF_8)) {
+      try (BufferedWriter writer = createWriter(curFile, gzip)) {
         exportFeatureList(featureList, writer);
 
       } catch (IOException e) {
@@ -206,6 +222,15 @@ public class CSVExportModularTask extends AbstractTask implements ProcessedItems
     }
   }
 
+  private static BufferedWriter createWriter(File file, boolean gzip) throws IOException {
+    if (!gzip) {
+      return Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+    }
+    return new BufferedWriter(new OutputStreamWriter(
+        new GZIPOutputStream(Files.newOutputStream(file.toPath()), 1 << 16),
+        StandardCharsets.UTF_8), 1 << 16);
+  }
+
   @SuppressWarnings("rawtypes")
   private void exportFeatureList(ModularFeatureList flist, BufferedWriter writer)
       throws IOException {
@@ -232,60 +257,61 @@ public class CSVExportModularTask extends AbstractTask implements ProcessedItems
     writer.append(header.toString());
     writer.newLine();
 
-    // write data
-    totalTypes = rowTypes.size() + featureTypes.size() * rawDataFiles.size();
-
-    List<String[]> formattedCols = new ArrayList<>(totalTypes);
-
-    // list string values for each type and sub type
+    // one formatter per exported column and sub column
+    final List<ColumnFormatter> columns = new ArrayList<>();
     for (DataType rowType : rowTypes) {
-      if (isCanceled()) {
-        return;
-      }
-
-      addFormattedColumnsRecursively(formattedCols, rows, null, rowType);
-
-      processedTypes++;
+      addColumnFormattersRecursively(columns, rows, null, rowType);
     }
-
     // add feature types for each raw data file
     for (RawDataFile raw : rawDataFiles) {
       for (DataType featureType : featureTypes) {
-        if (isCanceled()) {
-          return;
-        }
-
-        addFormattedColumnsRecursively(formattedCols, rows, raw, featureType);
-        processedTypes++;
+        addColumnFormattersRecursively(columns, rows, raw, featureType);
       }
     }
 
-    for (int i = 0; i < rows.size(); i++) {
+    // rows are formatted on this thread: the number formats of the data types are shared and
+    // DecimalFormat is not thread safe
+    for (int start = 0; start < rows.size(); start += ROWS_PER_CHUNK) {
       // Cancel?
       if (isCanceled()) {
         return;
       }
 
-      final int row = i;
-      writer.append(
-          formattedCols.stream().map(col -> col[row]).collect(Collectors.joining(fieldSeparator)));
-      writer.newLine();
+      final int end = Math.min(start + ROWS_PER_CHUNK, rows.size());
+      for (int i = start; i < end; i++) {
+        writer.append(formatRow(rows.get(i), columns));
+        writer.newLine();
+      }
+      exportedRows.addAndGet(end - start);
+      processedTypes += end - start;
+    }
+  }
 
-      exportedRows.incrementAndGet();
-      processedTypes++;
+  /**
+   * @return the row joined by the field separator
+   */
+  private String formatRow(FeatureListRow row, List<ColumnFormatter> columns) {
+    final StringBuilder line = lineBuffer;
+    line.setLength(0);
+    for (int i = 0; i < columns.size(); i++) {
+      if (i > 0) {
+        line.append(fieldSeparator);
+      }
+      line.append(columns.get(i).format(row));
     }
+    return line.toString();
   }
 
   /**
-   * Adds columns of formatted values for each column / sub column. missing values are replaced by
-   * empty strings or default values
+   * Adds a formatter for each column / sub column. missing values are replaced by empty strings or
+   * default values
    *
-   * @param formattedCols the target list
-   * @param rows          the data
-   * @param raw           defines the feature
-   * @param type          the feature data type to be added (and its sub columns)
+   * @param columns the target list
+   * @param rows    the data
+   * @param raw     defines the feature
+   * @param type    the feature data type to be added (and its sub columns)
    */
-  private void addFormattedColumnsRecursively(List<String[]> formattedCols,
+  private void addColumnFormattersRecursively(List<ColumnFormatter> columns,
       List<FeatureListRow> rows, @Nullable RawDataFile raw, DataType type) {
     if (type instanceof SubColumnsFactory subFactory) {
       int subCols = subFactory.getNumberOfSubColumns();
@@ -296,19 +322,21 @@ public class CSVExportModularTask extends AbstractTask implements ProcessedItems
             s))) {
           continue;
         }
-        // collect column data
         final int subIndex = s;
-        String[] column = getDataStream(rows, raw, false).map(
-            data -> getFormattedValue(data, subFactory, subIndex)).toArray(String[]::new);
-        formattedCols.add(column);
+        columns.add(row -> getFormattedValue(getData(row, raw), subFactory, subIndex));
       }
     } else {
-      String[] column = getDataStream(rows, raw, false).map(data -> getFormattedValue(data, type))
-          .toArray(String[]::new);
-      formattedCols.add(column);
+      columns.add(row -> getFormattedValue(getData(row, raw), type));
     }
   }
 
+  /**
+   * @return the row or the feature of the raw data file
+   */
+  private static @Nullable ModularDataModel getData(FeatureListRow row, @Nullable RawDataFile raw) {
+    return raw == null ? (ModularDataModel) row : (ModularFeature) row.getFeature(raw);
+  }
+
   /**
    * Data stream for rows or all features
    *
@@ -433,6 +461,15 @@ public class CSVExportModularTask extends AbstractTask implements ProcessedItems
   }
 
 
+  /**
+   * Formats the value of one column for a row
+   */
+  @FunctionalInterface
+  private interface ColumnFormatter {
+
+    String format(FeatureListRow row);
+  }
+
   private void checkConcurrentModification(FeatureList featureList, int numRows, long numFeatures,
       long numMS2) {
     final int numRowsEnd = featureList.getNumberOfRows();
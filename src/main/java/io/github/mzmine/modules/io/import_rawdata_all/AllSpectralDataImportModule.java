@@ -383,8 +383,12 @@ public class AllSpectralDataImportModule implements MZmineProcessingModule {
               parameters, moduleCallDate);
       case AIRD ->
           new AirdImportTask(project, file, newMZmineFile, module, parameters, moduleCallDate);
+      // the data file is created by the mzML import of the decompressed data
+      case MZML_ZIP, MZML_GZIP ->
+          new ZipImportTask(project, file, advancedParam, module, parameters, moduleCallDate,
+              storage);
       // all unsupported tasks are wrapped to apply import and mass detection separately
-      case MZDATA, THERMO_RAW, WATERS_RAW, NETCDF, MZML_ZIP, MZML_GZIP, ICPMSMS_CSV, IMZML ->
+      case MZDATA, THERMO_RAW, WATERS_RAW, NETCDF, ICPMSMS_CSV, IMZML ->
           createWrappedAdvancedTask(fileType, project, file, newMZmineFile, advancedParam, module,
               parameters, moduleCallDate, storage);
       default -> throw new IllegalStateException("Unexpected data type: " + fileType);
@@ -30,36 +30,61 @@ import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.data_access.EfficientDataAccess;
 import io.github.mzmine.datamodel.data_access.ScanDataAccess;
 import io.github.mzmine.datamodel.impl.masslist.SimpleMassList;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingStep;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.TaskController;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.scans.ScanUtils;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.collections.ListChangeListener;
 import org.jetbrains.annotations.NotNull;
 
 /**
  * This import task wraps other data import tasks that do not support application of mass detection
- * during data import. This task calls the data import and applies mass detection afterwards.
+ * during data import. Mass detection is pipelined with the data import: each scan that is added to
+ * the data file is passed through a bounded queue to a pool of mass detection workers, so that
+ * parsing and mass detection run concurrently. The queue blocks the import if the workers fall
+ * behind. The workers use free threads of the {@link TaskController}, if all threads are in use,
+ * mass detection is applied after the import.
  */
 public class MsDataImportAndMassDetectWrapperTask extends AbstractTask {
 
+  private static final Logger logger = Logger.getLogger(
+      MsDataImportAndMassDetectWrapperTask.class.getName());
+  // scans waiting for mass detection per worker
+  private static final int QUEUED_SCANS_PER_WORKER = 64;
+  private static final long POLL_MILLIS = 50;
+
   private final RawDataFile newMZmineFile;
   private final AbstractTask importTask;
   private final Boolean denormalizeMSnScans;
   private MZmineProcessingStep<MassDetector> ms1Detector = null;
   private MZmineProcessingStep<MassDetector> ms2Detector = null;
 
-  private int totalScans = 1;
-  private final int parsedScans = 0;
+  private int totalScans = 0;
+  private final AtomicInteger processedScans = new AtomicInteger(0);
+  // set by the import thread after the last scan was queued
+  private volatile boolean importDone = false;
 
   /**
    * This import task wraps other data import tasks that do not support application of mass
-   * detection during data import. This task calls the data import and applies mass detection
-   * afterwards.
+   * detection during data import. This task calls the data import and applies mass detection to
+   * the scans while they are imported.
    *
    * @param storageMassLists data storage for mass lists (usually different to that of the data
    *                         file
@@ -69,8 +94,8 @@ public class MsDataImportAndMassDetectWrapperTask extends AbstractTask {
    * @param advancedParam    advanced parameters to apply mass detection
    */
   public MsDataImportAndMassDetectWrapperTask(MemoryMapStorage storageMassLists,
-      RawDataFile newMZmineFile, AbstractTask importTask, @NotNull ParameterSet advancedParam,
-      @NotNull Instant moduleCallDate) {
+      @NotNull RawDataFile newMZmineFile, AbstractTask importTask,
+      @NotNull ParameterSet advancedParam, @NotNull Instant moduleCallDate) {
     super(storageMassLists, moduleCallDate);
     this.newMZmineFile = newMZmineFile;
     this.importTask = importTask;
@@ -95,8 +120,11 @@ public class MsDataImportAndMassDetectWrapperTask extends AbstractTask {
 
   @Override
   public double getFinishedPercentage() {
-    return totalScans > 0 ? (importTask.getFinishedPercentage() + parsedScans / (double) totalScans)
-        / 2d : importTask.getFinishedPercentage() / 2d;
+    // the number of scans grows during the import
+    final int total = totalScans > 0 ? totalScans : newMZmineFile.getNumOfScans();
+    return total > 0 ? (importTask.getFinishedPercentage()
+        + Math.min(1d, processedScans.get() / (double) total)) / 2d
+        : importTask.getFinishedPercentage() / 2d;
   }
 
   @Override
@@ -108,18 +136,12 @@ public class MsDataImportAndMassDetectWrapperTask extends AbstractTask {
   @Override
   public void run() {
     setStatus(TaskStatus.PROCESSING);
+    final TaskController taskController = MZmineCore.getTaskController();
+    final int numWorkers = taskController.reserveFreeThreads(getMaxNumberOfWorkers());
     try {
-      // import data
-      importTask.run();
-
-      // should be in the new data file
-      if (importTask.isFinished()) {
-        totalScans = newMZmineFile.getNumOfScans();
-
-        if (!applyMassDetection()) {
-          // cancelled
-          return;
-        }
+      if (!importAndApplyMassDetection(numWorkers)) {
+        // cancelled or error
+        return;
       }
 
     } catch (Exception e) {
@@ -127,11 +149,161 @@ public class MsDataImportAndMassDetectWrapperTask extends AbstractTask {
       setStatus(TaskStatus.ERROR);
       e.printStackTrace();
       return;
+    } finally {
+      taskController.releaseThreads(numWorkers);
     }
 
     this.setStatus(TaskStatus.FINISHED);
   }
 
+  /**
+   * The import itself runs on the thread of this task
+   */
+  private static int getMaxNumberOfWorkers() {
+    final Integer threads = MZmineCore.getConfiguration().getPreferences()
+        .getParameter(MZminePreferences.numOfThreads).getValue();
+    return Math.max(1, Math.min(Objects.requireNonNullElse(threads, 1),
+        Runtime.getRuntime().availableProcessors()) - 1);
+  }
+
+  /**
+   * Runs the import on the current thread while the workers apply mass detection to each scan that
+   * is added to the data file.
+   *
+   * @param numWorkers number of mass detection threads. 0 to apply mass detection after the import
+   * @return true if succeed and false if cancelled or on error
+   */
+  private boolean importAndApplyMassDetection(int numWorkers) throws InterruptedException {
+    if (numWorkers <= 0) {
+      importTask.run();
+      return importTask.isFinished() && !isCanceled() && applyMassDetectionToRemainingScans();
+    }
+
+    final BlockingQueue<Scan> queue = new ArrayBlockingQueue<>(
+        numWorkers * QUEUED_SCANS_PER_WORKER);
+    final AtomicReference<Throwable> workerError = new AtomicReference<>();
+
+    final List<Thread> workers = new ArrayList<>(numWorkers);
+    for (int i = 0; i < numWorkers; i++) {
+      final Thread worker = new Thread(() -> runWorker(queue, workerError),
+          "Mass detection " + newMZmineFile.getName() + " " + i);
+      worker.setDaemon(true);
+      workers.add(worker);
+      worker.start();
+    }
+
+    // called on the import thread for each new scan
+    final ListChangeListener<Scan> scanListener = change -> {
+      while (change.next()) {
+        if (change.wasAdded()) {
+          for (Scan scan : change.getAddedSubList()) {
+            enqueue(queue, scan, workerError);
+          }
+        }
+      }
+    };
+
+    newMZmineFile.getScans().addListener(scanListener);
+    try {
+      importTask.run();
+    } finally {
+      newMZmineFile.getScans().removeListener(scanListener);
+      importDone = true;
+      for (Thread worker : workers) {
+        worker.join();
+      }
+    }
+
+    final Throwable error = workerError.get();
+    if (error != null) {
+      logger.log(Level.WARNING, "Error during mass detection of " + newMZmineFile.getName(),
+          error);
+      setErrorMessage("Error during mass detection: " + error.getMessage());
+      setStatus(TaskStatus.ERROR);
+      return false;
+    }
+    if (!importTask.isFinished() || isCanceled()) {
+      return false;
+    }
+    return applyMassDetectionToRemainingScans();
+  }
+
+  /**
+   * Applies mass detection to all scans without mass list, e.g., if the import sets all scans at
+   * once or without mass detection workers
+   *
+   * @return true if succeed and false if cancelled
+   */
+  private boolean applyMassDetectionToRemainingScans() {
+    totalScans = newMZmineFile.getNumOfScans();
+    for (Scan scan : newMZmineFile.getScans()) {
+      if (isCanceled()) {
+        return false;
+      }
+      if (scan.getMassList() == null) {
+        detectMasses(scan);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Blocks the import while the queue is full. Skips the scan if the workers stopped.
+   */
+  private void enqueue(BlockingQueue<Scan> queue, Scan scan,
+      AtomicReference<Throwable> workerError) {
+    try {
+      while (!queue.offer(scan, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+        if (isCanceled() || workerError.get() != null) {
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void runWorker(BlockingQueue<Scan> queue, AtomicReference<Throwable> workerError) {
+    try {
+      while (!isCanceled() && workerError.get() == null) {
+        final Scan scan = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (scan != null) {
+          detectMasses(scan);
+        } else if (importDone) {
+          // all scans were queued before the import was marked as done
+          return;
+        }
+      }
+    } catch (Throwable t) {
+      workerError.compareAndSet(null, t);
+      // stop the import
+      importTask.cancel();
+    }
+  }
+
+  /**
+   * Applies mass detection to a single scan and sets the mass list. Thread safe.
+   */
+  private void detectMasses(Scan scan) {
+    final int msLevel = Objects.requireNonNullElse(scan.getMSLevel(), 1);
+    double[][] mzIntensities = null;
+    if (ms1Detector != null && msLevel <= 1) {
+      mzIntensities = ms1Detector.getModule().getMassValues(scan, ms1Detector.getParameterSet());
+    } else if (ms2Detector != null && msLevel >= 2) {
+      mzIntensities = ms2Detector.getModule().getMassValues(scan, ms2Detector.getParameterSet());
+      if (denormalizeMSnScans) {
+        ScanUtils.denormalizeIntensitiesMultiplyByInjectTime(mzIntensities[1],
+            scan.getInjectionTime());
+      }
+    }
+
+    if (mzIntensities != null) {
+      // uses a different storage for mass lists then the one defined for the MS data import
+      scan.addMassList(new SimpleMassList(storage, mzIntensities[0], mzIntensities[1]));
+    }
+    processedScans.incrementAndGet();
+  }
+
   /**
    * apply mass detection to all scans and sets the mass lists
    *
@@ -169,6 +341,7 @@ public class MsDataImportAndMassDetectWrapperTask extends AbstractTask {
             mzIntensities[1]);
         scan.addMassList(newMassList);
       }
+      processedScans.incrementAndGet();
     }
     return true;
   }
@@ -56,13 +56,26 @@ public class ZipImportTask extends AbstractTask {
   private final @NotNull MZmineProject project;
   private final ParameterSet parameters;
   private final Class<? extends MZmineModule> module;
+  private final @Nullable ParameterSet advancedParam;
 
   private Task decompressedOpeningTask = null;
 
   public ZipImportTask(@NotNull MZmineProject project, File fileToOpen,
       @NotNull final Class<? extends MZmineModule> module, @NotNull final ParameterSet parameters,
       @NotNull Instant moduleCallDate, @Nullable final MemoryMapStorage storage) {
+    this(project, fileToOpen, null, module, parameters, moduleCallDate, storage);
+  }
+
+  /**
+   * @param advancedParam advanced import parameters to apply mass detection during the import of
+   *                      the decompressed mzML, or null
+   */
+  public ZipImportTask(@NotNull MZmineProject project, File fileToOpen,
+      @Nullable ParameterSet advancedParam, @NotNull final Class<? extends MZmineModule> module,
+      @NotNull final ParameterSet parameters, @NotNull Instant moduleCallDate,
+      @Nullable final MemoryMapStorage storage) {
     super(storage, moduleCallDate); // storage in raw data file
+    this.advancedParam = advancedParam;
     this.project = project;
     this.fileToOpen = fileToOpen;
     this.parameters = parameters;
@@ -104,7 +117,8 @@ public class ZipImportTask extends AbstractTask {
 
       BufferedInputStream bis = new BufferedInputStream(is);
       final MSDKmzMLImportTask msdKmzMLImportTask = new MSDKmzMLImportTask(project, fileToOpen, bis,
-          null, ZipImportModule.class, parameters, getModuleCallDate(), getMemoryMapStorage());
+          advancedParam, ZipImportModule.class, parameters, getModuleCallDate(),
+          getMemoryMapStorage());
 
       if (isCanceled()) {
         return;
@@ -28,6 +28,7 @@ package io.github.mzmine.modules.io.projectload;
 import com.google.common.io.CountingInputStream;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.io.projectload.version_3_0.FeatureListLoadTask;
+import io.github.mzmine.modules.io.projectload.version_3_0.RawDataFileSnapshotLoader;
 import io.github.mzmine.modules.io.projectsave.ProjectSavingTask;
 import io.github.mzmine.modules.io.projectsave.RawDataFileSaveHandler;
 import io.github.mzmine.parameters.ParameterSet;
@@ -199,6 +200,9 @@ public class ProjectOpeningTask extends AbstractTask {
 
       }
 
+      if (RawDataFileSnapshotLoader.hasSnapshots(zipFile)) {
+        loadRawDataFileSnapshots(zipFile);
+      }
       loadFeatureList(zipFile);
 
       // Finish and close the project ZIP file
@@ -350,6 +354,16 @@ public class ProjectOpeningTask extends AbstractTask {
     tempConfigFile.delete();
   }
 
+  /**
+   * Restores the raw data files that were saved as snapshots instead of an import batch.
+   */
+  private void loadRawDataFileSnapshots(ZipFile zipFile) throws IOException {
+    logger.info("Loading raw data file snapshots");
+    currentLoadedObjectName = "MS data file snapshots";
+    final int loaded = new RawDataFileSnapshotLoader(zipFile, newProject).loadSnapshots().size();
+    logger.info(() -> "Loaded " + loaded + " raw data files from snapshots");
+  }
+
   private void loadFeatureList(ZipFile zipFile) {
 
     FeatureListLoadTask task = new FeatureListLoadTask(MemoryMapStorage.forFeatureList(), newProject, zipFile);
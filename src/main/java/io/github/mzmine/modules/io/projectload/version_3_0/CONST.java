@@ -71,6 +71,7 @@ public class CONST {
   public static final String XML_DATE_CREATED_ATTR = "date";
   public static final String XML_DATA_TYPE_ELEMENT = "datatype";
   public static final String XML_DATA_TYPE_ID_ATTR = "type";
+  public static final String XML_BINARY_OFFSET_ATTR = "binaryoffset";
   public static final String XML_FEATURE_ELEMENT = "feature";
   public static final String XML_ROW_ELEMENT = "row";
   public static final String XML_FEATURE_LIST_ELEMENT = "featurelist";
@@ -83,4 +84,17 @@ public class CONST {
   public static final String XML_FLIST_APPLIED_METHOD_ELEMENT = "appliedmethod";
   public static final String XML_FLIST_APPLIED_METHODS_LIST_ELEMENT = "appliedmethodslist";
 
+  /**
+   * Raw data snapshot
+   */
+  public static final String XML_RAW_FILE_INDEX_ATTR = "index";
+  public static final String XML_RAW_FILE_COLOR_ATTR = "color";
+  public static final String XML_SCAN_NUMBER_ATTR = "scannumber";
+  public static final String XML_SPECTRUM_TYPE_ATTR = "spectrumtype";
+  public static final String XML_MZ_RANGE_ATTR = "mzrange";
+  public static final String XML_INJECTION_TIME_ATTR = "injectiontime";
+  public static final String XML_MASS_LIST_OFFSET_ATTR = "masslistoffset";
+  public static final String XML_SCAN_MSMS_INFOS_ELEMENT = "msmsinfos";
+  public static final String XML_SCAN_MSMS_INFO_ELEMENT = "scanmsmsinfo";
+
 }
@@ -35,6 +35,7 @@ import io.github.mzmine.datamodel.features.ModularFeatureListRow;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.datamodel.features.types.DataType;
 import io.github.mzmine.datamodel.features.types.DataTypes;
+import io.github.mzmine.datamodel.features.types.FeatureDataType;
 import io.github.mzmine.datamodel.features.types.numbers.IDType;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.io.projectload.CachedIMSRawDataFile;
@@ -95,6 +96,11 @@ public class FeatureListLoadTask extends AbstractTask {
   private String currentFlist = "";
   private int numFlists = 1;
   private int processedFlists;
+  /**
+   * Reader of the binary series data of the current feature list. Null for old projects.
+   */
+  @Nullable
+  private FeatureSeriesBinaryReader seriesReader;
 
   public FeatureListLoadTask(@Nullable MemoryMapStorage storage, @NotNull MZmineProject project,
       ZipFile zip) {
@@ -112,13 +118,33 @@ public class FeatureListLoadTask extends AbstractTask {
    * @param feature The current feature. Can be null.
    * @param file    The data file of the current feature. null if the feature is null.
    * @return
+   * @throws IOException if data of the project is missing. Other errors only skip the value.
+   */
+  public static Object parseDataType(XMLStreamReader reader, DataType<?> type,
+      MZmineProject project, ModularFeatureList flist, ModularFeatureListRow row,
+      ModularFeature feature, RawDataFile file) throws IOException {
+    return parseDataType(reader, type, project, flist, row, feature, file, null);
+  }
+
+  /**
+   * @param seriesReader reader of binary series data or null
+   * @see #parseDataType(XMLStreamReader, DataType, MZmineProject, ModularFeatureList,
+   * ModularFeatureListRow, ModularFeature, RawDataFile)
    */
   public static Object parseDataType(XMLStreamReader reader, DataType<?> type,
       MZmineProject project, ModularFeatureList flist, ModularFeatureListRow row,
-      ModularFeature feature, RawDataFile file) {
+      ModularFeature feature, RawDataFile file, @Nullable FeatureSeriesBinaryReader seriesReader)
+      throws IOException {
     if (type != null) {
       try {
+        if (type instanceof FeatureDataType featureDataType) {
+          return featureDataType.loadFromXML(reader, project, flist, row, feature, file,
+              seriesReader);
+        }
         return type.loadFromXML(reader, project, flist, row, feature, file);
+      } catch (IOException e) {
+        // missing project data would silently drop features, fail the load instead
+        throw e;
       } catch (Exception e) {
         logger.log(Level.WARNING, e,
             () -> "Error loading data type " + type.getHeaderString() + " in row (id=" + row.getID()
@@ -184,7 +210,18 @@ public class FeatureListLoadTask extends AbstractTask {
                     + metadataFile.getAbsolutePath());
           continue;
         }
-        parseFeatureList(storage, project, flist, flistFile);
+        final File seriesFile = new File(flistFile.toString()
+            .replace(FeatureListSaveTask.DATA_FILE_SUFFIX, FeatureListSaveTask.SERIES_FILE_SUFFIX));
+        // older projects store all series data in the xml
+        seriesReader = seriesFile.exists() ? new FeatureSeriesBinaryReader(seriesFile) : null;
+        try {
+          parseFeatureList(storage, project, flist, flistFile);
+        } finally {
+          if (seriesReader != null) {
+            seriesReader.close();
+            seriesReader = null;
+          }
+        }
 
         // disable buffering after the import (replace references to CachedIMSRawDataFiles with IMSRawDataFiles
         flist.replaceCachedFilesAndScans();
@@ -207,7 +244,7 @@ public class FeatureListLoadTask extends AbstractTask {
   }
 
   private void parseFeatureList(MemoryMapStorage storage, MZmineProject project,
-      ModularFeatureList flist, File flistFile) {
+      ModularFeatureList flist, File flistFile) throws IOException {
     currentFlist = flist.getName();
     processedRows = 0;
     totalRows = flist.getNumberOfRows();
@@ -239,7 +276,7 @@ public class FeatureListLoadTask extends AbstractTask {
         }
       }
 
-    } catch (IOException | XMLStreamException e) {
+    } catch (XMLStreamException e) {
       logger.log(Level.WARNING, "Error opening file " + flistFile.getAbsolutePath(), e);
     }
   }
@@ -381,7 +418,7 @@ public class FeatureListLoadTask extends AbstractTask {
   }
 
   private void parseRow(XMLStreamReader reader, MemoryMapStorage storage, MZmineProject project,
-      ModularFeatureList flist) throws XMLStreamException {
+      ModularFeatureList flist) throws XMLStreamException, IOException {
     if (!reader.getLocalName().equals(CONST.XML_ROW_ELEMENT)) {
       throw new IllegalStateException("Cannot parse row if current element is not a row element");
     }
@@ -428,7 +465,7 @@ public class FeatureListLoadTask extends AbstractTask {
 
   private void parseFeature(@NotNull XMLStreamReader reader, @Nullable MemoryMapStorage storage,
       MZmineProject project, @NotNull ModularFeatureList flist, @NotNull ModularFeatureListRow row,
-      @NotNull RawDataFile file) throws XMLStreamException {
+      @NotNull RawDataFile file) throws XMLStreamException, IOException {
 
     // create feature with original file, but use buffered file for data type loading.
     final RawDataFile originalFile =
@@ -445,7 +482,8 @@ public class FeatureListLoadTask extends AbstractTask {
         // the data types are responsible for loading their values
         DataType type = DataTypes.getTypeForId(
             reader.getAttributeValue(null, CONST.XML_DATA_TYPE_ID_ATTR));
-        Object value = parseDataType(reader, type, project, flist, row, feature, file);
+        Object value = parseDataType(reader, type, project, flist, row, feature, file,
+            seriesReader);
         if (type != null && value != null) {
           try {
             feature.set(type, value);
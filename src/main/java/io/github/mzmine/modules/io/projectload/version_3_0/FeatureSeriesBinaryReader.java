@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.projectload.version_3_0;
+
+import io.github.mzmine.modules.io.projectsave.FeatureSeriesBinaryWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads feature series written by {@link FeatureSeriesBinaryWriter}. The file is memory mapped in
+ * chunks of {@link FeatureSeriesBinaryWriter#CHUNK_SIZE} on first access, so values are copied
+ * directly from the mapped file without parsing text.
+ */
+public class FeatureSeriesBinaryReader implements Closeable {
+
+  private final FileChannel channel;
+  private final long size;
+  private final ByteBuffer[] chunks;
+
+  public FeatureSeriesBinaryReader(File file) throws IOException {
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    size = channel.size();
+    final long chunkSize = FeatureSeriesBinaryWriter.CHUNK_SIZE;
+    chunks = new ByteBuffer[(int) ((size + chunkSize - 1) / chunkSize)];
+  }
+
+  private synchronized ByteBuffer getChunk(int index) {
+    if (chunks[index] == null) {
+      final long start = index * FeatureSeriesBinaryWriter.CHUNK_SIZE;
+      final long length = Math.min(FeatureSeriesBinaryWriter.CHUNK_SIZE, size - start);
+      try {
+        chunks[index] = channel.map(MapMode.READ_ONLY, start, length);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return chunks[index];
+  }
+
+  /**
+   * @param offset the byte offset returned by {@link FeatureSeriesBinaryWriter#writeSeries}
+   * @return the series data
+   */
+  public BinarySeries readSeries(long offset) {
+    final ByteBuffer buffer = bufferAt(offset);
+    final int n = buffer.getInt();
+    final int[] scanIndices = new int[n];
+    final double[] mzs = new double[n];
+    final double[] intensities = new double[n];
+    buffer.asIntBuffer().get(scanIndices);
+    buffer.position(buffer.position() + n * Integer.BYTES);
+    buffer.asDoubleBuffer().get(mzs);
+    buffer.position(buffer.position() + n * Double.BYTES);
+    buffer.asDoubleBuffer().get(intensities);
+    return new BinarySeries(scanIndices, mzs, intensities);
+  }
+
+  /**
+   * @param offset the byte offset returned by {@link FeatureSeriesBinaryWriter#writeValues}
+   * @return the m/z values [0] and intensities [1]
+   */
+  public double[][] readValues(long offset) {
+    final ByteBuffer buffer = bufferAt(offset);
+    final int n = buffer.getInt();
+    final double[] mzs = new double[n];
+    final double[] intensities = new double[n];
+    buffer.asDoubleBuffer().get(mzs);
+    buffer.position(buffer.position() + n * Double.BYTES);
+    buffer.asDoubleBuffer().get(intensities);
+    return new double[][]{mzs, intensities};
+  }
+
+  private ByteBuffer bufferAt(long offset) {
+    final int chunkIndex = (int) (offset / FeatureSeriesBinaryWriter.CHUNK_SIZE);
+    final int chunkOffset = (int) (offset % FeatureSeriesBinaryWriter.CHUNK_SIZE);
+    // duplicate for independent positions
+    return getChunk(chunkIndex).duplicate().position(chunkOffset);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * @param scanIndices indices of the scans in all scans of the raw data file
+   * @param mzs         the m/z values
+   * @param intensities the intensity values
+   */
+  public record BinarySeries(int[] scanIndices, double[] mzs, double[] intensities) {
+
+  }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.projectload.version_3_0;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.FeatureList.FeatureListAppliedMethod;
+import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.datamodel.impl.masslist.ScanPointerMassList;
+import io.github.mzmine.datamodel.impl.masslist.SimpleMassList;
+import io.github.mzmine.datamodel.msms.MsMsInfo;
+import io.github.mzmine.modules.io.projectsave.RawDataFileSnapshotWriter;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.util.MemoryMapStorage;
+import io.github.mzmine.util.ParsingUtils;
+import io.github.mzmine.util.StreamCopy;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javafx.scene.paint.Color;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+import org.jetbrains.annotations.NotNull;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Restores raw data files from the snapshot written by {@link RawDataFileSnapshotWriter}. The
+ * spectra are read from the memory mapped binary data and copied to the {@link MemoryMapStorage}
+ * of the new files.
+ */
+public class RawDataFileSnapshotLoader {
+
+  private static final Logger logger = Logger.getLogger(
+      RawDataFileSnapshotLoader.class.getName());
+
+  private final ZipFile zipFile;
+  private final MZmineProject project;
+  private final List<RawDataFile> files = new ArrayList<>();
+
+  public RawDataFileSnapshotLoader(@NotNull ZipFile zipFile, @NotNull MZmineProject project) {
+    this.zipFile = zipFile;
+    this.project = project;
+  }
+
+  /**
+   * @return true if the project contains raw data snapshots
+   */
+  public static boolean hasSnapshots(@NotNull ZipFile zipFile) {
+    return zipFile.getEntry(RawDataFileSnapshotWriter.SNAPSHOT_INDEX_FILENAME) != null;
+  }
+
+  /**
+   * Loads all snapshots and adds the raw data files to the project.
+   *
+   * @return the loaded files
+   */
+  public List<RawDataFile> loadSnapshots() throws IOException {
+    createFiles();
+
+    final File dataFile = File.createTempFile("mzmine_rawdata_snapshot_data", ".tmp");
+    try {
+      try (InputStream is = zipFile.getInputStream(
+          getEntry(RawDataFileSnapshotWriter.SNAPSHOT_DATA_FILENAME));
+          OutputStream os = new FileOutputStream(dataFile)) {
+        new StreamCopy().copy(is, os);
+      }
+
+      try (FeatureSeriesBinaryReader dataReader = new FeatureSeriesBinaryReader(dataFile);
+          InputStream is = zipFile.getInputStream(
+              getEntry(RawDataFileSnapshotWriter.SNAPSHOT_SCANS_FILENAME))) {
+        final XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(is);
+        while (reader.hasNext()) {
+          if (reader.next() == XMLEvent.START_ELEMENT && reader.getLocalName()
+              .equals(CONST.XML_RAW_FILE_ELEMENT)) {
+            final int index = Integer.parseInt(
+                reader.getAttributeValue(null, CONST.XML_RAW_FILE_INDEX_ATTR));
+            readScans(reader, dataReader, (RawDataFileImpl) files.get(index));
+          }
+        }
+      } catch (XMLStreamException e) {
+        throw new IOException("Cannot read raw data snapshot.", e);
+      }
+    } finally {
+      dataFile.delete();
+    }
+
+    for (RawDataFile file : files) {
+      project.addFile(file);
+    }
+    return files;
+  }
+
+  private ZipEntry getEntry(String name) throws IOException {
+    final ZipEntry entry = zipFile.getEntry(name);
+    if (entry == null) {
+      throw new IOException("Project does not contain " + name);
+    }
+    return entry;
+  }
+
+  private void createFiles() throws IOException {
+    final Document document;
+    try (InputStream is = zipFile.getInputStream(
+        getEntry(RawDataFileSnapshotWriter.SNAPSHOT_INDEX_FILENAME))) {
+      document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(is);
+    } catch (ParserConfigurationException | SAXException e) {
+      throw new IOException("Cannot read raw data snapshot index.", e);
+    }
+
+    final NodeList fileElements = document.getElementsByTagName(CONST.XML_RAW_FILE_ELEMENT);
+    final RawDataFile[] indexedFiles = new RawDataFile[fileElements.getLength()];
+    for (int i = 0; i < fileElements.getLength(); i++) {
+      final Element fileElement = (Element) fileElements.item(i);
+      final int index = Integer.parseInt(fileElement.getAttribute(CONST.XML_RAW_FILE_INDEX_ATTR));
+      final String name = fileElement.getElementsByTagName(CONST.XML_RAW_FILE_NAME_ELEMENT).item(0)
+          .getTextContent();
+      final NodeList pathElements = fileElement.getElementsByTagName(
+          CONST.XML_RAW_FILE_PATH_ELEMENT);
+      final String path =
+          pathElements.getLength() > 0 ? pathElements.item(0).getTextContent() : null;
+      final Color color = Color.web(fileElement.getAttribute(CONST.XML_RAW_FILE_COLOR_ATTR));
+
+      final RawDataFile file = new RawDataFileImpl(name, path, MemoryMapStorage.forRawDataFile(),
+          color);
+      final NodeList methodElements = fileElement.getElementsByTagName(
+          CONST.XML_FLIST_APPLIED_METHOD_ELEMENT);
+      for (int j = 0; j < methodElements.getLength(); j++) {
+        final FeatureListAppliedMethod method = SimpleFeatureListAppliedMethod.loadValueFromXML(
+            (Element) methodElements.item(j));
+        if (method != null) {
+          file.getAppliedMethods().add(method);
+        }
+      }
+      indexedFiles[index] = file;
+    }
+    files.addAll(Arrays.asList(indexedFiles));
+  }
+
+  private void readScans(XMLStreamReader reader, FeatureSeriesBinaryReader dataReader,
+      RawDataFileImpl file) throws XMLStreamException, IOException {
+    final MemoryMapStorage massListStorage = MemoryMapStorage.forMassList();
+    // ms/ms infos may reference files of the project and other snapshots
+    final List<RawDataFile> allFiles = new ArrayList<>(List.of(project.getDataFiles()));
+    allFiles.addAll(files);
+
+    while (reader.hasNext()) {
+      final int type = reader.next();
+      if (type == XMLEvent.END_ELEMENT && reader.getLocalName()
+          .equals(CONST.XML_RAW_FILE_ELEMENT)) {
+        break;
+      }
+      if (type != XMLEvent.START_ELEMENT) {
+        continue;
+      }
+
+      if (reader.getLocalName().equals(CONST.XML_RAW_FILE_SCAN_ELEMENT)) {
+        final double[][] data = dataReader.readValues(
+            Long.parseLong(reader.getAttributeValue(null, CONST.XML_BINARY_OFFSET_ATTR)));
+        final Range<Double> mzRange = ParsingUtils.stringToDoubleRange(
+            reader.getAttributeValue(null, CONST.XML_MZ_RANGE_ATTR));
+        final Float injectionTime = ParsingUtils.readAttributeValueOrDefault(reader,
+            CONST.XML_INJECTION_TIME_ATTR, null, Float::parseFloat);
+
+        final SimpleScan scan = new SimpleScan(file,
+            Integer.parseInt(reader.getAttributeValue(null, CONST.XML_SCAN_NUMBER_ATTR)),
+            Integer.parseInt(reader.getAttributeValue(null, CONST.XML_MSLEVEL_ATTR)),
+            Float.parseFloat(reader.getAttributeValue(null, CONST.XML_RT_ATTR)), null, data[0],
+            data[1],
+            MassSpectrumType.valueOf(reader.getAttributeValue(null, CONST.XML_SPECTRUM_TYPE_ATTR)),
+            PolarityType.valueOf(reader.getAttributeValue(null, CONST.XML_POLARITY_ATTR)),
+            reader.getAttributeValue(null, CONST.XML_SCAN_DEF_ATTR), mzRange, injectionTime);
+
+        final Long massListOffset = ParsingUtils.readAttributeValueOrDefault(reader,
+            CONST.XML_MASS_LIST_OFFSET_ATTR, null, Long::parseLong);
+        if (massListOffset != null && massListOffset
+            == RawDataFileSnapshotWriter.SCAN_POINTER_MASS_LIST) {
+          scan.addMassList(new ScanPointerMassList(scan));
+        } else if (massListOffset != null) {
+          final double[][] masses = dataReader.readValues(massListOffset);
+          scan.addMassList(new SimpleMassList(massListStorage, masses[0], masses[1]));
+        }
+        file.addScan(scan);
+      } else if (reader.getLocalName().equals(CONST.XML_SCAN_MSMS_INFO_ELEMENT)) {
+        final int scanIndex = Integer.parseInt(
+            reader.getAttributeValue(null, CONST.XML_RAW_FILE_SCAN_INDEX_ATTR));
+        // move to the msms info element
+        reader.nextTag();
+        final MsMsInfo info = MsMsInfo.loadFromXML(reader, file, allFiles);
+        ((SimpleScan) file.getScan(scanIndex)).setMsMsInfo(info);
+      }
+    }
+    logger.finest(
+        () -> "Loaded snapshot of " + file.getNumOfScans() + " scans of file " + file.getName());
+  }
+}
@@ -35,6 +35,7 @@ import io.github.mzmine.datamodel.features.ModularFeature;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.ModularFeatureListRow;
 import io.github.mzmine.datamodel.features.types.DataType;
+import io.github.mzmine.datamodel.features.types.FeatureDataType;
 import io.github.mzmine.datamodel.features.types.FeaturesType;
 import io.github.mzmine.datamodel.features.types.numbers.IDType;
 import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
@@ -72,6 +73,7 @@ public class FeatureListSaveTask extends AbstractTask {
 
   public static final String METADATA_FILE_SUFFIX = "_metadata.xml";
   public static final String DATA_FILE_SUFFIX = "_data.xml";
+  public static final String SERIES_FILE_SUFFIX = "_series.bin";
   public static final String FLIST_FOLDER = "featurelists/";
   private static final Logger logger = Logger.getLogger(FeatureListSaveTask.class.getName());
   private static final IDType idType = new IDType();
@@ -94,6 +96,10 @@ public class FeatureListSaveTask extends AbstractTask {
     return FLIST_FOLDER + CONST.XML_FEATURE_LIST_ELEMENT + "_" + flistname + DATA_FILE_SUFFIX;
   }
 
+  public static String getSeriesFileName(String flistname) {
+    return FLIST_FOLDER + CONST.XML_FEATURE_LIST_ELEMENT + "_" + flistname + SERIES_FILE_SUFFIX;
+  }
+
   public static String getMetadataFileName(String flistname) {
     return FLIST_FOLDER + CONST.XML_FEATURE_LIST_ELEMENT + "_" + flistname + METADATA_FILE_SUFFIX;
   }
@@ -210,15 +216,19 @@ public class FeatureListSaveTask extends AbstractTask {
   private boolean saveFeatureData() {
     logger.finest(() -> "Creating temporary file for feature list " + flist.getName() + ".");
     File tempFile;
+    File tempSeriesFile;
     try {
       tempFile = File.createTempFile("mzmine_featurelist_data", ".tmp");
+      tempSeriesFile = File.createTempFile("mzmine_featurelist_series", ".tmp");
     } catch (IOException e) {
       logger.log(Level.SEVERE, "Cannot create temporary file.", e);
       setStatus(TaskStatus.ERROR);
       return false;
     }
 
-    try (OutputStream os = new FileOutputStream(tempFile)) {
+    // series data is written to a binary file, the xml only references the records
+    try (OutputStream os = new FileOutputStream(tempFile);
+        FeatureSeriesBinaryWriter seriesWriter = new FeatureSeriesBinaryWriter(tempSeriesFile)) {
       final XMLOutputFactory xof = XMLOutputFactory.newInstance();
       final XMLStreamWriter writer = new IndentingXMLStreamWriter(xof.createXMLStreamWriter(os));
       writer.writeStartDocument("UTF-8", "1.0");
@@ -234,7 +244,7 @@ public class FeatureListSaveTask extends AbstractTask {
         }
 
         ModularFeatureListRow row = (ModularFeatureListRow) r;
-        writeRow(writer, row);
+        writeRow(writer, seriesWriter, row);
 
         processedRows++;
       }
@@ -245,11 +255,13 @@ public class FeatureListSaveTask extends AbstractTask {
     } catch (IOException | XMLStreamException e) {
       logger.log(Level.SEVERE, e.getMessage(), e);
       setStatus(TaskStatus.ERROR);
+      tempSeriesFile.delete();
       return false;
     }
 
     if (isCanceled()) {
       tempFile.delete();
+      tempSeriesFile.delete();
       return false;
     }
 
@@ -262,12 +274,23 @@ public class FeatureListSaveTask extends AbstractTask {
       return false;
     }
 
+    try (FileInputStream is = new FileInputStream(tempSeriesFile)) {
+      zos.putNextEntry(new ZipEntry(getSeriesFileName(flist.getName())));
+      copy.copy(is, zos);
+    } catch (IOException e) {
+      logger.log(Level.SEVERE, e.getMessage(), e);
+      setStatus(TaskStatus.ERROR);
+      return false;
+    } finally {
+      tempSeriesFile.delete();
+    }
+
 //    tempFile.delete();
     return true;
   }
 
-  private void writeRow(XMLStreamWriter writer, ModularFeatureListRow row)
-      throws XMLStreamException {
+  private void writeRow(XMLStreamWriter writer, FeatureSeriesBinaryWriter seriesWriter,
+      ModularFeatureListRow row) throws XMLStreamException, IOException {
 
     writer.writeStartElement(CONST.XML_ROW_ELEMENT);
     writer.writeAttribute(idType.getUniqueID(), String.valueOf(row.getID()));
@@ -278,26 +301,31 @@ public class FeatureListSaveTask extends AbstractTask {
       if (dataType instanceof FeaturesType) {
         continue;
       }
-      writeDataType(writer, dataType, value, flist, row, null, null);
+      writeDataType(writer, seriesWriter, dataType, value, flist, row, null, null);
     }
 
     for (ModularFeature feature : row.getFeatures()) {
-      writeFeature(writer, row, feature);
+      writeFeature(writer, seriesWriter, row, feature);
     }
 
     writer.writeEndElement();
   }
 
-  private void writeDataType(XMLStreamWriter writer, DataType<?> dataType,
-      @Nullable final Object value, @NotNull final ModularFeatureList flist,
-      @NotNull final ModularFeatureListRow row, @Nullable final ModularFeature feature,
-      @Nullable final RawDataFile file) throws XMLStreamException {
+  private void writeDataType(XMLStreamWriter writer, FeatureSeriesBinaryWriter seriesWriter,
+      DataType<?> dataType, @Nullable final Object value,
+      @NotNull final ModularFeatureList flist, @NotNull final ModularFeatureListRow row,
+      @Nullable final ModularFeature feature, @Nullable final RawDataFile file)
+      throws XMLStreamException, IOException {
 
     writer.writeStartElement(CONST.XML_DATA_TYPE_ELEMENT);
     writer.writeAttribute(CONST.XML_DATA_TYPE_ID_ATTR, dataType.getUniqueID());
 
     try { // catch here, so we can easily debug and don't destroy the flist while saving in case an unexpected exception happens
-      dataType.saveToXML(writer, value, flist, row, feature, file);
+      if (dataType instanceof FeatureDataType featureDataType) {
+        featureDataType.saveToXML(writer, value, flist, row, feature, file, seriesWriter);
+      } else {
+        dataType.saveToXML(writer, value, flist, row, feature, file);
+      }
     } catch (XMLStreamException e) {
       logger.warning(() -> "Error while writing data type " + dataType.getClass().getSimpleName()
           + " with value " + value + " to xml.");
@@ -306,8 +334,8 @@ public class FeatureListSaveTask extends AbstractTask {
     writer.writeEndElement();
   }
 
-  private void writeFeature(XMLStreamWriter writer, ModularFeatureListRow row,
-      ModularFeature feature) throws XMLStreamException {
+  private void writeFeature(XMLStreamWriter writer, FeatureSeriesBinaryWriter seriesWriter,
+      ModularFeatureListRow row, ModularFeature feature) throws XMLStreamException, IOException {
     final RawDataFile rawDataFile = feature.getRawDataFile();
     if (rawDataFile == null || feature.getFeatureStatus() == FeatureStatus.UNKNOWN) {
       return;
@@ -317,7 +345,8 @@ public class FeatureListSaveTask extends AbstractTask {
     writer.writeAttribute(CONST.XML_RAW_FILE_ELEMENT, rawDataFile.getName());
 
     for (Entry<DataType, Object> entry : feature.getMap().entrySet()) {
-      writeDataType(writer, entry.getKey(), entry.getValue(), flist, row, feature, rawDataFile);
+      writeDataType(writer, seriesWriter, entry.getKey(), entry.getValue(), flist, row, feature,
+          rawDataFile);
     }
 
     writer.writeEndElement();
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.projectsave;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+
+/**
+ * Writes the data of feature series (scan indices, m/z and intensity values) as binary records to
+ * a file that is stored next to the feature list xml in the project. The xml only references the
+ * byte offset of each record. Records never cross a {@link #CHUNK_SIZE} boundary so that the file
+ * can be memory mapped in chunks during loading.
+ * <p>
+ * Record layout: int n, int[n] scan indices, double[n] m/z values, double[n] intensities (big
+ * endian). Records of spectra ({@link #writeValues(double[], double[], int)}) omit the scan
+ * indices.
+ */
+public class FeatureSeriesBinaryWriter implements Closeable {
+
+  /**
+   * Size of memory mapped chunks, records are padded to never cross a chunk boundary
+   */
+  public static final long CHUNK_SIZE = 1L << 30;
+  private static final byte[] PADDING = new byte[8192];
+
+  private final DataOutputStream out;
+  private long position = 0;
+
+  public FeatureSeriesBinaryWriter(File file) throws IOException {
+    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+  }
+
+  /**
+   * @param numValues number of values in the series
+   * @return the size of a record in bytes
+   */
+  public static long recordSize(int numValues) {
+    return Integer.BYTES + (long) numValues * (Integer.BYTES + 2L * Double.BYTES);
+  }
+
+  /**
+   * @param scanIndices indices of the scans in all scans of the raw data file
+   * @param mzs         the m/z values, at least scanIndices.length
+   * @param intensities the intensity values, at least scanIndices.length
+   * @return the byte offset of the record in the file
+   */
+  public long writeSeries(int[] scanIndices, DoubleBuffer mzs, DoubleBuffer intensities)
+      throws IOException {
+    final int n = scanIndices.length;
+    final long size = recordSize(n);
+    final long offset = startRecord(n, size);
+    for (int index : scanIndices) {
+      out.writeInt(index);
+    }
+    for (int i = 0; i < n; i++) {
+      out.writeDouble(mzs.get(i));
+    }
+    for (int i = 0; i < n; i++) {
+      out.writeDouble(intensities.get(i));
+    }
+    position += size;
+    return offset;
+  }
+
+  /**
+   * @param numValues number of values in the spectrum
+   * @return the size of a spectrum record in bytes
+   */
+  public static long valuesRecordSize(int numValues) {
+    return Integer.BYTES + (long) numValues * 2L * Double.BYTES;
+  }
+
+  /**
+   * Writes a spectrum without scan indices.
+   *
+   * @param mzs         the m/z values, at least n
+   * @param intensities the intensity values, at least n
+   * @param n           the number of values
+   * @return the byte offset of the record in the file
+   */
+  public long writeValues(double[] mzs, double[] intensities, int n) throws IOException {
+    final long size = valuesRecordSize(n);
+    final long offset = startRecord(n, size);
+    for (int i = 0; i < n; i++) {
+      out.writeDouble(mzs[i]);
+    }
+    for (int i = 0; i < n; i++) {
+      out.writeDouble(intensities[i]);
+    }
+    position += size;
+    return offset;
+  }
+
+  /**
+   * Pads to the next chunk if the record would cross the chunk boundary and writes the number of
+   * values.
+   *
+   * @return the byte offset of the record
+   */
+  private long startRecord(int n, long size) throws IOException {
+    if (size > CHUNK_SIZE) {
+      throw new IOException("Record with " + n + " values is too large for binary storage.");
+    }
+    final long chunkEnd = (position / CHUNK_SIZE + 1) * CHUNK_SIZE;
+    if (position + size > chunkEnd) {
+      pad(chunkEnd - position);
+    }
+    out.writeInt(n);
+    return position;
+  }
+
+  private void pad(long bytes) throws IOException {
+    long remaining = bytes;
+    while (remaining > 0) {
+      final int len = (int) Math.min(remaining, PADDING.length);
+      out.write(PADDING, 0, len);
+      remaining -= len;
+    }
+    position += bytes;
+  }
+
+  /**
+   * @return number of bytes written
+   */
+  public long getPosition() {
+    return position;
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+}
@@ -30,6 +30,7 @@ import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.dialogs.ParameterSetupDialog;
 import io.github.mzmine.parameters.impl.SimpleParameterSet;
+import io.github.mzmine.parameters.parametertypes.BooleanParameter;
 import io.github.mzmine.parameters.parametertypes.ComboParameter;
 import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
 import io.github.mzmine.parameters.parametertypes.filenames.FileSelectionType;
@@ -58,12 +59,17 @@ public class ProjectSaveAsParameters extends SimpleParameterSet {
       + "files should not be moved or renamed). Standalone copies the raw data files into the project, "
       + "creating a large but flexible project that can be shared.", ProjectSaveOption.values(),
       ProjectSaveOption.REFERENCING);
+  public static final BooleanParameter rawDataSnapshot = new BooleanParameter(
+      "Store raw data snapshot",
+      "Stores the scans and mass lists of the raw data files in the project. Opening the project "
+      + "restores the files from the snapshot instead of importing the original files again. "
+      + "Ion mobility and imaging files are always imported again.", false);
   public static final FileNameParameter projectFile = new FileNameParameter("Project file",
       "File name of project to be saved", extensions, FileSelectionType.SAVE);
   private static final Logger logger = Logger.getLogger(ProjectSaveAsParameters.class.getName());
 
   public ProjectSaveAsParameters() {
-    super(new Parameter[]{projectFile, option});
+    super(new Parameter[]{projectFile, option, rawDataSnapshot});
   }
 
   @Override
@@ -65,6 +65,7 @@ public class ProjectSavingTask extends AbstractTask {
   private final ProjectSaveOption projectType;
 
   private final File saveFile;
+  private final boolean rawDataSnapshot;
   private final MZmineProjectImpl savedProject;
   private final int totalSaveItems;
   private final int finishedSaveItems = 0;
@@ -82,6 +83,7 @@ public class ProjectSavingTask extends AbstractTask {
     this.savedProject = (MZmineProjectImpl) project;
     this.saveFile = parameters.getValue(ProjectSaveAsParameters.projectFile);
     this.projectType = parameters.getValue(ProjectSaveAsParameters.option);
+    this.rawDataSnapshot = parameters.getValue(ProjectSaveAsParameters.rawDataSnapshot);
     dataFilesIDMap = new Hashtable<>();
     this.totalSaveItems = project.getDataFiles().length + project.getCurrentFeatureLists().size();
   }
@@ -325,7 +327,8 @@ public class ProjectSavingTask extends AbstractTask {
 
     AtomicBoolean finished = new AtomicBoolean(false);
     rawDataFileSaveHandler = new RawDataFileSaveHandler(savedProject, zipStream,
-        Objects.requireNonNullElse(savedProject.isStandalone(), true), getModuleCallDate());
+        Objects.requireNonNullElse(savedProject.isStandalone(), true), rawDataSnapshot,
+        getModuleCallDate());
     rawDataFileSaveHandler.addTaskStatusListener((task, newStatus, oldStatus) -> {
       switch (newStatus) {
         case WAITING, PROCESSING -> {
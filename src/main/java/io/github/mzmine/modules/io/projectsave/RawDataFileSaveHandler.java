@@ -49,9 +49,12 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -83,7 +86,14 @@ public class RawDataFileSaveHandler extends AbstractTask {
   private final Logger logger = Logger.getLogger(this.getClass().getName());
   private final ZipOutputStream zipStream;
   private double progress = 0;
+  /**
+   * Files restored by the import batch
+   */
   private final List<RawDataFile> files;
+  /**
+   * Files restored from a snapshot, see {@link RawDataFileSnapshotWriter}
+   */
+  private final List<RawDataFile> snapshotFiles;
   private final boolean saveFilesInProject;
   private final String prefix = "Saving raw data files: ";
   private String description;
@@ -97,13 +107,31 @@ public class RawDataFileSaveHandler extends AbstractTask {
 
   public RawDataFileSaveHandler(MZmineProject project, ZipOutputStream zipOutputStream,
       boolean saveFilesInProject, @NotNull Instant moduleCallDate) {
+    this(project, zipOutputStream, saveFilesInProject, false, moduleCallDate);
+  }
+
+  /**
+   * @param saveSnapshots store supported files as a snapshot instead of the import batch
+   */
+  public RawDataFileSaveHandler(MZmineProject project, ZipOutputStream zipOutputStream,
+      boolean saveFilesInProject, boolean saveSnapshots, @NotNull Instant moduleCallDate) {
     super(null, moduleCallDate);
     this.project = project;
     this.zipStream = zipOutputStream;
     this.saveFilesInProject = saveFilesInProject;
-    files = List.of(project.getDataFiles());
+    final List<RawDataFile> batchFiles = new ArrayList<>();
+    final List<RawDataFile> snapshots = new ArrayList<>();
+    for (RawDataFile file : project.getDataFiles()) {
+      if (saveSnapshots && RawDataFileSnapshotWriter.isSupported(file)) {
+        snapshots.add(file);
+      } else {
+        batchFiles.add(file);
+      }
+    }
+    files = List.copyOf(batchFiles);
+    snapshotFiles = List.copyOf(snapshots);
     numSteps = 1 /*dissect + merge */ + (saveFilesInProject ? files.size() : 0) /*save files*/
-        + 1 /*save batch file*/;
+        + 1 /*save batch file*/ + (snapshotFiles.isEmpty() ? 0 : 1) /*save snapshots*/;
     stepProgress = 1 / (double) numSteps;
   }
 
@@ -125,9 +153,16 @@ public class RawDataFileSaveHandler extends AbstractTask {
   }
 
   public boolean saveRawDataFilesAsBatch() throws IOException, ParserConfigurationException {
+    if (files.isEmpty()) {
+      progress += 2 * stepProgress;
+      return true;
+    }
 
     List<BatchQueue> cleanedBatchQueues = List.of(RawDataSavingUtils.makeBatchQueue(files));
     progress += stepProgress;
+    if (!snapshotFiles.isEmpty()) {
+      removeSnapshotFiles(cleanedBatchQueues);
+    }
 
     if (saveFilesInProject) {
       description = prefix + "Zipping raw data files.";
@@ -292,11 +327,82 @@ public class RawDataFileSaveHandler extends AbstractTask {
     }
   }
 
+  /**
+   * Removes the files that are stored as a snapshot from the import and processing steps, they
+   * would be imported twice otherwise. All steps are restricted to the specific batch files, so
+   * they do not include the snapshot files when the project is opened.
+   *
+   * @param queues The batch queues.
+   */
+  private void removeSnapshotFiles(List<BatchQueue> queues) {
+    final Set<String> snapshotPaths = new HashSet<>();
+    final Set<String> snapshotNames = new HashSet<>();
+    for (RawDataFile file : snapshotFiles) {
+      snapshotNames.add(file.getName());
+      if (file.getAbsolutePath() != null) {
+        snapshotPaths.add(new File(file.getAbsolutePath()).getAbsolutePath());
+      }
+    }
+
+    for (final BatchQueue queue : queues) {
+      for (MZmineProcessingStep<MZmineProcessingModule> step : queue) {
+        for (Parameter<?> parameter : step.getParameterSet().getParameters()) {
+          if (parameter instanceof FileNamesParameter fnp) {
+            fnp.setValue(Arrays.stream(fnp.getValue())
+                .filter(f -> !snapshotPaths.contains(f.getAbsolutePath())).toArray(File[]::new));
+          } else if (parameter instanceof RawDataFilesParameter rfp) {
+            final RawDataFilesSelection selection = rfp.getValue();
+            final RawDataFile[] selected = getSelectedFiles(selection);
+            if (selected == null) {
+              // the files of this step are not known, keep the selection as it is
+              continue;
+            }
+            final RawDataFilePlaceholder[] placeholders = Arrays.stream(selected)
+                .filter(f -> !snapshotNames.contains(f.getName()))
+                .map(f -> new RawDataFilePlaceholder(f.getName(), f.getAbsolutePath()))
+                .toArray(RawDataFilePlaceholder[]::new);
+            selection.setSelectionType(RawDataFilesSelectionType.SPECIFIC_FILES);
+            selection.setSpecificFiles(placeholders);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the specific files or the evaluated files of the selection. Null if the selection was
+   * not evaluated.
+   */
+  @Nullable
+  private static RawDataFile[] getSelectedFiles(RawDataFilesSelection selection) {
+    if (selection.getSelectionType() == RawDataFilesSelectionType.SPECIFIC_FILES) {
+      return selection.getSpecificFilesPlaceholders();
+    }
+    try {
+      return selection.getEvaluationResult();
+    } catch (IllegalStateException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Writes the snapshots of all supported files.
+   */
+  private void saveRawDataFileSnapshots() throws IOException {
+    if (snapshotFiles.isEmpty()) {
+      return;
+    }
+    description = prefix + "Writing snapshots of " + snapshotFiles.size() + " raw data files.";
+    new RawDataFileSnapshotWriter(snapshotFiles, zipStream).writeSnapshots();
+    progress += stepProgress;
+  }
+
   @Override
   public void run() {
     setStatus(TaskStatus.PROCESSING);
 
     try {
+      saveRawDataFileSnapshots();
       if (!saveRawDataFilesAsBatch()) {
         setStatus(TaskStatus.ERROR);
         return;
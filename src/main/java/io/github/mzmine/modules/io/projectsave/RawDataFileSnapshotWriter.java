@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.projectsave;
+
+import com.google.common.collect.Range;
+import com.sun.xml.txw2.output.IndentingXMLStreamWriter;
+import io.github.mzmine.datamodel.MassList;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.features.FeatureList.FeatureListAppliedMethod;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.datamodel.impl.masslist.ScanPointerMassList;
+import io.github.mzmine.datamodel.msms.MsMsInfo;
+import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.util.ParsingUtils;
+import io.github.mzmine.util.StreamCopy;
+import io.github.mzmine.util.XMLUtils;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.TransformerException;
+import org.jetbrains.annotations.NotNull;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Stores a snapshot of raw data files in the project, so the files can be restored without
+ * re-importing the original MS data files. The snapshot consists of three zip entries:
+ * <ul>
+ *   <li>{@link #SNAPSHOT_INDEX_FILENAME}: name, path, color and applied methods of every file</li>
+ *   <li>{@link #SNAPSHOT_SCANS_FILENAME}: the scan metadata and MS/MS information</li>
+ *   <li>{@link #SNAPSHOT_DATA_FILENAME}: the binary spectra and mass lists written by
+ *   {@link FeatureSeriesBinaryWriter}, referenced by offset from the scans xml</li>
+ * </ul>
+ * Only plain files ({@link RawDataFileImpl} with {@link SimpleScan}s) are supported, ion mobility
+ * and imaging files are restored by the import batch.
+ */
+public class RawDataFileSnapshotWriter {
+
+  public static final String SNAPSHOT_INDEX_FILENAME = "raw_data_snapshots.xml";
+  public static final String SNAPSHOT_SCANS_FILENAME = "raw_data_snapshot_scans.xml";
+  public static final String SNAPSHOT_DATA_FILENAME = "raw_data_snapshot_data.bin";
+  /**
+   * Mass list offset of a {@link ScanPointerMassList}, which uses the scan data
+   */
+  public static final long SCAN_POINTER_MASS_LIST = -2L;
+
+  private static final Logger logger = Logger.getLogger(
+      RawDataFileSnapshotWriter.class.getName());
+
+  private final List<RawDataFile> files;
+  private final ZipOutputStream zipStream;
+  private int processedFiles = 0;
+
+  public RawDataFileSnapshotWriter(@NotNull List<RawDataFile> files,
+      @NotNull ZipOutputStream zipStream) {
+    this.files = files;
+    this.zipStream = zipStream;
+  }
+
+  /**
+   * @return true if the file can be stored as a snapshot
+   */
+  public static boolean isSupported(@NotNull RawDataFile file) {
+    if (file.getClass() != RawDataFileImpl.class) {
+      return false;
+    }
+    for (Scan scan : file.getScans()) {
+      if (scan.getClass() != SimpleScan.class) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Writes the snapshot of all files to the zip stream.
+   */
+  public void writeSnapshots() throws IOException {
+    final File indexFile = File.createTempFile("mzmine_rawdata_snapshot_index", ".tmp");
+    final File scansFile = File.createTempFile("mzmine_rawdata_snapshot_scans", ".tmp");
+    final File dataFile = File.createTempFile("mzmine_rawdata_snapshot_data", ".tmp");
+    try {
+      writeIndex(indexFile);
+      try (OutputStream os = new FileOutputStream(scansFile);
+          FeatureSeriesBinaryWriter dataWriter = new FeatureSeriesBinaryWriter(dataFile)) {
+        final XMLOutputFactory xof = XMLOutputFactory.newInstance();
+        final XMLStreamWriter writer = new IndentingXMLStreamWriter(
+            xof.createXMLStreamWriter(os));
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeStartElement(CONST.XML_RAW_FILES_LIST_ELEMENT);
+        for (int i = 0; i < files.size(); i++) {
+          writeScans(writer, dataWriter, files.get(i), i);
+          processedFiles++;
+        }
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.flush();
+        writer.close();
+      } catch (XMLStreamException e) {
+        throw new IOException("Cannot write raw data snapshot.", e);
+      }
+
+      copyToZip(indexFile, SNAPSHOT_INDEX_FILENAME);
+      copyToZip(scansFile, SNAPSHOT_SCANS_FILENAME);
+      copyToZip(dataFile, SNAPSHOT_DATA_FILENAME);
+    } finally {
+      indexFile.delete();
+      scansFile.delete();
+      dataFile.delete();
+    }
+  }
+
+  private void writeIndex(File indexFile) throws IOException {
+    try {
+      final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+          .newDocument();
+      final Element root = document.createElement(CONST.XML_ROOT_ELEMENT);
+      document.appendChild(root);
+      final Element filesList = document.createElement(CONST.XML_RAW_FILES_LIST_ELEMENT);
+      root.appendChild(filesList);
+
+      for (int i = 0; i < files.size(); i++) {
+        final RawDataFile file = files.get(i);
+        final Element fileElement = document.createElement(CONST.XML_RAW_FILE_ELEMENT);
+        fileElement.setAttribute(CONST.XML_RAW_FILE_INDEX_ATTR, String.valueOf(i));
+        fileElement.setAttribute(CONST.XML_RAW_FILE_COLOR_ATTR, file.getColor().toString());
+        XMLUtils.appendElement(fileElement, CONST.XML_RAW_FILE_NAME_ELEMENT)
+            .setTextContent(file.getName());
+        if (file.getAbsolutePath() != null) {
+          XMLUtils.appendElement(fileElement, CONST.XML_RAW_FILE_PATH_ELEMENT)
+              .setTextContent(file.getAbsolutePath());
+        }
+
+        final Element methodsList = document.createElement(
+            CONST.XML_FLIST_APPLIED_METHODS_LIST_ELEMENT);
+        for (FeatureListAppliedMethod method : file.getAppliedMethods()) {
+          final Element methodElement = document.createElement(
+              CONST.XML_FLIST_APPLIED_METHOD_ELEMENT);
+          method.saveValueToXML(methodElement);
+          methodsList.appendChild(methodElement);
+        }
+        fileElement.appendChild(methodsList);
+        filesList.appendChild(fileElement);
+      }
+
+      XMLUtils.saveToFile(indexFile, document);
+    } catch (ParserConfigurationException | TransformerException e) {
+      throw new IOException("Cannot write raw data snapshot index.", e);
+    }
+  }
+
+  private void writeScans(XMLStreamWriter writer, FeatureSeriesBinaryWriter dataWriter,
+      RawDataFile file, int fileIndex) throws XMLStreamException, IOException {
+    writer.writeStartElement(CONST.XML_RAW_FILE_ELEMENT);
+    writer.writeAttribute(CONST.XML_RAW_FILE_INDEX_ATTR, String.valueOf(fileIndex));
+    writer.writeAttribute(CONST.XML_NUM_VALUES_ATTR, String.valueOf(file.getNumOfScans()));
+
+    // reused buffers, the data is written before the next scan is accessed
+    double[] mzs = new double[file.getMaxRawDataPoints()];
+    double[] intensities = new double[mzs.length];
+
+    final List<Scan> scans = file.getScans();
+    for (final Scan scan : scans) {
+      writer.writeStartElement(CONST.XML_RAW_FILE_SCAN_ELEMENT);
+      writer.writeAttribute(CONST.XML_SCAN_NUMBER_ATTR, String.valueOf(scan.getScanNumber()));
+      writer.writeAttribute(CONST.XML_MSLEVEL_ATTR, String.valueOf(scan.getMSLevel()));
+      writer.writeAttribute(CONST.XML_RT_ATTR, String.valueOf(scan.getRetentionTime()));
+      writer.writeAttribute(CONST.XML_POLARITY_ATTR, scan.getPolarity().name());
+      writer.writeAttribute(CONST.XML_SPECTRUM_TYPE_ATTR, scan.getSpectrumType().name());
+      writer.writeAttribute(CONST.XML_SCAN_DEF_ATTR, scan.getScanDefinition());
+      writer.writeAttribute(CONST.XML_MZ_RANGE_ATTR,
+          ParsingUtils.rangeToString((Range) scan.getScanningMZRange()));
+      if (scan.getInjectionTime() != null) {
+        writer.writeAttribute(CONST.XML_INJECTION_TIME_ATTR,
+            String.valueOf(scan.getInjectionTime()));
+      }
+
+      final int n = scan.getNumberOfDataPoints();
+      if (mzs.length < n) {
+        mzs = new double[n];
+        intensities = new double[n];
+      }
+      scan.getMzValues(mzs);
+      scan.getIntensityValues(intensities);
+      writer.writeAttribute(CONST.XML_BINARY_OFFSET_ATTR,
+          String.valueOf(dataWriter.writeValues(mzs, intensities, n)));
+
+      final MassList massList = scan.getMassList();
+      if (massList instanceof ScanPointerMassList) {
+        writer.writeAttribute(CONST.XML_MASS_LIST_OFFSET_ATTR,
+            String.valueOf(SCAN_POINTER_MASS_LIST));
+      } else if (massList != null) {
+        final int numMasses = massList.getNumberOfDataPoints();
+        final double[] massMzs = massList.getMzValues(new double[numMasses]);
+        final double[] massIntensities = massList.getIntensityValues(new double[numMasses]);
+        writer.writeAttribute(CONST.XML_MASS_LIST_OFFSET_ATTR,
+            String.valueOf(dataWriter.writeValues(massMzs, massIntensities, numMasses)));
+      }
+      writer.writeEndElement();
+    }
+
+    // ms/ms infos reference other scans by index and are loaded after all scans were created
+    writer.writeStartElement(CONST.XML_SCAN_MSMS_INFOS_ELEMENT);
+    for (int i = 0; i < scans.size(); i++) {
+      final MsMsInfo info = scans.get(i).getMsMsInfo();
+      if (info == null) {
+        continue;
+      }
+      writer.writeStartElement(CONST.XML_SCAN_MSMS_INFO_ELEMENT);
+      writer.writeAttribute(CONST.XML_RAW_FILE_SCAN_INDEX_ATTR, String.valueOf(i));
+      info.writeToXML(writer);
+      writer.writeEndElement();
+    }
+    writer.writeEndElement();
+
+    writer.writeEndElement();
+    logger.finest(() -> "Wrote snapshot of " + scans.size() + " scans of file " + file.getName());
+  }
+
+  private void copyToZip(File file, String entryName) throws IOException {
+    zipStream.putNextEntry(new ZipEntry(entryName));
+    try (FileInputStream is = new FileInputStream(file)) {
+      new StreamCopy().copy(is, zipStream);
+    }
+  }
+
+  /**
+   * @return number of files written
+   */
+  public int getProcessedFiles() {
+    return processedFiles;
+  }
+}
@@ -57,6 +57,7 @@ import io.github.mzmine.datamodel.features.types.annotations.iin.IonNetworkIDTyp
 import io.github.mzmine.datamodel.features.types.annotations.iin.IonTypeType;
 import io.github.mzmine.datamodel.features.types.fx.ColumnID;
 import io.github.mzmine.datamodel.features.types.fx.ColumnType;
+import io.github.mzmine.datamodel.features.types.graphicalnodes.SparklineCache;
 import io.github.mzmine.datamodel.features.types.modifiers.ExpandableType;
 import io.github.mzmine.datamodel.features.types.modifiers.SubColumnsFactory;
 import io.github.mzmine.datamodel.features.types.numbers.AreaType;
@@ -79,6 +80,7 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.datatype.DataTypeCheckListParameter;
 import io.github.mzmine.util.javafx.FxIconUtil;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -90,15 +92,14 @@ import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.value.ObservableValue;
-import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
-import javafx.collections.transformation.FilteredList;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.geometry.Pos;
@@ -131,8 +132,8 @@ public class FeatureTableFX extends TreeTableView<ModularFeatureListRow> impleme
     ListChangeListener<FeatureListRow> {
 
   private static final Logger logger = Logger.getLogger(FeatureTableFX.class.getName());
-  private final FilteredList<TreeItem<ModularFeatureListRow>> filteredRowItems;
-  private final ObservableList<TreeItem<ModularFeatureListRow>> rowItems;
+  // snapshots the filter results and sorts the rows on a background thread
+  private final FeatureTableRowModel rowModel;
   // parameters
   private final ParameterSet parameters;
   private final DataTypeCheckListParameter rowTypesParameter;
@@ -153,6 +154,11 @@ public class FeatureTableFX extends TreeTableView<ModularFeatureListRow> impleme
     this.getSelectionModel().setCellSelectionEnabled(true);
     setTableEditable(true);
 
+    rowModel = new FeatureTableRowModel(this);
+    setSortPolicy(table -> {
+      rowModel.sort();
+      return true;
+    });
     initFeatureListListener();
 
     parameters = MZmineCore.getConfiguration().getModuleParameters(FeatureTableFXModule.class);
@@ -160,8 +166,6 @@ public class FeatureTableFX extends TreeTableView<ModularFeatureListRow> impleme
     featureTypesParameter = parameters.getParameter(
         FeatureTableFXParameters.showFeatureTypeColumns);
 
-    rowItems = FXCollections.observableArrayList();
-    filteredRowItems = new FilteredList<>(rowItems);
     newColumnMap = new HashMap<>();
     initHandleDoubleClicks();
     setContextMenu(new FeatureTableContextMenu(this));
@@ -457,17 +461,7 @@ public class FeatureTableFX extends TreeTableView<ModularFeatureListRow> impleme
       return;
     }
 
-    MZmineCore.runLater(() -> {
-      getRoot().getChildren().clear();
-      rowItems.clear();
-      // add rows
-      for (FeatureListRow row : featureListProperty.get().getRows()) {
-        final ModularFeatureListRow mrow = (ModularFeatureListRow) row;
-        rowItems.add(new TreeItem<>(mrow));
-      }
-      getRoot().getChildren().addAll(filteredRowItems);
-      this.sort();
-    });
+    MZmineCore.runLater(rowModel::rowsChanged);
   }
 
   /**
@@ -653,9 +647,16 @@ public class FeatureTableFX extends TreeTableView<ModularFeatureListRow> impleme
     return headerLabel;
   }
 
-  @NotNull
-  public FilteredList<TreeItem<ModularFeatureListRow>> getFilteredRowItems() {
-    return filteredRowItems;
+  /**
+   * Filters the rows, the filter is evaluated on the FX thread and sorted on a background thread
+   *
+   * @param filter      the row filter or null to show all rows
+   * @param filterTypes the row types the filter depends on. Rows are filtered again if their
+   *                    values change.
+   */
+  public void setRowFilter(@Nullable Predicate<ModularFeatureListRow> filter,
+      @NotNull Collection<DataType<?>> filterTypes) {
+    rowModel.setFilter(filter, filterTypes);
   }
 
   /**
@@ -923,7 +924,6 @@ public class FeatureTableFX extends TreeTableView<ModularFeatureListRow> impleme
         // Clear old rows and old columns
         getRoot().getChildren().clear();
         getColumns().clear();
-        rowItems.clear();
 
         // remove the old listener
         if (oldValue != null) {
@@ -937,13 +937,7 @@ public class FeatureTableFX extends TreeTableView<ModularFeatureListRow> impleme
         }
 
         // add rows
-        for (FeatureListRow row : newValue.getRows()) {
-          final ModularFeatureListRow mrow = (ModularFeatureListRow) row;
-          rowItems.add(new TreeItem<>(mrow));
-        }
-
-        TreeItem<ModularFeatureListRow> root = getRoot();
-        root.getChildren().addAll(filteredRowItems);
+        rowModel.setFeatureList(newValue);
 
         // reflect the changes to the feature list in the table
         newValue.getRows().addListener(this);
@@ -1019,8 +1013,10 @@ public class FeatureTableFX extends TreeTableView<ModularFeatureListRow> impleme
       return;
     }
     flist.getRows().removeListener(this);
+    rowModel.dispose();
     flist.modularStream().forEach(ModularFeatureListRow::clearBufferedColCharts);
     flist.streamFeatures().forEach(ModularFeature::clearBufferedColCharts);
+    SparklineCache.getInstance().invalidate(flist);
   }
 
   public DataTypeCheckListParameter getRowTypesParameter() {
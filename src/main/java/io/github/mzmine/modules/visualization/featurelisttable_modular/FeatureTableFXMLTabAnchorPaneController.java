@@ -31,6 +31,8 @@ import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.ModularFeatureListRow;
 import io.github.mzmine.datamodel.features.types.DataType;
+import io.github.mzmine.datamodel.features.types.numbers.MZType;
+import io.github.mzmine.datamodel.features.types.numbers.RTType;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.util.ExitCode;
@@ -38,6 +40,8 @@ import io.github.mzmine.util.RangeUtils;
 import io.github.mzmine.util.javafx.FxColorUtil;
 import io.github.mzmine.util.javafx.FxIconUtil;
 import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javafx.application.Platform;
@@ -151,9 +155,12 @@ public class FeatureTableFXMLTabAnchorPaneController {
         anySearchField.getText().isBlank() ? null : anySearchField.getText().toLowerCase().trim();
     DataType<?> type = typeComboBox.getValue();
 
-    // Filter rows
-    featureTable.getFilteredRowItems().setPredicate(item -> {
-      ModularFeatureListRow row = item.getValue();
+    // Filter rows in the row model of the table
+    final List<DataType<?>> filterTypes = new ArrayList<>(List.of(new MZType(), new RTType()));
+    if (type != null) {
+      filterTypes.add(type);
+    }
+    featureTable.setRowFilter(row -> {
       boolean anyFilterOk = true;
       if (anyFilterString != null && type != null) {
         Object value = row.get(type);
@@ -165,11 +172,7 @@ public class FeatureTableFXMLTabAnchorPaneController {
       Float rt = row.getAverageRT();
       return (mz == null || mzFilter.contains(mz)) && (rt == null || rtFilter.contains(
           rt.doubleValue())) && anyFilterOk;
-    });
-
-    // Update rows in feature table
-    featureTable.getRoot().getChildren().clear();
-    featureTable.getRoot().getChildren().addAll(featureTable.getFilteredRowItems());
+    }, filterTypes);
   }
 
   /**
@@ -0,0 +1,496 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.visualization.featurelisttable_modular;
+
+import io.github.mzmine.datamodel.features.DataTypeValueChangeListener;
+import io.github.mzmine.datamodel.features.ModularDataModel;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.DataType;
+import io.github.mzmine.datamodel.features.types.fx.ColumnID;
+import io.github.mzmine.datamodel.features.types.fx.ColumnType;
+import io.github.mzmine.main.MZmineCore;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.ints.IntComparator;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.beans.value.ObservableValue;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeTableColumn;
+import javafx.scene.control.TreeTableColumn.SortType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Filtered and sorted rows of a {@link FeatureTableFX}. The filter results and sort keys of all
+ * rows are snapshot on the FX thread, because filters and cell value factories use the shared
+ * number formats of the data types, which are not thread safe. Sorting runs on a background thread
+ * on these snapshots, only the final row order is set to the table on the FX thread. Value changes
+ * of the sorted and filtered types only update the snapshots of the changed rows, which are then
+ * merged into the current order.
+ */
+public class FeatureTableRowModel {
+
+  private static final Logger logger = Logger.getLogger(FeatureTableRowModel.class.getName());
+
+  private final FeatureTableFX table;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+    final Thread thread = new Thread(runnable, "Feature table sorter");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final AtomicBoolean scheduled = new AtomicBoolean(false);
+  private final AtomicBoolean rowsRequested = new AtomicBoolean(false);
+  private final AtomicBoolean fullUpdate = new AtomicBoolean(false);
+  private final Set<ModularFeatureListRow> changedRows = ConcurrentHashMap.newKeySet();
+  private final DataTypeValueChangeListener<?> valueListener = (model, type, oldValue, newValue) ->
+      valueChanged(model);
+
+  // requested state, set on the FX thread
+  private final Set<DataType<?>> listenedRowTypes = new HashSet<>();
+  private final Set<DataType<?>> listenedFeatureTypes = new HashSet<>();
+  private final List<DataType<?>> filterTypes = new ArrayList<>();
+  private volatile ModularFeatureList featureList;
+  private volatile ModularFeatureListRow[] requestedRows = new ModularFeatureListRow[0];
+  private volatile Predicate<ModularFeatureListRow> filter;
+  private volatile List<SortColumn> sortColumns = List.of();
+  private boolean publishing = false;
+
+  // state of the background thread
+  private final Map<ModularFeatureListRow, TreeItem<ModularFeatureListRow>> itemCache =
+      new IdentityHashMap<>();
+  private final Reference2IntOpenHashMap<ModularFeatureListRow> rowIndices =
+      new Reference2IntOpenHashMap<>();
+  private ModularFeatureListRow[] rows = new ModularFeatureListRow[0];
+  private TreeItem<ModularFeatureListRow>[] items = newItemArray(0);
+  private boolean[] passes = new boolean[0];
+  private List<SortKeys> sortKeys = List.of();
+  // indices of the rows that pass the filter in the sorted order
+  private int[] order = new int[0];
+
+  public FeatureTableRowModel(@NotNull FeatureTableFX table) {
+    this.table = table;
+    rowIndices.defaultReturnValue(-1);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static TreeItem<ModularFeatureListRow>[] newItemArray(int size) {
+    return new TreeItem[size];
+  }
+
+  /**
+   * Shows the rows of this feature list. Call on the FX thread.
+   */
+  public void setFeatureList(@Nullable ModularFeatureList flist) {
+    final ModularFeatureList old = featureList;
+    if (old != flist) {
+      removeListeners();
+      featureList = flist;
+      updateListeners();
+    }
+    rowsChanged();
+  }
+
+  /**
+   * Updates the table after rows were added or removed. Call on the FX thread.
+   */
+  public void rowsChanged() {
+    final ModularFeatureList flist = featureList;
+    requestedRows = flist == null ? new ModularFeatureListRow[0]
+        : flist.getRows().toArray(ModularFeatureListRow[]::new);
+    rowsRequested.set(true);
+    schedule(true);
+  }
+
+  /**
+   * Sets the row filter. Call on the FX thread.
+   *
+   * @param filter      the filter or null to show all rows. Evaluated on the FX thread.
+   * @param filterTypes the row types the filter depends on. Rows are filtered again if these
+   *                    values change.
+   */
+  public void setFilter(@Nullable Predicate<ModularFeatureListRow> filter,
+      @NotNull Collection<DataType<?>> filterTypes) {
+    this.filter = filter;
+    this.filterTypes.clear();
+    this.filterTypes.addAll(filterTypes);
+    updateListeners();
+    schedule(true);
+  }
+
+  /**
+   * Sorts by the current sort order of the table. Used as the sort policy of the table, call on the
+   * FX thread.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public void sort() {
+    // the table might request sorting while the rows are replaced
+    if (publishing) {
+      return;
+    }
+    final List<SortColumn> columns = new ArrayList<>();
+    for (TreeTableColumn<ModularFeatureListRow, ?> column : table.getSortOrder()) {
+      Comparator comparator = column.getComparator();
+      if (comparator == null) {
+        comparator = TreeTableColumn.DEFAULT_COMPARATOR;
+      }
+      columns.add(new SortColumn(column, comparator, column.getSortType() == SortType.DESCENDING));
+    }
+    sortColumns = List.copyOf(columns);
+    updateListeners();
+    schedule(true);
+  }
+
+  /**
+   * Removes all listeners and stops the background thread. Call on the FX thread.
+   */
+  public void dispose() {
+    removeListeners();
+    featureList = null;
+    executor.shutdownNow();
+  }
+
+  private void valueChanged(ModularDataModel dataModel) {
+    final ModularFeatureListRow row;
+    if (dataModel instanceof ModularFeatureListRow r) {
+      row = r;
+    } else if (dataModel instanceof ModularFeature f
+        && f.getRow() instanceof ModularFeatureListRow r) {
+      row = r;
+    } else {
+      return;
+    }
+    changedRows.add(row);
+    schedule(false);
+  }
+
+  /**
+   * Registers the value listeners for the types of the filter and the sort columns
+   */
+  private void updateListeners() {
+    final ModularFeatureList flist = featureList;
+    if (flist == null) {
+      return;
+    }
+    final Set<DataType<?>> rowTypes = new HashSet<>(filterTypes);
+    final Set<DataType<?>> featureTypes = new HashSet<>();
+    final Map<TreeTableColumn<ModularFeatureListRow, ?>, ColumnID> columnMap =
+        table.getNewColumnMap();
+    for (SortColumn sortColumn : sortColumns) {
+      final ColumnID id = columnMap.get(sortColumn.column());
+      if (id != null) {
+        (id.getType() == ColumnType.ROW_TYPE ? rowTypes : featureTypes).add(id.getDataType());
+      }
+    }
+
+    for (DataType<?> type : listenedRowTypes) {
+      if (!rowTypes.contains(type)) {
+        flist.removeRowTypeListener(type, valueListener);
+      }
+    }
+    for (DataType<?> type : rowTypes) {
+      if (!listenedRowTypes.contains(type)) {
+        flist.addRowTypeListener(type, valueListener);
+      }
+    }
+    for (DataType<?> type : listenedFeatureTypes) {
+      if (!featureTypes.contains(type)) {
+        flist.removeFeatureTypeListener(type, valueListener);
+      }
+    }
+    for (DataType<?> type : featureTypes) {
+      if (!listenedFeatureTypes.contains(type)) {
+        flist.addFeatureTypeListener(type, valueListener);
+      }
+    }
+    listenedRowTypes.clear();
+    listenedRowTypes.addAll(rowTypes);
+    listenedFeatureTypes.clear();
+    listenedFeatureTypes.addAll(featureTypes);
+  }
+
+  private void removeListeners() {
+    final ModularFeatureList flist = featureList;
+    if (flist != null) {
+      listenedRowTypes.forEach(type -> flist.removeRowTypeListener(type, valueListener));
+      listenedFeatureTypes.forEach(type -> flist.removeFeatureTypeListener(type, valueListener));
+    }
+    listenedRowTypes.clear();
+    listenedFeatureTypes.clear();
+  }
+
+  /**
+   * Schedules an update. Requests are merged while an update is waiting.
+   *
+   * @param full true to filter and sort all rows, false to only update the changed rows
+   */
+  private void schedule(boolean full) {
+    if (full) {
+      fullUpdate.set(true);
+    }
+    if (!executor.isShutdown() && scheduled.compareAndSet(false, true)) {
+      executor.execute(() -> {
+        try {
+          update();
+        } catch (Exception e) {
+          logger.log(Level.WARNING, "Cannot filter and sort feature table. " + e.getMessage(), e);
+        }
+      });
+    }
+  }
+
+  private void update() {
+    scheduled.set(false);
+    final boolean newRows = rowsRequested.getAndSet(false);
+    final boolean full = fullUpdate.getAndSet(false) || newRows;
+    if (newRows) {
+      setRows(requestedRows);
+    }
+
+    final Predicate<ModularFeatureListRow> filter = this.filter;
+    if (full) {
+      changedRows.clear();
+      sortKeys = sortColumns.stream().map(column -> new SortKeys(column, rows.length)).toList();
+      MZmineCore.runOnFxThreadAndWait(() -> {
+        for (int i = 0; i < rows.length; i++) {
+          evaluate(i, filter);
+        }
+      });
+      sortKeys.forEach(SortKeys::checkNumeric);
+
+      final IntArrayList passing = new IntArrayList(rows.length);
+      for (int i = 0; i < rows.length; i++) {
+        if (passes[i]) {
+          passing.add(i);
+        }
+      }
+      order = passing.toIntArray();
+      IntArrays.parallelQuickSort(order, createComparator());
+    } else {
+      final IntArrayList changed = new IntArrayList();
+      for (var iterator = changedRows.iterator(); iterator.hasNext(); ) {
+        final int index = rowIndices.getInt(iterator.next());
+        iterator.remove();
+        if (index >= 0) {
+          changed.add(index);
+        }
+      }
+      if (changed.isEmpty()) {
+        return;
+      }
+      MZmineCore.runOnFxThreadAndWait(() -> changed.forEach(i -> evaluate(i, filter)));
+      order = merge(changed);
+    }
+    publish();
+  }
+
+  /**
+   * Reuses the tree items of rows that are still present
+   */
+  private void setRows(ModularFeatureListRow[] newRows) {
+    final TreeItem<ModularFeatureListRow>[] newItems = newItemArray(newRows.length);
+    final Map<ModularFeatureListRow, TreeItem<ModularFeatureListRow>> newCache =
+        new IdentityHashMap<>(newRows.length);
+    rowIndices.clear();
+    for (int i = 0; i < newRows.length; i++) {
+      TreeItem<ModularFeatureListRow> item = itemCache.get(newRows[i]);
+      if (item == null) {
+        item = new TreeItem<>(newRows[i]);
+      }
+      newItems[i] = item;
+      newCache.put(newRows[i], item);
+      rowIndices.put(newRows[i], i);
+    }
+    itemCache.clear();
+    itemCache.putAll(newCache);
+    rows = newRows;
+    items = newItems;
+    passes = new boolean[newRows.length];
+  }
+
+  /**
+   * Updates the filter result and the sort keys of a row. Call on the FX thread.
+   */
+  private void evaluate(int index, Predicate<ModularFeatureListRow> filter) {
+    passes[index] = filter == null || filter.test(rows[index]);
+    for (SortKeys keys : sortKeys) {
+      final ObservableValue<?> value = keys.column.column().getCellObservableValue(items[index]);
+      keys.set(index, value == null ? null : value.getValue());
+    }
+  }
+
+  /**
+   * Sorted by the sort columns, the index of the row in the feature list breaks ties.
+   */
+  private IntComparator createComparator() {
+    final List<SortKeys> keys = sortKeys;
+    return (a, b) -> {
+      for (SortKeys key : keys) {
+        final int result = key.compare(a, b);
+        if (result != 0) {
+          return result;
+        }
+      }
+      return Integer.compare(a, b);
+    };
+  }
+
+  /**
+   * Removes the changed rows from the current order and inserts them at their new position.
+   */
+  private int[] merge(IntArrayList changed) {
+    final boolean[] isChanged = new boolean[rows.length];
+    final IntArrayList inserted = new IntArrayList(changed.size());
+    for (int i = 0; i < changed.size(); i++) {
+      final int index = changed.getInt(i);
+      isChanged[index] = true;
+      if (passes[index]) {
+        inserted.add(index);
+      }
+    }
+    final IntComparator comparator = createComparator();
+    final int[] insert = inserted.toIntArray();
+    IntArrays.quickSort(insert, comparator);
+
+    final int[] merged = new int[order.length + insert.length];
+    int n = 0;
+    int j = 0;
+    for (final int index : order) {
+      if (isChanged[index]) {
+        continue;
+      }
+      while (j < insert.length && comparator.compare(insert[j], index) < 0) {
+        merged[n++] = insert[j++];
+      }
+      merged[n++] = index;
+    }
+    while (j < insert.length) {
+      merged[n++] = insert[j++];
+    }
+    return n == merged.length ? merged : Arrays.copyOf(merged, n);
+  }
+
+  private void publish() {
+    final List<TreeItem<ModularFeatureListRow>> result = new ArrayList<>(order.length);
+    for (final int index : order) {
+      result.add(items[index]);
+    }
+    MZmineCore.runLater(() -> {
+      if (featureList == null) {
+        return;
+      }
+      publishing = true;
+      try {
+        table.getRoot().getChildren().setAll(result);
+      } finally {
+        publishing = false;
+      }
+    });
+  }
+
+  /**
+   * @param column     the sorted column
+   * @param comparator the comparator of the column
+   * @param descending reverses the comparator
+   */
+  private record SortColumn(@NotNull TreeTableColumn<ModularFeatureListRow, ?> column,
+                            @NotNull Comparator<Object> comparator, boolean descending) {
+
+  }
+
+  /**
+   * Snapshot of the cell values of one sort column. Numbers that use the default comparator are
+   * compared as primitive doubles.
+   */
+  private static class SortKeys {
+
+    private final SortColumn column;
+    private final Object[] values;
+    private double[] numbers;
+
+    private SortKeys(SortColumn column, int size) {
+      this.column = column;
+      values = new Object[size];
+    }
+
+    private void set(int index, @Nullable Object value) {
+      values[index] = value;
+      if (numbers != null) {
+        if (value instanceof Number number) {
+          numbers[index] = number.doubleValue();
+        } else if (value == null) {
+          numbers[index] = Double.NEGATIVE_INFINITY;
+        } else {
+          numbers = null;
+        }
+      }
+    }
+
+    /**
+     * Creates the primitive keys if all values are numbers
+     */
+    private void checkNumeric() {
+      if (column.comparator() != TreeTableColumn.DEFAULT_COMPARATOR) {
+        return;
+      }
+      final double[] keys = new double[values.length];
+      for (int i = 0; i < values.length; i++) {
+        if (values[i] instanceof Number number) {
+          keys[i] = number.doubleValue();
+        } else if (values[i] == null) {
+          // nulls first, same as the default comparator
+          keys[i] = Double.NEGATIVE_INFINITY;
+        } else {
+          return;
+        }
+      }
+      numbers = keys;
+    }
+
+    private int compare(int a, int b) {
+      final int result = numbers != null ? Double.compare(numbers[a], numbers[b])
+          : column.comparator().compare(values[a], values[b]);
+      return column.descending() ? -result : result;
+    }
+  }
+}
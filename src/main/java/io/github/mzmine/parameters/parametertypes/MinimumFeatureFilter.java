@@ -163,6 +163,21 @@ public class MinimumFeatureFilter {
         .equals(FeatureStatus.ESTIMATED));
   }
 
+  /**
+   * If true, {@link #filterMinFeaturesOverlap} only returns {@link OverlapResult#TRUE} for rows
+   * with at least one pair of features within the RT tolerance. Other row pairs can be skipped.
+   *
+   * @param numRaws the number of raw data files
+   */
+  public boolean isRtOverlapRequired(int numRaws) {
+    // the relative minimum might round down to 0 samples
+    final boolean minSamples =
+        minFInSamples.isGreaterZero() && minFInSamples.getMaximumValue(numRaws) > 0;
+    // only overlapping features are counted in groups
+    final boolean minInGroups = filterGroups && sgroupSize != null && minFInGroups.isGreaterZero();
+    return minSamples || minInGroups;
+  }
+
   /**
    * Check for overlapping features in two rows (features in the same RawDataFile with
    * height>minHeight and within rtTolerance)
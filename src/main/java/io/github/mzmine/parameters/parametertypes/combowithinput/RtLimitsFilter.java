@@ -29,6 +29,7 @@ import com.google.common.collect.Range;
 import io.github.mzmine.datamodel.features.ModularFeature;
 import io.github.mzmine.datamodel.features.types.numbers.RTRangeType;
 import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * @param filter      defines how to apply the filter
@@ -70,4 +71,21 @@ public record RtLimitsFilter(FeatureLimitOptions filter, RTTolerance rtTolerance
       }
     };
   }
+
+  /**
+   * The range of retention times accepted by {@link #accept(ModularFeature, float)}
+   *
+   * @param feature tested feature
+   * @return the retention time range or null if all retention times are accepted
+   */
+  @Nullable
+  public Range<Float> getRtRange(final ModularFeature feature) {
+    return switch (filter) {
+      case USE_FEATURE_EDGES -> feature.get(RTRangeType.class);
+      case USE_TOLERANCE -> {
+        Float rt = feature.getRT();
+        yield rt == null ? null : rtTolerance.getToleranceRange(rt);
+      }
+    };
+  }
 }
@@ -35,6 +35,7 @@ import io.github.mzmine.modules.io.projectload.CachedIMSRawDataFile;
 import io.github.mzmine.modules.visualization.projectmetadata.table.MetadataTable;
 import io.github.mzmine.parameters.UserParameter;
 import io.github.mzmine.project.impl.ProjectChangeEvent.Type;
+import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.files.FileAndPathUtil;
 import io.github.mzmine.util.spectraldb.entry.SpectralLibrary;
 import java.io.File;
@@ -211,6 +212,10 @@ public class MZmineProjectImpl implements MZmineProject {
 
       rawDataFiles.add(newFile);
       projectMetadata.addFile(newFile);
+      final MemoryMapStorage storage = newFile.getMemoryMapStorage();
+      if (storage != null) {
+        storage.retain(newFile);
+      }
 
       fireDataFilesChangeEvent(List.of(newFile), Type.ADDED);
     } finally {
@@ -223,6 +228,8 @@ public class MZmineProjectImpl implements MZmineProject {
     try {
       rawLock.writeLock().lock();
 
+      final List<RawDataFile> removed = Arrays.stream(file).filter(rawDataFiles::contains)
+          .distinct().toList();
       rawDataFiles.removeAll(file);
       fireDataFilesChangeEvent(List.of(file), Type.REMOVED);
 
@@ -233,6 +240,12 @@ public class MZmineProjectImpl implements MZmineProject {
         // Close the data file, which also removed the temporary data
         f.close();
       }
+      for (RawDataFile f : removed) {
+        final MemoryMapStorage storage = f.getMemoryMapStorage();
+        if (storage != null) {
+          storage.release(f);
+        }
+      }
     } finally {
       rawLock.writeLock().unlock();
     }
@@ -265,6 +278,10 @@ public class MZmineProjectImpl implements MZmineProject {
         featureList.setName(getUniqueName(featureList.getName(), names));
       }
       featureLists.add(featureList);
+      final MemoryMapStorage storage = getStorage(featureList);
+      if (storage != null) {
+        storage.retain(featureList);
+      }
       fireFeatureListsChangeEvent(List.of(featureList), Type.ADDED);
     } finally {
       featureLock.writeLock().unlock();
@@ -276,6 +293,7 @@ public class MZmineProjectImpl implements MZmineProject {
     try {
       featureLock.writeLock().lock();
 
+      releaseStorages(List.of(featureList));
       featureLists.removeAll(featureList);
       fireFeatureListsChangeEvent(List.of(featureList), Type.REMOVED);
     } finally {
@@ -327,6 +345,7 @@ public class MZmineProjectImpl implements MZmineProject {
     try {
       featureLock.writeLock().lock();
 
+      releaseStorages(featureLists);
       this.featureLists.removeAll(featureLists);
       fireFeatureListsChangeEvent(List.copyOf(featureLists), Type.REMOVED);
     } finally {
@@ -334,6 +353,24 @@ public class MZmineProjectImpl implements MZmineProject {
     }
   }
 
+  @Nullable
+  private static MemoryMapStorage getStorage(FeatureList featureList) {
+    return featureList instanceof ModularFeatureList mflist ? mflist.getMemoryMapStorage() : null;
+  }
+
+  /**
+   * Releases the storages of the feature lists that are currently in the project. Call before
+   * removing them.
+   */
+  private void releaseStorages(List<FeatureList> removed) {
+    removed.stream().filter(featureLists::contains).distinct().forEach(featureList -> {
+      final MemoryMapStorage storage = getStorage(featureList);
+      if (storage != null) {
+        storage.release(featureList);
+      }
+    });
+  }
+
   @Override
   public ModularFeatureList[] getFeatureLists(RawDataFile file) {
     return getCurrentFeatureLists().stream()
@@ -25,7 +25,6 @@
 
 package io.github.mzmine.project.impl;
 
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Range;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.MassList;
@@ -38,20 +37,17 @@ import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.files.FileAndPathUtil;
 import io.github.mzmine.util.javafx.FxColorUtil;
-import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import io.github.mzmine.util.scans.FragmentScanIndex;
 import java.io.IOException;
 import java.time.LocalDateTime;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.scene.paint.Color;
 import org.jetbrains.annotations.NotNull;
@@ -76,10 +72,9 @@ public class RawDataFileImpl implements RawDataFile {
   protected final ObservableList<FeatureListAppliedMethod> appliedMethods = FXCollections.observableArrayList();
   // for ease of use we have a javafx safe copy of name
   private final StringProperty nameProperty = new SimpleStringProperty("");
-  private final Map<Integer, Range<Double>> dataMZRange = new HashMap<>();
-  private final Map<Integer, Range<Float>> dataRTRange = new HashMap<>();
-  private final Int2DoubleOpenHashMap dataMaxBasePeakIntensity = new Int2DoubleOpenHashMap(2);
-  private final Int2DoubleOpenHashMap dataMaxTIC = new Int2DoubleOpenHashMap(2);
+  // lazily created on first access, reset if the scans change
+  private volatile ScanMetadataIndex scanIndex;
+  private volatile FragmentScanIndex fragmentScanIndex;
   // Temporary file for scan data storage
   private final MemoryMapStorage storageMemoryMap;
   private final ObjectProperty<Color> color = new SimpleObjectProperty<>();
@@ -110,6 +105,7 @@ public class RawDataFileImpl implements RawDataFile {
     this.absolutePath = absolutePath;
 
     scans = FXCollections.observableArrayList();
+    scans.addListener((ListChangeListener<Scan>) change -> clearScanIndices());
 
     this.color.setValue(color);
   }
@@ -134,45 +130,59 @@ public class RawDataFileImpl implements RawDataFile {
     return scans.size();
   }
 
-  @Override
-  public double getDataMaxBasePeakIntensity(int msLevel) {
-    // check if we have this value already cached
-    return dataMaxBasePeakIntensity.computeIfAbsent(msLevel, key -> {
-      double max = Double.NEGATIVE_INFINITY;
-      // find the value
-      for (Scan scan : scans) {
-        // ignore scans of other ms levels
-        if (scan.getMSLevel() != msLevel) {
-          continue;
+  /**
+   * The columnar index of all scan metadata. Created on first access and recreated after scans
+   * were added or removed.
+   */
+  public @NotNull ScanMetadataIndex getScanIndex() {
+    ScanMetadataIndex index = scanIndex;
+    if (index == null) {
+      synchronized (this) {
+        index = scanIndex;
+        if (index == null) {
+          index = new ScanMetadataIndex(scans);
+          scanIndex = index;
         }
+      }
+    }
+    return index;
+  }
 
-        Double basePeakIntensity = scan.getBasePeakIntensity();
-        if (basePeakIntensity != null && basePeakIntensity > max) {
-          max = scan.getTIC();
+  /**
+   * The index of all fragment scans by precursor m/z. Created on first access and recreated after
+   * scans were added or removed.
+   */
+  public @NotNull FragmentScanIndex getFragmentScanIndex() {
+    FragmentScanIndex index = fragmentScanIndex;
+    if (index == null) {
+      synchronized (this) {
+        index = fragmentScanIndex;
+        if (index == null) {
+          index = new FragmentScanIndex(scans);
+          fragmentScanIndex = index;
         }
       }
-      return Double.compare(Double.NEGATIVE_INFINITY, max) == 0 ? -1d : max;
-    });
+    }
+    return index;
+  }
+
+  /**
+   * Synchronized with the creation of the indices, so an index that is created from the previous
+   * scans is always cleared after it was published
+   */
+  private synchronized void clearScanIndices() {
+    scanIndex = null;
+    fragmentScanIndex = null;
   }
 
   @Override
-  public double getDataMaxTotalIonCurrent(int msLevel) {
-    // check if we have this value already cached
-    return dataMaxTIC.computeIfAbsent(msLevel, key -> {
-      double max = Double.NEGATIVE_INFINITY;
-      // find the value
-      for (Scan scan : scans) {
-        // ignore scans of other ms levels
-        if (scan.getMSLevel() != msLevel) {
-          continue;
-        }
+  public double getDataMaxBasePeakIntensity(int msLevel) {
+    return getScanIndex().getMaxBasePeakIntensity(msLevel);
+  }
 
-        if (scan.getTIC() > max) {
-          max = scan.getTIC();
-        }
-      }
-      return Double.compare(Double.NEGATIVE_INFINITY, max) == 0 ? -1d : max;
-    });
+  @Override
+  public double getDataMaxTotalIonCurrent(int msLevel) {
+    return getScanIndex().getMaxTIC(msLevel);
   }
 
   @Override
@@ -219,10 +229,7 @@ public class RawDataFileImpl implements RawDataFile {
       }
     }
     // Remove cached values
-    dataMZRange.clear();
-    dataRTRange.clear();
-    dataMaxBasePeakIntensity.clear();
-    dataMaxTIC.clear();
+    clearScanIndices();
   }
 
   @Override
@@ -249,41 +256,8 @@ public class RawDataFileImpl implements RawDataFile {
   @Override
   @NotNull
   public Range<Double> getDataMZRange(int msLevel) {
-
-    // check if we have this value already cached
-    Range<Double> mzRange = dataMZRange.get(msLevel);
-    if (mzRange != null) {
-      return mzRange;
-    }
-
-    // find the value
-    for (Scan scan : scans) {
-
-      // ignore scans of other ms levels
-      if ((msLevel != 0) && (scan.getMSLevel() != msLevel)) {
-        continue;
-      }
-
-      final Range<Double> scanMzRange = scan.getDataPointMZRange();
-      if (mzRange == null) {
-        mzRange = scanMzRange;
-      } else {
-        if (scanMzRange != null) {
-          mzRange = mzRange.span(scanMzRange);
-        }
-      }
-
-    }
-
-    // cache the value, if we found any
-    if (mzRange != null) {
-      dataMZRange.put(msLevel, mzRange);
-    } else {
-      mzRange = Range.singleton(0.0);
-    }
-
-    return mzRange;
-
+    final Range<Double> mzRange = getScanIndex().getMZRange(msLevel);
+    return mzRange != null ? mzRange : Range.singleton(0.0);
   }
 
   @Override
@@ -298,49 +272,37 @@ public class RawDataFileImpl implements RawDataFile {
     if (msLevel == null) {
       return getDataRTRange();
     }
-    // check if we have this value already cached
-    Range<Float> rtRange = dataRTRange.get(msLevel);
-    if (rtRange != null) {
-      return rtRange;
-    }
-
-    // find the value
-    for (Scan scan : scans) {
-
-      // ignore scans of other ms levels
-      if ((msLevel != 0) && (scan.getMSLevel() != msLevel)) {
-        continue;
-      }
-
-      if (rtRange == null) {
-        rtRange = Range.singleton(scan.getRetentionTime());
-      } else {
-        rtRange = rtRange.span(Range.singleton(scan.getRetentionTime()));
-      }
+    final Range<Float> rtRange = getScanIndex().getRTRange(msLevel);
+    return rtRange != null ? rtRange : Range.singleton(0.0f);
+  }
 
-    }
+  @Override
+  public int getNumOfScans(int msLevel) {
+    return getScanIndex().getNumberOfScans(msLevel);
+  }
 
-    // cache the value
-    if (rtRange != null) {
-      dataRTRange.put(msLevel, rtRange);
-    } else {
-      rtRange = Range.singleton(0.0f);
-    }
+  @Override
+  public @NotNull int[] getMSLevels() {
+    return getScanIndex().getMSLevels();
+  }
 
-    return rtRange;
+  /**
+   * @return unmodifiable view of all scans of this MS level
+   */
+  @Override
+  public @NotNull List<Scan> getScanNumbers(int msLevel) {
+    return getScanIndex().getScans(msLevel);
   }
 
   @Override
-  public int getNumOfScans(int msLevel) {
-    return getScanNumbers(msLevel).size();
+  public @NotNull Scan[] getScanNumbers(int msLevel, @NotNull Range<Float> rtRange) {
+    return getScanIndex().getScans(msLevel, rtRange).toArray(Scan[]::new);
   }
 
   @NotNull
   @Override
   public List<PolarityType> getDataPolarity() {
-    Set<PolarityType> polarities = scans.stream().map(Scan::getPolarity)
-        .collect(Collectors.toSet());
-    return ImmutableList.copyOf(polarities);
+    return getScanIndex().getPolarities();
   }
 
   @Override
@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.project.impl;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.Scan;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Immutable columnar index of the scan metadata of a raw data file. Retention time, MS level,
+ * polarity, precursor m/z, TIC and base peak intensity are copied to primitive arrays once, so
+ * queries do not touch the scans. The indices of the scans of each MS level are stored in separate
+ * arrays and retention time range queries use a binary search on these arrays (as long as the
+ * scans are sorted by retention time). Lists returned by this index are unmodifiable views.
+ * <p>
+ * The index reflects the scans at the time of creation and needs to be recreated when scans are
+ * added or removed, see {@link RawDataFileImpl#getScanIndex()}.
+ */
+public class ScanMetadataIndex {
+
+  private static final PolarityType[] POLARITIES = PolarityType.values();
+
+  private final Scan[] scans;
+  private final float[] rts;
+  private final int[] msLevels;
+  private final byte[] polarities;
+  private final double[] precursorMzs;
+  private final double[] tics;
+  private final double[] basePeakIntensities;
+  private final boolean rtSorted;
+
+  /**
+   * MS level of each entry in {@link #levels}, sorted ascending
+   */
+  private final int[] distinctMsLevels;
+  private final Level[] levels;
+  private final Level allLevels;
+
+  public ScanMetadataIndex(@NotNull List<? extends Scan> scanList) {
+    scans = scanList.toArray(Scan[]::new);
+    final int n = scans.length;
+    rts = new float[n];
+    msLevels = new int[n];
+    polarities = new byte[n];
+    precursorMzs = new double[n];
+    tics = new double[n];
+    basePeakIntensities = new double[n];
+
+    boolean sorted = true;
+    for (int i = 0; i < n; i++) {
+      final Scan scan = scans[i];
+      rts[i] = scan.getRetentionTime();
+      msLevels[i] = scan.getMSLevel();
+      polarities[i] = (byte) scan.getPolarity().ordinal();
+      precursorMzs[i] = toPrimitive(scan.getPrecursorMz());
+      tics[i] = toPrimitive(scan.getTIC());
+      basePeakIntensities[i] = toPrimitive(scan.getBasePeakIntensity());
+      if (Float.isNaN(rts[i]) || (i > 0 && rts[i] < rts[i - 1])) {
+        sorted = false;
+      }
+    }
+    rtSorted = sorted;
+
+    distinctMsLevels = Arrays.stream(msLevels).distinct().sorted().toArray();
+    levels = new Level[distinctMsLevels.length];
+    final int[] counts = new int[distinctMsLevels.length];
+    for (int msLevel : msLevels) {
+      counts[Arrays.binarySearch(distinctMsLevels, msLevel)]++;
+    }
+    final int[][] levelIndices = new int[distinctMsLevels.length][];
+    for (int l = 0; l < levelIndices.length; l++) {
+      levelIndices[l] = new int[counts[l]];
+      counts[l] = 0;
+    }
+    for (int i = 0; i < n; i++) {
+      final int l = Arrays.binarySearch(distinctMsLevels, msLevels[i]);
+      levelIndices[l][counts[l]++] = i;
+    }
+    for (int l = 0; l < levels.length; l++) {
+      levels[l] = createLevel(levelIndices[l]);
+    }
+    final int[] all = new int[n];
+    Arrays.setAll(all, i -> i);
+    allLevels = createLevel(all);
+  }
+
+  private static double toPrimitive(@Nullable Double value) {
+    return value != null ? value : Double.NaN;
+  }
+
+  private Level createLevel(int[] indices) {
+    Range<Float> rtRange = null;
+    Range<Double> mzRange = null;
+    double maxTic = Double.NEGATIVE_INFINITY;
+    double maxBasePeak = Double.NEGATIVE_INFINITY;
+    for (int i : indices) {
+      rtRange = rtRange == null ? Range.singleton(rts[i]) : rtRange.span(Range.singleton(rts[i]));
+      final Range<Double> scanMzRange = scans[i].getDataPointMZRange();
+      if (scanMzRange != null) {
+        mzRange = mzRange == null ? scanMzRange : mzRange.span(scanMzRange);
+      }
+      if (tics[i] > maxTic) {
+        maxTic = tics[i];
+      }
+      if (basePeakIntensities[i] > maxBasePeak) {
+        maxBasePeak = basePeakIntensities[i];
+      }
+    }
+    return new Level(indices, rtRange, mzRange,
+        maxTic == Double.NEGATIVE_INFINITY ? -1d : maxTic,
+        maxBasePeak == Double.NEGATIVE_INFINITY ? -1d : maxBasePeak);
+  }
+
+  /**
+   * @return the level or null if there are no scans of this level
+   */
+  private @Nullable Level getLevel(int msLevel) {
+    final int l = Arrays.binarySearch(distinctMsLevels, msLevel);
+    return l >= 0 ? levels[l] : null;
+  }
+
+  /**
+   * @param msLevel the MS level or 0 for all scans
+   * @return the level or null if there are no scans of this level
+   */
+  private @Nullable Level getLevelOrAll(int msLevel) {
+    return msLevel == 0 ? allLevels : getLevel(msLevel);
+  }
+
+  /**
+   * @return number of indexed scans
+   */
+  public int size() {
+    return scans.length;
+  }
+
+  /**
+   * @return sorted array of all MS levels
+   */
+  public int[] getMSLevels() {
+    return distinctMsLevels.clone();
+  }
+
+  /**
+   * @return number of scans of this MS level
+   */
+  public int getNumberOfScans(int msLevel) {
+    final Level level = getLevel(msLevel);
+    return level != null ? level.indices.length : 0;
+  }
+
+  /**
+   * @return unmodifiable view of all scans of this MS level
+   */
+  public @NotNull List<Scan> getScans(int msLevel) {
+    final Level level = getLevel(msLevel);
+    return level != null ? new ScanView(level.indices, 0, level.indices.length) : List.of();
+  }
+
+  /**
+   * @return unmodifiable view of all scans of this MS level within the retention time range
+   */
+  public @NotNull List<Scan> getScans(int msLevel, @NotNull Range<Float> rtRange) {
+    final Level level = getLevel(msLevel);
+    if (level == null) {
+      return List.of();
+    }
+    if (!rtSorted) {
+      return Arrays.stream(level.indices).filter(i -> rtRange.contains(rts[i]))
+          .mapToObj(i -> scans[i]).toList();
+    }
+
+    final int[] indices = level.indices;
+    int from = rtRange.hasLowerBound() ? firstIndexNotBelow(indices, rtRange.lowerEndpoint()) : 0;
+    int to = rtRange.hasUpperBound() ? firstIndexAbove(indices, rtRange.upperEndpoint())
+        : indices.length;
+    // open bounds
+    while (from < to && !rtRange.contains(rts[indices[from]])) {
+      from++;
+    }
+    while (to > from && !rtRange.contains(rts[indices[to - 1]])) {
+      to--;
+    }
+    return new ScanView(indices, from, to);
+  }
+
+  private int firstIndexNotBelow(int[] indices, float rt) {
+    int low = 0;
+    int high = indices.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (rts[indices[mid]] < rt) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private int firstIndexAbove(int[] indices, float rt) {
+    int low = 0;
+    int high = indices.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (rts[indices[mid]] <= rt) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @param msLevel the MS level or 0 for all scans
+   * @return the retention time range or null if there are no scans
+   */
+  public @Nullable Range<Float> getRTRange(int msLevel) {
+    final Level level = getLevelOrAll(msLevel);
+    return level != null ? level.rtRange : null;
+  }
+
+  /**
+   * @param msLevel the MS level or 0 for all scans
+   * @return the span of all data point m/z ranges or null if there are no data points
+   */
+  public @Nullable Range<Double> getMZRange(int msLevel) {
+    final Level level = getLevelOrAll(msLevel);
+    return level != null ? level.mzRange : null;
+  }
+
+  /**
+   * @return the maximum TIC in this MS level or -1 if there are no scans
+   */
+  public double getMaxTIC(int msLevel) {
+    final Level level = getLevel(msLevel);
+    return level != null ? level.maxTic : -1d;
+  }
+
+  /**
+   * @return the maximum base peak intensity in this MS level or -1 if there are no scans
+   */
+  public double getMaxBasePeakIntensity(int msLevel) {
+    final Level level = getLevel(msLevel);
+    return level != null ? level.maxBasePeak : -1d;
+  }
+
+  /**
+   * @return all polarities of the scans
+   */
+  public @NotNull List<PolarityType> getPolarities() {
+    final boolean[] contained = new boolean[POLARITIES.length];
+    for (byte polarity : polarities) {
+      contained[polarity] = true;
+    }
+    return Arrays.stream(POLARITIES).filter(p -> contained[p.ordinal()]).toList();
+  }
+
+  public float getRetentionTime(int scanIndex) {
+    return rts[scanIndex];
+  }
+
+  public int getMSLevel(int scanIndex) {
+    return msLevels[scanIndex];
+  }
+
+  public @NotNull PolarityType getPolarity(int scanIndex) {
+    return POLARITIES[polarities[scanIndex]];
+  }
+
+  /**
+   * @return the precursor m/z or NaN
+   */
+  public double getPrecursorMz(int scanIndex) {
+    return precursorMzs[scanIndex];
+  }
+
+  /**
+   * @return the TIC or NaN
+   */
+  public double getTIC(int scanIndex) {
+    return tics[scanIndex];
+  }
+
+  /**
+   * @return the base peak intensity or NaN
+   */
+  public double getBasePeakIntensity(int scanIndex) {
+    return basePeakIntensities[scanIndex];
+  }
+
+  /**
+   * @param indices indices of the scans of one MS level
+   */
+  private record Level(int[] indices, @Nullable Range<Float> rtRange,
+                       @Nullable Range<Double> mzRange, double maxTic, double maxBasePeak) {
+
+  }
+
+  /**
+   * Unmodifiable list of the scans at indices[from, to)
+   */
+  private class ScanView extends AbstractList<Scan> implements RandomAccess {
+
+    private final int[] indices;
+    private final int from;
+    private final int to;
+
+    private ScanView(int[] indices, int from, int to) {
+      this.indices = indices;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public Scan get(int index) {
+      if (index < 0 || index >= to - from) {
+        throw new IndexOutOfBoundsException(index);
+      }
+      return scans[indices[from + index]];
+    }
+
+    @Override
+    public int size() {
+      return to - from;
+    }
+
+    @Override
+    public @NotNull List<Scan> subList(int fromIndex, int toIndex) {
+      if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+        throw new IndexOutOfBoundsException();
+      }
+      return new ScanView(indices, from + fromIndex, from + toIndex);
+    }
+  }
+}
@@ -29,4 +29,10 @@ public interface TaskControlListener {
 
   public void numberOfWaitingTasksChanged(int waitingTasks, int percentDone);
 
+  /**
+   * Called regularly when the queue depth or latency of the task controller changed
+   */
+  default void metricsChanged(TaskControllerMetrics metrics) {
+  }
+
 }
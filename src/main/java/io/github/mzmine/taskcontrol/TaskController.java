@@ -27,6 +27,7 @@ package io.github.mzmine.taskcontrol;
 
 import io.github.mzmine.taskcontrol.impl.TaskQueue;
 import io.github.mzmine.taskcontrol.impl.WrappedTask;
+import java.util.Collection;
 
 /**
  * 
@@ -41,6 +42,42 @@ public interface TaskController {
 
   public WrappedTask[] addTasks(Task tasks[], TaskPriority[] priority);
 
+  /**
+   * Adds tasks that are only started after all dependencies finished. If a dependency ends with an
+   * error or is canceled, the tasks are canceled without running.
+   *
+   * @param dependencies tasks that need to finish first
+   */
+  public WrappedTask[] addTasks(Task tasks[], TaskPriority[] priority,
+      Collection<WrappedTask> dependencies);
+
+  /**
+   * Blocks until all tasks are finished, canceled, or ended with an error. If called from a task
+   * that runs on this controller, the calling task releases its thread while waiting, so that
+   * sub-tasks can run even if all threads are in use.
+   */
+  public void awaitTasks(WrappedTask... tasks) throws InterruptedException;
+
+  /**
+   * Reserves free threads of normal priority tasks for the helper threads of a running task. Queued
+   * tasks wait for these threads as for running tasks until they are released by
+   * {@link #releaseThreads(int)}.
+   *
+   * @param maxThreads the maximum number of threads to reserve
+   * @return the number of reserved threads, 0 if all threads are in use
+   */
+  public int reserveFreeThreads(int maxThreads);
+
+  /**
+   * @param threads the number of threads reserved by {@link #reserveFreeThreads(int)}
+   */
+  public void releaseThreads(int threads);
+
+  /**
+   * @return the current queue depth and latency
+   */
+  public TaskControllerMetrics getMetrics();
+
   public void setTaskPriority(Task task, TaskPriority priority);
 
   public void addTaskControlListener(TaskControlListener listener);
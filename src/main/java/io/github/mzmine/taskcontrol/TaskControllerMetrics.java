@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.taskcontrol;
+
+/**
+ * Snapshot of the state of a {@link TaskController}
+ *
+ * @param waitingForDependencies tasks that wait for other tasks to finish
+ * @param queuedHigh             tasks in the high priority lane that were not started yet
+ * @param queuedNormal           tasks in the normal priority lane that wait for a free thread
+ * @param runningHigh            running high priority tasks
+ * @param runningNormal          running normal priority tasks (without tasks that wait for their
+ *                               sub-tasks)
+ * @param startedTasks           total number of started tasks
+ * @param completedTasks         total number of completed tasks (finished, error, or canceled)
+ * @param meanQueueLatencyMillis mean time from queuing to start of a task
+ * @param maxQueueLatencyMillis  maximum time from queuing to start of a task
+ * @param meanRunTimeMillis      mean run time of a task
+ */
+public record TaskControllerMetrics(int waitingForDependencies, int queuedHigh, int queuedNormal,
+                                    int runningHigh, int runningNormal, long startedTasks,
+                                    long completedTasks, double meanQueueLatencyMillis,
+                                    double maxQueueLatencyMillis, double meanRunTimeMillis) {
+
+  /**
+   * @return all tasks that were not started yet
+   */
+  public int queueDepth() {
+    return waitingForDependencies + queuedHigh + queuedNormal;
+  }
+}
@@ -0,0 +1,532 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.taskcontrol.impl;
+
+import io.github.mzmine.gui.Desktop;
+import io.github.mzmine.gui.HeadLessDesktop;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.gui.preferences.NumOfThreadsParameter;
+import io.github.mzmine.main.GoogleAnalyticsTracker;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.Task;
+import io.github.mzmine.taskcontrol.TaskControlListener;
+import io.github.mzmine.taskcontrol.TaskController;
+import io.github.mzmine.taskcontrol.TaskControllerMetrics;
+import io.github.mzmine.taskcontrol.TaskPriority;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.ExceptionUtils;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Task controller that runs tasks on a pool of reusable worker threads. Tasks are scheduled into
+ * one lane per {@link TaskPriority}: high priority tasks are started immediately, normal priority
+ * tasks wait until one of the maximum number of threads is free. Scheduling is event driven (on
+ * task submission and completion) and does not depend on the {@link TaskQueue}, which is only
+ * kept for the task view and the shutdown hook. Tasks are added to it when they are submitted, the
+ * refresh thread only clears it. Tasks may depend on other tasks and tasks that wait for their
+ * sub-tasks release their thread while waiting.
+ */
+public class ExecutorTaskController implements TaskController {
+
+  private static final Logger logger = Logger.getLogger(ExecutorTaskController.class.getName());
+  /**
+   * Update the task progress window and listeners every 300 ms
+   */
+  private static final long REFRESH_MILLIS = 300;
+
+  private static final ExecutorTaskController INSTANCE = new ExecutorTaskController(
+      ExecutorTaskController::getMaxRunningThreadsFromPreferences, REFRESH_MILLIS);
+
+  private final List<TaskControlListener> listeners = new CopyOnWriteArrayList<>();
+  private final TaskQueue taskQueue = new TaskQueue();
+  private final IntSupplier maxRunningThreads;
+  private final ExecutorService workers;
+
+  // all tasks that were added and are not done
+  private final Set<WrappedTask> activeTasks = ConcurrentHashMap.newKeySet();
+  // the lane of the task that runs on the current worker thread
+  private final ThreadLocal<TaskPriority> currentLane = new ThreadLocal<>();
+
+  // lanes and running counts are guarded by this
+  private final Map<TaskPriority, ArrayDeque<WrappedTask>> lanes = new EnumMap<>(
+      TaskPriority.class);
+  private final Map<TaskPriority, Integer> running = new EnumMap<>(TaskPriority.class);
+
+  // metrics
+  private final AtomicInteger waitingForDependencies = new AtomicInteger(0);
+  private final LongAdder startedTasks = new LongAdder();
+  private final LongAdder completedTasks = new LongAdder();
+  private final LongAdder totalQueueNanos = new LongAdder();
+  private final AtomicLong maxQueueNanos = new AtomicLong(0);
+  private final LongAdder totalRunNanos = new LongAdder();
+
+  /**
+   * @param maxRunningThreads maximum number of concurrently running normal priority tasks
+   * @param refreshMillis     interval to update listeners and the task view. 0 to disable
+   */
+  ExecutorTaskController(IntSupplier maxRunningThreads, long refreshMillis) {
+    this.maxRunningThreads = maxRunningThreads;
+    for (TaskPriority priority : TaskPriority.values()) {
+      lanes.put(priority, new ArrayDeque<>());
+      running.put(priority, 0);
+    }
+    workers = Executors.newCachedThreadPool(daemonThreads("Task worker thread "));
+
+    if (refreshMillis > 0) {
+      logger.finest("Starting task controller refresh thread");
+      final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(
+          daemonThreads("Task controller thread "));
+      refresher.scheduleWithFixedDelay(new Refresher(), refreshMillis, refreshMillis,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  public static ExecutorTaskController getInstance() {
+    return INSTANCE;
+  }
+
+  private static int getMaxRunningThreadsFromPreferences() {
+    NumOfThreadsParameter parameter = MZmineCore.getConfiguration().getPreferences()
+        .getParameter(MZminePreferences.numOfThreads);
+    if (parameter.isAutomatic() || (parameter.getValue() == null)) {
+      return Runtime.getRuntime().availableProcessors();
+    } else {
+      return parameter.getValue();
+    }
+  }
+
+  private static ThreadFactory daemonThreads(String prefix) {
+    final AtomicInteger counter = new AtomicInteger(0);
+    return r -> {
+      final Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  private static boolean isDone(TaskStatus status) {
+    return status == TaskStatus.FINISHED || status == TaskStatus.ERROR
+        || status == TaskStatus.CANCELED;
+  }
+
+  @Override
+  public TaskQueue getTaskQueue() {
+    return taskQueue;
+  }
+
+  @Override
+  public void addTask(Task task) {
+    addTask(task, task.getTaskPriority());
+  }
+
+  /**
+   * Override the standard task priority of all tasks with a specific
+   */
+  @Override
+  public void addTask(Task task, TaskPriority priority) {
+    addTasks(new Task[]{task}, new TaskPriority[]{priority});
+  }
+
+  @Override
+  public WrappedTask[] addTasks(Task[] tasks) {
+    if (tasks == null || tasks.length == 0) {
+      return new WrappedTask[0];
+    }
+
+    TaskPriority[] prio = Arrays.stream(tasks).map(Task::getTaskPriority)
+        .toArray(TaskPriority[]::new);
+    return addTasks(tasks, prio);
+  }
+
+  @Override
+  public WrappedTask[] addTasks(Task[] tasks, TaskPriority[] priorities) {
+    return addTasks(tasks, priorities, List.of());
+  }
+
+  @Override
+  public WrappedTask[] addTasks(Task[] tasks, TaskPriority[] priorities,
+      Collection<WrappedTask> dependencies) {
+    // It can sometimes happen during a batch that no tasks are actually
+    // executed --> tasks[] array may be empty
+    if ((tasks == null) || (tasks.length == 0)) {
+      return new WrappedTask[0];
+    }
+
+    final WrappedTask[] wrappedTasks = new WrappedTask[tasks.length];
+    for (int i = 0; i < tasks.length; i++) {
+      final WrappedTask wrappedTask = new WrappedTask(tasks[i], priorities[i]);
+      wrappedTasks[i] = wrappedTask;
+      activeTasks.add(wrappedTask);
+      // added right away, so the shutdown hook can cancel it. The list of the task view is changed
+      // on the FX thread and is never read for scheduling
+      taskQueue.addWrappedTask(wrappedTask);
+      // tasks that are canceled before they are started are removed from their lane. Tasks may
+      // also reach their final status after run() returned (e.g., when finished by sub-tasks)
+      tasks[i].addTaskStatusListener((task, newStatus, oldStatus) -> {
+        if (isDone(newStatus) && (removeFromLane(wrappedTask) || wrappedTask.hasRunReturned())) {
+          complete(wrappedTask);
+        }
+      });
+    }
+
+    if (dependencies == null || dependencies.isEmpty()) {
+      enqueue(wrappedTasks, priorities);
+      return wrappedTasks;
+    }
+
+    waitingForDependencies.addAndGet(wrappedTasks.length);
+    final CompletableFuture<?>[] dependencyCompletions = dependencies.stream()
+        .map(WrappedTask::getCompletion).toArray(CompletableFuture[]::new);
+    CompletableFuture.allOf(dependencyCompletions).thenRun(() -> {
+      waitingForDependencies.addAndGet(-wrappedTasks.length);
+      final boolean allFinished = dependencies.stream()
+          .allMatch(dep -> dep.getCompletion().join() == TaskStatus.FINISHED);
+      if (allFinished) {
+        enqueue(wrappedTasks, priorities);
+      } else {
+        for (WrappedTask wrappedTask : wrappedTasks) {
+          logger.info("Canceling task " + wrappedTask + " because a dependency did not finish");
+          wrappedTask.getActualTask().cancel();
+          complete(wrappedTask);
+        }
+      }
+    });
+    return wrappedTasks;
+  }
+
+  private void enqueue(WrappedTask[] wrappedTasks, TaskPriority[] priorities) {
+    synchronized (this) {
+      for (int i = 0; i < wrappedTasks.length; i++) {
+        final WrappedTask wrappedTask = wrappedTasks[i];
+        if (isDone(wrappedTask.getActualTask().getStatus())) {
+          // canceled while waiting for dependencies
+          complete(wrappedTask);
+        } else {
+          lanes.get(priorities[i]).add(wrappedTask);
+        }
+      }
+    }
+    dispatch();
+  }
+
+  /**
+   * Starts tasks from all lanes as long as threads are available. High priority tasks are always
+   * started.
+   */
+  private synchronized void dispatch() {
+    final int maxNormal = Math.max(1, maxRunningThreads.getAsInt());
+    for (TaskPriority lane : TaskPriority.values()) {
+      final ArrayDeque<WrappedTask> queue = lanes.get(lane);
+      while (!queue.isEmpty() && (lane == TaskPriority.HIGH || running.get(lane) < maxNormal)) {
+        final WrappedTask wrappedTask = queue.poll();
+        running.merge(lane, 1, Integer::sum);
+        workers.execute(() -> runTask(wrappedTask, lane));
+      }
+    }
+  }
+
+  /**
+   * @return true if the task was queued and not started
+   */
+  private synchronized boolean removeFromLane(WrappedTask wrappedTask) {
+    for (ArrayDeque<WrappedTask> queue : lanes.values()) {
+      if (queue.remove(wrappedTask)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private synchronized void releaseThread(TaskPriority lane) {
+    running.merge(lane, -1, Integer::sum);
+  }
+
+  private synchronized void acquireThread(TaskPriority lane) {
+    running.merge(lane, 1, Integer::sum);
+  }
+
+  /**
+   * Runs a task on a worker thread
+   */
+  private void runTask(WrappedTask wrappedTask, TaskPriority lane) {
+    final Thread thread = Thread.currentThread();
+    wrappedTask.assignTo(thread);
+    thread.setPriority(lane == TaskPriority.HIGH ? Thread.MAX_PRIORITY : Thread.NORM_PRIORITY);
+    currentLane.set(lane);
+
+    final long startNanos = System.nanoTime();
+    final long queueNanos = startNanos - wrappedTask.getQueuedNanos();
+    totalQueueNanos.add(queueNanos);
+    maxQueueNanos.accumulateAndGet(queueNanos, Math::max);
+    startedTasks.increment();
+
+    final Task actualTask = wrappedTask.getActualTask();
+    try {
+      if (!isDone(actualTask.getStatus())) {
+        // track task use
+        GoogleAnalyticsTracker.trackTaskRun(actualTask);
+        runTask(actualTask);
+      }
+    } finally {
+      totalRunNanos.add(System.nanoTime() - startNanos);
+      currentLane.remove();
+      thread.setPriority(Thread.NORM_PRIORITY);
+      releaseThread(lane);
+      if (wrappedTask.markRunReturned()) {
+        complete(wrappedTask);
+      }
+      dispatch();
+    }
+  }
+
+  private void runTask(Task actualTask) {
+    try {
+      // Log the start (INFO level events go to the Status bar, too)
+      logger.info("Starting processing of task " + actualTask.getTaskDescription());
+
+      // Process the actual task
+      actualTask.run();
+
+      // Check if task finished with an error
+      if (actualTask.getStatus() == TaskStatus.ERROR) {
+        String errorMsg = actualTask.getErrorMessage();
+        if (errorMsg == null) {
+          errorMsg = "Unspecified error";
+        }
+
+        // Log the error
+        logger.severe("Error of task " + actualTask.getTaskDescription() + ": " + errorMsg);
+
+        MZmineCore.getDesktop().displayErrorMessage(errorMsg);
+      } else {
+        // Log the finish
+        logger.info("Processing of task " + actualTask.getTaskDescription() + " done, status "
+            + actualTask.getStatus());
+      }
+    } catch (Throwable e) {
+      /*
+       * This should never happen, it means the task did not handle its exception properly, or there
+       * was some severe error, like OutOfMemoryError
+       */
+      logger.log(Level.SEVERE,
+          "Unhandled exception " + e + " while processing task " + actualTask.getTaskDescription(),
+          e);
+
+      MZmineCore.getDesktop().displayErrorMessage(
+          "Unhandled exception in task " + actualTask.getTaskDescription() + ": "
+              + ExceptionUtils.exceptionToString(e));
+    }
+  }
+
+  private void complete(WrappedTask wrappedTask) {
+    if (!wrappedTask.getCompletion().complete(wrappedTask.getActualTask().getStatus())) {
+      // already completed
+      return;
+    }
+    activeTasks.remove(wrappedTask);
+    completedTasks.increment();
+    // This is important to allow the garbage collector to remove the task, while keeping the
+    // task description in the "Tasks in progress" window
+    wrappedTask.removeTaskReference();
+  }
+
+  @Override
+  public synchronized int reserveFreeThreads(int maxThreads) {
+    final int free =
+        Math.max(1, maxRunningThreads.getAsInt()) - running.get(TaskPriority.NORMAL);
+    final int reserved = Math.max(0, Math.min(maxThreads, free));
+    running.merge(TaskPriority.NORMAL, reserved, Integer::sum);
+    return reserved;
+  }
+
+  @Override
+  public void releaseThreads(int threads) {
+    if (threads <= 0) {
+      return;
+    }
+    synchronized (this) {
+      running.merge(TaskPriority.NORMAL, -threads, Integer::sum);
+    }
+    dispatch();
+  }
+
+  @Override
+  public void awaitTasks(WrappedTask... tasks) throws InterruptedException {
+    final CompletableFuture<?>[] completions = Arrays.stream(tasks)
+        .map(WrappedTask::getCompletion).toArray(CompletableFuture[]::new);
+    final CompletableFuture<Void> all = CompletableFuture.allOf(completions);
+    if (all.isDone()) {
+      return;
+    }
+
+    // a task waits for its sub-tasks: release the thread so that the sub-tasks can start
+    final TaskPriority lane = currentLane.get();
+    if (lane != null) {
+      releaseThread(lane);
+      dispatch();
+    }
+    try {
+      all.get();
+    } catch (ExecutionException e) {
+      // completions are never completed exceptionally
+      throw new IllegalStateException(e);
+    } finally {
+      if (lane != null) {
+        // may temporarily exceed the maximum number of threads
+        acquireThread(lane);
+      }
+    }
+  }
+
+  @Override
+  public synchronized TaskControllerMetrics getMetrics() {
+    final long started = startedTasks.sum();
+    final long completed = completedTasks.sum();
+    return new TaskControllerMetrics(waitingForDependencies.get(),
+        lanes.get(TaskPriority.HIGH).size(), lanes.get(TaskPriority.NORMAL).size(),
+        running.get(TaskPriority.HIGH), running.get(TaskPriority.NORMAL), started, completed,
+        started == 0 ? 0d : totalQueueNanos.sum() / 1E6 / started, maxQueueNanos.get() / 1E6,
+        started == 0 ? 0d : totalRunNanos.sum() / 1E6 / started);
+  }
+
+  @Override
+  public void setTaskPriority(Task task, TaskPriority priority) {
+    // Find the requested task
+    for (WrappedTask wrappedTask : activeTasks) {
+      if (wrappedTask.getActualTask() == task) {
+        logger.finest(
+            "Setting priority of task \"" + task.getTaskDescription() + "\" to " + priority);
+        wrappedTask.setPriority(priority);
+        moveToLane(wrappedTask, priority);
+      }
+    }
+    dispatch();
+
+    // Refresh the tasks window
+    refreshTasksView();
+  }
+
+  /**
+   * Moves a task that was not started yet to another lane
+   */
+  private synchronized void moveToLane(WrappedTask wrappedTask, TaskPriority priority) {
+    for (ArrayDeque<WrappedTask> queue : lanes.values()) {
+      if (queue.remove(wrappedTask)) {
+        lanes.get(priority).add(wrappedTask);
+        return;
+      }
+    }
+  }
+
+  @Override
+  public void addTaskControlListener(TaskControlListener listener) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public boolean isTaskInstanceRunningOrQueued(Class<? extends AbstractTask> clazz) {
+    for (WrappedTask wrappedTask : activeTasks) {
+      if (clazz.isInstance(wrappedTask.getActualTask())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void refreshTasksView() {
+    Desktop desktop = MZmineCore.getDesktop();
+    if ((desktop != null) && (!(desktop instanceof HeadLessDesktop))) {
+      desktop.getTasksView().refresh();
+    }
+  }
+
+  /**
+   * Notifies the listeners and refreshes the task view. Does not take part in scheduling.
+   */
+  private class Refresher implements Runnable {
+
+    private int previousQueueSize = -1;
+    private int previousPercentDone = -1;
+    private TaskControllerMetrics previousMetrics = null;
+
+    @Override
+    public void run() {
+      try {
+        final int waitingTasks = taskQueue.getNumOfWaitingTasks();
+        final int percentDone = taskQueue.getTotalPercentComplete();
+        if ((waitingTasks != previousQueueSize) || (percentDone != previousPercentDone)) {
+          previousQueueSize = waitingTasks;
+          previousPercentDone = percentDone;
+          for (TaskControlListener listener : listeners) {
+            listener.numberOfWaitingTasksChanged(waitingTasks, percentDone);
+          }
+        }
+
+        final TaskControllerMetrics metrics = getMetrics();
+        if (!metrics.equals(previousMetrics)) {
+          previousMetrics = metrics;
+          logger.finest(() -> "Task controller " + metrics);
+          for (TaskControlListener listener : listeners) {
+            listener.metricsChanged(metrics);
+          }
+        }
+
+        // Check if all tasks in the queue are finished
+        if (taskQueue.allTasksFinished()) {
+          taskQueue.clear();
+        }
+
+        // Refresh the tasks window
+        refreshTasksView();
+      } catch (Exception e) {
+        // keep the scheduled refresh alive
+        logger.log(Level.WARNING, "Error while refreshing the task controller listeners", e);
+      }
+    }
+  }
+}
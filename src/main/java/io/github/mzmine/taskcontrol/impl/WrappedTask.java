@@ -28,6 +28,8 @@ package io.github.mzmine.taskcontrol.impl;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskPriority;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import java.util.concurrent.CompletableFuture;
 import javafx.beans.property.Property;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
@@ -54,7 +56,11 @@ public class WrappedTask {
 
   private Task task;
   private Property<TaskPriority> priority;
-  private WorkerThread assignedTo;
+  private Thread assignedTo;
+  // completed with the final status after the task ran or was canceled
+  private final CompletableFuture<TaskStatus> completion = new CompletableFuture<>();
+  private final long queuedNanos = System.nanoTime();
+  private boolean runReturned = false;
 
   public WrappedTask(Task task, TaskPriority priority) {
     this.task = task;
@@ -92,10 +98,44 @@ public class WrappedTask {
     return assignedTo != null;
   }
 
-  void assignTo(WorkerThread thread) {
+  void assignTo(Thread thread) {
     assignedTo = thread;
   }
 
+  /**
+   * @return true if the task ran or was canceled before it was started
+   */
+  public boolean isDone() {
+    return completion.isDone();
+  }
+
+  /**
+   * Marks that the run method of the task returned
+   *
+   * @return true if the task already reached its final status
+   */
+  synchronized boolean markRunReturned() {
+    runReturned = true;
+    final TaskStatus status = task.getStatus();
+    return status == TaskStatus.FINISHED || status == TaskStatus.ERROR
+        || status == TaskStatus.CANCELED;
+  }
+
+  synchronized boolean hasRunReturned() {
+    return runReturned;
+  }
+
+  CompletableFuture<TaskStatus> getCompletion() {
+    return completion;
+  }
+
+  /**
+   * @return time when this task was added to the task controller
+   */
+  long getQueuedNanos() {
+    return queuedNanos;
+  }
+
   /**
    * @return Returns the task.
    */
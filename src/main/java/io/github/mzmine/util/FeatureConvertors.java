@@ -101,6 +101,17 @@ public class FeatureConvertors {
 
     SimpleIonTimeSeries timeSeries = createSimpleTimeSeries(featureList.getMemoryMapStorage(),
         new ArrayList<>(dataPoints), new ArrayList<>(scans));
+    return ionTimeSeriesToModularFeature(featureList, dataFile, timeSeries);
+  }
+
+  /**
+   * Creates a detected feature from a chromatogram and adds all MS2 scans within its ranges
+   *
+   * @param timeSeries the chromatogram data
+   * @return the new feature
+   */
+  public static ModularFeature ionTimeSeriesToModularFeature(ModularFeatureList featureList,
+      RawDataFile dataFile, @NotNull IonTimeSeries<? extends Scan> timeSeries) {
     ModularFeature modularFeature = new ModularFeature(featureList, dataFile, timeSeries,
         FeatureStatus.DETECTED);
 
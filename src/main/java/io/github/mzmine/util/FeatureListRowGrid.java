@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Immutable grid index of rows by average m/z and retention time. The average values (and the
+ * mobility) are copied to primitive arrays on construction, queries do not access the rows. Cells
+ * are only allocated if they contain rows. Rows without retention time are stored in a separate
+ * cell of each m/z bin and match every retention time range, rows without mobility match every
+ * mobility range, same as in
+ * {@link FeatureListUtils#getCandidatesWithinRanges(Range, Range, Range, List, boolean)}.
+ * <p>
+ * The bin widths should be close to the width of the queried tolerance ranges. Queries are thread
+ * safe.
+ */
+public class FeatureListRowGrid {
+
+  private static final int NO_RT_BIN = Integer.MIN_VALUE;
+
+  private final List<FeatureListRow> rows;
+  private final double[] mzs;
+  private final float[] rts;
+  private final float[] mobilities;
+  private final double mzBinWidth;
+  private final double rtBinWidth;
+  private final Long2ObjectOpenHashMap<int[]> cells;
+  private final int minMzBin;
+  private final int maxMzBin;
+  private final int minRtBin;
+  private final int maxRtBin;
+
+  /**
+   * @param rows       the indexed rows, the index of a row in this list is used in all queries
+   * @param mzBinWidth width of the m/z bins, usually the width of the m/z tolerance range
+   * @param rtBinWidth width of the retention time bins, usually the width of the RT tolerance
+   *                   range
+   */
+  public FeatureListRowGrid(@NotNull List<? extends FeatureListRow> rows, double mzBinWidth,
+      double rtBinWidth) {
+    this.rows = List.copyOf(rows);
+    this.mzBinWidth = mzBinWidth > 0 && Double.isFinite(mzBinWidth) ? mzBinWidth : 1d;
+    this.rtBinWidth = rtBinWidth > 0 && Double.isFinite(rtBinWidth) ? rtBinWidth : 1d;
+
+    final int n = this.rows.size();
+    mzs = new double[n];
+    rts = new float[n];
+    mobilities = new float[n];
+    int minMz = Integer.MAX_VALUE;
+    int maxMz = Integer.MIN_VALUE;
+    int minRt = Integer.MAX_VALUE;
+    int maxRt = Integer.MIN_VALUE;
+
+    final Long2ObjectOpenHashMap<IntArrayList> builder = new Long2ObjectOpenHashMap<>();
+    for (int i = 0; i < n; i++) {
+      final FeatureListRow row = this.rows.get(i);
+      final Double mz = row.getAverageMZ();
+      final Float rt = row.getAverageRT();
+      final Float mobility = row.getAverageMobility();
+      mzs[i] = mz != null ? mz : Double.NaN;
+      rts[i] = rt != null ? rt : Float.NaN;
+      mobilities[i] = mobility != null ? mobility : Float.NaN;
+      if (mz == null) {
+        // never within an m/z range
+        continue;
+      }
+
+      final int mzBin = mzBin(mzs[i]);
+      final int rtBin = rt != null ? rtBin(rts[i]) : NO_RT_BIN;
+      minMz = Math.min(minMz, mzBin);
+      maxMz = Math.max(maxMz, mzBin);
+      if (rtBin != NO_RT_BIN) {
+        minRt = Math.min(minRt, rtBin);
+        maxRt = Math.max(maxRt, rtBin);
+      }
+      builder.computeIfAbsent(key(mzBin, rtBin), k -> new IntArrayList(4)).add(i);
+    }
+
+    cells = new Long2ObjectOpenHashMap<>(builder.size());
+    builder.long2ObjectEntrySet()
+        .forEach(e -> cells.put(e.getLongKey(), e.getValue().toIntArray()));
+    cells.trim();
+    minMzBin = minMz;
+    maxMzBin = maxMz;
+    minRtBin = minRt;
+    maxRtBin = maxRt;
+  }
+
+  private static long key(int mzBin, int rtBin) {
+    return ((long) mzBin << 32) | (rtBin & 0xFFFFFFFFL);
+  }
+
+  private int mzBin(double mz) {
+    return (int) Math.floor(mz / mzBinWidth);
+  }
+
+  private int rtBin(double rt) {
+    return (int) Math.floor(rt / rtBinWidth);
+  }
+
+  /**
+   * Passes the indices of all rows within all ranges to the consumer. The order of the indices is
+   * not defined.
+   *
+   * @param mzRange       the m/z range, may be unbounded
+   * @param rtRange       the retention time range, may be unbounded
+   * @param mobilityRange the mobility range, may be unbounded
+   * @param consumer      receives the row indices
+   */
+  public void forEachCandidate(@NotNull Range<Double> mzRange, @NotNull Range<Float> rtRange,
+      @NotNull Range<Float> mobilityRange, @NotNull IntConsumer consumer) {
+    if (cells.isEmpty()) {
+      return;
+    }
+    final int mzFrom = mzRange.hasLowerBound() ? Math.max(minMzBin,
+        mzBin(mzRange.lowerEndpoint())) : minMzBin;
+    final int mzTo = mzRange.hasUpperBound() ? Math.min(maxMzBin,
+        mzBin(mzRange.upperEndpoint())) : maxMzBin;
+    final int rtFrom = rtRange.hasLowerBound() ? Math.max(minRtBin,
+        rtBin(rtRange.lowerEndpoint())) : minRtBin;
+    final int rtTo = rtRange.hasUpperBound() ? Math.min(maxRtBin,
+        rtBin(rtRange.upperEndpoint())) : maxRtBin;
+    final boolean checkMobility = mobilityRange.hasLowerBound() || mobilityRange.hasUpperBound();
+
+    for (int mzBin = mzFrom; mzBin <= mzTo; mzBin++) {
+      for (int rtBin = rtFrom; rtBin <= rtTo; rtBin++) {
+        acceptCell(cells.get(key(mzBin, rtBin)), mzRange, rtRange, mobilityRange, checkMobility,
+            consumer);
+      }
+      acceptCell(cells.get(key(mzBin, NO_RT_BIN)), mzRange, rtRange, mobilityRange,
+          checkMobility, consumer);
+    }
+  }
+
+  private void acceptCell(int[] cell, Range<Double> mzRange, Range<Float> rtRange,
+      Range<Float> mobilityRange, boolean checkMobility, IntConsumer consumer) {
+    if (cell == null) {
+      return;
+    }
+    for (int i : cell) {
+      if (mzRange.contains(mzs[i]) && (Float.isNaN(rts[i]) || rtRange.contains(rts[i])) && (
+          !checkMobility || Float.isNaN(mobilities[i]) || mobilityRange.contains(mobilities[i]))) {
+        consumer.accept(i);
+      }
+    }
+  }
+
+  /**
+   * @return all rows within all ranges in undefined order
+   */
+  public @NotNull List<FeatureListRow> getCandidatesWithinRanges(@NotNull Range<Double> mzRange,
+      @NotNull Range<Float> rtRange, @NotNull Range<Float> mobilityRange) {
+    final List<FeatureListRow> candidates = new ArrayList<>();
+    forEachCandidate(mzRange, rtRange, mobilityRange, i -> candidates.add(rows.get(i)));
+    return candidates;
+  }
+
+  /**
+   * @param index the index of the row in the list used to build this grid
+   */
+  public FeatureListRow getRow(int index) {
+    return rows.get(index);
+  }
+
+  /**
+   * @return the indexed rows
+   */
+  public List<FeatureListRow> getRows() {
+    return rows;
+  }
+
+  public int size() {
+    return rows.size();
+  }
+}
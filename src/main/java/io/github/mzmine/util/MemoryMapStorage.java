@@ -36,9 +36,13 @@ import java.nio.IntBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -56,8 +60,16 @@ import sun.misc.Unsafe;
  * the disk, depending on the amount of stored data (this can be examined using the 'du -hs' Linux
  * command.
  * <p>
- * There is no support for removing data from the file - we assume such operation is rare and
- * therefore the data can be left on the disk until the whole temporary file is discarded.
+ * Space in the current file is reserved with an atomic bump pointer, so multiple threads can store
+ * data concurrently. Only the creation of a new file is synchronized.
+ * <p>
+ * There is no support for removing single arrays from a file. Instead, the regions (files) of this
+ * storage are recorded for the owners that store data in them (feature lists, raw data files),
+ * see {@link #retain(Object)}. A file is released once all of its owners were removed from the
+ * project by {@link #release(Object)}. Released files are deleted right away (on Windows, they can
+ * only be deleted after unmapping) and unmapped by the garbage collector, as soon as no buffer
+ * references them anymore. Files are never unmapped explicitly before {@link #discard(Unsafe)},
+ * so buffers that are still in use stay valid.
  * <p>
  * There is a limit on the number of open file descriptors (e.g. 1024 by default on Linux). With 1
  * GB per temporary file, this would give us about 1 TB of storage space, so perhaps it is okay.
@@ -76,8 +88,19 @@ public class MemoryMapStorage {
    */
   private static final long STORAGE_FILE_CAPACITY = 1_000_000_000L;
   private final Logger logger = Logger.getLogger(this.getClass().getName());
+  /**
+   * Temporary files that were not deleted yet
+   */
   private final Set<File> temporaryFiles = new HashSet<>();
-  private final List<MappedByteBuffer> mappedByteBufferList = new ArrayList<>();
+  /**
+   * Files that are still referenced by this storage. Released files are only referenced by the
+   * buffers stored in them and are unmapped by the garbage collector.
+   */
+  private final List<MappedFile> mappedFiles = new ArrayList<>();
+  /**
+   * Owners (feature lists, raw data files) in the project, see {@link #retain(Object)}
+   */
+  private final Set<Object> owners = Collections.newSetFromMap(new IdentityHashMap<>());
 
   private static boolean storeFeaturesInRam = false;
   private static boolean storeRawFilesInRam = false;
@@ -112,7 +135,21 @@ public class MemoryMapStorage {
     return new MemoryMapStorage();
   }
 
+  /**
+   * The capacity of each temporary file in bytes
+   */
+  private final long fileCapacity;
+
   private MemoryMapStorage() {
+    this(STORAGE_FILE_CAPACITY);
+  }
+
+  /**
+   * @param fileCapacity the capacity of each temporary file in bytes. Smaller files are only used
+   *                     in tests to create new files after a few arrays.
+   */
+  MemoryMapStorage(long fileCapacity) {
+    this.fileCapacity = fileCapacity;
     // register this storage to MZmineCore, so we can delete all temp files later.
     MZmineCore.registerStorage(this);
   }
@@ -120,16 +157,16 @@ public class MemoryMapStorage {
   /**
    * The file that we are currently writing into.
    */
-  private MappedByteBuffer currentMappedFile = null;
+  private volatile MappedFile currentMappedFile = null;
 
   /**
-   * Creates a new temporary file, maps it into memory, and returns the corresponding
-   * MappedByteBuffer. The capacity of the buffer is STORAGE_FILE_CAPACITY bytes.
+   * Creates a new temporary file and maps it into memory. The capacity of the buffer is
+   * fileCapacity bytes.
    *
-   * @return a MappedByteBuffer corresponding to the memory-mapped temporary file
+   * @return the memory-mapped temporary file
    * @throws IOException
    */
-  private MappedByteBuffer createNewMappedFile() throws IOException {
+  private MappedFile createNewMappedFile() throws IOException {
 
     // Create the temporary storage file
     File storageFileName = File.createTempFile("mzmine", ".tmp");
@@ -141,8 +178,11 @@ public class MemoryMapStorage {
 
     // Map the file into memory
     MappedByteBuffer mappedFileBuffer =
-        storageFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, STORAGE_FILE_CAPACITY);
-    mappedByteBufferList.add(mappedFileBuffer);
+        storageFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileCapacity);
+    final MappedFile mappedFile = new MappedFile(storageFileName, mappedFileBuffer);
+    // data of the current owners may be stored in the new file
+    mappedFile.owners.addAll(owners);
+    mappedFiles.add(mappedFile);
 
     // Close the temporary file, the memory mapping will remain
     storageFile.close();
@@ -152,8 +192,44 @@ public class MemoryMapStorage {
     // shutdown hook registered in the main.ShutDownHook class.
     storageFileName.deleteOnExit();
 
-    return mappedFileBuffer;
+    return mappedFile;
+
+  }
+
+  /**
+   * Reserves space in the current file. A new file is created if the current file is full.
+   *
+   * @param numBytes the number of bytes
+   * @return the buffer of the reserved space. The buffer is not shared with other threads.
+   */
+  private ByteBuffer reserve(final int numBytes) throws IOException {
+    if (numBytes < 0 || numBytes > fileCapacity) {
+      throw new IllegalArgumentException(
+          "Cannot store " + numBytes + " bytes in a file of " + fileCapacity + " bytes");
+    }
+    while (true) {
+      final MappedFile file = currentMappedFile;
+      if (file != null) {
+        final ByteBuffer slice = file.reserve(numBytes);
+        if (slice != null) {
+          return slice;
+        }
+      }
+      synchronized (this) {
+        // another thread might have created a new file already
+        if (currentMappedFile == file) {
+          currentMappedFile = createNewMappedFile();
+        }
+      }
+    }
+  }
 
+  private void deleteReleasedFile(final File file) {
+    // fails on Windows as long as the file is mapped, then it is deleted on discard or on exit
+    if (file.delete()) {
+      temporaryFiles.remove(file);
+      logger.finest(() -> "Released temporary file " + file);
+    }
   }
 
   /**
@@ -165,8 +241,7 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized DoubleBuffer storeData(@NotNull final double data[])
-      throws IOException {
+  public DoubleBuffer storeData(@NotNull final double data[]) throws IOException {
     return storeData(data, 0, data.length);
   }
 
@@ -181,36 +256,16 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized DoubleBuffer storeData(@NotNull final double data[], int offset,
-      int length) throws IOException {
-
-    // If we have no storage file or if the current file is full, create a new one
-    if ((currentMappedFile == null)
-        || (currentMappedFile.position() + (length * Double.BYTES) > STORAGE_FILE_CAPACITY)) {
-      currentMappedFile = createNewMappedFile();
-    }
-
-    // Save the current position in the storage file
-    final int savedPosition = currentMappedFile.position();
-
-    // Set the limit to the end of the new array and create a buffer slice
-    currentMappedFile.limit(savedPosition + length * Double.BYTES);
-    final ByteBuffer slice = currentMappedFile.slice();
-
-    // Create a double view of the memory-mapped byte buffer
-    DoubleBuffer sliceDoubleView = slice.asDoubleBuffer();
+  public DoubleBuffer storeData(@NotNull final double data[], int offset, int length)
+      throws IOException {
+    // Create a double view of the reserved memory-mapped space
+    final DoubleBuffer sliceDoubleView = reserve(length * Double.BYTES).asDoubleBuffer();
 
     // Copy the data to the memory mapped storage
     sliceDoubleView.put(data, offset, length);
 
-    // Update the position and the main buffer so we are ready to store the next array
-    currentMappedFile.position(savedPosition + length * Double.BYTES);
-
     // Create a read-only version of the new buffer slice
-    final DoubleBuffer readOnlySlice = sliceDoubleView.asReadOnlyBuffer();
-
-    return readOnlySlice;
-
+    return sliceDoubleView.asReadOnlyBuffer();
   }
 
   /**
@@ -222,8 +277,7 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized FloatBuffer storeData(@NotNull final float data[])
-      throws IOException {
+  public FloatBuffer storeData(@NotNull final float data[]) throws IOException {
     return storeData(data, 0, data.length);
   }
 
@@ -238,36 +292,16 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized FloatBuffer storeData(@NotNull final float data[], int offset,
-      int length) throws IOException {
-
-    // If we have no storage file or if the current file is full, create a new one
-    if ((currentMappedFile == null)
-        || (currentMappedFile.position() + (length * Float.BYTES) > STORAGE_FILE_CAPACITY)) {
-      currentMappedFile = createNewMappedFile();
-    }
-
-    // Save the current position in the storage file
-    final int savedPosition = currentMappedFile.position();
-
-    // Set the limit to the end of the new array and create a buffer slice
-    currentMappedFile.limit(savedPosition + length * Float.BYTES);
-    final ByteBuffer slice = currentMappedFile.slice();
-
-    // Create a float view of the memory-mapped byte buffer
-    FloatBuffer sliceFloatView = slice.asFloatBuffer();
+  public FloatBuffer storeData(@NotNull final float data[], int offset, int length)
+      throws IOException {
+    // Create a float view of the reserved memory-mapped space
+    final FloatBuffer sliceFloatView = reserve(length * Float.BYTES).asFloatBuffer();
 
     // Copy the data to the memory mapped storage
     sliceFloatView.put(data, offset, length);
 
-    // Update the position and the main buffer so we are ready to store the next array
-    currentMappedFile.position(savedPosition + length * Float.BYTES);
-
     // Create a read-only version of the new buffer slice
-    final FloatBuffer readOnlySlice = sliceFloatView.asReadOnlyBuffer();
-
-    return readOnlySlice;
-
+    return sliceFloatView.asReadOnlyBuffer();
   }
 
   /**
@@ -279,7 +313,7 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized IntBuffer storeData(@NotNull final int data[]) throws IOException {
+  public IntBuffer storeData(@NotNull final int data[]) throws IOException {
     return storeData(data, 0, data.length);
   }
 
@@ -294,36 +328,107 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized IntBuffer storeData(@NotNull final int data[], int offset,
-      int length) throws IOException {
-
-    // If we have no storage file or if the current file is full, create a new one
-    if ((currentMappedFile == null)
-        || (currentMappedFile.position() + (length * Integer.BYTES) > STORAGE_FILE_CAPACITY)) {
-      currentMappedFile = createNewMappedFile();
-    }
+  public IntBuffer storeData(@NotNull final int data[], int offset, int length)
+      throws IOException {
+    // Create an int view of the reserved memory-mapped space
+    final IntBuffer sliceIntView = reserve(length * Integer.BYTES).asIntBuffer();
 
-    // Save the current position in the storage file
-    final int savedPosition = currentMappedFile.position();
+    // Copy the data to the memory mapped storage
+    sliceIntView.put(data, offset, length);
 
-    // Set the limit to the end of the new array and create a buffer slice
-    currentMappedFile.limit(savedPosition + length * Integer.BYTES);
-    final ByteBuffer slice = currentMappedFile.slice();
+    // Create a read-only version of the new buffer slice
+    return sliceIntView.asReadOnlyBuffer();
+  }
 
-    // Create an int view of the memory-mapped byte buffer
-    IntBuffer sliceIntView = slice.asIntBuffer();
+  /**
+   * Store the given byte[] array in a memory-mapped temporary file and return a read-only
+   * ByteBuffer that can access the data.
+   *
+   * @param data   the byte[] array with the data
+   * @param offset offset of the stored portion of the data[] array
+   * @param length size of the stored portion of the data[] array
+   * @return a read-only ByteBuffer that is directly mapped to the stored data on the disk
+   * @throws IOException
+   */
+  @NotNull
+  public ByteBuffer storeData(@NotNull final byte data[], int offset, int length)
+      throws IOException {
+    final ByteBuffer slice = reserve(length);
 
     // Copy the data to the memory mapped storage
-    sliceIntView.put(data, offset, length);
-
-    // Update the position and the main buffer so we are ready to store the next array
-    currentMappedFile.position(savedPosition + length * Integer.BYTES);
+    slice.put(0, data, offset, length);
 
     // Create a read-only version of the new buffer slice
-    final IntBuffer readOnlySlice = sliceIntView.asReadOnlyBuffer();
+    return slice.asReadOnlyBuffer();
+  }
+
+  /**
+   * Registers an owner of this storage, e.g., a feature list or raw data file that was added to
+   * the project. The owner is recorded for all files that exist now or are created until the owner
+   * is released, because its data may be stored in any of them.
+   *
+   * @param owner the owner, compared by identity
+   */
+  public synchronized void retain(@NotNull Object owner) {
+    if (owners.add(owner)) {
+      for (MappedFile file : mappedFiles) {
+        file.owners.add(owner);
+      }
+    }
+  }
+
+  /**
+   * Unregisters an owner of this storage and releases all files that are not used by another
+   * owner. They are unmapped as soon as none of their buffers is reachable anymore. The storage
+   * can still be used to store new data afterwards.
+   *
+   * @param owner the owner, compared by identity
+   */
+  public synchronized void release(@NotNull Object owner) {
+    if (!owners.remove(owner)) {
+      // never retained
+      return;
+    }
+    long bytes = 0;
+    for (Iterator<MappedFile> it = mappedFiles.iterator(); it.hasNext(); ) {
+      final MappedFile file = it.next();
+      if (file.owners.remove(owner) && file.owners.isEmpty()) {
+        bytes += file.getReservedBytes();
+        if (currentMappedFile == file) {
+          // new data is stored in a new file
+          currentMappedFile = null;
+        }
+        it.remove();
+        deleteReleasedFile(file.file);
+      }
+    }
+    final long releasedBytes = bytes;
+    logger.finest(() -> "Released " + releasedBytes + " bytes of temporary storage");
+  }
 
-    return readOnlySlice;
+  /**
+   * @return the number of bytes reserved in the files of this storage that are not released yet
+   */
+  public synchronized long getReservedBytes() {
+    long bytes = 0;
+    for (MappedFile file : mappedFiles) {
+      bytes += file.getReservedBytes();
+    }
+    return bytes;
+  }
 
+  /**
+   * @return the number of bytes reserved in the temporary files of all storages
+   */
+  public static long getTotalReservedBytes() {
+    final List<MemoryMapStorage> storages = MZmineCore.getStorageList();
+    long bytes = 0;
+    synchronized (storages) {
+      for (MemoryMapStorage storage : storages) {
+        bytes += storage.getReservedBytes();
+      }
+    }
+    return bytes;
   }
 
   /**
@@ -332,8 +437,8 @@ public class MemoryMapStorage {
   public synchronized void discard(Unsafe theUnsafe) throws IOException {
 
     if (theUnsafe != null) {
-      for (MappedByteBuffer mappedByteBuffer : mappedByteBufferList) {
-        theUnsafe.invokeCleaner(mappedByteBuffer);
+      for (MappedFile mappedFile : mappedFiles) {
+        theUnsafe.invokeCleaner(mappedFile.buffer);
       }
     }
 
@@ -344,9 +449,44 @@ public class MemoryMapStorage {
     }
 
     temporaryFiles.clear();
+    mappedFiles.clear();
     currentMappedFile = null;
   }
 
+  /**
+   * A memory mapped file with an atomic write position.
+   */
+  private static final class MappedFile {
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    // may exceed the capacity if threads tried to reserve more space than available
+    private final AtomicLong position = new AtomicLong(0);
+    // owners that may have data in this file, guarded by the storage
+    private final Set<Object> owners = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private MappedFile(File file, MappedByteBuffer buffer) {
+      this.file = file;
+      this.buffer = buffer;
+    }
+
+    /**
+     * @return a slice of the reserved space or null if the file is full
+     */
+    @Nullable
+    private ByteBuffer reserve(final int numBytes) {
+      final long start = position.getAndAdd(numBytes);
+      if (start + numBytes > buffer.capacity()) {
+        return null;
+      }
+      // absolute slice does not modify the shared buffer
+      return buffer.slice((int) start, numBytes);
+    }
+
+    private long getReservedBytes() {
+      return Math.min(position.get(), buffer.capacity());
+    }
+  }
 
   public static boolean isStoreFeaturesInRam() {
     return storeFeaturesInRam;
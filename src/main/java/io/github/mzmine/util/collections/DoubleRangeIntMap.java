@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.collections;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps non-overlapping, closed-open ranges [lower, upper) of double values to int values. Works
+ * like a Guava RangeMap&lt;Double, Integer&gt; for ranges that never partially overlap, but stores
+ * the ranges in sorted primitive arrays. The sorted arrays are split into blocks of limited size so
+ * that insertion only shifts a single block.
+ */
+public class DoubleRangeIntMap {
+
+  public static final int NOT_FOUND = -1;
+  private static final int BLOCK_SIZE = 1024;
+
+  private final List<Block> blocks = new ArrayList<>();
+  private int size;
+
+  /**
+   * @return the value of the range that contains x or {@link #NOT_FOUND}
+   */
+  public int get(double x) {
+    final int b = floorBlock(x);
+    if (b < 0) {
+      return NOT_FOUND;
+    }
+    final Block block = blocks.get(b);
+    final int i = block.floor(x);
+    return i >= 0 && x < block.uppers[i] ? block.values[i] : NOT_FOUND;
+  }
+
+  /**
+   * Adds the range [lower, upper). Existing ranges that are fully covered by the new range are
+   * removed, like in Guava's RangeMap.
+   *
+   * @throws IllegalArgumentException if lower >= upper
+   * @throws IllegalStateException    if an existing range partially overlaps the new range
+   */
+  public void put(double lower, double upper, int value) {
+    if (!(lower < upper)) {
+      throw new IllegalArgumentException(
+          String.format("Lower bound %f needs to be smaller than upper bound %f", lower, upper));
+    }
+    removeCovered(lower, upper);
+
+    if (blocks.isEmpty()) {
+      blocks.add(new Block());
+    }
+    int b = Math.max(0, floorBlock(lower));
+    Block block = blocks.get(b);
+    if (block.size == BLOCK_SIZE) {
+      final Block upperHalf = block.split();
+      blocks.add(b + 1, upperHalf);
+      if (upperHalf.lowers[0] <= lower) {
+        block = upperHalf;
+      }
+    }
+    block.insert(block.floor(lower) + 1, lower, upper, value);
+    size++;
+  }
+
+  /**
+   * @return all values sorted by their ranges
+   */
+  public int[] values() {
+    final int[] values = new int[size];
+    int i = 0;
+    for (Block block : blocks) {
+      System.arraycopy(block.values, 0, values, i, block.size);
+      i += block.size;
+    }
+    return values;
+  }
+
+  /**
+   * @return number of ranges
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return index of the last block with a first lower bound <= x or -1
+   */
+  private int floorBlock(double x) {
+    int low = 0;
+    int high = blocks.size() - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      if (blocks.get(mid).lowers[0] <= x) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return high;
+  }
+
+  private void removeCovered(double lower, double upper) {
+    int b = floorBlock(lower);
+    if (b < 0) {
+      b = 0;
+    } else {
+      final Block block = blocks.get(b);
+      final int i = block.floor(lower);
+      // range starting before lower must end before lower
+      if (i >= 0 && block.lowers[i] < lower && block.uppers[i] > lower) {
+        throw new IllegalStateException(
+            String.format("Range [%f, %f) partially overlaps [%f, %f)", block.lowers[i],
+                block.uppers[i], lower, upper));
+      }
+    }
+
+    while (b < blocks.size()) {
+      final Block block = blocks.get(b);
+      int i = block.floor(lower);
+      if (i < 0 || block.lowers[i] < lower) {
+        i++;
+      }
+      int end = i;
+      while (end < block.size && block.lowers[end] < upper) {
+        if (block.uppers[end] > upper) {
+          throw new IllegalStateException(
+              String.format("Range [%f, %f) partially overlaps [%f, %f)", block.lowers[end],
+                  block.uppers[end], lower, upper));
+        }
+        end++;
+      }
+      final int removed = end - i;
+      block.remove(i, end);
+      size -= removed;
+      // continue in the next block only if the whole rest of this block was covered
+      if (end < block.size + removed) {
+        break;
+      }
+      if (block.size == 0) {
+        blocks.remove(b);
+      } else {
+        b++;
+      }
+    }
+  }
+
+  private static class Block {
+
+    private final double[] lowers = new double[BLOCK_SIZE];
+    private final double[] uppers = new double[BLOCK_SIZE];
+    private final int[] values = new int[BLOCK_SIZE];
+    private int size;
+
+    /**
+     * @return index of the last range with lower <= x or -1
+     */
+    private int floor(double x) {
+      int low = 0;
+      int high = size - 1;
+      while (low <= high) {
+        final int mid = (low + high) >>> 1;
+        if (lowers[mid] <= x) {
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return high;
+    }
+
+    private void insert(int index, double lower, double upper, int value) {
+      final int move = size - index;
+      if (move > 0) {
+        System.arraycopy(lowers, index, lowers, index + 1, move);
+        System.arraycopy(uppers, index, uppers, index + 1, move);
+        System.arraycopy(values, index, values, index + 1, move);
+      }
+      lowers[index] = lower;
+      uppers[index] = upper;
+      values[index] = value;
+      size++;
+    }
+
+    /**
+     * Remove ranges from (inclusive) to (exclusive)
+     */
+    private void remove(int from, int to) {
+      final int move = size - to;
+      if (from >= to) {
+        return;
+      }
+      if (move > 0) {
+        System.arraycopy(lowers, to, lowers, from, move);
+        System.arraycopy(uppers, to, uppers, from, move);
+        System.arraycopy(values, to, values, from, move);
+      }
+      size -= to - from;
+    }
+
+    /**
+     * Moves the upper half of this block to a new block
+     */
+    private Block split() {
+      final Block upperHalf = new Block();
+      final int half = size / 2;
+      final int move = size - half;
+      System.arraycopy(lowers, half, upperHalf.lowers, 0, move);
+      System.arraycopy(uppers, half, upperHalf.uppers, 0, move);
+      System.arraycopy(values, half, upperHalf.values, 0, move);
+      upperHalf.size = move;
+      size = half;
+      return upperHalf;
+    }
+  }
+}
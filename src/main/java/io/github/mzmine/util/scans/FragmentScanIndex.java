@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.scans;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.Frame;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.MSnInfoImpl;
+import io.github.mzmine.datamodel.msms.DDAMsMsInfo;
+import io.github.mzmine.datamodel.msms.MsMsInfo;
+import io.github.mzmine.datamodel.msms.PasefMsMsInfo;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Immutable index of all fragment scans (MS level > 1) of a raw data file sorted by precursor m/z.
+ * Queries for a precursor m/z window use a binary search and only test the retention time of the
+ * scans within the window.
+ * <p>
+ * The precursor m/z is the isolation m/z of {@link DDAMsMsInfo}, for MSn scans
+ * ({@link MSnInfoImpl}) the precursor of the MS2 level. TIMS frames are indexed once for each of
+ * their {@link PasefMsMsInfo}. Results are always returned in the order of the scans in the raw
+ * data file.
+ */
+public class FragmentScanIndex {
+
+  // in order of the scans in the raw data file
+  private final Scan[] scans;
+  private final PasefMsMsInfo[] pasefInfos;
+  private final int[] msLevels;
+  // sorted by precursor m/z, ordinals point into the arrays above
+  private final double[] precursorMzs;
+  private final float[] rts;
+  private final int[] ordinals;
+
+  public FragmentScanIndex(@NotNull List<? extends Scan> allScans) {
+    final List<Scan> entryScans = new ArrayList<>();
+    final List<PasefMsMsInfo> entryInfos = new ArrayList<>();
+    final IntArrayList entryMsLevels = new IntArrayList();
+    final DoubleArrayList entryMzs = new DoubleArrayList();
+
+    for (Scan scan : allScans) {
+      if (scan.getMSLevel() <= 1) {
+        continue;
+      }
+      if (scan instanceof Frame frame && !frame.getImsMsMsInfos().isEmpty()) {
+        for (PasefMsMsInfo info : frame.getImsMsMsInfos()) {
+          entryScans.add(scan);
+          entryInfos.add(info);
+          entryMsLevels.add(scan.getMSLevel());
+          entryMzs.add(info.getIsolationMz());
+        }
+        continue;
+      }
+
+      final Double precursorMz = getPrecursorMz(scan);
+      if (precursorMz != null) {
+        entryScans.add(scan);
+        entryInfos.add(null);
+        entryMsLevels.add(scan.getMSLevel());
+        entryMzs.add(precursorMz);
+      }
+    }
+
+    final int n = entryScans.size();
+    scans = entryScans.toArray(Scan[]::new);
+    pasefInfos = entryInfos.toArray(PasefMsMsInfo[]::new);
+    msLevels = entryMsLevels.toIntArray();
+
+    final int[] order = new int[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+    final double[] mzs = entryMzs.toDoubleArray();
+    IntArrays.quickSort(order, (a, b) -> Double.compare(mzs[a], mzs[b]));
+    ordinals = order;
+    precursorMzs = new double[n];
+    rts = new float[n];
+    for (int i = 0; i < n; i++) {
+      precursorMzs[i] = mzs[order[i]];
+      rts[i] = scans[order[i]].getRetentionTime();
+    }
+  }
+
+  /**
+   * The index of the raw data file, cached by {@link RawDataFileImpl}.
+   */
+  public static @NotNull FragmentScanIndex of(@NotNull RawDataFile file) {
+    if (file instanceof RawDataFileImpl impl) {
+      return impl.getFragmentScanIndex();
+    }
+    return new FragmentScanIndex(file.getScans());
+  }
+
+  /**
+   * @return the precursor m/z used for grouping or null if the scan has no precursor information
+   */
+  public static @Nullable Double getPrecursorMz(@NotNull Scan scan) {
+    final MsMsInfo info = scan.getMsMsInfo();
+    if (info instanceof MSnInfoImpl msn) {
+      return msn.getMS2PrecursorMz();
+    } else if (info instanceof DDAMsMsInfo dda) {
+      return dda.getIsolationMz();
+    }
+    return scan.getPrecursorMz();
+  }
+
+  /**
+   * @return the ordinals of all entries within the ranges in order of the raw data file
+   */
+  private int[] findOrdinals(@Nullable Range<Float> rtRange, @NotNull Range<Double> mzRange,
+      int msLevel, boolean pasef) {
+    int from = 0;
+    if (mzRange.hasLowerBound()) {
+      final double lower = mzRange.lowerEndpoint();
+      int high = precursorMzs.length;
+      while (from < high) {
+        final int mid = (from + high) >>> 1;
+        if (precursorMzs[mid] < lower) {
+          from = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+    }
+
+    final IntArrayList result = new IntArrayList();
+    for (int i = from; i < precursorMzs.length; i++) {
+      if (mzRange.hasUpperBound() && precursorMzs[i] > mzRange.upperEndpoint()) {
+        break;
+      }
+      final int ordinal = ordinals[i];
+      if ((pasefInfos[ordinal] != null) == pasef && (msLevel == 0
+          || msLevels[ordinal] == msLevel) && mzRange.contains(precursorMzs[i]) && (
+          rtRange == null || rtRange.contains(rts[i]))) {
+        result.add(ordinal);
+      }
+    }
+    final int[] found = result.toIntArray();
+    IntArrays.quickSort(found);
+    return found;
+  }
+
+  /**
+   * Fragment scans with precursor information. PASEF frames are excluded, see
+   * {@link #forEachPasefMsMsInfo(Range, Range, int, BiConsumer)}.
+   *
+   * @param rtRange retention time range or null for all
+   * @param mzRange precursor m/z range
+   * @param msLevel the MS level or 0 for all fragment scans (MS level > 1)
+   * @return the scans in order of the raw data file
+   */
+  public @NotNull List<Scan> getFragmentScans(@Nullable Range<Float> rtRange,
+      @NotNull Range<Double> mzRange, int msLevel) {
+    final int[] found = findOrdinals(rtRange, mzRange, msLevel, false);
+    final List<Scan> result = new ArrayList<>(found.length);
+    for (int ordinal : found) {
+      result.add(scans[ordinal]);
+    }
+    return result;
+  }
+
+  /**
+   * @param rtRange  retention time range of the frames or null for all
+   * @param mzRange  isolation m/z range
+   * @param msLevel  the MS level of the frames or 0 for all fragment frames
+   * @param consumer receives the frames and their PASEF MS/MS infos in order of the raw data file
+   */
+  public void forEachPasefMsMsInfo(@Nullable Range<Float> rtRange, @NotNull Range<Double> mzRange,
+      int msLevel, @NotNull BiConsumer<Frame, PasefMsMsInfo> consumer) {
+    for (int ordinal : findOrdinals(rtRange, mzRange, msLevel, true)) {
+      consumer.accept((Frame) scans[ordinal], pasefInfos[ordinal]);
+    }
+  }
+
+  /**
+   * @return number of indexed fragment scans and PASEF MS/MS infos
+   */
+  public int size() {
+    return ordinals.length;
+  }
+}
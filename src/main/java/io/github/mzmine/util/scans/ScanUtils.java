@@ -232,11 +232,9 @@ public class ScanUtils {
     double baseMz = 0d;
     double baseIntensity = 0d;
 
-    for (int i = 0; i < scan.getNumberOfDataPoints(); i++) {
+    for (int i = indexOfFirstMz(scan, lower); i < scan.getNumberOfDataPoints(); i++) {
       double mz = scan.getMzValue(i);
-      if (mz < lower) {
-        continue;
-      } else if (mz > upper) {
+      if (mz > upper) {
         break;
       }
 
@@ -250,6 +248,29 @@ public class ScanUtils {
     return found ? new SimpleDataPoint(baseMz, baseIntensity) : null;
   }
 
+  /**
+   * Binary search for the first data point at or above an m/z. Also returns the first of multiple
+   * data points with the same m/z.
+   *
+   * @param spectrum spectrum with data points sorted by m/z
+   * @param mz       the lower m/z bound
+   * @return the index of the first data point with an m/z >= mz or the number of data points if
+   * there is none
+   */
+  public static int indexOfFirstMz(@NotNull MassSpectrum spectrum, double mz) {
+    int low = 0;
+    int high = spectrum.getNumberOfDataPoints();
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (spectrum.getMzValue(mid) < mz) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
   /**
    * @param numValues The number of values to be scanned.
    * @return The base peak or null
@@ -719,8 +740,8 @@ public class ScanUtils {
       @Nullable Range<Float> rtRange, @NotNull Range<Double> mzRange,
       @Nullable Comparator<Scan> sorter) {
 
-    final Stream<Scan> stream = dataFile.getScanNumbers(2).stream()
-        .filter(s -> matchesMS2Scan(s, rtRange, mzRange));
+    final Stream<Scan> stream = FragmentScanIndex.of(dataFile)
+        .getFragmentScans(rtRange, mzRange, 2).stream();
     return sorter == null ? stream : stream.sorted(sorter);
   }
 
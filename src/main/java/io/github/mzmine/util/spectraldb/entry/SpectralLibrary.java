@@ -54,6 +54,9 @@ public class SpectralLibrary {
   private final MemoryMapStorage storage;
   private final ObservableMap<Class<? extends DataType>, DataType> types = FXCollections.observableMap(
       new LinkedHashMap<>());
+  // precursor m/z index is built lazily and rebuilt if entries were added
+  @Nullable
+  private SpectralLibraryIndex index;
 
   public SpectralLibrary(@Nullable MemoryMapStorage storage, @NotNull File path) {
     this(storage, path.getName(), path);
@@ -85,6 +88,19 @@ public class SpectralLibrary {
     return entries.size();
   }
 
+  /**
+   * The index is built once on first access and rebuilt if the number of entries changed.
+   *
+   * @return index of all entries sorted by precursor m/z and partitioned by polarity
+   */
+  @NotNull
+  public synchronized SpectralLibraryIndex getIndex() {
+    if (index == null || index.size() != entries.size()) {
+      index = new SpectralLibraryIndex(entries);
+    }
+    return index;
+  }
+
   @Override
   public String toString() {
     return getName();
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.spectraldb.entry;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.PolarityType;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.DoublePredicate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Immutable index over the entries of a {@link SpectralLibrary}. Entries are partitioned by
+ * polarity and sorted by precursor m/z in primitive arrays so that a tolerance window is a binary
+ * search plus a short sweep. Retention time and CCS are kept as secondary keys to filter the
+ * candidate slice without touching the entry field maps. Candidates are always returned in the
+ * original library order, so matching the candidates yields the same results as a linear scan over
+ * all entries.
+ */
+public class SpectralLibraryIndex {
+
+  private static final int POSITIVE = 0;
+  private static final int NEGATIVE = 1;
+  private static final int UNDEFINED = 2;
+
+  private final @NotNull List<SpectralLibraryEntry> entries;
+  private final @NotNull Partition[] partitions;
+
+  public SpectralLibraryIndex(@NotNull List<SpectralLibraryEntry> entries) {
+    this.entries = new ArrayList<>(entries);
+    final int n = this.entries.size();
+
+    final double[] mzs = new double[n];
+    final double[] rts = new double[n];
+    final double[] ccs = new double[n];
+    final IntArrayList[] withPrecursor = new IntArrayList[3];
+    final IntArrayList[] withoutPrecursor = new IntArrayList[3];
+    for (int p = 0; p < 3; p++) {
+      withPrecursor[p] = new IntArrayList();
+      withoutPrecursor[p] = new IntArrayList();
+    }
+
+    for (int i = 0; i < n; i++) {
+      final SpectralLibraryEntry entry = this.entries.get(i);
+      final int partition = getPartition(entry.getField(DBEntryField.POLARITY).orElse(null));
+      final Double precursorMZ = entry.getPrecursorMZ();
+      rts[i] = toDouble(entry.getField(DBEntryField.RT).orElse(null));
+      ccs[i] = toDouble(entry.getField(DBEntryField.CCS).orElse(null));
+      if (precursorMZ == null) {
+        withoutPrecursor[partition].add(i);
+      } else {
+        mzs[i] = precursorMZ;
+        withPrecursor[partition].add(i);
+      }
+    }
+
+    partitions = new Partition[3];
+    for (int p = 0; p < 3; p++) {
+      partitions[p] = new Partition(withPrecursor[p].toIntArray(),
+          withoutPrecursor[p].toIntArray(), mzs, rts, ccs);
+    }
+  }
+
+  private static int getPartition(@Nullable Object polarity) {
+    final PolarityType type = polarity instanceof PolarityType pt ? pt
+        : PolarityType.parseFromString(polarity == null ? null : polarity.toString());
+    return switch (type) {
+      case POSITIVE -> POSITIVE;
+      case NEGATIVE -> NEGATIVE;
+      default -> UNDEFINED;
+    };
+  }
+
+  private static double toDouble(@Nullable Object value) {
+    return value instanceof Number number ? number.doubleValue() : Double.NaN;
+  }
+
+  /**
+   * @return index of the first value that is greater or equal to key
+   */
+  private static int lowerBound(double[] sorted, double key) {
+    int low = 0;
+    int high = sorted.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (sorted[mid] < key) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Weak polarity check: undefined scan polarities match all entries, entries without polarity
+   * match all scans.
+   */
+  private static boolean[] selectPartitions(@NotNull Collection<PolarityType> scanPolarities) {
+    final boolean[] selected = new boolean[3];
+    selected[UNDEFINED] = true;
+    if (scanPolarities.isEmpty()) {
+      selected[POSITIVE] = true;
+      selected[NEGATIVE] = true;
+    }
+    for (PolarityType polarity : scanPolarities) {
+      if (polarity == null || polarity == PolarityType.UNKNOWN) {
+        selected[POSITIVE] = true;
+        selected[NEGATIVE] = true;
+      } else if (polarity == PolarityType.POSITIVE) {
+        selected[POSITIVE] = true;
+      } else if (polarity == PolarityType.NEGATIVE) {
+        selected[NEGATIVE] = true;
+      }
+    }
+    return selected;
+  }
+
+  /**
+   * Range query on the index. All filters are pre-filters only, the final checks need to be done
+   * by the caller.
+   *
+   * @param scanPolarities   polarities of the query scans. Entries of other polarities are skipped.
+   *                         Empty to include entries of all polarities
+   * @param precursorMzRange window of library precursor m/z or null to include all entries (also
+   *                         those without precursor m/z)
+   * @param rtFilter         secondary filter on the entry retention time. Receives NaN if an entry
+   *                         has no retention time. null to skip the filter
+   * @param ccsFilter        secondary filter on the entry CCS. Receives NaN if an entry has no CCS.
+   *                         null to skip the filter
+   * @return the candidates in the original library order
+   */
+  @NotNull
+  public List<SpectralLibraryEntry> getCandidates(@NotNull Collection<PolarityType> scanPolarities,
+      @Nullable Range<Double> precursorMzRange, @Nullable DoublePredicate rtFilter,
+      @Nullable DoublePredicate ccsFilter) {
+    final boolean[] selected = selectPartitions(scanPolarities);
+    final IntArrayList candidates = new IntArrayList();
+    for (int p = 0; p < partitions.length; p++) {
+      if (selected[p]) {
+        partitions[p].collect(candidates, precursorMzRange, rtFilter, ccsFilter);
+      }
+    }
+
+    // restore library order
+    final int[] sorted = candidates.elements();
+    IntArrays.quickSort(sorted, 0, candidates.size());
+    final List<SpectralLibraryEntry> result = new ArrayList<>(candidates.size());
+    for (int i = 0; i < candidates.size(); i++) {
+      result.add(entries.get(sorted[i]));
+    }
+    return result;
+  }
+
+  /**
+   * @return number of indexed entries
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Entries of one polarity, sorted by precursor m/z. Secondary keys are stored in the same order.
+   */
+  private static class Partition {
+
+    private final int[] sortedIndices;
+    private final double[] sortedMzs;
+    private final double[] sortedRts;
+    private final double[] sortedCcs;
+    // entries without precursor m/z in library order
+    private final int[] noPrecursorIndices;
+    private final double[] noPrecursorRts;
+    private final double[] noPrecursorCcs;
+
+    private Partition(int[] indices, int[] noPrecursorIndices, double[] mzs, double[] rts,
+        double[] ccs) {
+      IntArrays.quickSort(indices, (a, b) -> Double.compare(mzs[a], mzs[b]));
+      sortedIndices = indices;
+      sortedMzs = new double[indices.length];
+      sortedRts = new double[indices.length];
+      sortedCcs = new double[indices.length];
+      for (int i = 0; i < indices.length; i++) {
+        sortedMzs[i] = mzs[indices[i]];
+        sortedRts[i] = rts[indices[i]];
+        sortedCcs[i] = ccs[indices[i]];
+      }
+
+      this.noPrecursorIndices = noPrecursorIndices;
+      noPrecursorRts = new double[noPrecursorIndices.length];
+      noPrecursorCcs = new double[noPrecursorIndices.length];
+      for (int i = 0; i < noPrecursorIndices.length; i++) {
+        noPrecursorRts[i] = rts[noPrecursorIndices[i]];
+        noPrecursorCcs[i] = ccs[noPrecursorIndices[i]];
+      }
+    }
+
+    private static boolean test(@Nullable DoublePredicate filter, double value) {
+      return filter == null || filter.test(value);
+    }
+
+    private void collect(IntArrayList candidates, @Nullable Range<Double> precursorMzRange,
+        @Nullable DoublePredicate rtFilter, @Nullable DoublePredicate ccsFilter) {
+      final int start =
+          precursorMzRange == null ? 0 : lowerBound(sortedMzs, precursorMzRange.lowerEndpoint());
+
+      for (int i = start; i < sortedMzs.length; i++) {
+        final double mz = sortedMzs[i];
+        if (precursorMzRange != null) {
+          if (mz > precursorMzRange.upperEndpoint()) {
+            break;
+          }
+          if (!precursorMzRange.contains(mz)) {
+            continue;
+          }
+        }
+        if (test(rtFilter, sortedRts[i]) && test(ccsFilter, sortedCcs[i])) {
+          candidates.add(sortedIndices[i]);
+        }
+      }
+
+      // entries without precursor m/z only match if there is no precursor filter
+      if (precursorMzRange == null) {
+        for (int i = 0; i < noPrecursorIndices.length; i++) {
+          if (test(rtFilter, noPrecursorRts[i]) && test(ccsFilter, noPrecursorCcs[i])) {
+            candidates.add(noPrecursorIndices[i]);
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.featuredata.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.mzmine.util.MemoryMapStorage;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class ValueCodecTest {
+
+  // sizes at and across the block boundaries of NUMPRESS_LINEAR
+  private static final int[] SIZES = {0, 1, 2, 31, 32, 33, 63, 64, 65, 100, 1000};
+
+  private static MemoryMapStorage[] storages() {
+    return new MemoryMapStorage[]{null, MemoryMapStorage.create()};
+  }
+
+  private static double[] mzs(Random rand, int size) {
+    final double[] mzs = new double[size];
+    for (int i = 0; i < size; i++) {
+      mzs[i] = 50 + rand.nextDouble() * 2000;
+    }
+    Arrays.sort(mzs);
+    return mzs;
+  }
+
+  private static double[] intensities(Random rand, int size) {
+    final double[] intensities = new double[size];
+    for (int i = 0; i < size; i++) {
+      intensities[i] = switch (i % 4) {
+        case 0 -> 0d;
+        case 1 -> rand.nextDouble();
+        default -> rand.nextDouble() * 1E6;
+      };
+    }
+    if (size > 2) {
+      intensities[size / 2] = 1E10;
+    }
+    return intensities;
+  }
+
+  /**
+   * Single values, bulk decoding of all ranges that start and end around the block boundaries and
+   * the array
+   */
+  private static void assertConsistentAccess(EncodedValues encoded) {
+    final int size = encoded.size();
+    final double[] single = new double[size];
+    for (int i = 0; i < size; i++) {
+      single[i] = encoded.get(i);
+    }
+    assertArrayEquals(single, encoded.toArray());
+    // decoded values are kept for the next access, other access orders return the same values
+    final Random rand = new Random(size);
+    for (int k = 0; k < 3 * size; k++) {
+      final int i = rand.nextInt(size);
+      assertEquals(single[i], encoded.get(i), "index " + i);
+    }
+    for (int i = size - 1; i >= 0; i--) {
+      assertEquals(single[i], encoded.get(i), "index " + i);
+    }
+
+    final int[] positions = {0, 1, 30, 31, 32, 33, 63, 64, 65, size - 1, size};
+    for (int from : positions) {
+      for (int to : positions) {
+        if (from < 0 || from > to || to > size) {
+          continue;
+        }
+        final double[] dst = new double[to - from + 5];
+        Arrays.fill(dst, -1d);
+        encoded.get(from, dst, 3, to - from);
+        for (int i = from; i < to; i++) {
+          assertEquals(single[i], dst[3 + i - from], "index " + i + " from " + from);
+        }
+        // values outside the destination range are not written
+        assertEquals(-1d, dst[2]);
+        assertEquals(-1d, dst[3 + to - from]);
+      }
+    }
+  }
+
+  @Test
+  void accessIsConsistentForAllCodecs() {
+    final Random rand = new Random(42);
+    for (MemoryMapStorage storage : storages()) {
+      for (ValueCodec codec : ValueCodec.values()) {
+        for (int size : SIZES) {
+          final double[] values = codec == ValueCodec.NUMPRESS_SLOF ? intensities(rand, size)
+              : mzs(rand, size);
+          final EncodedValues encoded = codec.encode(storage, values.clone());
+          assertEquals(codec, encoded.getCodec());
+          assertEquals(size, encoded.size());
+          assertConsistentAccess(encoded);
+          assertEquals(size, encoded.toDoubleBuffer().capacity());
+        }
+      }
+    }
+  }
+
+  @Test
+  void emptyValues() {
+    for (MemoryMapStorage storage : storages()) {
+      for (ValueCodec codec : ValueCodec.values()) {
+        final EncodedValues encoded = codec.encode(storage, new double[0]);
+        assertEquals(0, encoded.size());
+        assertEquals(0, encoded.toArray().length);
+        assertEquals(0, encoded.toDoubleBuffer().capacity());
+        assertTrue(encoded.getEncodedBytes() >= 0);
+        encoded.get(0, new double[0], 0, 0);
+      }
+    }
+  }
+
+  @Test
+  void doubleIsLossless() {
+    final Random rand = new Random(1);
+    for (MemoryMapStorage storage : storages()) {
+      final double[] values = mzs(rand, 500);
+      values[3] = Double.NaN;
+      values[4] = Double.NEGATIVE_INFINITY;
+      values[5] = -12.5;
+      final EncodedValues encoded = ValueCodec.DOUBLE.encode(storage, values.clone());
+      assertArrayEquals(values, encoded.toArray());
+      assertEquals(500L * Double.BYTES, encoded.getEncodedBytes());
+    }
+  }
+
+  @Test
+  void floatRelativeError() {
+    final Random rand = new Random(2);
+    for (MemoryMapStorage storage : storages()) {
+      final double[] values = intensities(rand, 500);
+      values[7] = -3.3;
+      final EncodedValues encoded = ValueCodec.FLOAT.encode(storage, values.clone());
+      assertEquals(500L * Float.BYTES, encoded.getEncodedBytes());
+      for (int i = 0; i < values.length; i++) {
+        assertEquals(values[i], encoded.get(i), Math.abs(values[i]) * 6E-8);
+      }
+    }
+  }
+
+  @Test
+  void linearAbsoluteError() {
+    final Random rand = new Random(3);
+    for (MemoryMapStorage storage : storages()) {
+      for (int size : SIZES) {
+        final double[] values = mzs(rand, size);
+        if (size > 3) {
+          // negative values and unsorted values are supported
+          values[1] = -values[1];
+          values[2] = 0d;
+        }
+        final double max = Arrays.stream(values).map(Math::abs).max().orElse(0d);
+        final EncodedValues encoded = ValueCodec.NUMPRESS_LINEAR.encode(storage, values.clone());
+        assertEquals(ValueCodec.NUMPRESS_LINEAR, encoded.getCodec());
+        for (int i = 0; i < size; i++) {
+          assertEquals(values[i], encoded.get(i), max * 2.4E-10);
+        }
+        if (size == 1000) {
+          // smaller than doubles for sorted m/z values
+          assertTrue(encoded.getEncodedBytes() < 1000L * Double.BYTES);
+        }
+      }
+    }
+  }
+
+  @Test
+  void slofError() {
+    final Random rand = new Random(4);
+    for (MemoryMapStorage storage : storages()) {
+      for (int size : SIZES) {
+        final double[] values = intensities(rand, size);
+        final EncodedValues encoded = ValueCodec.NUMPRESS_SLOF.encode(storage, values.clone());
+        assertEquals(ValueCodec.NUMPRESS_SLOF, encoded.getCodec());
+        assertEquals((long) size * Character.BYTES, encoded.getEncodedBytes());
+        for (int i = 0; i < size; i++) {
+          if (values[i] >= 1d) {
+            assertEquals(values[i], encoded.get(i), values[i] * 5E-4);
+          } else {
+            assertEquals(values[i], encoded.get(i), 4E-4);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void slofDecodesZeroExactly() {
+    for (MemoryMapStorage storage : storages()) {
+      final EncodedValues encoded = ValueCodec.NUMPRESS_SLOF.encode(storage,
+          new double[]{0d, 5d, 0d});
+      assertEquals(0d, encoded.get(0));
+      assertEquals(0d, encoded.get(2));
+    }
+  }
+
+  @Test
+  void nonFiniteValuesFallBack() {
+    final double[][] inputs = {{1d, Double.NaN, 3d}, {1d, Double.POSITIVE_INFINITY, 3d},
+        {1d, Double.NEGATIVE_INFINITY, 3d}};
+    for (MemoryMapStorage storage : storages()) {
+      for (double[] values : inputs) {
+        final EncodedValues linear = ValueCodec.NUMPRESS_LINEAR.encode(storage, values.clone());
+        assertEquals(ValueCodec.DOUBLE, linear.getCodec());
+        assertArrayEquals(values, linear.toArray());
+
+        final EncodedValues slof = ValueCodec.NUMPRESS_SLOF.encode(storage, values.clone());
+        assertEquals(ValueCodec.FLOAT, slof.getCodec());
+        assertFloatValues(values, slof);
+        assertConsistentAccess(slof);
+      }
+    }
+  }
+
+  @Test
+  void negativeSlofValuesFallBackToFloat() {
+    for (MemoryMapStorage storage : storages()) {
+      final double[] values = {5d, -0.5d, 100d, -1E6};
+      final EncodedValues slof = ValueCodec.NUMPRESS_SLOF.encode(storage, values.clone());
+      assertEquals(ValueCodec.FLOAT, slof.getCodec());
+      assertFloatValues(values, slof);
+    }
+  }
+
+  @Test
+  void heapValuesMatchStoredValues() {
+    final Random rand = new Random(5);
+    final double[] mzs = mzs(rand, 777);
+    final double[] intensities = intensities(rand, 777);
+    final MemoryMapStorage storage = MemoryMapStorage.create();
+    for (ValueCodec codec : ValueCodec.values()) {
+      final double[] values = codec == ValueCodec.NUMPRESS_SLOF ? intensities : mzs;
+      assertArrayEquals(codec.encode(null, values.clone()).toArray(),
+          codec.encode(storage, values.clone()).toArray());
+    }
+  }
+
+  private static void assertFloatValues(double[] expected, EncodedValues encoded) {
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals((float) expected[i], encoded.get(i));
+    }
+  }
+}
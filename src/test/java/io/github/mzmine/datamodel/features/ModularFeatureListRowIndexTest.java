@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.features;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.features.types.numbers.IDType;
+import io.github.mzmine.datamodel.features.types.numbers.MZType;
+import io.github.mzmine.datamodel.features.types.numbers.MobilityType;
+import io.github.mzmine.datamodel.features.types.numbers.RTType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The row indices of the {@link ModularFeatureList} must return the same rows as the linear
+ * filters they replaced, and must follow changes of the rows.
+ */
+class ModularFeatureListRowIndexTest {
+
+  private final ModularFeatureList flist = new ModularFeatureList("flist", null);
+
+  /**
+   * Rows sorted by RT, as required by the old linear filter. Every 10th row has no RT and every
+   * 3rd row has a mobility.
+   */
+  private List<ModularFeatureListRow> addRows(int numRows, long seed) {
+    final Random rand = new Random(seed);
+    final List<ModularFeatureListRow> rows = new ArrayList<>();
+    for (int i = 0; i < numRows; i++) {
+      final ModularFeatureListRow row = new ModularFeatureListRow(flist, i + 1);
+      row.set(MZType.class, 100 + rand.nextInt(4000) * 0.25);
+      if (i % 10 != 0) {
+        row.set(RTType.class, i * 0.01f);
+      }
+      if (i % 3 == 0) {
+        row.set(MobilityType.class, 0.5f + rand.nextInt(100) * 0.01f);
+      }
+      flist.addRow(row);
+      rows.add(row);
+    }
+    return rows;
+  }
+
+  /**
+   * The linear filter before the grid index. The grid is not limited to rows sorted by RT.
+   */
+  private List<FeatureListRow> linearFilter(Range<Double> mzRange, Range<Float> rtRange) {
+    List<FeatureListRow> rows = new ArrayList<>();
+    for (var row : flist.getRows()) {
+      Float rt = row.getAverageRT();
+      // rows without RT match all RT ranges but now also need to be within the m/z range
+      if ((rt == null || rtRange.contains(rt)) && mzRange.contains(row.getAverageMZ())) {
+        rows.add(row);
+      }
+    }
+    return rows;
+  }
+
+  private List<FeatureListRow> linearFilter(Range<Double> mzRange, Range<Float> rtRange,
+      Range<Float> mobilityRange) {
+    return linearFilter(mzRange, rtRange).stream().filter(row -> {
+      final Float mobility = row.getAverageMobility();
+      return mobility == null || mobilityRange.contains(mobility);
+    }).toList();
+  }
+
+  private void assertSameRows(Range<Double> mzRange, Range<Float> rtRange) {
+    final List<FeatureListRow> expected = linearFilter(mzRange, rtRange);
+    assertEquals(expected, flist.getRowsInsideScanAndMZRange(rtRange, mzRange),
+        mzRange + " " + rtRange);
+    assertEquals(linearFilter(mzRange, Range.all()), flist.getRowsInsideMZRange(mzRange));
+    assertEquals(linearFilter(Range.all(), rtRange), flist.getRowsInsideScanRange(rtRange));
+  }
+
+  @Test
+  void rangesMatchLinearFilter() {
+    addRows(2000, 1);
+    for (double mz = 90; mz < 1120; mz += 7.3) {
+      for (float rt = -1f; rt < 21f; rt += 1.7f) {
+        assertSameRows(Range.closed(mz, mz + 5), Range.closed(rt, rt + 0.5f));
+        // single m/z values on the 0.25 spacing of the row m/z values
+        assertSameRows(Range.closed(100 + Math.round(mz) * 0.25, 100 + Math.round(mz) * 0.25),
+            Range.open(rt, rt + 0.05f));
+        assertSameRows(Range.closedOpen(mz, mz + 20), Range.atLeast(rt));
+      }
+    }
+    assertSameRows(Range.all(), Range.all());
+    assertEquals(flist.getRows(), flist.getRowsInsideScanAndMZRange(Range.all(), Range.all()));
+  }
+
+  @Test
+  void mobilityRangesMatchLinearFilter() {
+    addRows(1000, 2);
+    for (float mobility = 0.4f; mobility < 1.6f; mobility += 0.07f) {
+      final Range<Float> mobilityRange = Range.closed(mobility, mobility + 0.1f);
+      final Range<Double> mzRange = Range.closed(200d, 700d);
+      final Range<Float> rtRange = Range.closed(1f, 8f);
+      assertEquals(linearFilter(mzRange, rtRange, mobilityRange),
+          flist.getRowsInsideRanges(mzRange, rtRange, mobilityRange));
+    }
+  }
+
+  @Test
+  void rowsWithoutRtMatchAllRtRangesWithinTheMzRange() {
+    final List<ModularFeatureListRow> rows = addRows(100, 3);
+    final ModularFeatureListRow noRt = rows.get(0);
+    assertNull(noRt.getAverageRT());
+    final double mz = noRt.getAverageMZ();
+
+    assertTrue(flist.getRowsInsideScanAndMZRange(Range.closed(1000f, 1001f),
+        Range.closed(mz, mz)).contains(noRt));
+    // the old linear filter also returned rows without RT outside of the m/z range
+    assertFalse(flist.getRowsInsideScanAndMZRange(Range.closed(1000f, 1001f),
+        Range.closed(mz + 1, mz + 2)).contains(noRt));
+  }
+
+  @Test
+  void rangesFollowChangedRows() {
+    final List<ModularFeatureListRow> rows = addRows(500, 4);
+    final Range<Double> mzRange = Range.closed(300d, 600d);
+    final Range<Float> rtRange = Range.closed(1f, 3f);
+    assertSameRows(mzRange, rtRange);
+
+    rows.get(5).set(RTType.class, 2f);
+    rows.get(6).set(MZType.class, 450d);
+    rows.get(150).set(RTType.class, 50f);
+    assertSameRows(mzRange, rtRange);
+
+    addRows(50, 5);
+    assertSameRows(mzRange, rtRange);
+
+    flist.removeRow(rows.get(200));
+    assertSameRows(mzRange, rtRange);
+  }
+
+  @Test
+  void findRowByIdMatchesLinearSearch() {
+    final List<ModularFeatureListRow> rows = addRows(500, 6);
+    // duplicate ID, the first row is returned
+    final ModularFeatureListRow duplicate = new ModularFeatureListRow(flist, 10);
+    duplicate.set(MZType.class, 500d);
+    flist.addRow(duplicate);
+
+    for (int id = -1; id <= 502; id++) {
+      final int finalId = id;
+      final FeatureListRow expected = flist.getRows().stream().filter(r -> r.getID() == finalId)
+          .findFirst().orElse(null);
+      assertSame(expected, flist.findRowByID(id), "id " + id);
+    }
+    assertSame(rows.get(9), flist.findRowByID(10));
+
+    // changed IDs and removed rows
+    rows.get(20).set(IDType.class, 1000);
+    flist.removeRow(rows.get(30));
+    assertSame(rows.get(20), flist.findRowByID(1000));
+    assertNull(flist.findRowByID(21));
+    assertNull(flist.findRowByID(31));
+  }
+}
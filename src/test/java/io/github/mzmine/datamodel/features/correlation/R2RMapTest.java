@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.features.correlation;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Undirected edges of the {@link R2RMap} and their adjacency lists.
+ */
+class R2RMapTest {
+
+  private final ModularFeatureList flist = new ModularFeatureList("flist", null);
+
+  private FeatureListRow row(int id) {
+    return new ModularFeatureListRow(flist, id);
+  }
+
+  @Test
+  void keyIsSymmetric() {
+    final int[] ids = {0, 1, 2, 17, 65535, 65536, 1_000_000, Integer.MAX_VALUE};
+    final Set<Long> keys = new HashSet<>();
+    for (int a : ids) {
+      for (int b : ids) {
+        assertEquals(R2RMap.toKey(a, b), R2RMap.toKey(b, a));
+        if (a <= b) {
+          // unique for each pair, also for large IDs
+          assertTrue(keys.add(R2RMap.toKey(a, b)), a + "-" + b);
+        }
+      }
+    }
+    assertEquals(R2RMap.toKey(row(3), row(8)), R2RMap.toKey(row(8), row(3)));
+    assertNotEquals(R2RMap.toKey(3, 8), R2RMap.toKey(3, 9));
+  }
+
+  @Test
+  void putAndGetInAnyOrder() {
+    final R2RMap<String> map = new R2RMap<>();
+    final FeatureListRow a = row(5);
+    final FeatureListRow b = row(12);
+    assertNull(map.put(a, b, "ab"));
+    assertEquals("ab", map.get(a, b));
+    assertEquals("ab", map.get(b, a));
+    assertEquals("ab", map.get(12, 5));
+
+    // same pair in the other order replaces the value
+    assertEquals("ab", map.put(b, a, "ba"));
+    assertEquals("ba", map.get(a, b));
+    assertEquals(1, map.size());
+    assertArrayEquals(new int[]{12}, map.getNeighbourIDs(5));
+    assertArrayEquals(new int[]{5}, map.getNeighbourIDs(12));
+
+    map.add(a, a, "aa");
+    assertEquals("aa", map.get(a, a));
+    assertArrayEquals(new int[]{12, 5}, map.getNeighbourIDs(5));
+    assertEquals(List.of("ba", "aa"), map.getAll(a));
+    assertNull(map.get(5, 13));
+  }
+
+  @Test
+  void remove() {
+    final R2RMap<String> map = new R2RMap<>();
+    map.put(1, 2, "12");
+    map.put(1, 3, "13");
+    map.put(2, 3, "23");
+    map.put(4, 4, "44");
+
+    assertEquals("12", map.remove(row(2), row(1)));
+    assertNull(map.get(1, 2));
+    assertNull(map.remove(1, 2));
+    assertEquals(3, map.size());
+    assertArrayEquals(new int[]{3}, map.getNeighbourIDs(1));
+    assertArrayEquals(new int[]{3}, map.getNeighbourIDs(2));
+    assertArrayEquals(new int[]{1, 2}, map.getNeighbourIDs(3));
+
+    assertEquals("44", map.remove(4, 4));
+    assertArrayEquals(new int[0], map.getNeighbourIDs(4));
+    assertEquals(Set.of("13", "23"), new HashSet<>(map.values()));
+
+    // added again after the removal
+    map.put(2, 1, "21");
+    assertEquals("21", map.get(1, 2));
+    assertArrayEquals(new int[]{3, 2}, map.getNeighbourIDs(1));
+  }
+
+  @Test
+  void putAll() {
+    final R2RMap<String> first = new R2RMap<>();
+    first.put(1, 2, "12");
+    first.put(2, 3, "23");
+    final R2RMap<String> second = new R2RMap<>();
+    second.put(3, 2, "32");
+    second.put(3, 4, "34");
+    second.put(100_000, 1, "big");
+
+    first.putAll(second);
+    assertEquals(4, first.size());
+    assertEquals("12", first.get(2, 1));
+    assertEquals("32", first.get(2, 3));
+    assertEquals("34", first.get(4, 3));
+    assertEquals("big", first.get(1, 100_000));
+    // replaced edges are not added twice to the adjacency lists
+    assertArrayEquals(new int[]{1, 3}, first.getNeighbourIDs(2));
+    assertArrayEquals(new int[]{2, 4}, first.getNeighbourIDs(3));
+    assertArrayEquals(new int[]{2, 100_000}, first.getNeighbourIDs(1));
+    // the source is not changed
+    assertEquals(3, second.size());
+  }
+
+  @Test
+  void adjacencyMatchesAllEdges() {
+    final Random rand = new Random(42);
+    final R2RMap<Integer> map = new R2RMap<>();
+    final Map<Long, Integer> expectedEdges = new HashMap<>();
+    final Map<Integer, Set<Integer>> expectedNeighbours = new HashMap<>();
+    for (int i = 0; i < 5000; i++) {
+      final int a = rand.nextInt(300);
+      final int b = rand.nextInt(300);
+      map.put(a, b, i);
+      expectedEdges.put(R2RMap.toKey(a, b), i);
+      expectedNeighbours.computeIfAbsent(a, k -> new LinkedHashSet<>()).add(b);
+      expectedNeighbours.computeIfAbsent(b, k -> new LinkedHashSet<>()).add(a);
+    }
+    assertEquals(expectedEdges.size(), map.size());
+    assertEquals(new HashSet<>(expectedEdges.values()), new HashSet<>(map.values()));
+
+    for (int id = 0; id < 300; id++) {
+      final Set<Integer> neighbours = expectedNeighbours.getOrDefault(id, Set.of());
+      // insertion order of the first edge of each neighbour
+      assertArrayEquals(neighbours.stream().mapToInt(Integer::intValue).toArray(),
+          map.getNeighbourIDs(id), "row " + id);
+
+      final List<Integer> expectedValues = new ArrayList<>();
+      for (int neighbour : neighbours) {
+        expectedValues.add(expectedEdges.get(R2RMap.toKey(id, neighbour)));
+      }
+      assertEquals(expectedValues, map.getAll(row(id)));
+    }
+  }
+
+  @Test
+  void concurrentAdd() throws Exception {
+    final int threads = 8;
+    final int rows = 500;
+    final R2RMap<String> map = new R2RMap<>();
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        final int thread = t;
+        // overlapping edges of all threads in both directions
+        futures.add(executor.submit(() -> {
+          for (int a = 0; a < rows; a++) {
+            for (int b = a; b < rows; b += 7) {
+              if (thread % 2 == 0) {
+                map.put(a, b, a + "-" + b);
+              } else {
+                map.add(row(b), row(a), a + "-" + b);
+              }
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    }
+
+    final Map<Integer, Set<Integer>> expectedNeighbours = new LinkedHashMap<>();
+    int edges = 0;
+    for (int a = 0; a < rows; a++) {
+      for (int b = a; b < rows; b += 7) {
+        assertEquals(a + "-" + b, map.get(b, a));
+        expectedNeighbours.computeIfAbsent(a, k -> new HashSet<>()).add(b);
+        expectedNeighbours.computeIfAbsent(b, k -> new HashSet<>()).add(a);
+        edges++;
+      }
+    }
+    assertEquals(edges, map.size());
+    for (var entry : expectedNeighbours.entrySet()) {
+      final int[] neighbours = map.getNeighbourIDs(entry.getKey());
+      // every neighbour exactly once
+      assertEquals(entry.getValue().size(), neighbours.length, "row " + entry.getKey());
+      assertEquals(entry.getValue(),
+          new HashSet<>(Arrays.stream(neighbours).boxed().toList()));
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeMap;
+import com.google.common.collect.TreeRangeMap;
+import io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder.ADAPChromatogramColumns.ChromatogramData;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the primitive chromatogram builder with the range map based implementation on a
+ * synthetic file.
+ */
+class ADAPChromatogramColumnsTest {
+
+  private static final int SCANS = 200;
+  private static final MZTolerance MZ_TOL = new MZTolerance(0.002, 10);
+  private static final double MIN_HEIGHT = 50;
+
+  private final List<double[]> points = new ArrayList<>();
+  private final ADAPChromatogramColumns columns;
+
+  ADAPChromatogramColumnsTest() {
+    final Random rand = new Random(1);
+    // traces with some noise and random signals in between
+    final double[] traceMzs = new double[300];
+    for (int i = 0; i < traceMzs.length; i++) {
+      traceMzs[i] = 100 + rand.nextDouble() * 50;
+    }
+    for (int scan = 0; scan < SCANS; scan++) {
+      List<double[]> scanPoints = new ArrayList<>();
+      for (double mz : traceMzs) {
+        if (rand.nextDouble() < 0.8) {
+          scanPoints.add(new double[]{mz + (rand.nextDouble() - 0.5) * 0.003,
+              rand.nextInt(1000) * (1 + Math.sin(scan / 10d)), scan});
+        }
+      }
+      for (int i = 0; i < 200; i++) {
+        scanPoints.add(new double[]{100 + rand.nextDouble() * 50, rand.nextInt(100), scan});
+      }
+      scanPoints.sort(Comparator.comparingDouble(dp -> dp[0]));
+      points.addAll(scanPoints);
+    }
+
+    columns = new ADAPChromatogramColumns(points.size(), MZ_TOL, MIN_HEIGHT);
+    for (double[] dp : points) {
+      columns.add((int) dp[2], dp[0], dp[1]);
+    }
+    columns.build(() -> false);
+  }
+
+  /**
+   * Same logic as the previous implementation with a TreeRangeMap of ADAPChromatograms
+   */
+  private List<TreeMap<Integer, double[]>> buildWithRangeMap() {
+    List<double[]> sorted = new ArrayList<>(points);
+    sorted.sort((a, b) -> {
+      int result = Double.compare(b[1], a[1]);
+      return result != 0 ? result : Double.compare(b[0], a[0]);
+    });
+
+    RangeMap<Double, TreeMap<Integer, double[]>> rangeMap = TreeRangeMap.create();
+    for (double[] dp : sorted) {
+      var existing = rangeMap.getEntry(dp[0]);
+      if (existing != null) {
+        existing.getValue().putIfAbsent((int) dp[2], dp);
+        continue;
+      }
+      if (dp[1] < MIN_HEIGHT) {
+        continue;
+      }
+      Range<Double> tolRange = MZ_TOL.getToleranceRange(dp[0]);
+      Entry<Range<Double>, TreeMap<Integer, double[]>> minus = rangeMap.getEntry(
+          tolRange.lowerEndpoint());
+      Entry<Range<Double>, TreeMap<Integer, double[]>> plus = rangeMap.getEntry(
+          tolRange.upperEndpoint());
+      Double lower = minus == null ? tolRange.lowerEndpoint() : minus.getKey().upperEndpoint();
+      Double upper = plus == null ? tolRange.upperEndpoint() : plus.getKey().lowerEndpoint();
+      if (lower < upper) {
+        TreeMap<Integer, double[]> chrom = new TreeMap<>();
+        chrom.put((int) dp[2], dp);
+        rangeMap.put(Range.closedOpen(lower, upper), chrom);
+      } else if (lower.equals(upper) && plus != null) {
+        plus.getValue().putIfAbsent((int) dp[2], dp);
+      }
+    }
+    return new ArrayList<>(rangeMap.asMapOfRanges().values());
+  }
+
+  @Test
+  void sameChromatogramsAsRangeMap() {
+    List<TreeMap<Integer, double[]>> expected = buildWithRangeMap();
+    int[] chromatograms = columns.getChromatogramsByMz();
+    assertEquals(expected.size(), chromatograms.length);
+
+    for (int c = 0; c < chromatograms.length; c++) {
+      TreeMap<Integer, double[]> exp = expected.get(c);
+      int chrom = chromatograms[c];
+      assertEquals(exp.size(), columns.getNumberOfDataPoints(chrom));
+
+      ChromatogramData data = columns.getDataWithZeros(chrom, SCANS);
+      int detected = 0;
+      for (int i = 0; i < data.scanIndices().length; i++) {
+        double[] dp = exp.get(data.scanIndices()[i]);
+        if (dp == null) {
+          // zeros only next to detected data points
+          assertEquals(0d, data.intensities()[i]);
+          int scan = data.scanIndices()[i];
+          assert exp.containsKey(scan - 1) || exp.containsKey(scan + 1);
+        } else {
+          detected++;
+          assertEquals(dp[0], data.mzs()[i]);
+          assertEquals(dp[1], data.intensities()[i]);
+        }
+      }
+      assertEquals(exp.size(), detected);
+    }
+  }
+
+  @Test
+  void zerosOnEdges() {
+    ADAPChromatogramColumns single = new ADAPChromatogramColumns(5, MZ_TOL, 0);
+    single.add(1, 200, 10);
+    single.add(2, 200, 20);
+    single.add(5, 200, 10);
+    single.add(8, 200, 10);
+    single.add(9, 200, 10);
+    single.build(() -> false);
+    int chrom = single.getChromatogramsByMz()[0];
+    ChromatogramData data = single.getDataWithZeros(chrom, 10);
+    assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, data.scanIndices());
+    assertArrayEquals(new double[]{0, 10, 20, 0, 0, 10, 0, 0, 10, 10}, data.intensities());
+    assert single.matchesMinContinuousDataPoints(chrom, 5, 2, 15);
+    assert !single.matchesMinContinuousDataPoints(chrom, 5, 3, 0);
+  }
+}
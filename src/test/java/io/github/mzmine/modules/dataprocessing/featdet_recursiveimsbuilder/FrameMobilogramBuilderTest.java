@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_recursiveimsbuilder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeMap;
+import com.google.common.collect.TreeRangeMap;
+import io.github.mzmine.datamodel.Frame;
+import io.github.mzmine.datamodel.IMSRawDataFile;
+import io.github.mzmine.datamodel.MassList;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.MobilityScan;
+import io.github.mzmine.datamodel.MobilityType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.impl.BuildingMobilityScan;
+import io.github.mzmine.datamodel.impl.SimpleFrame;
+import io.github.mzmine.modules.dataprocessing.featdet_ionmobilitytracebuilder.RetentionTimeMobilityDataPoint;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.project.impl.IMSRawDataFileImpl;
+import io.github.mzmine.util.scans.SpectraMerging;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The {@link FrameMobilogramBuilder} must build the same mobilograms as the grouping with
+ * {@link TempMobilogram}s in a range map that the {@link RecursiveIMSBuilderTask} used before.
+ */
+class FrameMobilogramBuilderTest {
+
+  private static final MZTolerance TOLERANCE = new MZTolerance(0.005, 15);
+  private static final int NUM_MOBILITY_SCANS = 40;
+
+  private static double gauss(double x, double apex, double sigma, double height) {
+    return height * Math.exp(-0.5 * Math.pow((x - apex) / sigma, 2));
+  }
+
+  /**
+   * Frames with ions that have a mobility profile and an m/z jitter, ions close enough to overlap
+   * in their tolerance ranges, equal intensities and random noise.
+   */
+  private static List<Frame> createFrames(IMSRawDataFile file, long seed) throws IOException {
+    final Random rand = new Random(seed);
+    final double[] mobilities = new double[NUM_MOBILITY_SCANS];
+    for (int j = 0; j < mobilities.length; j++) {
+      mobilities[j] = 1.5 - 0.02 * j;
+    }
+    final double[] ionMzs = new double[60];
+    for (int ion = 0; ion < ionMzs.length; ion++) {
+      // every 5th ion overlaps with the previous ion
+      ionMzs[ion] =
+          ion % 5 == 0 && ion > 0 ? ionMzs[ion - 1] + 0.004 : 150 + rand.nextInt(8000) * 0.1;
+    }
+
+    final List<Frame> frames = new ArrayList<>();
+    for (int f = 0; f < 10; f++) {
+      final List<BuildingMobilityScan> mobilityScans = new ArrayList<>();
+      for (int j = 0; j < NUM_MOBILITY_SCANS; j++) {
+        final List<double[]> dataPoints = new ArrayList<>();
+        for (int ion = 0; ion < ionMzs.length; ion++) {
+          final double intensity = gauss(j, (ion * 7) % NUM_MOBILITY_SCANS, 3, 1E4 * (ion + 1));
+          if (intensity > 10) {
+            final double mz = ionMzs[ion] + (rand.nextDouble() - 0.5) * 0.004;
+            // equal intensities for ties in the intensity order
+            dataPoints.add(new double[]{mz, ion % 10 == 3 ? 500d : intensity});
+          }
+        }
+        for (int noise = 0; noise < 30; noise++) {
+          dataPoints.add(new double[]{150 + rand.nextDouble() * 800, 1 + rand.nextInt(50)});
+        }
+        dataPoints.sort(Comparator.comparingDouble(dp -> dp[0]));
+        mobilityScans.add(new BuildingMobilityScan(j,
+            dataPoints.stream().mapToDouble(dp -> dp[0]).toArray(),
+            dataPoints.stream().mapToDouble(dp -> dp[1]).toArray()));
+      }
+      final SimpleFrame frame = new SimpleFrame(file, f + 1, 1, f * 0.05f, new double[]{500d},
+          new double[]{1E5}, MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "",
+          Range.closed(100d, 1000d), MobilityType.TIMS, null, null);
+      frame.setMobilities(mobilities);
+      frame.setMobilityScans(mobilityScans, true);
+      file.addScan(frame);
+      frames.add(frame);
+    }
+    return frames;
+  }
+
+  private static TreeSet<RetentionTimeMobilityDataPoint> createIntensitySortedSet() {
+    return new TreeSet<>((o1, o2) -> {
+      if (o1.getIntensity() > o2.getIntensity()) {
+        return -1;
+      }
+      return 1;
+    });
+  }
+
+  /**
+   * The grouping of the {@link RecursiveIMSBuilderTask} before the {@link FrameMobilogramBuilder}
+   */
+  private static List<BuildingIonMobilitySeries> buildReferenceMobilograms(Frame frame,
+      int recursiveThreshold) {
+    final TreeSet<RetentionTimeMobilityDataPoint> dps = createIntensitySortedSet();
+    for (MobilityScan scan : frame.getMobilityScans()) {
+      final MassList massList = scan.getMassList();
+      for (int i = 0; i < massList.getNumberOfDataPoints(); i++) {
+        dps.add(new RetentionTimeMobilityDataPoint(scan, massList.getMzValue(i),
+            massList.getIntensityValue(i)));
+      }
+    }
+    return calcMobilograms(dps, recursiveThreshold).stream()
+        .map(mobilogram -> mobilogram.toBuildingSeries(null)).toList();
+  }
+
+  private static Set<TempMobilogram> calcMobilograms(
+      Collection<RetentionTimeMobilityDataPoint> dps, int recursiveThreshold) {
+    final RangeMap<Double, TempMobilogram> map = TreeRangeMap.create();
+    final Set<RetentionTimeMobilityDataPoint> leftoverDataPoints = createIntensitySortedSet();
+
+    for (final var dp : dps) {
+      TempMobilogram mobilogram = map.get(dp.getMZ());
+      if (mobilogram == null) {
+        final Range<Double> proposed = TOLERANCE.getToleranceRange(dp.getMZ());
+        final Range<Double> actual = SpectraMerging.createNewNonOverlappingRange(map, proposed);
+        if (proposed.equals(actual)) {
+          mobilogram = new TempMobilogram();
+          map.put(actual, mobilogram);
+        } else {
+          leftoverDataPoints.add(dp);
+          continue;
+        }
+      }
+      final RetentionTimeMobilityDataPoint previousDp = mobilogram.keepBetterFittingDataPoint(dp);
+      if (previousDp != null) {
+        leftoverDataPoints.add(previousDp);
+      }
+    }
+
+    final Set<TempMobilogram> mobilograms = new HashSet<>(map.asMapOfRanges().values());
+    if (leftoverDataPoints.size() > recursiveThreshold) {
+      mobilograms.addAll(calcMobilograms(leftoverDataPoints, recursiveThreshold));
+    }
+    return mobilograms;
+  }
+
+  /**
+   * @return the data points of each mobilogram, the order of the mobilograms is not defined
+   */
+  private static List<String> toSortedStrings(List<BuildingIonMobilitySeries> mobilograms) {
+    final List<String> result = new ArrayList<>();
+    for (BuildingIonMobilitySeries mobilogram : mobilograms) {
+      final StringBuilder b = new StringBuilder();
+      for (int i = 0; i < mobilogram.getNumberOfValues(); i++) {
+        b.append(mobilogram.getSpectrum(i).getMobilityScanNumber()).append(':')
+            .append(mobilogram.getMZ(i)).append(':').append(mobilogram.getIntensity(i))
+            .append(' ');
+      }
+      result.add(b.toString());
+    }
+    result.sort(null);
+    return result;
+  }
+
+  private static void assertSameMobilograms(int recursiveThreshold) throws IOException {
+    final IMSRawDataFile file = new IMSRawDataFileImpl("file", null, null, Color.BLACK);
+    for (Frame frame : createFrames(file, recursiveThreshold)) {
+      final List<BuildingIonMobilitySeries> expected = buildReferenceMobilograms(frame,
+          recursiveThreshold);
+      final List<BuildingIonMobilitySeries> actual = new FrameMobilogramBuilder(TOLERANCE,
+          recursiveThreshold).buildMobilograms(frame, null, null);
+      assertFalse(actual.isEmpty());
+      assertEquals(toSortedStrings(expected), toSortedStrings(actual),
+          "frame " + frame.getFrameId());
+
+      for (BuildingIonMobilitySeries mobilogram : actual) {
+        final int[] scanNumbers = mobilogram.getSpectra().stream()
+            .mapToInt(MobilityScan::getMobilityScanNumber).toArray();
+        final int[] sorted = scanNumbers.clone();
+        Arrays.sort(sorted);
+        assertTrue(Arrays.equals(sorted, scanNumbers), "mobilogram not sorted by mobility scan");
+        assertEquals(Arrays.stream(scanNumbers).distinct().count(), scanNumbers.length);
+      }
+    }
+  }
+
+  @Test
+  void sameMobilogramsWithRecursion() throws IOException {
+    assertSameMobilograms(5);
+  }
+
+  @Test
+  void sameMobilogramsWithDefaultThreshold() throws IOException {
+    assertSameMobilograms(50);
+  }
+
+  @Test
+  void sameMobilogramsWithoutRecursion() throws IOException {
+    assertSameMobilograms(Integer.MAX_VALUE);
+  }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.multithreaded;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.Frame;
+import io.github.mzmine.datamodel.IMSRawDataFile;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.MobilityType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.data_access.BinningMobilogramDataAccess;
+import io.github.mzmine.datamodel.data_access.EfficientDataAccess.MobilityScanDataType;
+import io.github.mzmine.datamodel.data_access.MobilityScanDataAccess;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.impl.BuildingMobilityScan;
+import io.github.mzmine.datamodel.impl.SimpleFrame;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.Gap;
+import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.GapDataPoint;
+import io.github.mzmine.project.impl.IMSRawDataFileImpl;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The sweep over the retention time must offer every gap the same scans that change its state as
+ * offering all scans to all gaps.
+ */
+class ActiveGapsTest {
+
+  private static final double INT_TOLERANCE = 0.2;
+
+  private static double gauss(double rt, double apex, double sigma, double height) {
+    return height * Math.exp(-0.5 * Math.pow((rt - apex) / sigma, 2));
+  }
+
+  private static List<Scan> createScans(RawDataFile file) throws IOException {
+    final List<Scan> scans = new ArrayList<>();
+    for (int i = 0; i < 80; i++) {
+      final float rt = i * 0.05f;
+      final double[] mzs = {150d, 250d, 350d, 450d};
+      final double[] intensities = {10 + gauss(rt, 1d, 0.15, 1E5),
+          10 + gauss(rt, 0.8, 0.2, 5E4) + gauss(rt, 2.5, 0.1, 8E4),
+          10 + gauss(rt, 3d, 0.3, 2E4), 100 + 50 * Math.sin(i)};
+      final Scan scan = new SimpleScan(file, i + 1, 1, rt, null, mzs, intensities,
+          MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "", Range.closed(100d, 600d));
+      file.addScan(scan);
+      scans.add(scan);
+    }
+    return scans;
+  }
+
+  private static List<Gap> createGaps(RawDataFile file) {
+    final List<Gap> gaps = new ArrayList<>();
+    gaps.add(new RecordingGap(file, 150d, Range.closed(0.8f, 1.2f)));
+    gaps.add(new RecordingGap(file, 150d, Range.closed(0.9f, 1f)));
+    gaps.add(new RecordingGap(file, 250d, Range.closed(0.5f, 3f)));
+    gaps.add(new RecordingGap(file, 250d, Range.closed(2.4f, 2.6f)));
+    gaps.add(new RecordingGap(file, 350d, Range.closed(2.9f, 3.1f)));
+    // ends after the last scan
+    gaps.add(new RecordingGap(file, 350d, Range.closed(3.9f, 5f)));
+    // starts before the first scan
+    gaps.add(new RecordingGap(file, 450d, Range.closed(-1f, 0.3f)));
+    // no signal
+    gaps.add(new RecordingGap(file, 550d, Range.closed(1f, 2f)));
+    // after the last scan
+    gaps.add(new RecordingGap(file, 150d, Range.closed(10f, 11f)));
+    return gaps;
+  }
+
+  private static List<Frame> createFrames(IMSRawDataFile file) throws IOException {
+    final double[] mobilities = new double[8];
+    for (int j = 0; j < mobilities.length; j++) {
+      mobilities[j] = 1d + 0.05 * j;
+    }
+
+    final List<Frame> frames = new ArrayList<>();
+    for (int i = 0; i < 60; i++) {
+      final float rt = i * 0.05f;
+      // the peak at 500 continues beyond the rt range of its gap until the second peak starts
+      final double intensity300 = 1 + gauss(rt, 0.5, 0.1, 1E4);
+      final double intensity500 = 1 + gauss(rt, 1.2, 0.2, 1E4) + gauss(rt, 2.4, 0.15, 5E3);
+
+      final List<BuildingMobilityScan> mobilityScans = new ArrayList<>();
+      for (int j = 0; j < mobilities.length; j++) {
+        final double weight = 1d / (1 + Math.abs(j - 4));
+        mobilityScans.add(new BuildingMobilityScan(j, new double[]{300d, 500d},
+            new double[]{intensity300 * weight, intensity500 * weight}));
+      }
+      final SimpleFrame frame = new SimpleFrame(file, i + 1, 1, rt, new double[]{300d, 500d},
+          new double[]{intensity300, intensity500}, MassSpectrumType.CENTROIDED,
+          PolarityType.POSITIVE, "", Range.closed(100d, 600d), MobilityType.DRIFT_TUBE, null,
+          null);
+      frame.setMobilities(mobilities);
+      frame.setMobilityScans(mobilityScans, false);
+      file.addScan(frame);
+      frames.add(frame);
+    }
+    return frames;
+  }
+
+  private static List<Gap> createImsGaps(IMSRawDataFile file) {
+    final List<Gap> gaps = new ArrayList<>();
+    gaps.add(new RecordingImsGap(file, 500d, Range.closed(0.9f, 1.3f), Range.closed(1.1f, 1.25f)));
+    gaps.add(new RecordingImsGap(file, 300d, Range.closed(0.3f, 0.7f), Range.closed(1f, 1.4f)));
+    gaps.add(new RecordingImsGap(file, 500d, Range.closed(2.2f, 2.6f), Range.closed(1f, 1.4f)));
+    gaps.add(new RecordingImsGap(file, 700d, Range.closed(1f, 2f), Range.closed(1f, 1.4f)));
+    return gaps;
+  }
+
+  /**
+   * Same loop as {@link MultiThreadPeakFinderTask} for files without ion mobility
+   */
+  private static void offerScans(List<Gap> gaps, List<Scan> scans, boolean sweep) {
+    final ActiveGaps activeGaps = new ActiveGaps(gaps, sweep);
+    for (Scan scan : scans) {
+      for (Gap gap : activeGaps.next(scan.getRetentionTime())) {
+        gap.offerNextScan(scan);
+      }
+    }
+    gaps.forEach(Gap::noMoreOffers);
+  }
+
+  /**
+   * Same loop as {@link MultiThreadPeakFinderTask} for ion mobility files
+   */
+  private static void offerFrames(List<Gap> gaps, IMSRawDataFile file, List<Frame> frames,
+      boolean sweep) {
+    final ActiveGaps activeGaps = new ActiveGaps(gaps, sweep);
+    final MobilityScanDataAccess access = new MobilityScanDataAccess(file,
+        MobilityScanDataType.RAW, frames);
+    while (access.hasNextFrame()) {
+      final Frame frame = access.nextFrame();
+      for (Gap gap : activeGaps.next(frame.getRetentionTime())) {
+        access.resetMobilityScan();
+        gap.offerNextScan(access);
+      }
+    }
+    gaps.forEach(Gap::noMoreOffers);
+  }
+
+  private static void assertSameResults(List<Gap> expectedGaps, List<Gap> actualGaps) {
+    assertEquals(expectedGaps.size(), actualGaps.size());
+    for (int i = 0; i < expectedGaps.size(); i++) {
+      final List<GapDataPoint> expected = ((Recording) expectedGaps.get(i)).getResult();
+      final List<GapDataPoint> actual = ((Recording) actualGaps.get(i)).getResult();
+      if (expected == null) {
+        assertNull(actual, "gap " + i);
+        continue;
+      }
+      assertNotNull(actual, "gap " + i);
+      assertEquals(expected.size(), actual.size(), "gap " + i);
+      for (int j = 0; j < expected.size(); j++) {
+        assertSame(expected.get(j).getScan(), actual.get(j).getScan(), "gap " + i);
+        assertEquals(expected.get(j).getMZ(), actual.get(j).getMZ(), "gap " + i);
+        assertEquals(expected.get(j).getIntensity(), actual.get(j).getIntensity(), "gap " + i);
+      }
+    }
+  }
+
+  private static int countOffers(List<Gap> gaps) {
+    return gaps.stream().mapToInt(gap -> ((Recording) gap).getOffers()).sum();
+  }
+
+  private static int countFilled(List<Gap> gaps) {
+    return (int) gaps.stream().filter(gap -> ((Recording) gap).getResult() != null).count();
+  }
+
+  @Test
+  void sweepOnlyForSortedScans() throws IOException {
+    final RawDataFile file = new RawDataFileImpl("gaps", null, null, Color.BLACK);
+    final List<Scan> scans = createScans(file);
+    assertTrue(ActiveGaps.of(createGaps(file), scans).isSweep());
+
+    final List<Scan> shuffled = new ArrayList<>(scans);
+    Collections.shuffle(shuffled, new Random(7));
+    assertFalse(ActiveGaps.of(createGaps(file), shuffled).isSweep());
+  }
+
+  @Test
+  void sweepMatchesAllGaps() throws IOException {
+    final RawDataFile file = new RawDataFileImpl("gaps", null, null, Color.BLACK);
+    final List<Scan> scans = createScans(file);
+
+    final List<Gap> allGaps = createGaps(file);
+    offerScans(allGaps, scans, false);
+    final List<Gap> sweepGaps = createGaps(file);
+    offerScans(sweepGaps, scans, true);
+
+    assertSameResults(allGaps, sweepGaps);
+    assertTrue(countFilled(sweepGaps) >= 4);
+    assertEquals(allGaps.size() * scans.size(), countOffers(allGaps));
+    assertTrue(countOffers(sweepGaps) < countOffers(allGaps) / 2);
+  }
+
+  @Test
+  void sweepMatchesAllGapsForContinuedImsPeaks() throws IOException {
+    final IMSRawDataFile file = new IMSRawDataFileImpl("ims gaps", null, null, Color.BLACK);
+    final List<Frame> frames = createFrames(file);
+
+    final List<Gap> allGaps = createImsGaps(file);
+    offerFrames(allGaps, file, frames, false);
+    final List<Gap> sweepGaps = createImsGaps(file);
+    offerFrames(sweepGaps, file, frames, true);
+
+    assertSameResults(allGaps, sweepGaps);
+    assertEquals(3, countFilled(sweepGaps));
+    assertTrue(countOffers(sweepGaps) < countOffers(allGaps));
+
+    // the peak was continued beyond the rt range while the gap was kept active
+    final List<GapDataPoint> continued = ((Recording) sweepGaps.get(0)).getResult();
+    assertTrue(continued.get(continued.size() - 1).getRT() > 1.3f);
+  }
+
+  private interface Recording {
+
+    List<GapDataPoint> getResult();
+
+    int getOffers();
+  }
+
+  /**
+   * Records the offers and the best peak instead of adding a feature to the row
+   */
+  private static class RecordingGap extends Gap implements Recording {
+
+    private List<GapDataPoint> result;
+    private int offers;
+
+    RecordingGap(RawDataFile file, double mz, Range<Float> rtRange) {
+      super(mock(FeatureListRow.class), file, Range.closed(mz - 0.01, mz + 0.01), rtRange,
+          INT_TOLERANCE);
+    }
+
+    @Override
+    public void offerNextScan(Scan scan) {
+      offers++;
+      super.offerNextScan(scan);
+    }
+
+    @Override
+    protected boolean addFeatureToRow() {
+      result = List.copyOf(bestPeakDataPoints);
+      return true;
+    }
+
+    @Override
+    public List<GapDataPoint> getResult() {
+      return result;
+    }
+
+    @Override
+    public int getOffers() {
+      return offers;
+    }
+  }
+
+  private static class RecordingImsGap extends ImsGap implements Recording {
+
+    private List<GapDataPoint> result;
+    private int offers;
+
+    RecordingImsGap(IMSRawDataFile file, double mz, Range<Float> rtRange,
+        Range<Float> mobilityRange) {
+      super(mock(FeatureListRow.class), file, Range.closed(mz - 0.01, mz + 0.01), rtRange,
+          mobilityRange, INT_TOLERANCE, mock(BinningMobilogramDataAccess.class));
+    }
+
+    @Override
+    public void offerNextScan(Scan scan) {
+      offers++;
+      super.offerNextScan(scan);
+    }
+
+    @Override
+    protected boolean addFeatureToRow() {
+      result = List.copyOf(bestPeakDataPoints);
+      return true;
+    }
+
+    @Override
+    public List<GapDataPoint> getResult() {
+      return result;
+    }
+
+    @Override
+    public int getOffers() {
+      return offers;
+    }
+  }
+}
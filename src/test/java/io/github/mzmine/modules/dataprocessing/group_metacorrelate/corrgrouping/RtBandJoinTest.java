@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.group_metacorrelate.corrgrouping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.parameters.parametertypes.absoluterelative.AbsoluteAndRelativeInt;
+import io.github.mzmine.parameters.parametertypes.MinimumFeatureFilter;
+import io.github.mzmine.parameters.parametertypes.MinimumFeatureFilter.OverlapResult;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance.Unit;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The band join of {@link CorrelateGroupingTask} must find the same row pairs that pass the overlap
+ * filter as the comparison of all rows.
+ */
+class RtBandJoinTest {
+
+  private static final int NUM_ROWS = 200;
+
+  private static final List<RawDataFile> RAWS = List.of(mock(RawDataFile.class),
+      mock(RawDataFile.class), mock(RawDataFile.class));
+
+  private static final MinimumFeatureFilter FILTER = new MinimumFeatureFilter(
+      new AbsoluteAndRelativeInt(1, 0f), new AbsoluteAndRelativeInt(0, 0f), 0, 0, false);
+
+  /**
+   * Rows with features in some of the files. Some features have NaN RTs, some rows only NaN RTs
+   * and some rows no features at all.
+   */
+  private static FeatureListRow[] createRows(long seed) {
+    final Random rand = new Random(seed);
+    final FeatureListRow[] rows = new FeatureListRow[NUM_ROWS];
+    for (int i = 0; i < NUM_ROWS; i++) {
+      final FeatureListRow row = mock(FeatureListRow.class);
+      final List<ModularFeature> features = new ArrayList<>();
+      final float rt = rand.nextFloat() * 30f;
+      final boolean onlyNaN = i % 25 == 0;
+      final boolean empty = i % 37 == 0;
+      for (RawDataFile raw : RAWS) {
+        if (empty || rand.nextDouble() > 0.7) {
+          continue;
+        }
+        // relative tolerances need positive RTs
+        final float featureRt = onlyNaN || rand.nextDouble() < 0.05 ? Float.NaN
+            : Math.abs(rt + (float) rand.nextGaussian() * 0.1f);
+        final ModularFeature feature = mock(ModularFeature.class);
+        when(feature.getRT()).thenReturn(featureRt);
+        when(feature.getHeight()).thenReturn(1000f);
+        when(row.getFeature(raw)).thenReturn(feature);
+        features.add(feature);
+      }
+      when(row.getFeatures()).thenReturn(features);
+      rows[i] = row;
+    }
+    return rows;
+  }
+
+  private static long pair(int i, int x) {
+    return (long) i * NUM_ROWS + x;
+  }
+
+  private static boolean overlaps(FeatureListRow[] rows, int i, int x, RTTolerance rtTolerance) {
+    return FILTER.filterMinFeaturesOverlap(null, RAWS, rows[i], rows[x], rtTolerance)
+        .equals(OverlapResult.TRUE);
+  }
+
+  /**
+   * Same loop as {@link CorrelateGroupingTask} for the comparison of all rows
+   */
+  private static LongSet compareAllRows(FeatureListRow[] rows, RTTolerance rtTolerance) {
+    final LongSet pairs = new LongOpenHashSet();
+    for (int i = 0; i < rows.length - 1; i++) {
+      for (int x = i + 1; x < rows.length; x++) {
+        if (overlaps(rows, i, x, rtTolerance)) {
+          pairs.add(pair(i, x));
+        }
+      }
+    }
+    return pairs;
+  }
+
+  /**
+   * Same loop as {@link CorrelateGroupingTask} for the comparison of rows in the RT band
+   */
+  private static LongSet compareRowsInRtBand(FeatureListRow[] rows, RTTolerance rtTolerance) {
+    final RtBandJoin band = new RtBandJoin(rows, rtTolerance);
+    final LongSet visited = new LongOpenHashSet();
+    final LongSet pairs = new LongOpenHashSet();
+
+    final IntArrayList chunkStarts = band.splitIntoChunks(16);
+    assertEquals(0, chunkStarts.getInt(0));
+    assertEquals(rows.length, chunkStarts.getInt(chunkStarts.size() - 1));
+    long chunkPairs = 0;
+    for (int chunk = 0; chunk < chunkStarts.size() - 1; chunk++) {
+      final int start = chunkStarts.getInt(chunk);
+      final int end = chunkStarts.getInt(chunk + 1);
+      assertTrue(start < end);
+      chunkPairs += band.getPairs(start, end);
+      for (int k = start; k < end; k++) {
+        final int i = band.getRow(k);
+        band.forEachPartner(k, x -> {
+          final int first = Math.min(i, x);
+          final int second = Math.max(i, x);
+          // every pair is compared once
+          assertTrue(visited.add(pair(first, second)));
+          if (overlaps(rows, first, second, rtTolerance)) {
+            pairs.add(pair(first, second));
+          }
+        });
+      }
+    }
+    assertEquals(band.getTotalPairs(), chunkPairs);
+    assertEquals(band.getTotalPairs(), visited.size());
+    // the band is much smaller than all pairs
+    assertTrue(visited.size() < NUM_ROWS * (NUM_ROWS - 1) / 4);
+    return pairs;
+  }
+
+  private static void assertSamePairs(FeatureListRow[] rows, RTTolerance rtTolerance) {
+    final LongSet expected = compareAllRows(rows, rtTolerance);
+    assertFalse(expected.isEmpty());
+    assertEquals(expected, compareRowsInRtBand(rows, rtTolerance));
+  }
+
+  @Test
+  void absoluteTolerance() {
+    final FeatureListRow[] rows = createRows(1);
+    assertSamePairs(rows, new RTTolerance(0.2f, Unit.MINUTES));
+    assertSamePairs(rows, new RTTolerance(6f, Unit.SECONDS));
+  }
+
+  @Test
+  void relativeTolerance() {
+    // the tolerance of features at the end of the gradient is larger than at the start
+    final FeatureListRow[] rows = createRows(2);
+    assertSamePairs(rows, new RTTolerance(1f, Unit.PERCENT));
+    assertSamePairs(rows, new RTTolerance(3f, Unit.PERCENT));
+  }
+
+  @Test
+  void nanRtsOverlapWithNanRts() {
+    final FeatureListRow[] rows = createRows(3);
+    final RTTolerance rtTolerance = new RTTolerance(0.2f, Unit.MINUTES);
+    final LongSet pairs = compareAllRows(rows, rtTolerance);
+    // the tolerance range of NaN contains NaN, rows with only NaN RTs overlap with each other
+    int nanPairs = 0;
+    for (int i = 25; i < NUM_ROWS; i += 25) {
+      for (int x = i + 25; x < NUM_ROWS; x += 25) {
+        if (pairs.contains(pair(i, x))) {
+          nanPairs++;
+        }
+      }
+    }
+    assertTrue(nanPairs > 0);
+    assertEquals(pairs, compareRowsInRtBand(rows, rtTolerance));
+  }
+
+  @Test
+  void noRows() {
+    final RtBandJoin band = new RtBandJoin(new FeatureListRow[0],
+        new RTTolerance(1f, Unit.PERCENT));
+    assertEquals(0, band.size());
+    assertEquals(0, band.getTotalPairs());
+  }
+}
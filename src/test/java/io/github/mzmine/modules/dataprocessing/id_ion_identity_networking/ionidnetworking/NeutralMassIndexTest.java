@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_ion_identity_networking.ionidnetworking;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.identities.iontype.IonModification;
+import io.github.mzmine.datamodel.identities.iontype.IonType;
+import io.github.mzmine.modules.dataprocessing.id_ion_identity_networking.ionidnetworking.IonNetworkLibrary.CheckMode;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import javafx.collections.FXCollections;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The candidates of the {@link NeutralMassIndex} must contain all ion type pairs that are accepted
+ * by {@link IonNetworkLibrary#checkAdduct}.
+ */
+class NeutralMassIndexTest {
+
+  // the ppm tolerance is larger than the absolute tolerance for all masses
+  private static final MZTolerance MZ_TOLERANCE = new MZTolerance(0.0005, 5);
+  private static final double MIN_HEIGHT = 1000;
+
+  // ions of the rows: multimers, multiply charged ions and modifications
+  private static final List<IonType> ROW_IONS = List.of(new IonType(IonModification.H),
+      new IonType(IonModification.NA), new IonType(2, IonModification.H),
+      new IonType(IonModification.H2plus), new IonType(IonModification.H, IonModification.H2O),
+      new IonType(2, IonModification.NA_H));
+
+  private static final double[] NEUTRAL_MASSES = {180.06339, 342.11621, 758.56943};
+
+  private final List<RawDataFile> raws = List.of(mock(RawDataFile.class),
+      mock(RawDataFile.class));
+
+  private final IonNetworkLibrary library = new IonNetworkLibrary(MZ_TOLERANCE, 2, true, 2,
+      new IonModification[]{IonModification.H, IonModification.NA, IonModification.NH4,
+          IonModification.H2plus, IonModification.NA_H},
+      new IonModification[]{IonModification.H2O});
+
+  /**
+   * One row for each ion of each neutral mass. The m/z in each raw data file deviates by up to 4
+   * ppm so that some ion pairs are just within and some just outside the tolerance. Small
+   * features are far off and are ignored by both the index and the check.
+   */
+  private FeatureList createFeatureList(long seed) {
+    final Random rand = new Random(seed);
+    final List<FeatureListRow> rows = new ArrayList<>();
+    for (double mass : NEUTRAL_MASSES) {
+      for (IonType ion : ROW_IONS) {
+        final double mz = ion.getMZ(mass);
+        final FeatureListRow row = mock(FeatureListRow.class);
+        final List<ModularFeature> features = new ArrayList<>();
+        double sumMz = 0;
+        for (RawDataFile raw : raws) {
+          final boolean small = rows.size() % 4 == 0 && features.isEmpty();
+          final double featureMz =
+              small ? mz + 0.5 : mz * (1 + (rand.nextDouble() * 8 - 4) / 1_000_000);
+          final ModularFeature feature = mock(ModularFeature.class);
+          when(feature.getMZ()).thenReturn(featureMz);
+          when(feature.getHeight()).thenReturn(small ? 100f : 1E5f);
+          when(row.getFeature(raw)).thenReturn(feature);
+          features.add(feature);
+          if (!small) {
+            sumMz += featureMz;
+          }
+        }
+        final int highFeatures = rows.size() % 4 == 0 ? 1 : 2;
+        when(row.getAverageMZ()).thenReturn(sumMz / highFeatures);
+        when(row.getFeatures()).thenReturn(features);
+        rows.add(row);
+      }
+    }
+
+    final FeatureList featureList = mock(FeatureList.class);
+    when(featureList.getRows()).thenReturn(FXCollections.observableArrayList(rows));
+    when(featureList.getRawDataFiles()).thenReturn(FXCollections.observableArrayList(raws));
+    return featureList;
+  }
+
+  private void assertCandidatesContainMatches(CheckMode mode, long seed) {
+    final FeatureList featureList = createFeatureList(seed);
+    final List<FeatureListRow> rows = featureList.getRows();
+    final List<IonType> ions = library.getAllAdducts();
+    final NeutralMassIndex index = new NeutralMassIndex(ions, MZ_TOLERANCE, featureList, mode,
+        MIN_HEIGHT);
+
+    int matches = 0;
+    long candidatePairs = 0;
+    for (FeatureListRow row1 : rows) {
+      for (FeatureListRow row2 : rows) {
+        if (row1 == row2) {
+          continue;
+        }
+        final BitSet[] candidates = index.getCandidates(row1, row2);
+        assertNotNull(candidates, "all rows are indexed");
+        for (int i = 0; i < ions.size(); i++) {
+          candidatePairs += candidates[i].cardinality();
+          for (int k = 0; k < ions.size(); k++) {
+            if (library.checkAdduct(featureList, row1, row2, ions.get(i), ions.get(k), mode,
+                MIN_HEIGHT)) {
+              matches++;
+              assertTrue(candidates[i].get(k),
+                  mode + ": " + ions.get(i) + " and " + ions.get(k) + " are no candidates");
+            }
+          }
+        }
+      }
+    }
+    assertTrue(matches > 0);
+    // the index only keeps a fraction of all pairs
+    final long allPairs = (long) rows.size() * (rows.size() - 1) * ions.size() * ions.size();
+    assertTrue(candidatePairs < allPairs / 5);
+  }
+
+  @Test
+  void averageMz() {
+    assertCandidatesContainMatches(CheckMode.AVGERAGE, 1);
+  }
+
+  @Test
+  void oneFeature() {
+    assertCandidatesContainMatches(CheckMode.ONE_FEATURE, 2);
+  }
+
+  @Test
+  void allFeatures() {
+    assertCandidatesContainMatches(CheckMode.ALL_FEATURES, 3);
+  }
+}
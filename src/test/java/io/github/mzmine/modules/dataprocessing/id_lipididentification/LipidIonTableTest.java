@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_lipididentification;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.IonizationType;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipididentificationtools.LipidFragmentationRule;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.ILipidAnnotation;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.LipidClasses;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils.LipidFactory;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
+import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
+
+/**
+ * {@link LipidIonTable#findIons(Range)} must find the same lipid ions as checking every lipid of
+ * the database, in the order of the database.
+ */
+class LipidIonTableTest {
+
+  private static final Comparator<LipidIon> DATABASE_ORDER = Comparator.comparingInt(
+      LipidIon::lipid).thenComparing(LipidIon::ionization);
+
+  private final List<ILipidAnnotation> database = createDatabase();
+  private final LipidIonTable table = new LipidIonTable(database);
+
+  /**
+   * The database order differs from the m/z order. PE (n+3):x and PC n:x are isomers.
+   */
+  private static List<ILipidAnnotation> createDatabase() {
+    final LipidFactory factory = new LipidFactory();
+    final List<ILipidAnnotation> lipids = new ArrayList<>();
+    for (int carbons = 40; carbons >= 33; carbons--) {
+      for (int dbes = 0; dbes <= 2; dbes++) {
+        lipids.add(factory.buildSpeciesLevelLipid(
+            LipidClasses.DIACYLGLYCEROPHOSPHOETHANOLAMINES, carbons, dbes));
+      }
+    }
+    for (int carbons = 30; carbons <= 37; carbons++) {
+      for (int dbes = 0; dbes <= 2; dbes++) {
+        lipids.add(factory.buildSpeciesLevelLipid(LipidClasses.DIACYLGLYCEROPHOSPHOCHOLINES,
+            carbons, dbes));
+      }
+    }
+    return lipids;
+  }
+
+  /**
+   * @param lipid index of the lipid in the database
+   */
+  private record LipidIon(int lipid, IonizationType ionization, double mz) {
+
+  }
+
+  /**
+   * All lipid ions calculated like in {@link LipidSearchTask} before the table
+   */
+  private List<LipidIon> allIons() {
+    final List<LipidIon> ions = new ArrayList<>();
+    for (int i = 0; i < database.size(); i++) {
+      final ILipidAnnotation lipid = database.get(i);
+      final Set<IonizationType> ionizationTypes = new LinkedHashSet<>();
+      for (LipidFragmentationRule rule : lipid.getLipidClass().getFragmentationRules()) {
+        ionizationTypes.add(rule.getIonizationType());
+      }
+      final double mass = MolecularFormulaManipulator.getMass(lipid.getMolecularFormula(),
+          AtomContainerManipulator.MonoIsotopic);
+      for (IonizationType ionization : ionizationTypes) {
+        ions.add(new LipidIon(i, ionization, mass + ionization.getAddedMass()));
+      }
+    }
+    return ions;
+  }
+
+  private List<LipidIon> findIons(Range<Double> mzRange) {
+    final IntArrayList ions = table.findIons(mzRange);
+    final List<LipidIon> result = new ArrayList<>();
+    for (int i = 0; i < ions.size(); i++) {
+      final int ion = ions.getInt(i);
+      final int lipid = database.indexOf(table.getLipid(ion));
+      result.add(new LipidIon(lipid, table.getIonization(ion), Double.NaN));
+      if (i > 0) {
+        // sorted by the lipid database
+        assertTrue(result.get(i - 1).lipid() <= lipid);
+      }
+    }
+    return result;
+  }
+
+  private void assertSameIons(List<LipidIon> allIons, Range<Double> mzRange) {
+    final List<LipidIon> expected = allIons.stream().filter(ion -> mzRange.contains(ion.mz()))
+        .map(ion -> new LipidIon(ion.lipid(), ion.ionization(), Double.NaN))
+        .sorted(DATABASE_ORDER).toList();
+    final List<LipidIon> actual = findIons(mzRange);
+    // the order of the ionization types of one lipid is not defined
+    assertEquals(expected, actual.stream().sorted(DATABASE_ORDER).toList(), mzRange.toString());
+    assertEquals(expected.stream().map(LipidIon::lipid).toList(),
+        actual.stream().map(LipidIon::lipid).toList());
+  }
+
+  @Test
+  void containsAllIons() {
+    final List<LipidIon> allIons = allIons();
+    assertEquals(allIons.size(), table.size());
+    assertSameIons(allIons, Range.closed(0d, 5000d));
+  }
+
+  @Test
+  void windowEdgesAreInclusive() {
+    final List<LipidIon> allIons = allIons();
+    for (LipidIon ion : allIons) {
+      final double mz = ion.mz();
+      assertSameIons(allIons, Range.closed(mz, mz));
+      assertSameIons(allIons, Range.closed(mz - 0.5, mz));
+      assertSameIons(allIons, Range.closed(mz, mz + 0.5));
+      // just outside of the window
+      assertSameIons(allIons, Range.closed(Math.nextUp(mz), mz + 0.5));
+      assertSameIons(allIons, Range.closed(mz - 0.5, Math.nextDown(mz)));
+      assertFalse(findIons(Range.closed(mz, mz)).isEmpty());
+    }
+  }
+
+  @Test
+  void toleranceWindows() {
+    final List<LipidIon> allIons = allIons();
+    final MZTolerance mzTolerance = new MZTolerance(0.005, 10);
+    for (LipidIon ion : allIons) {
+      assertSameIons(allIons, mzTolerance.getToleranceRange(ion.mz()));
+      assertSameIons(allIons, mzTolerance.getToleranceRange(ion.mz() + 0.004));
+    }
+  }
+
+  @Test
+  void outsideOfTable() {
+    assertTrue(table.findIons(Range.closed(0d, 100d)).isEmpty());
+    assertTrue(table.findIons(Range.closed(5000d, 6000d)).isEmpty());
+  }
+
+  @Test
+  void isomersInDatabaseOrder() {
+    // PE 37:1 is before PC 34:1 in the database but the [M+H]+ of both have the same m/z
+    final ILipidAnnotation pe = database.stream()
+        .filter(lipid -> lipid.getAnnotation().equals("PE 37:1")).findFirst().orElseThrow();
+    final ILipidAnnotation pc = database.stream()
+        .filter(lipid -> lipid.getAnnotation().equals("PC 34:1")).findFirst().orElseThrow();
+    final double mz = allIons().stream()
+        .filter(ion -> database.get(ion.lipid()) == pc)
+        .filter(ion -> ion.ionization() == IonizationType.POSITIVE_HYDROGEN).findFirst()
+        .orElseThrow().mz();
+
+    final IntArrayList ions = table.findIons(new MZTolerance(0.001, 1).getToleranceRange(mz));
+    final List<ILipidAnnotation> lipids = new ArrayList<>();
+    for (int ion : ions) {
+      if (table.getIonization(ion) == IonizationType.POSITIVE_HYDROGEN) {
+        lipids.add(table.getLipid(ion));
+      }
+    }
+    assertEquals(List.of(pe, pc), lipids);
+  }
+}
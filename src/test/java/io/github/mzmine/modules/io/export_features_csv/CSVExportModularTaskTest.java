@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.export_features_csv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import io.github.mzmine.datamodel.FeatureStatus;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularDataModel;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.DataType;
+import io.github.mzmine.datamodel.features.types.DetectionType;
+import io.github.mzmine.datamodel.features.types.RawFileType;
+import io.github.mzmine.datamodel.features.types.numbers.AreaType;
+import io.github.mzmine.datamodel.features.types.numbers.HeightType;
+import io.github.mzmine.datamodel.features.types.numbers.MZType;
+import io.github.mzmine.datamodel.features.types.numbers.RTType;
+import io.github.mzmine.modules.io.export_features_gnps.fbmn.FeatureListRowsFilter;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.io.CSVUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * The export of a feature list with several chunks of rows must contain the same values as
+ * formatting each value on the test thread.
+ */
+@ExtendWith(MockitoExtension.class)
+class CSVExportModularTaskTest {
+
+  private static final String SEPARATOR = "\t";
+  // more than two chunks of rows
+  private static final int NUM_ROWS = 2500;
+
+  @Mock
+  RawDataFile raw;
+
+  @TempDir
+  Path tempDir;
+
+  private ModularFeatureList createFeatureList() {
+    final ModularFeatureList flist = new ModularFeatureList("List", null, raw);
+    // rows in reverse order of their IDs, the export is sorted by ID
+    for (int i = NUM_ROWS; i > 0; i--) {
+      final ModularFeature f = new ModularFeature(flist);
+      f.set(RawFileType.class, raw);
+      f.set(MZType.class, 100d + i * 0.123456789d);
+      f.set(RTType.class, i * 0.0123f);
+      f.set(HeightType.class, i * 1234.567f);
+      f.set(AreaType.class, i * 98765.4321f);
+      f.set(DetectionType.class, FeatureStatus.DETECTED);
+      flist.addRow(new ModularFeatureListRow(flist, i, f));
+    }
+    return flist;
+  }
+
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private static String format(DataType type, ModularDataModel data) {
+    Object value = data.get(type);
+    if (value == null) {
+      value = type.getDefaultValue();
+    }
+    return CSVUtils.escape(type.getFormattedExportString(value), SEPARATOR);
+  }
+
+  @Test
+  void exportMultipleChunks() throws IOException {
+    when(raw.getName()).thenReturn("sample.mzML");
+    final ModularFeatureList flist = createFeatureList();
+    final File file = tempDir.resolve("export.csv").toFile();
+
+    final CSVExportModularTask task = new CSVExportModularTask(new ModularFeatureList[]{flist},
+        file, SEPARATOR, ";", FeatureListRowsFilter.ALL, true, Instant.now());
+    task.run();
+    assertEquals(TaskStatus.FINISHED, task.getStatus(), task.getErrorMessage());
+    assertEquals(NUM_ROWS, task.getProcessedItems());
+
+    final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    assertEquals(NUM_ROWS + 1, lines.size());
+
+    // the type of each column, null for sub columns
+    final String featurePrefix = CSVExportModularTask.DATAFILE_PREFIX + ":sample.mzML:";
+    final Collection<DataType> rowTypes = flist.getRowTypes().values();
+    final Collection<DataType> featureTypes = flist.getFeatureTypes().values();
+    final String[] headers = lines.get(0).split(SEPARATOR, -1);
+    final List<DataType> rowColumns = new ArrayList<>();
+    final List<DataType> featureColumns = new ArrayList<>();
+    for (String header : headers) {
+      if (header.startsWith(featurePrefix)) {
+        featureColumns.add(findType(featureTypes, header.substring(featurePrefix.length())));
+        rowColumns.add(null);
+      } else {
+        rowColumns.add(findType(rowTypes, header));
+        featureColumns.add(null);
+      }
+    }
+    assertTrue(rowColumns.stream().anyMatch(MZType.class::isInstance));
+    assertTrue(featureColumns.stream().anyMatch(AreaType.class::isInstance));
+
+    for (int i = 1; i <= NUM_ROWS; i++) {
+      final FeatureListRow row = flist.findRowByID(i);
+      final ModularFeature feature = (ModularFeature) row.getFeature(raw);
+      final String[] values = lines.get(i).split(SEPARATOR, -1);
+      assertEquals(headers.length, values.length);
+      for (int c = 0; c < headers.length; c++) {
+        if (rowColumns.get(c) != null) {
+          assertEquals(format(rowColumns.get(c), (ModularDataModel) row), values[c],
+              "row " + i + " column " + headers[c]);
+        } else if (featureColumns.get(c) != null) {
+          assertEquals(format(featureColumns.get(c), feature), values[c],
+              "row " + i + " column " + headers[c]);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the type of the column or null for sub columns
+   */
+  private static DataType findType(Collection<DataType> types, String header) {
+    return types.stream().filter(type -> type.getUniqueID().equals(header)).findFirst()
+        .orElse(null);
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.projectsave;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.FeatureDataType;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
+import io.github.mzmine.modules.io.projectload.version_3_0.FeatureListLoadTask;
+import io.github.mzmine.modules.io.projectload.version_3_0.FeatureSeriesBinaryReader;
+import io.github.mzmine.project.impl.MZmineProjectImpl;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import javafx.scene.paint.Color;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.stream.events.XMLEvent;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Feature series saved with a {@link FeatureSeriesBinaryWriter} must be loaded with the same data
+ * and scans. A missing binary series file must fail the load.
+ */
+class FeatureSeriesBinaryTest {
+
+  private static final FeatureDataType TYPE = new FeatureDataType();
+
+  private final MZmineProject project = new MZmineProjectImpl();
+  private final RawDataFile file = createFile();
+  private final ModularFeatureList flist = new ModularFeatureList("flist", null, file);
+  private final ModularFeatureListRow row = new ModularFeatureListRow(flist, 1);
+
+  FeatureSeriesBinaryTest() {
+    flist.setSelectedScans(file, file.getScans());
+  }
+
+  private static RawDataFile createFile() {
+    final RawDataFile file = new RawDataFileImpl("file.mzML", null, null, Color.BLACK);
+    for (int i = 0; i < 20; i++) {
+      final SimpleScan scan = new SimpleScan(file, i + 1, 1, 0.1f * i, null,
+          new double[]{100, 200}, new double[]{10, 20}, MassSpectrumType.CENTROIDED,
+          PolarityType.POSITIVE, "", Range.closed(50d, 500d));
+      try {
+        file.addScan(scan);
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    return file;
+  }
+
+  /**
+   * Series of different lengths, so the offsets of the records differ
+   */
+  private List<SimpleIonTimeSeries> createSeries() {
+    final List<SimpleIonTimeSeries> series = new ArrayList<>();
+    for (int s = 0; s < 5; s++) {
+      final List<Scan> scans = new ArrayList<>();
+      for (int i = s; i < file.getNumOfScans(); i += s + 1) {
+        scans.add(file.getScan(i));
+      }
+      final double[] mzs = new double[scans.size()];
+      final double[] intensities = new double[scans.size()];
+      for (int i = 0; i < mzs.length; i++) {
+        mzs[i] = 150.123456789 + s + i * 1E-4;
+        intensities[i] = 1E5 * (s + 1) + i * 0.5;
+      }
+      series.add(new SimpleIonTimeSeries(null, mzs, intensities, scans));
+    }
+    return series;
+  }
+
+  /**
+   * @return the xml with one data type element per series
+   */
+  private String save(List<SimpleIonTimeSeries> series, FeatureSeriesBinaryWriter binaryWriter)
+      throws XMLStreamException, IOException {
+    final StringWriter xml = new StringWriter();
+    final XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(xml);
+    writer.writeStartDocument();
+    writer.writeStartElement("features");
+    for (SimpleIonTimeSeries s : series) {
+      writer.writeStartElement(CONST.XML_DATA_TYPE_ELEMENT);
+      writer.writeAttribute(CONST.XML_DATA_TYPE_ID_ATTR, TYPE.getUniqueID());
+      TYPE.saveToXML(writer, s, flist, row, null, file, binaryWriter);
+      writer.writeEndElement();
+    }
+    writer.writeEndElement();
+    writer.writeEndDocument();
+    writer.close();
+    return xml.toString();
+  }
+
+  private static XMLStreamReader nextDataType(XMLStreamReader reader) throws XMLStreamException {
+    while (reader.hasNext()) {
+      if (reader.next() == XMLEvent.START_ELEMENT && reader.getLocalName()
+          .equals(CONST.XML_DATA_TYPE_ELEMENT)) {
+        return reader;
+      }
+    }
+    throw new IllegalStateException("No more data types");
+  }
+
+  private static void assertSameSeries(IonTimeSeries<?> expected, Object actual) {
+    assertTrue(actual instanceof SimpleIonTimeSeries);
+    final SimpleIonTimeSeries loaded = (SimpleIonTimeSeries) actual;
+    final int n = expected.getNumberOfValues();
+    assertEquals(n, loaded.getNumberOfValues());
+    assertArrayEquals(expected.getMzValues(new double[n]), loaded.getMzValues(new double[n]));
+    assertArrayEquals(expected.getIntensityValues(new double[n]),
+        loaded.getIntensityValues(new double[n]));
+    assertEquals(expected.getSpectra(), loaded.getSpectra());
+  }
+
+  @Test
+  void saveAndLoadBinarySeries() throws IOException, XMLStreamException {
+    final List<SimpleIonTimeSeries> series = createSeries();
+    final File seriesFile = File.createTempFile("mzmine_series_test", ".bin");
+    try {
+      final String xml;
+      try (FeatureSeriesBinaryWriter binaryWriter = new FeatureSeriesBinaryWriter(seriesFile)) {
+        xml = save(series, binaryWriter);
+      }
+      // only references to the binary records are written to the xml
+      assertTrue(xml.contains(SimpleIonTimeSeries.XML_BINARY_ELEMENT));
+      assertFalse(xml.contains(SimpleIonTimeSeries.XML_ELEMENT));
+
+      final XMLStreamReader reader = XMLInputFactory.newInstance()
+          .createXMLStreamReader(new StringReader(xml));
+      try (FeatureSeriesBinaryReader binaryReader = new FeatureSeriesBinaryReader(seriesFile)) {
+        for (SimpleIonTimeSeries expected : series) {
+          final ModularFeature feature = new ModularFeature(flist);
+          final Object loaded = FeatureListLoadTask.parseDataType(nextDataType(reader), TYPE,
+              project, flist, row, feature, file, binaryReader);
+          assertSameSeries(expected, loaded);
+        }
+      }
+    } finally {
+      seriesFile.delete();
+    }
+  }
+
+  @Test
+  void saveAndLoadXmlSeries() throws IOException, XMLStreamException {
+    // projects without binary series file
+    final List<SimpleIonTimeSeries> series = createSeries();
+    final String xml = save(series, null);
+    assertFalse(xml.contains(SimpleIonTimeSeries.XML_BINARY_ELEMENT));
+
+    final XMLStreamReader reader = XMLInputFactory.newInstance()
+        .createXMLStreamReader(new StringReader(xml));
+    for (SimpleIonTimeSeries expected : series) {
+      final Object loaded = FeatureListLoadTask.parseDataType(nextDataType(reader), TYPE, project,
+          flist, row, new ModularFeature(flist), file, null);
+      assertSameSeries(expected, loaded);
+    }
+  }
+
+  @Test
+  void missingBinarySeriesFailsLoad() throws IOException, XMLStreamException {
+    final File seriesFile = File.createTempFile("mzmine_series_test", ".bin");
+    try {
+      final String xml;
+      try (FeatureSeriesBinaryWriter binaryWriter = new FeatureSeriesBinaryWriter(seriesFile)) {
+        xml = save(createSeries(), binaryWriter);
+      }
+
+      final XMLStreamReader reader = XMLInputFactory.newInstance()
+          .createXMLStreamReader(new StringReader(xml));
+      assertThrows(IOException.class,
+          () -> FeatureListLoadTask.parseDataType(nextDataType(reader), TYPE, project, flist, row,
+              new ModularFeature(flist), file, null));
+    } finally {
+      seriesFile.delete();
+    }
+  }
+}
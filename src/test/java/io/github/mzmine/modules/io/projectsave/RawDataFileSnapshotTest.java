@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.projectsave;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.MassList;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.DDAMsMsInfoImpl;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.datamodel.impl.masslist.ScanPointerMassList;
+import io.github.mzmine.datamodel.impl.masslist.SimpleMassList;
+import io.github.mzmine.datamodel.msms.ActivationMethod;
+import io.github.mzmine.datamodel.msms.DDAMsMsInfo;
+import io.github.mzmine.modules.io.projectload.version_3_0.RawDataFileSnapshotLoader;
+import io.github.mzmine.project.impl.MZmineProjectImpl;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+
+class RawDataFileSnapshotTest {
+
+  private static RawDataFile createFile(String name, String path, Color color) throws IOException {
+    final RawDataFile file = new RawDataFileImpl(name, path, null, color);
+
+    for (int i = 0; i < 3; i++) {
+      // different number of data points to check the offsets in the binary data
+      final double[] mzs = new double[10 + i * 7];
+      final double[] intensities = new double[mzs.length];
+      for (int j = 0; j < mzs.length; j++) {
+        mzs[j] = 100 + j * 12.345 + i;
+        intensities[j] = 1000 * (j + 1) + i;
+      }
+      final SimpleScan scan = new SimpleScan(file, i + 1, 1, 0.5f * i, null, mzs, intensities,
+          MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "ms1 scan " + i,
+          Range.closed(100d, 1000d), i == 1 ? 25.5f : null);
+      if (i == 0) {
+        scan.addMassList(new SimpleMassList(null, new double[]{mzs[2], mzs[5]},
+            new double[]{intensities[2], intensities[5]}));
+      } else if (i == 1) {
+        scan.addMassList(new ScanPointerMassList(scan));
+      }
+      file.addScan(scan);
+    }
+
+    for (int i = 3; i < 5; i++) {
+      final DDAMsMsInfoImpl info = new DDAMsMsInfoImpl(300 + i, 2, 20f, null, file.getScan(1), 2,
+          ActivationMethod.HCD, Range.closed(299d + i, 301d + i));
+      final SimpleScan scan = new SimpleScan(file, i + 1, 2, 0.5f * i, info,
+          new double[]{150, 250.5, 300 + i}, new double[]{10, 20, 30},
+          MassSpectrumType.CENTROIDED, PolarityType.NEGATIVE, "ms2 scan " + i,
+          Range.closed(50d, 400d));
+      scan.addMassList(new ScanPointerMassList(scan));
+      file.addScan(scan);
+    }
+    return file;
+  }
+
+  private static void assertSameFile(RawDataFile expected, RawDataFile actual) {
+    assertEquals(expected.getName(), actual.getName());
+    assertEquals(expected.getAbsolutePath(), actual.getAbsolutePath());
+    assertEquals(expected.getColor(), actual.getColor());
+    assertEquals(expected.getNumOfScans(), actual.getNumOfScans());
+
+    for (int i = 0; i < expected.getNumOfScans(); i++) {
+      final Scan scan = expected.getScan(i);
+      final Scan loaded = actual.getScan(i);
+      assertSame(actual, loaded.getDataFile());
+      assertEquals(scan.getScanNumber(), loaded.getScanNumber());
+      assertEquals(scan.getMSLevel(), loaded.getMSLevel());
+      assertEquals(scan.getRetentionTime(), loaded.getRetentionTime());
+      assertEquals(scan.getPolarity(), loaded.getPolarity());
+      assertEquals(scan.getSpectrumType(), loaded.getSpectrumType());
+      assertEquals(scan.getScanDefinition(), loaded.getScanDefinition());
+      assertEquals(scan.getScanningMZRange(), loaded.getScanningMZRange());
+      assertEquals(scan.getInjectionTime(), loaded.getInjectionTime());
+      assertArrayEquals(scan.getMzValues(new double[scan.getNumberOfDataPoints()]),
+          loaded.getMzValues(new double[loaded.getNumberOfDataPoints()]));
+      assertArrayEquals(scan.getIntensityValues(new double[scan.getNumberOfDataPoints()]),
+          loaded.getIntensityValues(new double[loaded.getNumberOfDataPoints()]));
+
+      final MassList massList = scan.getMassList();
+      final MassList loadedMassList = loaded.getMassList();
+      if (massList == null) {
+        assertNull(loadedMassList);
+      } else {
+        assertNotNull(loadedMassList);
+        assertEquals(massList.getClass(), loadedMassList.getClass());
+        final int n = massList.getNumberOfDataPoints();
+        assertEquals(n, loadedMassList.getNumberOfDataPoints());
+        assertArrayEquals(massList.getMzValues(new double[n]),
+            loadedMassList.getMzValues(new double[n]));
+        assertArrayEquals(massList.getIntensityValues(new double[n]),
+            loadedMassList.getIntensityValues(new double[n]));
+      }
+
+      assertEquals(scan.getMsMsInfo(), loaded.getMsMsInfo());
+      if (loaded.getMsMsInfo() instanceof DDAMsMsInfo info) {
+        // the parent scan is resolved in the loaded file
+        assertSame(actual, info.getParentScan().getDataFile());
+      }
+    }
+  }
+
+  @Test
+  void writeAndLoadSnapshots() throws IOException {
+    final List<RawDataFile> files = List.of(
+        createFile("first.mzML", "/data/first.mzML", Color.BLACK),
+        createFile("second", null, Color.web("0x3366ccff")));
+    for (RawDataFile file : files) {
+      assertTrue(RawDataFileSnapshotWriter.isSupported(file));
+    }
+
+    final File projectFile = File.createTempFile("mzmine_snapshot_test", ".zip");
+    try {
+      try (ZipOutputStream zipStream = new ZipOutputStream(new FileOutputStream(projectFile))) {
+        final RawDataFileSnapshotWriter writer = new RawDataFileSnapshotWriter(files, zipStream);
+        writer.writeSnapshots();
+        assertEquals(files.size(), writer.getProcessedFiles());
+      }
+
+      final MZmineProject project = new MZmineProjectImpl();
+      final List<RawDataFile> loaded;
+      try (ZipFile zipFile = new ZipFile(projectFile)) {
+        assertTrue(RawDataFileSnapshotLoader.hasSnapshots(zipFile));
+        loaded = new RawDataFileSnapshotLoader(zipFile, project).loadSnapshots();
+      }
+
+      assertEquals(files.size(), loaded.size());
+      assertEquals(files.size(), project.getDataFiles().length);
+      for (int i = 0; i < files.size(); i++) {
+        assertSameFile(files.get(i), loaded.get(i));
+      }
+    } finally {
+      projectFile.delete();
+    }
+  }
+}
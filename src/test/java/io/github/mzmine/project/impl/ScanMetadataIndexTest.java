@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.project.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The {@link ScanMetadataIndex} must return the same scans and values as filtering all scans.
+ */
+class ScanMetadataIndexTest {
+
+  private static final int[] MS_LEVELS = {1, 2, 3};
+
+  private static Scan createScan(RawDataFile file, int number, Random rand, float rt) {
+    final int msLevel = number % 5 == 0 ? 1 : (number % 7 == 0 ? 3 : 2);
+    final double[] mzs = new double[1 + rand.nextInt(20)];
+    final double[] intensities = new double[mzs.length];
+    for (int i = 0; i < mzs.length; i++) {
+      mzs[i] = 50 + i * 40 + rand.nextDouble() * 10;
+      intensities[i] = rand.nextDouble() * 1E5;
+    }
+    final PolarityType polarity = number % 3 == 0 ? PolarityType.NEGATIVE : PolarityType.POSITIVE;
+    return new SimpleScan(file, number, msLevel, rt, null, mzs, intensities,
+        MassSpectrumType.CENTROIDED, polarity, "", Range.closed(50d, 1000d));
+  }
+
+  /**
+   * @param sorted scans sorted by retention time or random order with duplicate retention times
+   */
+  private static List<Scan> createScans(RawDataFile file, long seed, boolean sorted) {
+    final Random rand = new Random(seed);
+    final List<Scan> scans = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      final float rt = sorted ? i * 0.05f : rand.nextInt(200) * 0.1f;
+      scans.add(createScan(file, i + 1, rand, rt));
+    }
+    return scans;
+  }
+
+  private static List<Scan> filter(List<Scan> scans, int msLevel, Range<Float> rtRange) {
+    return scans.stream().filter(s -> s.getMSLevel() == msLevel)
+        .filter(s -> rtRange.contains(s.getRetentionTime())).toList();
+  }
+
+  private static void assertSameAsLinearFilter(List<Scan> scans) {
+    final ScanMetadataIndex index = new ScanMetadataIndex(scans);
+    assertEquals(scans.size(), index.size());
+    assertArrayEquals(scans.stream().mapToInt(Scan::getMSLevel).distinct().sorted().toArray(),
+        index.getMSLevels());
+    assertEquals(scans.stream().map(Scan::getPolarity).collect(Collectors.toSet()),
+        Set.copyOf(index.getPolarities()));
+
+    for (int msLevel : MS_LEVELS) {
+      final List<Scan> levelScans = filter(scans, msLevel, Range.all());
+      assertEquals(levelScans, index.getScans(msLevel));
+      assertEquals(levelScans.size(), index.getNumberOfScans(msLevel));
+      assertEquals(levelScans.stream().mapToDouble(Scan::getTIC).max().orElse(-1d),
+          index.getMaxTIC(msLevel));
+      assertEquals(levelScans.stream().mapToDouble(Scan::getBasePeakIntensity).max().orElse(-1d),
+          index.getMaxBasePeakIntensity(msLevel));
+      assertEquals(levelScans.stream().map(s -> Range.singleton(s.getRetentionTime()))
+          .reduce(Range::span).orElse(null), index.getRTRange(msLevel));
+      assertEquals(levelScans.stream().map(Scan::getDataPointMZRange).reduce(Range::span)
+          .orElse(null), index.getMZRange(msLevel));
+
+      // closed, open and half open ranges at and between retention times of scans
+      for (float lower = 0f; lower < 25f; lower += 0.75f) {
+        final float upper = lower + 1.5f;
+        for (Range<Float> rtRange : List.of(Range.closed(lower, upper), Range.open(lower, upper),
+            Range.closedOpen(lower, upper), Range.openClosed(lower, upper),
+            Range.atLeast(lower), Range.lessThan(upper), Range.singleton(lower))) {
+          assertEquals(filter(scans, msLevel, rtRange), index.getScans(msLevel, rtRange),
+              "MS" + msLevel + " " + rtRange);
+        }
+      }
+    }
+    assertEquals(scans.stream().map(s -> Range.singleton(s.getRetentionTime()))
+        .reduce(Range::span).orElse(null), index.getRTRange(0));
+    assertEquals(List.of(), index.getScans(4));
+    assertEquals(-1d, index.getMaxTIC(4));
+
+    for (int i = 0; i < scans.size(); i++) {
+      final Scan scan = scans.get(i);
+      assertEquals(scan.getRetentionTime(), index.getRetentionTime(i));
+      assertEquals(scan.getMSLevel(), index.getMSLevel(i));
+      assertEquals(scan.getPolarity(), index.getPolarity(i));
+      assertEquals(scan.getTIC().doubleValue(), index.getTIC(i));
+      assertEquals(scan.getBasePeakIntensity().doubleValue(), index.getBasePeakIntensity(i));
+    }
+  }
+
+  @Test
+  void sortedScans() {
+    final RawDataFile file = new RawDataFileImpl("sorted", null, null, Color.BLACK);
+    assertSameAsLinearFilter(createScans(file, 1, true));
+  }
+
+  @Test
+  void unsortedScans() {
+    final RawDataFile file = new RawDataFileImpl("unsorted", null, null, Color.BLACK);
+    assertSameAsLinearFilter(createScans(file, 2, false));
+  }
+
+  @Test
+  void noScans() {
+    assertSameAsLinearFilter(List.of());
+  }
+
+  @Test
+  void indexIsRecreatedAfterAddScan() throws IOException {
+    final RawDataFileImpl file = new RawDataFileImpl("file", null, null, Color.BLACK);
+    final List<Scan> scans = createScans(file, 3, true);
+    file.addScan(scans.get(0));
+    final ScanMetadataIndex index = file.getScanIndex();
+    assertSame(index, file.getScanIndex());
+    file.addScan(scans.get(1));
+    assertNotSame(index, file.getScanIndex());
+    assertEquals(2, file.getScanIndex().size());
+  }
+
+  @Test
+  void concurrentAddScanAndIndexAccess() throws Exception {
+    final RawDataFileImpl file = new RawDataFileImpl("file", null, null, Color.BLACK);
+    final List<Scan> scans = createScans(file, 4, true);
+    final AtomicBoolean done = new AtomicBoolean(false);
+    final List<Thread> readers = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      final Thread reader = new Thread(() -> {
+        while (!done.get()) {
+          file.getScanIndex();
+        }
+      });
+      reader.start();
+      readers.add(reader);
+    }
+    try {
+      for (Scan scan : scans) {
+        file.addScan(scan);
+      }
+    } finally {
+      done.set(true);
+      for (Thread reader : readers) {
+        reader.join();
+      }
+    }
+    // an index that was created before the last scan was added must have been cleared
+    assertEquals(scans.size(), file.getScanIndex().size());
+    assertEquals(scans.stream().filter(s -> s.getMSLevel() == 2).toList(),
+        List.copyOf(file.getScanIndex().getScans(2)));
+  }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.taskcontrol.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.Task;
+import io.github.mzmine.taskcontrol.TaskControllerMetrics;
+import io.github.mzmine.taskcontrol.TaskPriority;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class ExecutorTaskControllerTest {
+
+  private static final long TIMEOUT_SECONDS = 10;
+
+  private static ExecutorTaskController createController(int maxThreads) {
+    return new ExecutorTaskController(() -> maxThreads, 0);
+  }
+
+  private static void await(CountDownLatch latch) throws InterruptedException {
+    assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS), "Timeout");
+  }
+
+  @Test
+  void normalLaneLimitsRunningTasks() throws InterruptedException {
+    final ExecutorTaskController controller = createController(2);
+    final AtomicInteger running = new AtomicInteger(0);
+    final AtomicInteger maxRunning = new AtomicInteger(0);
+    final CountDownLatch done = new CountDownLatch(6);
+
+    final Task[] tasks = new Task[6];
+    for (int i = 0; i < tasks.length; i++) {
+      tasks[i] = new TestTask(() -> {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        sleep(20);
+        running.decrementAndGet();
+        done.countDown();
+      });
+    }
+    final WrappedTask[] wrapped = controller.addTasks(tasks);
+    await(done);
+    controller.awaitTasks(wrapped);
+
+    assertEquals(2, maxRunning.get());
+    for (WrappedTask task : wrapped) {
+      assertTrue(task.isDone());
+      assertEquals(TaskStatus.FINISHED, task.getActualTask().getStatus());
+    }
+    final TaskControllerMetrics metrics = controller.getMetrics();
+    assertEquals(6, metrics.startedTasks());
+    assertEquals(6, metrics.completedTasks());
+    assertEquals(0, metrics.queueDepth());
+  }
+
+  @Test
+  void highPriorityTasksDoNotWaitForThreads() throws InterruptedException {
+    final ExecutorTaskController controller = createController(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch highDone = new CountDownLatch(1);
+
+    final WrappedTask[] blocking = controller.addTasks(
+        new Task[]{new TestTask(() -> awaitQuietly(release))});
+    controller.addTask(new TestTask(highDone::countDown), TaskPriority.HIGH);
+
+    await(highDone);
+    release.countDown();
+    controller.awaitTasks(blocking);
+  }
+
+  @Test
+  void dependentTasksStartAfterDependencies() throws InterruptedException {
+    final ExecutorTaskController controller = createController(4);
+    final List<String> order = new CopyOnWriteArrayList<>();
+    final CountDownLatch release = new CountDownLatch(1);
+
+    final WrappedTask[] first = controller.addTasks(new Task[]{new TestTask(() -> {
+      awaitQuietly(release);
+      order.add("first");
+    })});
+    final WrappedTask[] second = controller.addTasks(
+        new Task[]{new TestTask(() -> order.add("second"))},
+        new TaskPriority[]{TaskPriority.NORMAL}, List.of(first));
+
+    assertEquals(1, controller.getMetrics().waitingForDependencies());
+    release.countDown();
+    controller.awaitTasks(second);
+
+    assertEquals(List.of("first", "second"), order);
+    assertEquals(0, controller.getMetrics().waitingForDependencies());
+  }
+
+  @Test
+  void failedDependencyCancelsTask() throws InterruptedException {
+    final ExecutorTaskController controller = createController(2);
+    final AtomicInteger runs = new AtomicInteger(0);
+
+    final TestTask failing = new TestTask(() -> {
+    });
+    failing.failOnRun = true;
+    final WrappedTask[] first = controller.addTasks(new Task[]{failing});
+    final WrappedTask[] second = controller.addTasks(
+        new Task[]{new TestTask(runs::incrementAndGet)}, new TaskPriority[]{TaskPriority.NORMAL},
+        List.of(first));
+    controller.awaitTasks(second);
+
+    assertEquals(0, runs.get());
+    assertEquals(TaskStatus.ERROR, first[0].getActualTask().getStatus());
+    assertEquals(TaskStatus.CANCELED, second[0].getActualTask().getStatus());
+  }
+
+  @Test
+  void waitingForSubTasksReleasesThread() throws InterruptedException {
+    // a single thread - the sub task can only run if the main task releases its thread
+    final ExecutorTaskController controller = createController(1);
+    final AtomicInteger subTaskRuns = new AtomicInteger(0);
+    final CountDownLatch mainDone = new CountDownLatch(1);
+
+    controller.addTask(new TestTask(() -> {
+      final WrappedTask[] subTasks = controller.addTasks(
+          new Task[]{new TestTask(subTaskRuns::incrementAndGet),
+              new TestTask(subTaskRuns::incrementAndGet)});
+      try {
+        controller.awaitTasks(subTasks);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      mainDone.countDown();
+    }));
+
+    await(mainDone);
+    assertEquals(2, subTaskRuns.get());
+  }
+
+  @Test
+  void canceledQueuedTaskIsDoneWithoutRunning() throws InterruptedException {
+    final ExecutorTaskController controller = createController(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger runs = new AtomicInteger(0);
+
+    final WrappedTask[] blocking = controller.addTasks(
+        new Task[]{new TestTask(() -> awaitQuietly(release))});
+    final TestTask queued = new TestTask(runs::incrementAndGet);
+    final WrappedTask[] queuedWrapped = controller.addTasks(new Task[]{queued});
+    assertEquals(1, controller.getMetrics().queuedNormal());
+
+    queued.cancel();
+    assertTrue(queuedWrapped[0].isDone());
+    assertEquals(0, controller.getMetrics().queuedNormal());
+
+    release.countDown();
+    controller.awaitTasks(blocking);
+    assertEquals(0, runs.get());
+  }
+
+  @Test
+  void taskFinishedAfterRunIsDoneOnFinalStatus() throws InterruptedException {
+    final ExecutorTaskController controller = createController(1);
+    final TestTask task = new TestTask(() -> {
+    });
+    task.finishOnRun = false;
+    final WrappedTask[] wrapped = controller.addTasks(new Task[]{task});
+
+    final CountDownLatch ran = new CountDownLatch(1);
+    controller.addTasks(new Task[]{new TestTask(ran::countDown)});
+    await(ran);
+    assertFalse(wrapped[0].isDone());
+
+    // e.g., finished by a listener of sub tasks
+    task.setStatus(TaskStatus.FINISHED);
+    controller.awaitTasks(wrapped);
+    assertTrue(wrapped[0].isDone());
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static class TestTask extends AbstractTask {
+
+    private final Runnable action;
+    private boolean failOnRun = false;
+    private boolean finishOnRun = true;
+
+    private TestTask(Runnable action) {
+      super(null, Instant.now());
+      this.action = action;
+    }
+
+    @Override
+    public String getTaskDescription() {
+      return "Test task";
+    }
+
+    @Override
+    public double getFinishedPercentage() {
+      return 0;
+    }
+
+    @Override
+    public void run() {
+      setStatus(TaskStatus.PROCESSING);
+      if (failOnRun) {
+        setErrorMessage("Test error");
+        setStatus(TaskStatus.ERROR);
+        return;
+      }
+      action.run();
+      if (finishOnRun) {
+        setStatus(TaskStatus.FINISHED);
+      }
+    }
+  }
+}
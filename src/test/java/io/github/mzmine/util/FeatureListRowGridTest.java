@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.numbers.MZType;
+import io.github.mzmine.datamodel.features.types.numbers.MobilityType;
+import io.github.mzmine.datamodel.features.types.numbers.RTType;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance.Unit;
+import io.github.mzmine.parameters.parametertypes.tolerances.mobilitytolerance.MobilityTolerance;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The {@link FeatureListRowGrid} must return the same candidates as a full scan over all rows,
+ * with the bin widths that the join aligner uses for the base rows.
+ */
+class FeatureListRowGridTest {
+
+  private static final MZTolerance MZ_TOLERANCE = new MZTolerance(0.002, 10);
+  private static final RTTolerance RT_TOLERANCE = new RTTolerance(0.1f, Unit.MINUTES);
+  private static final MobilityTolerance MOBILITY_TOLERANCE = new MobilityTolerance(0.02f);
+  private static final double MAX_MZ = 1500d;
+
+  private final ModularFeatureList flist = new ModularFeatureList("flist", null);
+  // bin widths like JoinAlignerTask.createGrid
+  private final double mzBinWidth = RangeUtils.rangeLength(MZ_TOLERANCE.getToleranceRange(MAX_MZ));
+  private final double rtBinWidth = RangeUtils.rangeLength(RT_TOLERANCE.getToleranceRange(30f));
+  private final List<FeatureListRow> rows = createRows();
+  private final FeatureListRowGrid grid = new FeatureListRowGrid(rows, mzBinWidth, rtBinWidth);
+
+  private FeatureListRow createRow(int id, double mz, Float rt, Float mobility) {
+    final ModularFeatureListRow row = new ModularFeatureListRow(flist, id);
+    row.set(MZType.class, mz);
+    if (rt != null) {
+      row.set(RTType.class, rt);
+    }
+    if (mobility != null) {
+      row.set(MobilityType.class, mobility);
+    }
+    return row;
+  }
+
+  /**
+   * Random rows, some without RT or mobility, and rows exactly on the cell borders and next to
+   * them
+   */
+  private List<FeatureListRow> createRows() {
+    final Random rand = new Random(42);
+    final List<FeatureListRow> rows = new ArrayList<>();
+    for (int i = 0; i < 3000; i++) {
+      final double mz = 100 + rand.nextDouble() * (MAX_MZ - 100);
+      final Float rt = i % 20 == 0 ? null : rand.nextFloat() * 30f;
+      final Float mobility = i % 3 == 0 ? null : 0.6f + rand.nextFloat();
+      rows.add(createRow(rows.size(), mz, rt, mobility));
+    }
+    for (int i = 0; i < 200; i++) {
+      final double mz = (int) (400 / mzBinWidth + i) * mzBinWidth;
+      final float rt = (float) ((int) (5 / rtBinWidth + i % 10) * rtBinWidth);
+      rows.add(createRow(rows.size(), mz, rt, 1f));
+      rows.add(createRow(rows.size(), Math.nextUp(mz), Math.nextUp(rt), 1f));
+      rows.add(createRow(rows.size(), Math.nextDown(mz), Math.nextDown(rt), null));
+    }
+    // several rows with the same values
+    for (int i = 0; i < 5; i++) {
+      rows.add(createRow(rows.size(), 500d, 10f, 1f));
+    }
+    return rows;
+  }
+
+  /**
+   * Same range semantics as {@link FeatureListUtils#getCandidatesWithinRanges}
+   */
+  private List<Integer> fullScan(Range<Double> mzRange, Range<Float> rtRange,
+      Range<Float> mobilityRange) {
+    final List<Integer> indices = new ArrayList<>();
+    for (int i = 0; i < rows.size(); i++) {
+      final FeatureListRow row = rows.get(i);
+      final Float rt = row.getAverageRT();
+      final Float mobility = row.getAverageMobility();
+      if (mzRange.contains(row.getAverageMZ()) && (rt == null || rtRange.contains(rt)) && (
+          mobility == null || mobilityRange.contains(mobility))) {
+        indices.add(i);
+      }
+    }
+    return indices;
+  }
+
+  private List<Integer> gridCandidates(Range<Double> mzRange, Range<Float> rtRange,
+      Range<Float> mobilityRange) {
+    final IntArrayList indices = new IntArrayList();
+    grid.forEachCandidate(mzRange, rtRange, mobilityRange, indices::add);
+    final List<Integer> sorted = new ArrayList<>(indices);
+    Collections.sort(sorted);
+    // every candidate only once
+    assertEquals(sorted.size(), Set.copyOf(sorted).size());
+    return sorted;
+  }
+
+  private void assertSameCandidates(Range<Double> mzRange, Range<Float> rtRange,
+      Range<Float> mobilityRange) {
+    final List<Integer> expected = fullScan(mzRange, rtRange, mobilityRange);
+    assertEquals(expected, gridCandidates(mzRange, rtRange, mobilityRange),
+        mzRange + " " + rtRange + " " + mobilityRange);
+  }
+
+  @Test
+  void toleranceWindowsOfAllRows() {
+    // the windows of the join aligner around each row to add
+    for (FeatureListRow row : rows) {
+      final Range<Double> mzRange = MZ_TOLERANCE.getToleranceRange(row.getAverageMZ());
+      final Range<Float> rtRange = row.getAverageRT() != null ? RT_TOLERANCE.getToleranceRange(
+          row.getAverageRT()) : Range.all();
+      final Range<Float> mobilityRange =
+          row.getAverageMobility() != null ? MOBILITY_TOLERANCE.getToleranceRange(
+              row.getAverageMobility()) : Range.all();
+      assertSameCandidates(mzRange, rtRange, mobilityRange);
+      assertSameCandidates(mzRange, rtRange, Range.all());
+      // disabled m/z or RT weight
+      assertSameCandidates(Range.all(), rtRange, Range.all());
+      assertSameCandidates(mzRange, Range.all(), Range.all());
+    }
+  }
+
+  @Test
+  void rangesOnCellBorders() {
+    for (int i = 0; i < 200; i++) {
+      final double mzBorder = (int) (400 / mzBinWidth + i) * mzBinWidth;
+      final float rtBorder = (float) ((int) (5 / rtBinWidth + i % 10) * rtBinWidth);
+      for (Range<Double> mzRange : List.of(Range.closed(mzBorder, mzBorder + mzBinWidth),
+          Range.closed(mzBorder - mzBinWidth, mzBorder), Range.open(mzBorder, mzBorder + 0.01),
+          Range.closed(Math.nextDown(mzBorder), Math.nextDown(mzBorder)),
+          Range.singleton(mzBorder), MZ_TOLERANCE.getToleranceRange(mzBorder))) {
+        for (Range<Float> rtRange : List.of(Range.closed(rtBorder, rtBorder + 0.5f),
+            Range.closed(rtBorder - 0.5f, rtBorder), Range.openClosed(rtBorder, rtBorder + 1f),
+            Range.singleton(rtBorder), Range.<Float>all())) {
+          assertSameCandidates(mzRange, rtRange, Range.all());
+          assertSameCandidates(mzRange, rtRange, Range.closed(0.99f, 1.01f));
+        }
+      }
+    }
+  }
+
+  @Test
+  void wideAndEmptyRanges() {
+    assertSameCandidates(Range.all(), Range.all(), Range.all());
+    assertEquals(rows.size(), gridCandidates(Range.all(), Range.all(), Range.all()).size());
+    assertSameCandidates(Range.atLeast(1000d), Range.atMost(5f), Range.all());
+    assertSameCandidates(Range.closed(200d, 300d), Range.closed(10f, 20f),
+        Range.closed(1f, 1.2f));
+    assertTrue(gridCandidates(Range.closed(0d, 50d), Range.all(), Range.all()).isEmpty());
+    assertTrue(gridCandidates(Range.closed(2000d, 3000d), Range.all(), Range.all()).isEmpty());
+    // only rows without RT
+    assertSameCandidates(Range.closed(100d, 1500d), Range.closed(100f, 200f), Range.all());
+    assertTrue(
+        fullScan(Range.closed(100d, 1500d), Range.closed(100f, 200f), Range.all()).size() > 0);
+  }
+
+  @Test
+  void sameAsFeatureListUtils() {
+    // the sorted binary search used before the grid
+    final Map<FeatureListRow, Integer> indexOf = new IdentityHashMap<>();
+    for (int i = 0; i < rows.size(); i++) {
+      indexOf.put(rows.get(i), i);
+    }
+    final List<FeatureListRow> sorted = rows.stream().sorted(FeatureListRowSorter.MZ_ASCENDING)
+        .toList();
+    for (int i = 0; i < rows.size(); i += 7) {
+      final FeatureListRow row = rows.get(i);
+      final Range<Double> mzRange = MZ_TOLERANCE.getToleranceRange(row.getAverageMZ());
+      final Range<Float> rtRange = row.getAverageRT() != null ? RT_TOLERANCE.getToleranceRange(
+          row.getAverageRT()) : Range.all();
+      final List<Integer> expected = new ArrayList<>(
+          FeatureListUtils.getCandidatesWithinRanges(mzRange, rtRange, Range.all(), sorted, true)
+              .stream().map(indexOf::get).toList());
+      Collections.sort(expected);
+      assertEquals(expected, gridCandidates(mzRange, rtRange, Range.all()));
+    }
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Concurrent writers must get separate regions of the temporary files, also when the current file
+ * is full and a new file is created.
+ */
+class MemoryMapStorageTest {
+
+  private static final int THREADS = 16;
+  private static final int ARRAYS_PER_THREAD = 400;
+  private static final int MAX_LENGTH = 2000;
+  // a new file after a few arrays
+  private static final long FILE_CAPACITY = 200_000L;
+
+  /**
+   * @return values that differ from the values of all other arrays at every index
+   */
+  private static int[] createInts(int arrayID, int length) {
+    final int[] data = new int[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = arrayID * MAX_LENGTH + i;
+    }
+    return data;
+  }
+
+  private static double[] createDoubles(int arrayID, int length) {
+    final double[] data = new double[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = arrayID * MAX_LENGTH + i + 0.5;
+    }
+    return data;
+  }
+
+  private record Stored(int[] ints, IntBuffer intBuffer, double[] doubles,
+                        DoubleBuffer doubleBuffer) {
+
+    private void assertUnchanged() {
+      assertEquals(ints.length, intBuffer.limit());
+      for (int i = 0; i < ints.length; i++) {
+        assertEquals(ints[i], intBuffer.get(i));
+      }
+      assertEquals(doubles.length, doubleBuffer.limit());
+      for (int i = 0; i < doubles.length; i++) {
+        assertEquals(doubles[i], doubleBuffer.get(i));
+      }
+    }
+  }
+
+  @Test
+  void concurrentWritersDoNotOverlap() throws Exception {
+    final MemoryMapStorage storage = new MemoryMapStorage(FILE_CAPACITY);
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      final CountDownLatch start = new CountDownLatch(1);
+      final List<Future<List<Stored>>> futures = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++) {
+        final int thread = t;
+        futures.add(executor.submit(() -> {
+          final Random rand = new Random(thread);
+          final List<Stored> stored = new ArrayList<>();
+          start.await();
+          for (int a = 0; a < ARRAYS_PER_THREAD; a++) {
+            final int arrayID = thread * ARRAYS_PER_THREAD + a;
+            final int[] ints = createInts(arrayID, 1 + rand.nextInt(MAX_LENGTH));
+            final double[] doubles = createDoubles(arrayID, rand.nextInt(MAX_LENGTH));
+            stored.add(new Stored(ints, storage.storeData(ints), doubles,
+                storage.storeData(doubles)));
+          }
+          return stored;
+        }));
+      }
+      start.countDown();
+
+      long storedBytes = 0;
+      final List<Stored> all = new ArrayList<>();
+      for (Future<List<Stored>> future : futures) {
+        for (Stored stored : future.get()) {
+          all.add(stored);
+          storedBytes += (long) stored.ints().length * Integer.BYTES
+              + (long) stored.doubles().length * Double.BYTES;
+        }
+      }
+      // an overlapping region would have been overwritten by the other writer
+      for (Stored stored : all) {
+        stored.assertUnchanged();
+      }
+      // several new files were created. The end of a full file may stay empty
+      assertTrue(storedBytes > 10 * FILE_CAPACITY);
+      assertTrue(storage.getReservedBytes() >= storedBytes);
+    } finally {
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+      storage.discard(null);
+    }
+  }
+
+  @Test
+  void newFileWhenFull() throws IOException {
+    final MemoryMapStorage storage = new MemoryMapStorage(1000);
+    try {
+      // exactly fills the first file
+      final IntBuffer first = storage.storeData(createInts(0, 250));
+      assertEquals(1000, storage.getReservedBytes());
+      // does not fit into the first file
+      final IntBuffer second = storage.storeData(createInts(1, 10));
+      assertEquals(1040, storage.getReservedBytes());
+      // does not fit into the second file, the end of the second file stays empty
+      final IntBuffer third = storage.storeData(createInts(2, 245));
+      assertEquals(1000 + 1000 + 980, storage.getReservedBytes());
+
+      new Stored(createInts(0, 250), first, new double[0], DoubleBuffer.allocate(0))
+          .assertUnchanged();
+      new Stored(createInts(1, 10), second, new double[0], DoubleBuffer.allocate(0))
+          .assertUnchanged();
+      new Stored(createInts(2, 245), third, new double[0], DoubleBuffer.allocate(0))
+          .assertUnchanged();
+
+      assertThrows(IllegalArgumentException.class, () -> storage.storeData(createInts(3, 251)));
+      assertEquals(1000 + 1000 + 980, storage.getReservedBytes());
+    } finally {
+      storage.discard(null);
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.spectraldb.entry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SpectralLibraryIndexTest {
+
+  private final MZTolerance mzTol = new MZTolerance(0.005, 10);
+  private List<SpectralLibraryEntry> entries;
+  private SpectralLibraryIndex index;
+
+  @BeforeEach
+  void setUp() {
+    Random rand = new Random(42);
+    PolarityType[] polarities = {PolarityType.POSITIVE, PolarityType.NEGATIVE, null};
+    entries = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      var entry = SpectralLibraryEntry.create(null, 100 + rand.nextDouble() * 100,
+          new DataPoint[0]);
+      if (i % 50 == 0) {
+        entry.getFields().remove(DBEntryField.PRECURSOR_MZ);
+      }
+      entry.putIfNotNull(DBEntryField.POLARITY, polarities[i % 3]);
+      entry.putIfNotNull(DBEntryField.RT, i % 7 == 0 ? null : rand.nextFloat() * 10f);
+      entries.add(entry);
+    }
+    index = new SpectralLibraryIndex(entries);
+  }
+
+  private List<SpectralLibraryEntry> linearScan(PolarityType polarity, double mz) {
+    return entries.stream().filter(e -> {
+      var entryPolarity = PolarityType.parseFromString(
+          e.getField(DBEntryField.POLARITY).map(Object::toString).orElse(null));
+      return entryPolarity == PolarityType.UNKNOWN || entryPolarity == polarity;
+    }).filter(e -> e.getPrecursorMZ() != null && mzTol.checkWithinTolerance(e.getPrecursorMZ(),
+        mz)).toList();
+  }
+
+  @Test
+  void precursorCandidatesEqualLinearScan() {
+    Random rand = new Random(7);
+    for (int i = 0; i < 500; i++) {
+      double mz = 100 + rand.nextDouble() * 100;
+      var polarity = i % 2 == 0 ? PolarityType.POSITIVE : PolarityType.NEGATIVE;
+      var expected = linearScan(polarity, mz);
+      // index window is wider than the final check
+      double window = 2 * mzTol.getMzToleranceForMass(mz);
+      var candidates = index.getCandidates(Set.of(polarity), Range.closed(mz - window, mz + window),
+          null, null);
+      var filtered = candidates.stream().filter(
+          e -> mzTol.checkWithinTolerance(e.getPrecursorMZ(), mz)).toList();
+      assertEquals(expected, filtered);
+    }
+  }
+
+  @Test
+  void noPrecursorFilterReturnsAllOfPolarity() {
+    assertEquals(entries.size(), index.getCandidates(Set.of(), null, null, null).size());
+    var positive = index.getCandidates(Set.of(PolarityType.POSITIVE), null, null, null);
+    assertEquals(entries.stream().filter(
+            e -> e.getField(DBEntryField.POLARITY).orElse(null) != PolarityType.NEGATIVE).count(),
+        positive.size());
+  }
+
+  @Test
+  void retentionTimeFilter() {
+    var candidates = index.getCandidates(Set.of(), null, rt -> Double.isNaN(rt) || rt < 5, null);
+    assertEquals(entries.stream().filter(e -> {
+      Float rt = (Float) e.getField(DBEntryField.RT).orElse(null);
+      return rt == null || rt < 5;
+    }).toList(), candidates);
+  }
+}